@@ -0,0 +1,29 @@
+package za.madtek.arcaderacer.asset;
+
+import org.joml.Vector3f;
+
+import java.util.concurrent.CompletableFuture;
+
+// Meshes with bounds and LODs but no pool ranges, for benchmarks that never touch the GPU.
+public class BenchmarkMeshes {
+
+    private BenchmarkMeshes() {
+    }
+
+    // A box of the given half extents with lodCount LODs, each half the triangles and twice the error of the last.
+    public static Mesh box(String name, float halfWidth, float halfHeight, float halfLength, int lodCount) {
+        MeshLod[] lods = new MeshLod[lodCount];
+        int indexCount = 3 * 4096;
+        float error = 0.0f;
+        for (int lod = 0; lod < lodCount; lod++) {
+            lods[lod] = new MeshLod(0, indexCount, error);
+            indexCount = Math.max(3, indexCount / 6 * 3);
+            error = error == 0.0f ? 0.01f : error * 2.0f;
+        }
+
+        Vector3f min = new Vector3f(-halfWidth, -halfHeight, -halfLength);
+        Vector3f max = new Vector3f(halfWidth, halfHeight, halfLength);
+        return new Mesh(name, null, 0, 4096, 0, lods[0].getIndexCount(), lods, min, max, new Vector3f(),
+                max.length(), CompletableFuture.completedFuture(null));
+    }
+}
@@ -0,0 +1,74 @@
+package za.madtek.arcaderacer.asset;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Importing and cooking a mesh, from a generated height field OBJ so it doesn't depend on what's in assets.
+// Covers the whole import: assimp, vertex packing, LOD simplification and writing the cooked file.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MeshImportBenchmark {
+
+    // Grid cells per side; twice as many triangles.
+    @Param({"64", "256"})
+    public int size;
+
+    private Path directory;
+    private Path source;
+    private Path destination;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("mesh-import");
+        source = directory.resolve("terrain.obj");
+        destination = directory.resolve(MeshImporter.cookedName(source));
+
+        StringBuilder obj = new StringBuilder();
+        for (int z = 0; z <= size; z++) {
+            for (int x = 0; x <= size; x++) {
+                float y = (float) (Math.sin(x * 0.2) * Math.cos(z * 0.15)) * 2.0f;
+                obj.append(String.format(Locale.ROOT, "v %d %.4f %d%n", x, y, z));
+            }
+        }
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                int a = z * (size + 1) + x + 1;
+                int b = a + size + 1;
+                obj.append("f ").append(a).append(' ').append(b).append(' ').append(a + 1).append('\n');
+                obj.append("f ").append(a + 1).append(' ').append(b).append(' ').append(b + 1).append('\n');
+            }
+        }
+        Files.writeString(source, obj);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public long importMesh() throws IOException {
+        MeshImporter.importMesh(source, destination);
+        return Files.size(destination);
+    }
+}
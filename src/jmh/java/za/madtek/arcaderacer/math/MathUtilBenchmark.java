@@ -0,0 +1,35 @@
+package za.madtek.arcaderacer.math;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MathUtilBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final int[] values = new int[COUNT];
+
+    @Setup
+    public void setup() {
+        // About half in range and the rest out either side, so the branches can't be predicted.
+        Random random = new Random(1);
+        for (int i = 0; i < COUNT; i++)
+            values[i] = random.nextInt(4000) - 1000;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void clamp(Blackhole blackhole) {
+        for (int value : values)
+            blackhole.consume(MathUtil.clamp(0, 1920, value));
+    }
+}
@@ -0,0 +1,93 @@
+package za.madtek.arcaderacer.physics;
+
+import org.openjdk.jmh.annotations.*;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.ai.DriverSystem;
+import za.madtek.arcaderacer.ai.RacingLineLibrary;
+import za.madtek.arcaderacer.entity.EntityStore;
+import za.madtek.arcaderacer.track.Course;
+import za.madtek.arcaderacer.track.PlacedStage;
+import za.madtek.arcaderacer.track.TrackFrame;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One fixed tick of AI and vehicle physics, and the broadphase on its own, for a grid of racers followed by
+// traffic spread down the first stage. The field is respawned every iteration so cars don't all end up parked
+// against each other at the end of the course.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VehicleSimulationBenchmark {
+
+    private static final float TICK = 1.0f / Globals.TICK_RATE;
+    private static final int RACERS = 12;
+
+    @Param({"50", "500", "2000"})
+    public int cars;
+
+    private Course course;
+    private RacingLineLibrary racingLines;
+    private EntityStore entities;
+    private VehiclePhysics physics;
+    private DriverSystem driverSystem;
+    private Broadphase broadphase;
+    private int focus;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        course = new Course(Globals.TRACK_SEED, Globals.TRACK_ROWS);
+        racingLines = new RacingLineLibrary(course);
+        racingLines.init();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        entities = new EntityStore();
+        physics = new VehiclePhysics(course);
+        driverSystem = new DriverSystem(course, racingLines);
+        broadphase = new Broadphase();
+
+        PlacedStage start = new PlacedStage(course.getStart(), new TrackFrame());
+        Random random = new Random(Globals.TRACK_SEED);
+        int route = 0xAAAAAAAA;
+        int racers = Math.min(RACERS, cars);
+        for (int i = 0; i < racers; i++) {
+            int entity = entities.create();
+            entities.transforms.add(entity);
+            entities.vehicles.add(entity, start, 20.0f + i / 3 * 9.0f, (i % 3 - 1) * 4.0f);
+            entities.drivers.add(entity, 0.92f + random.nextFloat() * 0.08f, route);
+        }
+
+        int traffic = cars - racers;
+        float spacing = (start.getLength() - 150.0f) / Math.max(1, traffic);
+        for (int i = 0; i < traffic; i++) {
+            int entity = entities.create();
+            entities.transforms.add(entity);
+            entities.vehicles.add(entity, start, 150.0f + i * spacing, (random.nextFloat() * 2.0f - 1.0f) * 4.5f);
+            entities.drivers.add(entity, 0.5f + random.nextFloat() * 0.15f, route);
+        }
+
+        focus = entities.vehicles.getEntity(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        entities.free();
+    }
+
+    @Benchmark
+    public void tick() {
+        driverSystem.update(entities, focus, TICK);
+        physics.step(entities, TICK);
+    }
+
+    @Benchmark
+    public int broadphase() {
+        broadphase.update(entities.vehicles, 2.2f, 1.0f);
+        return broadphase.getPairCount();
+    }
+}
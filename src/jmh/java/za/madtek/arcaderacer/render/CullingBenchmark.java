@@ -0,0 +1,79 @@
+package za.madtek.arcaderacer.render;
+
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.asset.BenchmarkMeshes;
+import za.madtek.arcaderacer.asset.Mesh;
+import za.madtek.arcaderacer.entity.EntityStore;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Frustum culling, LOD selection and draw list building for a road lined with props and cars, seen from a chase
+// camera looking down it. Most of the field is behind the camera, off to the sides or too far to see, like a
+// real frame.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CullingBenchmark {
+
+    private static final float ROAD_LENGTH = 6000.0f;
+
+    @Param({"1000", "10000", "100000"})
+    public int renderables;
+
+    private EntityStore entities;
+    private Camera camera;
+    private VisibilityStage visibilityStage;
+
+    @Setup
+    public void setup() {
+        Mesh car = BenchmarkMeshes.box("car", 1.0f, 0.7f, 2.2f, 4);
+        Mesh prop = BenchmarkMeshes.box("prop", 0.5f, 4.0f, 0.5f, 3);
+        Mesh road = BenchmarkMeshes.box("road", 8.0f, 0.1f, 20.0f, 1);
+
+        entities = new EntityStore();
+        Random random = new Random(Globals.TRACK_SEED);
+        Quaternionf rotation = new Quaternionf();
+        Vector3f position = new Vector3f();
+        for (int i = 0; i < renderables; i++) {
+            int entity = entities.create();
+            float z = -random.nextFloat() * ROAD_LENGTH + 200.0f;
+            Mesh mesh;
+            if (i % 10 == 0) {
+                mesh = road;
+                position.set(0.0f, 0.0f, z);
+            } else if (i % 3 == 0) {
+                mesh = car;
+                position.set((random.nextFloat() * 2.0f - 1.0f) * 6.0f, 0.7f, z);
+            } else {
+                mesh = prop;
+                position.set((random.nextBoolean() ? 1.0f : -1.0f) * (10.0f + random.nextFloat() * 60.0f), 4.0f, z);
+            }
+            rotation.rotationY(random.nextFloat() * 0.2f - 0.1f);
+            entities.transforms.add(entity, position, rotation, 1.0f);
+            entities.renderables.add(entity, mesh, VisibilityStage.OPAQUE, 0xFFFFFFFF);
+        }
+
+        camera = new Camera();
+        camera.lookAt(new Vector3f(0.0f, 3.0f, 8.0f), new Vector3f(0.0f, 1.0f, -20.0f));
+        camera.update(Globals.WIDTH, Globals.HEIGHT);
+        visibilityStage = new VisibilityStage();
+    }
+
+    @TearDown
+    public void tearDown() {
+        entities.free();
+    }
+
+    @Benchmark
+    public int collectVisible() {
+        visibilityStage.collectVisible(entities, camera);
+        return visibilityStage.getVisibleCount();
+    }
+}
@@ -0,0 +1,119 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VkSurfaceCapabilitiesKHR;
+import org.lwjgl.vulkan.VkSurfaceFormatKHR;
+import org.openjdk.jmh.annotations.*;
+import za.madtek.arcaderacer.math.MathUtil;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.vulkan.KHRSurface.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Queue family and swap chain parameter selection, fed with what typical drivers report instead of a real
+// device, so it runs anywhere. These run on every swap chain recreate, so resizes and present policy changes.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceSelectionBenchmark {
+
+    private static final int GRAPHICS = VK_QUEUE_GRAPHICS_BIT | VK_QUEUE_COMPUTE_BIT | VK_QUEUE_TRANSFER_BIT;
+    private static final int COMPUTE = VK_QUEUE_COMPUTE_BIT | VK_QUEUE_TRANSFER_BIT;
+
+    // Queue families as reported by desktop drivers: a discrete card with separate compute and DMA families, one
+    // with several of each, and an integrated part with a single family for everything.
+    @Param({"discrete", "multi", "integrated"})
+    public String device;
+
+    @Param({"LOW_LATENCY", "VSYNC", "UNCAPPED"})
+    public PresentPolicy presentPolicy;
+
+    private int[] queueFlags;
+    private boolean[] presentSupport;
+    private VkSurfaceFormatKHR.Buffer formats;
+    private IntBuffer presentModes;
+    private VkSurfaceCapabilitiesKHR capabilities;
+
+    @Setup
+    public void setup() {
+        switch (device) {
+            case "discrete" -> {
+                queueFlags = new int[]{GRAPHICS, VK_QUEUE_TRANSFER_BIT, COMPUTE};
+                presentSupport = new boolean[]{true, false, true};
+            }
+            case "multi" -> {
+                queueFlags = new int[]{GRAPHICS, COMPUTE, COMPUTE, VK_QUEUE_TRANSFER_BIT, VK_QUEUE_TRANSFER_BIT, 0};
+                presentSupport = new boolean[]{true, true, true, false, false, false};
+            }
+            default -> {
+                queueFlags = new int[]{GRAPHICS};
+                presentSupport = new boolean[]{true};
+            }
+        }
+
+        // The sRGB format most drivers list second or later.
+        int[][] surfaceFormats = {
+                {VK_FORMAT_A2B10G10R10_UNORM_PACK32, VK_COLOR_SPACE_SRGB_NONLINEAR_KHR},
+                {VK_FORMAT_B8G8R8A8_UNORM, VK_COLOR_SPACE_SRGB_NONLINEAR_KHR},
+                {VK_FORMAT_R8G8B8A8_UNORM, VK_COLOR_SPACE_SRGB_NONLINEAR_KHR},
+                {VK_FORMAT_R8G8B8A8_SRGB, VK_COLOR_SPACE_SRGB_NONLINEAR_KHR},
+                {VK_FORMAT_B8G8R8A8_SRGB, VK_COLOR_SPACE_SRGB_NONLINEAR_KHR},
+        };
+        formats = VkSurfaceFormatKHR.calloc(surfaceFormats.length);
+        for (int i = 0; i < surfaceFormats.length; i++) {
+            MemoryUtil.memPutInt(formats.get(i).address() + VkSurfaceFormatKHR.FORMAT, surfaceFormats[i][0]);
+            MemoryUtil.memPutInt(formats.get(i).address() + VkSurfaceFormatKHR.COLORSPACE, surfaceFormats[i][1]);
+        }
+
+        presentModes = MemoryUtil.memAllocInt(3);
+        presentModes.put(VK_PRESENT_MODE_FIFO_KHR).put(VK_PRESENT_MODE_FIFO_RELAXED_KHR).put(VK_PRESENT_MODE_IMMEDIATE_KHR).flip();
+
+        // A window manager that leaves the extent up to us, which takes the clamping path.
+        capabilities = VkSurfaceCapabilitiesKHR.calloc();
+        capabilities.minImageCount(2);
+        capabilities.maxImageCount(8);
+        capabilities.currentExtent().set(MathUtil.UINT32_MAX, MathUtil.UINT32_MAX);
+        capabilities.minImageExtent().set(1, 1);
+        capabilities.maxImageExtent().set(16384, 16384);
+    }
+
+    @TearDown
+    public void tearDown() {
+        formats.free();
+        MemoryUtil.memFree(presentModes);
+        capabilities.free();
+    }
+
+    @Benchmark
+    public QueueFamilyIndices queueFamilies() {
+        return QueueFamilyIndices.select(queueFlags, presentSupport);
+    }
+
+    @Benchmark
+    public int surfaceFormat() {
+        return SwapChain.chooseSwapSurfaceFormat(formats).format();
+    }
+
+    @Benchmark
+    public int presentMode() {
+        return SwapChain.chooseSwapPresentMode(presentModes, presentPolicy);
+    }
+
+    @Benchmark
+    public int imageCount() {
+        return SwapChain.chooseImageCount(capabilities, presentPolicy);
+    }
+
+    @Benchmark
+    public int extent() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            return SwapChain.chooseSwapExtent(capabilities, stack).width();
+        }
+    }
+}
@@ -1,62 +1,615 @@
 package za.madtek.arcaderacer;
 
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import za.madtek.arcaderacer.ai.DriverSystem;
+import za.madtek.arcaderacer.ai.RacingLineLibrary;
+import za.madtek.arcaderacer.asset.Mesh;
+import za.madtek.arcaderacer.asset.MeshBuilder;
+import za.madtek.arcaderacer.audio.AudioSystem;
+import za.madtek.arcaderacer.entity.Entity;
+import za.madtek.arcaderacer.entity.EntityStore;
+import za.madtek.arcaderacer.entity.MovementSystem;
+import za.madtek.arcaderacer.entity.Vehicles;
+import za.madtek.arcaderacer.input.InputSystem;
+import za.madtek.arcaderacer.physics.VehiclePhysics;
+import za.madtek.arcaderacer.profile.BenchmarkReport;
+import za.madtek.arcaderacer.profile.Profiler;
+import za.madtek.arcaderacer.render.Camera;
+import za.madtek.arcaderacer.render.FrameCapture;
+import za.madtek.arcaderacer.render.VisibilityStage;
+import za.madtek.arcaderacer.replay.Replay;
+import za.madtek.arcaderacer.track.Course;
+import za.madtek.arcaderacer.track.PlacedStage;
+import za.madtek.arcaderacer.track.Stage;
+import za.madtek.arcaderacer.track.TrackFrame;
+import za.madtek.arcaderacer.track.TrackStreamer;
+import za.madtek.arcaderacer.vulkan.PresentPolicy;
 import za.madtek.arcaderacer.vulkan.RenderSystem;
+import za.madtek.arcaderacer.vulkan.ResourceRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 public class ArcadeRacer {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private static final float GRID_START = 20.0f;
+    private static final float GRID_SPACING = 9.0f;
+    private static final float LANE_SPACING = 4.0f;
+    private static final float TRAFFIC_START = 150.0f; // metres of clear road in front of the grid
+    private static final float TRAFFIC_LANE = 4.5f;
+    private static final float CHASE_DISTANCE = 14.0f;
+    private static final int[] CAR_COLORS = {0xD03030FF, 0x3060D0FF, 0xE0C020FF, 0x30A050FF, 0xE07020FF, 0xE0E0E0FF};
+    private static final int TRAFFIC_COLOR = 0x808890FF;
+
     private Window window;
     private RenderSystem renderSystem;
+    private FrameTimings frameTimings;
+    private FrameLimiter frameLimiter;
+    private InputSystem inputSystem;
+    private EntityStore entities;
+    private TrackStreamer trackStreamer;
+    private Camera camera;
+    private VisibilityStage visibilityStage;
+    private VehiclePhysics vehiclePhysics;
+    private RacingLineLibrary racingLines;
+    private DriverSystem driverSystem;
+    private AudioSystem audioSystem;
+    private Mesh carMesh;
+
+    // Attract mode: the camera chases one car of the grid, and the track streams around that car.
+    private int followed = Entity.NONE;
+    private float trackDistance;
+    private float previousTrackDistance;
+    private final TrackFrame cameraFrame = new TrackFrame();
+    private final Vector3f eye = new Vector3f();
+    private final Vector3f target = new Vector3f();
+
+    // The replay being played back, or null to drive from the controls, and the one being recorded, if any.
+    private final Replay playback;
+    private final String playbackName;
+    private Replay recording;
+    private int replayTick;
 
     private boolean running;
+    private boolean failed;
+
+    // The race is set up from the replay's header, so it starts from the same grid on the same course.
+    public ArcadeRacer(Replay playback, String playbackName) {
+        this.playback = playback;
+        this.playbackName = playbackName;
+        if (playback != null) {
+            Globals.TRACK_SEED = playback.getSeed();
+            Globals.GRID_SIZE = playback.getGridSize();
+            Globals.TRAFFIC_COUNT = playback.getTrafficCount();
+        }
+        if (Globals.RECORD_FILE != null)
+            recording = new Replay(BuildInfo.getBuild(), Globals.TRACK_SEED, Globals.GRID_SIZE, Globals.TRAFFIC_COUNT);
 
-    public ArcadeRacer() {
-        window = new Window(Globals.WIDTH, Globals.HEIGHT, false, false, Globals.TITLE);
+        if (!Globals.HEADLESS)
+            window = new Window(Globals.WIDTH, Globals.HEIGHT, false, false, Globals.TITLE);
         renderSystem = new RenderSystem();
+        frameTimings = new FrameTimings();
+        frameLimiter = new FrameLimiter();
+        inputSystem = new InputSystem();
+        entities = new EntityStore();
+        Course course = new Course(Globals.TRACK_SEED, Globals.TRACK_ROWS);
+        trackStreamer = new TrackStreamer(course);
+        camera = new Camera();
+        visibilityStage = new VisibilityStage();
+        vehiclePhysics = new VehiclePhysics(course);
+        racingLines = new RacingLineLibrary(course);
+        driverSystem = new DriverSystem(course, racingLines);
+        audioSystem = new AudioSystem();
     }
 
-    public void run() {
+    // False if anything went wrong, including a headless run whose captures didn't match their golden images.
+    public boolean run() {
         try {
             init();
-            mainLoop();
+            if (Globals.HEADLESS || Globals.BENCHMARK)
+                fixedStepLoop();
+            else
+                mainLoop();
+            finishReplay();
         } catch (Exception e) {
             e.printStackTrace();
+            failed = true;
         } finally {
             free();
         }
+        return !failed;
+    }
+
+    public FrameTimings getFrameTimings() {
+        return frameTimings;
     }
 
     private void init() {
         Globals.game = this;
 
-        window.init();
-        Globals.window = window;
+        if (!Globals.HEADLESS) {
+            window.init();
+            Globals.window = window;
+            inputSystem.init(window);
+        }
 
         renderSystem.init();
         Globals.renderSystem = renderSystem;
+
+        Globals.entities = entities;
+
+        if (playback != null) {
+            System.out.println(playback);
+            if (!playback.getBuild().equals(BuildInfo.getBuild()))
+                System.err.println("Replay was recorded with build " + playback.getBuild() + ", this is "
+                        + BuildInfo.getBuild() + "; it may not play back the same");
+        }
+
+        trackStreamer.init(renderSystem, entities);
+        Globals.trackStreamer = trackStreamer;
+        visibilityStage.init(renderSystem);
+        racingLines.init();
+        System.out.println(racingLines);
+        spawnGrid();
+
+        audioSystem.init();
+        Path music = Globals.MUSIC_DIR.resolve(Globals.MUSIC_TRACK);
+        if (Files.exists(music))
+            audioSystem.playMusic(music);
+
+        // Compiles on worker threads while the first frames are already being presented. Headless runs wait, so
+        // no frame is drawn with pipelines missing.
+        CompletableFuture<Void> pipelines = renderSystem.getPipelineLibrary().prebuild();
+        if (Globals.HEADLESS)
+            pipelines.join();
     }
 
     private void mainLoop() {
         running = true;
 
+        final long tickNanos = NANOS_PER_SECOND / Globals.TICK_RATE;
+        final long maxAccumulated = tickNanos * Globals.MAX_TICKS_PER_FRAME;
+        final double tickSeconds = 1.0 / Globals.TICK_RATE;
+
+        long accumulator = 0;
+        long previousFrame = System.nanoTime();
+
         while (running) {
+            long idleStart = System.nanoTime();
+            idle();
+
+            long frameStart = System.nanoTime();
+            Profiler.markFrame(frameStart);
+            // Clamp so a long stall (debugger, window drag) can't queue up an unbounded number of ticks.
+            accumulator = Math.min(accumulator + (frameStart - previousFrame), maxAccumulated);
+            previousFrame = frameStart;
+
+            Profiler.begin("poll events");
+            window.update();
+            Profiler.end();
+            inputSystem.beginFrame();
+            renderSystem.getPresentStats().markInputSampled(System.nanoTime());
+
             if (window.isResized()) {
-                // TODO: process resize messages.
                 Globals.WIDTH = window.getWidth();
                 Globals.HEIGHT = window.getHeight();
+                renderSystem.onResize();
                 window.setResized(false);
             }
 
-            window.update();
+            if (window.shouldClose()) {
+                running = false;
+                break;
+            }
+
+            if (inputSystem.takeCaptureRequest())
+                captureProfile();
+
+            int ticks = 0;
+            while (accumulator >= tickNanos && !isReplayFinished()) {
+                Profiler.begin("tick");
+                inputSystem.beforeTick((int) (accumulator / tickNanos), tickNanos, (float) tickSeconds);
+                tick(tickSeconds);
+                Profiler.end();
+                accumulator -= tickNanos;
+                ticks++;
+            }
+            long tickEnd = System.nanoTime();
 
-            if (window.shouldClose()) running = false;
+            if (!window.isMinimized()) {
+                Profiler.begin("render");
+                render((float) accumulator / tickNanos);
+                Profiler.end();
+            }
+            long frameEnd = System.nanoTime();
+
+            if (frameTimings.record(ticks, tickEnd - frameStart, frameEnd - tickEnd, frameStart - idleStart, frameEnd - idleStart)
+                    && Globals.LOG_FRAME_TIMINGS) {
+                System.out.println(frameTimings);
+                System.out.println(Profiler.getSummary());
+                System.out.println(inputSystem);
+                System.out.println(renderSystem.getPresentStats().getCurrent());
+                System.out.println(trackStreamer);
+                System.out.println(driverSystem);
+                System.out.println(vehiclePhysics);
+                System.out.println(audioSystem);
+                System.out.println(visibilityStage);
+                System.out.println(visibilityStage.getIndirectDrawTask());
+                System.out.println(renderSystem.getMeshPool());
+                System.out.println(ResourceRegistry.getSummary());
+                System.out.println(renderSystem.getDeletionQueue());
+            }
+
+            if (isReplayFinished())
+                running = false;
+        }
+
+        System.out.print(renderSystem.getPresentStats());
+        System.out.print(renderSystem.getMemoryAllocator().getStatistics());
+        System.out.print(renderSystem.getTextureLibrary().getStats());
+    }
+
+    // Automated and benchmark runs: every frame advances the simulation by exactly HEADLESS_TICKS_PER_FRAME ticks,
+    // however long it took to render, so the same race is driven and the chase camera follows the same path every
+    // time. A replay runs until its inputs run out, otherwise for HEADLESS_FRAMES frames.
+    //
+    // Headless, every CAPTURE_INTERVAL frames one is read back and checked against its golden image; streaming is
+    // given time to catch up first, so frame N always shows the same picture. With --benchmark there are no
+    // captures, a window presents uncapped, and every frame and tick is timed into a BenchmarkReport.
+    private void fixedStepLoop() {
+        running = true;
+
+        final double tickSeconds = 1.0 / Globals.TICK_RATE;
+        final int ticksPerFrame = Globals.HEADLESS_TICKS_PER_FRAME;
+        int frames = playback != null ? (playback.getTickCount() + ticksPerFrame - 1) / ticksPerFrame
+                : Globals.HEADLESS_FRAMES;
+
+        FrameCapture frameCapture = null;
+        if (renderSystem.isHeadless() && !Globals.BENCHMARK && Globals.CAPTURE_INTERVAL > 0)
+            frameCapture = new FrameCapture(Globals.CAPTURE_DIR, Globals.GOLDEN_DIR);
+        BenchmarkReport report = null;
+        if (Globals.BENCHMARK) {
+            report = new BenchmarkReport(playback != null ? playbackName : "attract", BuildInfo.getBuild(),
+                    renderSystem.getDeviceName(), frames, frames * ticksPerFrame);
+        }
+        if (window != null)
+            renderSystem.setPresentPolicy(PresentPolicy.UNCAPPED);
+
+        System.out.println((renderSystem.isHeadless() ? "Headless: " : "Benchmark: ") + frames + " frames at "
+                + Globals.WIDTH + "x" + Globals.HEIGHT);
+        if (report != null)
+            report.begin();
+
+        for (int frame = 0; frame < frames && running; frame++) {
+            long frameStart = System.nanoTime();
+            Profiler.markFrame(frameStart);
+
+            if (window != null) {
+                window.update();
+                if (window.isResized()) {
+                    Globals.WIDTH = window.getWidth();
+                    Globals.HEIGHT = window.getHeight();
+                    renderSystem.onResize();
+                    window.setResized(false);
+                }
+                if (window.shouldClose())
+                    break;
+            }
+
+            int ticks = 0;
+            while (ticks < ticksPerFrame && !isReplayFinished()) {
+                long tickStart = System.nanoTime();
+                Profiler.begin("tick");
+                tick(tickSeconds);
+                Profiler.end();
+                if (report != null)
+                    report.addTick(System.nanoTime() - tickStart);
+                ticks++;
+            }
+            long tickEnd = System.nanoTime();
+
+            long settleNanos = 0;
+            if (frameCapture != null && frame % Globals.CAPTURE_INTERVAL == 0) {
+                settleStreaming();
+                settleNanos = System.nanoTime() - tickEnd;
+                long captureFrame = frame;
+                FrameCapture capture = frameCapture;
+                renderSystem.requestReadback((renderedFrame, width, height, pixels) ->
+                        capture.save(captureFrame, width, height, pixels));
+            }
+            if (window == null || !window.isMinimized()) {
+                Profiler.begin("render");
+                render(1.0f);
+                Profiler.end();
+            }
+            long frameEnd = System.nanoTime();
+
+            if (report != null)
+                report.addFrame(frameEnd - frameStart - settleNanos);
+            if (frameTimings.record(ticks, tickEnd - frameStart, frameEnd - tickEnd - settleNanos, 0,
+                    frameEnd - frameStart - settleNanos) && Globals.LOG_FRAME_TIMINGS) {
+                System.out.println(frameTimings);
+                System.out.println(Profiler.getSummary());
+            }
+        }
+
+        // Collects the captures of the last few frames.
+        renderSystem.waitIdle();
+        if (report != null)
+            report.end();
+        System.out.println(frameTimings);
+        System.out.println(Profiler.getSummary());
+        System.out.print(renderSystem.getMemoryAllocator().getStatistics());
+        if (frameCapture != null) {
+            System.out.println(frameCapture);
+            if (frameCapture.getMismatchCount() > 0)
+                failed = true;
+        }
+        if (report != null) {
+            System.out.println(report);
+            report.write(Globals.BENCHMARK_DIR);
         }
     }
 
+    // Draws the current state until every track chunk in view and the car mesh have been built and uploaded.
+    // These frames are left out of the frame timings.
+    private void settleStreaming() {
+        for (int frame = 0; frame < Globals.SETTLE_FRAMES; frame++) {
+            trackStreamer.update(trackDistance);
+            if (!trackStreamer.isLoading() && carMesh.isReady())
+                return;
+            render(1.0f);
+        }
+        System.err.println("Failed to finish streaming in " + Globals.SETTLE_FRAMES + " frames; capture may differ");
+    }
+
+    private void tick(double delta) {
+        // Simulation is stepped here at a fixed rate of Globals.TICK_RATE.
+        Profiler.begin("ai");
+        driverSystem.update(entities, followed, (float) delta);
+        drivePlayerCar();
+        Profiler.end();
+        Profiler.begin("physics");
+        vehiclePhysics.step(entities, (float) delta);
+        MovementSystem.update(entities, (float) delta);
+        Profiler.end();
+        entities.flushDestroyed();
+        followCar();
+    }
+
+    // Attract mode grid on the start stage, the followed car at the back so the rest are in shot, with slower
+    // traffic spread up the road ahead. Everyone takes the same forks (right on odd rows) so the whole field stays
+    // on the road being streamed.
+    private void spawnGrid() {
+        MeshBuilder builder = new MeshBuilder();
+        builder.box(-1.0f, 0.0f, -2.2f, 1.0f, 0.8f, 2.2f);
+        builder.box(-0.8f, 0.8f, -0.6f, 0.8f, 1.4f, 1.4f);
+        carMesh = builder.upload("car", renderSystem.getMeshPool(), renderSystem.getUploadService());
+
+        PlacedStage start = trackStreamer.getCurrentStage();
+        int route = 0xAAAAAAAA;
+        Random random = new Random(Globals.TRACK_SEED);
+        for (int i = 0; i < Globals.GRID_SIZE; i++) {
+            float pace = i == 0 ? 1.0f : 0.92f + random.nextFloat() * 0.08f;
+            int entity = spawnCar(start, GRID_START + i / 3 * GRID_SPACING, (i % 3 - 1) * LANE_SPACING,
+                    CAR_COLORS[i % CAR_COLORS.length], pace, route);
+            if (i == 0)
+                followed = entity;
+        }
+
+        float spacing = (start.getLength() - TRAFFIC_START) / Math.max(1, Globals.TRAFFIC_COUNT);
+        for (int i = 0; i < Globals.TRAFFIC_COUNT; i++) {
+            float lateral = (random.nextFloat() * 2.0f - 1.0f) * TRAFFIC_LANE;
+            spawnCar(start, TRAFFIC_START + i * spacing, lateral, TRAFFIC_COLOR, 0.5f + random.nextFloat() * 0.15f,
+                    route);
+        }
+    }
+
+    private int spawnCar(PlacedStage stage, float distance, float lateral, int color, float pace, int route) {
+        int entity = entities.create();
+        entities.transforms.add(entity, new Vector3f(), new Quaternionf(), 1.0f);
+        entities.renderables.add(entity, carMesh, VisibilityStage.OPAQUE, color);
+        entities.vehicles.add(entity, stage, distance, lateral);
+        entities.drivers.add(entity, pace, route);
+        return entity;
+    }
+
+    // F12: the first press starts recording if the profiler is off, later ones write out the last few seconds.
+    private void captureProfile() {
+        if (!Profiler.isEnabled()) {
+            Profiler.setEnabled(true);
+            System.out.println("Profiler: recording, F12 again to capture");
+            return;
+        }
+
+        Profiler.capture(Globals.PROFILE_CAPTURE_FRAMES,
+                Globals.PROFILE_DIR.resolve("frame-" + System.currentTimeMillis() + ".json"));
+    }
+
+    // The first touch of the controls takes the followed car over from its AI driver. Live input is quantized the
+    // same way a replay stores it, so a recording drives exactly as the session it was made from.
+    private void drivePlayerCar() {
+        int input;
+        if (playback != null)
+            input = replayTick < playback.getTickCount() ? playback.getInput(replayTick) : Replay.NO_INPUT;
+        else if (inputSystem.isActive())
+            input = Replay.pack(inputSystem.getSteer(), inputSystem.getThrottle(), inputSystem.getBrake());
+        else
+            input = Replay.NO_INPUT;
+        replayTick++;
+        if (recording != null)
+            recording.add(input);
+
+        if (!Replay.isActive(input))
+            return;
+
+        entities.drivers.remove(followed);
+        int index = entities.vehicles.indexOf(followed);
+        if (index >= 0)
+            entities.vehicles.setInput(index, Replay.getSteer(input), Replay.getThrottle(input), Replay.getBrake(input));
+    }
+
+    private boolean isReplayFinished() {
+        return playback != null && replayTick >= playback.getTickCount();
+    }
+
+    // Checks a finished playback ended up where the recording did, and writes out the recording.
+    private void finishReplay() {
+        if (playback != null) {
+            long hash = simulationHash();
+            if (!isReplayFinished()) {
+                System.out.println("Replay: stopped after " + replayTick + " of " + playback.getTickCount() + " ticks");
+            } else if (hash == playback.getFinalHash()) {
+                System.out.println("Replay: in sync after " + replayTick + " ticks");
+            } else {
+                System.err.printf("Replay: diverged, final state %016x, recorded %016x%n", hash, playback.getFinalHash());
+                // Expected when the simulation itself has changed between builds.
+                if (playback.getBuild().equals(BuildInfo.getBuild()))
+                    failed = true;
+            }
+        }
+
+        if (recording != null) {
+            recording.setFinalHash(simulationHash());
+            try {
+                recording.write(Globals.RECORD_FILE);
+                System.out.println("Replay: recorded " + recording.getTickCount() + " ticks to " + Globals.RECORD_FILE);
+            } catch (IOException e) {
+                System.err.println("Failed to write replay " + Globals.RECORD_FILE + ": " + e.getMessage());
+                failed = true;
+            }
+        }
+    }
+
+    // Every car's place on the course and speed, bit for bit.
+    private long simulationHash() {
+        Vehicles vehicles = entities.vehicles;
+        long hash = 17;
+        for (int i = 0; i < vehicles.size(); i++) {
+            hash = hash * 31 + vehicles.getEntity(i);
+            hash = hash * 31 + Float.floatToRawIntBits(vehicles.getCourseDistance(i));
+            hash = hash * 31 + Float.floatToRawIntBits(vehicles.lateral.get(i));
+            hash = hash * 31 + Float.floatToRawIntBits(vehicles.yaw.get(i));
+            hash = hash * 31 + Float.floatToRawIntBits(vehicles.forwardSpeed.get(i));
+        }
+        return hash;
+    }
+
+    private void followCar() {
+        Vehicles vehicles = entities.vehicles;
+        int index = vehicles.indexOf(followed);
+        if (index < 0)
+            return;
+
+        PlacedStage current = trackStreamer.getCurrentStage();
+        Stage stage = vehicles.stage.get(index).getStage();
+        float distance = vehicles.distance.get(index);
+        previousTrackDistance = trackDistance;
+
+        // Took a fork, or started the final stage over: distances are along the new stage from here.
+        if (stage != current.getStage()) {
+            trackStreamer.advance(stage.getColumn() > current.getStage().getColumn());
+            previousTrackDistance -= current.getLength();
+        } else if (distance < trackDistance - current.getLength() * 0.5f) {
+            previousTrackDistance -= current.getLength();
+        }
+        trackDistance = distance;
+    }
+
+    private void render(float alpha) {
+        // alpha is how far we are between the last two ticks, used to interpolate render state.
+        float distance = previousTrackDistance + (trackDistance - previousTrackDistance) * alpha;
+        Profiler.begin("track streaming");
+        trackStreamer.update(distance);
+        Profiler.end();
+        updateCamera(distance);
+        audioSystem.publish(entities, eye, target);
+        Profiler.begin("visibility");
+        visibilityStage.update(entities, camera);
+        Profiler.end();
+        Profiler.begin("draw frame");
+        renderSystem.drawFrame();
+        Profiler.end();
+    }
+
+    private void updateCamera(float distance) {
+        // Just after a fork the camera is still back on the previous stage.
+        float behind = distance - CHASE_DISTANCE;
+        PlacedStage previous = trackStreamer.getPreviousStage();
+        if (behind < 0.0f && previous != null)
+            previous.sample(previous.getLength() + behind, cameraFrame);
+        else
+            trackStreamer.getCurrentStage().sample(behind, cameraFrame);
+        cameraFrame.getPosition(eye).add(0.0f, 3.0f, 0.0f);
+        trackStreamer.getCurrentStage().sample(distance + 40.0f, cameraFrame);
+        cameraFrame.getPosition(target).add(0.0f, 1.0f, 0.0f);
+
+        camera.lookAt(eye, target);
+        camera.update(Globals.WIDTH, Globals.HEIGHT);
+    }
+
+    private void idle() {
+        if (window.isMinimized())
+            window.waitEvents(Globals.IDLE_WAIT_SECONDS);
+        else
+            frameLimiter.await();
+    }
+
     private void free() {
+        audioSystem.free();
+        renderSystem.waitIdle();
+        visibilityStage.free();
+        trackStreamer.free();
+        if (carMesh != null)
+            carMesh.free();
         renderSystem.free();
-        window.free();
+        if (window != null) {
+            inputSystem.free();
+            window.free();
+        }
+        entities.free();
     }
 
+    // --headless renders offscreen with no window (see fixedStepLoop()), for --frames=N frames. --record=file records
+    // the session's inputs, and a replay file given as an argument is played back instead of reading the controls;
+    // --benchmark plays it (or attract mode) back as fast as possible and reports frame and tick times.
     public static void main(String[] args) {
-        new ArcadeRacer().run();
+        Path replayFile = null;
+        for (String arg : args) {
+            if (arg.equals("--headless")) {
+                Globals.HEADLESS = true;
+                Globals.AUDIO_ENABLED = false;
+            } else if (arg.equals("--benchmark")) {
+                Globals.BENCHMARK = true;
+            } else if (arg.startsWith("--frames=")) {
+                Globals.HEADLESS_FRAMES = Integer.parseInt(arg.substring("--frames=".length()));
+            } else if (arg.startsWith("--record=")) {
+                Globals.RECORD_FILE = Path.of(arg.substring("--record=".length()));
+            } else if (!arg.startsWith("--") && replayFile == null) {
+                replayFile = Path.of(arg);
+            } else {
+                System.err.println("Unknown argument " + arg);
+            }
+        }
+
+        Replay playback = null;
+        String playbackName = null;
+        if (replayFile != null) {
+            try {
+                playback = Replay.read(replayFile);
+            } catch (IOException e) {
+                System.err.println("Failed to read replay " + replayFile + ": " + e.getMessage());
+                System.exit(1);
+            }
+            playbackName = replayFile.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        }
+
+        if (!new ArcadeRacer(playback, playbackName).run())
+            System.exit(1);
     }
 }
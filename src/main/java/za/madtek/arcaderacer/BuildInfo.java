@@ -0,0 +1,41 @@
+package za.madtek.arcaderacer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+// Which build this is, from the build-info.properties the writeBuildInfo Gradle task packages: the version and the
+// commit it was built from, with "-dirty" if there were uncommitted changes. Stamped into replays and benchmark
+// reports so runs on different builds aren't mistaken for like with like.
+public class BuildInfo {
+
+    private static final String UNKNOWN = "unknown";
+
+    private static final String VERSION;
+    private static final String COMMIT;
+
+    static {
+        Properties properties = new Properties();
+        try (InputStream in = BuildInfo.class.getResourceAsStream("/build-info.properties")) {
+            if (in != null)
+                properties.load(in);
+        } catch (IOException e) {
+            System.err.println("Failed to read build info: " + e.getMessage());
+        }
+        VERSION = properties.getProperty("version", UNKNOWN);
+        COMMIT = properties.getProperty("commit", UNKNOWN);
+    }
+
+    public static String getVersion() {
+        return VERSION;
+    }
+
+    public static String getCommit() {
+        return COMMIT;
+    }
+
+    // Running from an IDE without Gradle's resources, both are "unknown".
+    public static String getBuild() {
+        return VERSION + "+" + COMMIT;
+    }
+}
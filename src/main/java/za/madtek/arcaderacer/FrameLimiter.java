@@ -0,0 +1,37 @@
+package za.madtek.arcaderacer;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class FrameLimiter {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private long nextFrame;
+
+    // Called right before input is polled: sleeping here rather than after present means the frame that follows
+    // samples input as late as possible, instead of sitting on stale input for the whole wait.
+    public void await() {
+        if (Globals.FRAME_CAP <= 0) {
+            nextFrame = 0;
+            return;
+        }
+
+        long interval = NANOS_PER_SECOND / Globals.FRAME_CAP;
+        long now = System.nanoTime();
+
+        // Fell more than a frame behind (or just enabled): restart the schedule instead of trying to catch up.
+        if (nextFrame == 0 || now - nextFrame > interval) {
+            nextFrame = now + interval;
+            return;
+        }
+
+        // OS sleeps overshoot by up to a scheduler quantum, so sleep coarsely and spin out the remainder.
+        long remaining;
+        while ((remaining = nextFrame - System.nanoTime()) > Globals.FRAME_LIMITER_SPIN_NANOS)
+            LockSupport.parkNanos(remaining - Globals.FRAME_LIMITER_SPIN_NANOS);
+        while (nextFrame - System.nanoTime() > 0)
+            Thread.onSpinWait();
+
+        nextFrame += interval;
+    }
+}
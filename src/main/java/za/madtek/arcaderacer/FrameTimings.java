@@ -0,0 +1,115 @@
+package za.madtek.arcaderacer;
+
+public class FrameTimings {
+
+    private static final long REPORT_INTERVAL = 1_000_000_000L;
+
+    private int lastTicks;
+    private long lastTickNanos;
+    private long lastRenderNanos;
+    private long lastIdleNanos;
+    private long lastFrameNanos;
+
+    private int frames;
+    private int ticks;
+    private long tickNanos;
+    private long renderNanos;
+    private long idleNanos;
+    private long frameNanos;
+    private long windowStart = System.nanoTime();
+
+    private float framesPerSecond;
+    private float ticksPerSecond;
+    private float averageTickMillis;
+    private float averageRenderMillis;
+    private float averageIdleMillis;
+    private float averageFrameMillis;
+
+    public boolean record(int frameTicks, long frameTickNanos, long frameRenderNanos, long frameIdleNanos, long frameTotalNanos) {
+        lastTicks = frameTicks;
+        lastTickNanos = frameTickNanos;
+        lastRenderNanos = frameRenderNanos;
+        lastIdleNanos = frameIdleNanos;
+        lastFrameNanos = frameTotalNanos;
+
+        frames++;
+        ticks += frameTicks;
+        tickNanos += frameTickNanos;
+        renderNanos += frameRenderNanos;
+        idleNanos += frameIdleNanos;
+        frameNanos += frameTotalNanos;
+
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed < REPORT_INTERVAL)
+            return false;
+
+        float seconds = elapsed / 1e9f;
+        framesPerSecond = frames / seconds;
+        ticksPerSecond = ticks / seconds;
+        averageTickMillis = ticks > 0 ? tickNanos / 1e6f / ticks : 0.0f;
+        averageRenderMillis = renderNanos / 1e6f / frames;
+        averageIdleMillis = idleNanos / 1e6f / frames;
+        averageFrameMillis = frameNanos / 1e6f / frames;
+
+        frames = 0;
+        ticks = 0;
+        tickNanos = 0;
+        renderNanos = 0;
+        idleNanos = 0;
+        frameNanos = 0;
+        windowStart = now;
+
+        return true;
+    }
+
+    public int getLastTicks() {
+        return lastTicks;
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public long getLastRenderNanos() {
+        return lastRenderNanos;
+    }
+
+    public long getLastIdleNanos() {
+        return lastIdleNanos;
+    }
+
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    public float getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    public float getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    public float getAverageTickMillis() {
+        return averageTickMillis;
+    }
+
+    public float getAverageRenderMillis() {
+        return averageRenderMillis;
+    }
+
+    public float getAverageIdleMillis() {
+        return averageIdleMillis;
+    }
+
+    public float getAverageFrameMillis() {
+        return averageFrameMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f fps, %.1f ticks/s | tick %.3f ms, render %.3f ms, idle %.3f ms, frame %.3f ms",
+                framesPerSecond, ticksPerSecond, averageTickMillis, averageRenderMillis, averageIdleMillis, averageFrameMillis);
+    }
+}
@@ -1,7 +1,12 @@
 package za.madtek.arcaderacer;
 
+import za.madtek.arcaderacer.entity.EntityStore;
+import za.madtek.arcaderacer.track.TrackStreamer;
+import za.madtek.arcaderacer.vulkan.PresentPolicy;
 import za.madtek.arcaderacer.vulkan.RenderSystem;
 
+import java.nio.file.Path;
+
 public class Globals {
 
     public static final String TITLE = "Arcade Racer - Vulkan";
@@ -10,7 +15,84 @@ public class Globals {
 
     public static final boolean ENABLE_VALIDATION_LAYERS = false;
 
+    public static final Path CACHE_DIR = Path.of("cache");
+    // Only exists in a source checkout; when it does, shaders are read from here and hot reloaded on save.
+    public static final Path SHADER_SOURCE_DIR = Path.of("src", "main", "resources", "shaders");
+    public static boolean SHADER_HOT_RELOAD = true;
+    public static final Path MODEL_DIR = Path.of("assets", "models");
+    public static final Path TEXTURE_DIR = Path.of("assets", "textures");
+    public static long TEXTURE_UPLOAD_BUDGET = 16L << 20; // bytes of mip data handed to the upload service per frame
+    public static float TRACK_VIEW_AHEAD = 600.0f; // metres of road kept built in front of the player
+    public static float TRACK_VIEW_BEHIND = 100.0f;
+    public static long TRACK_SEED = 0x0A7C4DE; // replays set this, and the grid and traffic counts, from their header
+    public static final int TRACK_ROWS = 5;
+    public static int GRID_SIZE = 12; // cars on the grid in attract mode
+    public static boolean PARALLEL_PHYSICS = true;
+    public static int PHYSICS_BATCH_SIZE = 32; // cars per fork-join task
+    public static int TRAFFIC_COUNT = 40; // slow AI cars spread along the start stage
+    public static float AI_FULL_SIM_DISTANCE = 300.0f; // metres along the course; AI cars further out run on rails
+    public static boolean PARALLEL_AI = true;
+    public static int AI_BATCH_SIZE = 32;
+
+    // OpenAL Soft runs without a sound card with ALSOFT_DRIVERS=null, or =wave to write the mix to a file.
+    public static boolean AUDIO_ENABLED = true;
+    public static String AUDIO_DEVICE = null; // null = the system default
+    public static final int AUDIO_SOURCES = 32;
+    public static int ENGINE_VOICES = 12; // loudest cars given a real source; the rest are virtual
+    public static final Path MUSIC_DIR = Path.of("assets", "music");
+    public static String MUSIC_TRACK = "attract.ogg"; // played if it exists
+    public static float MASTER_VOLUME = 1.0f;
+    public static float MUSIC_VOLUME = 0.6f;
+    public static float ENGINE_VOLUME = 0.8f;
+
+    public static float MIN_SCREEN_RADIUS = 0.5f; // pixels; anything smaller isn't drawn
+    public static float LOD_ERROR_PIXELS = 1.0f; // largest on-screen simplification error a LOD may show
+    public static boolean PARALLEL_CULLING = true;
+    public static int CULL_BATCH_SIZE = 16; // renderables per fork-join task, small enough to fan out over a race's ~50 cars
+    // Batch visible draws into one indirect draw per pipeline; off falls back to a vkCmdDrawIndexed per object.
+    public static boolean INDIRECT_DRAWING = true;
+    public static final int MESH_POOL_VERTICES = 3 << 20;
+    public static final int MESH_POOL_INDICES = 6 << 20;
+
+    public static final int TICK_RATE = 120;
+    public static final int INPUT_QUEUE_SIZE = 1024; // events; any more between two ticks are dropped and counted
+    public static final int MAX_TICKS_PER_FRAME = 8;
+    public static int FRAME_CAP = 144; // 0 = uncapped
+    public static final long FRAME_LIMITER_SPIN_NANOS = 1_500_000L;
+    public static final double IDLE_WAIT_SECONDS = 0.1;
+    public static boolean LOG_FRAME_TIMINGS = false;
+    // Off, profiler scopes cost a branch each. F12 turns it on, then captures the last frames as a Chrome trace.
+    public static final boolean PROFILING = false;
+    public static final int PROFILE_RING_SIZE = 1 << 15; // scopes kept per thread
+    public static int PROFILE_CAPTURE_FRAMES = 600;
+    public static final Path PROFILE_DIR = Path.of("profiles");
+
+    // Offscreen rendering with no window, surface or swap chain, for automated runs on machines without a display,
+    // e.g. with a software Vulkan driver (lavapipe). Set with --headless.
+    public static boolean HEADLESS = false;
+    public static int HEADLESS_FRAMES = 1800;
+    public static final int HEADLESS_TICKS_PER_FRAME = 2; // simulated time per frame is fixed, so runs are repeatable
+    public static int CAPTURE_INTERVAL = 300; // frames between read back captures in headless runs; 0 = none
+    public static final int SETTLE_FRAMES = 600; // most frames drawn waiting for streaming to finish before a capture
+    public static final Path CAPTURE_DIR = Path.of("captures");
+    public static final Path GOLDEN_DIR = Path.of("golden");
+    public static final int GOLDEN_CHANNEL_TOLERANCE = 8; // levels out of 255 before a pixel counts as different
+    public static final double GOLDEN_PIXEL_TOLERANCE = 0.001; // fraction of pixels that may differ
+
+    // --record=file writes the session's inputs out as a replay. A replay given on the command line is played back
+    // in real time, or with --benchmark as fast as it will go, with frame and tick time distributions reported.
+    public static Path RECORD_FILE = null;
+    public static boolean BENCHMARK = false;
+    public static final Path BENCHMARK_DIR = Path.of("benchmarks");
+
+    public static int MAX_FRAMES_IN_FLIGHT = 2;
+    public static boolean PARALLEL_RECORDING = true;
+    public static final int RECORDING_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    public static PresentPolicy PRESENT_POLICY = PresentPolicy.LOW_LATENCY;
+
     public static ArcadeRacer game;
     public static Window window;
     public static RenderSystem renderSystem;
+    public static EntityStore entities;
+    public static TrackStreamer trackStreamer;
 }
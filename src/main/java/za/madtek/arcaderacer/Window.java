@@ -21,12 +21,20 @@ public class Window {
     private String title;
     private boolean resized = false;
 
+    private int windowedX;
+    private int windowedY;
+    private int windowedWidth;
+    private int windowedHeight;
+
     public Window(int width, int height, boolean fullscreen, boolean resizable, String title) {
         this.width = width;
         this.height = height;
         this.fullscreen = fullscreen;
         this.resizable = resizable;
         this.title = title;
+
+        windowedWidth = width;
+        windowedHeight = height;
     }
 
     public void init() {
@@ -54,11 +62,10 @@ public class Window {
 
             GLFWVidMode vidMode = glfwGetVideoMode(glfwGetPrimaryMonitor());
 
-            glfwSetWindowPos(
-                    handle,
-                    (vidMode.width() - pWidth.get(0)) / 2,
-                    (vidMode.height() - pHeight.get(0)) / 2
-            );
+            windowedX = (vidMode.width() - pWidth.get(0)) / 2;
+            windowedY = (vidMode.height() - pHeight.get(0)) / 2;
+
+            glfwSetWindowPos(handle, windowedX, windowedY);
         }
 
         glfwShowWindow(handle);
@@ -74,6 +81,45 @@ public class Window {
         glfwPollEvents();
     }
 
+    // The framebuffer size callback fires for the mode change, so the swap chain picks it up like any other resize.
+    public void setFullscreen(boolean fullscreen) {
+        if (this.fullscreen == fullscreen)
+            return;
+
+        if (fullscreen) {
+            try (MemoryStack stack = stackPush()) {
+                IntBuffer pX = stack.mallocInt(1);
+                IntBuffer pY = stack.mallocInt(1);
+                IntBuffer pWidth = stack.mallocInt(1);
+                IntBuffer pHeight = stack.mallocInt(1);
+
+                glfwGetWindowPos(handle, pX, pY);
+                glfwGetWindowSize(handle, pWidth, pHeight);
+
+                windowedX = pX.get(0);
+                windowedY = pY.get(0);
+                windowedWidth = pWidth.get(0);
+                windowedHeight = pHeight.get(0);
+            }
+
+            long monitor = glfwGetPrimaryMonitor();
+            GLFWVidMode vidMode = glfwGetVideoMode(monitor);
+            glfwSetWindowMonitor(handle, monitor, 0, 0, vidMode.width(), vidMode.height(), vidMode.refreshRate());
+        } else {
+            glfwSetWindowMonitor(handle, NULL, windowedX, windowedY, windowedWidth, windowedHeight, GLFW_DONT_CARE);
+        }
+
+        this.fullscreen = fullscreen;
+    }
+
+    public void toggleFullscreen() {
+        setFullscreen(!fullscreen);
+    }
+
+    public void waitEvents(double timeout) {
+        glfwWaitEventsTimeout(timeout);
+    }
+
     public void free() {
         glfwFreeCallbacks(handle);
         glfwDestroyWindow(handle);
@@ -110,6 +156,10 @@ public class Window {
         return title;
     }
 
+    public boolean isMinimized() {
+        return width == 0 || height == 0;
+    }
+
     public boolean isResized() {
         return resized;
     }
@@ -0,0 +1,213 @@
+package za.madtek.arcaderacer.ai;
+
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.entity.BatchRunner;
+import za.madtek.arcaderacer.entity.Drivers;
+import za.madtek.arcaderacer.entity.EntityStore;
+import za.madtek.arcaderacer.entity.RangeTask;
+import za.madtek.arcaderacer.entity.Vehicles;
+import za.madtek.arcaderacer.physics.VehiclePhysics;
+import za.madtek.arcaderacer.track.Course;
+import za.madtek.arcaderacer.track.Stage;
+
+// Writes every AI car's inputs once per tick, before physics. Drivers aim at their racing line a little way
+// ahead, go at their pace's share of its speed, pass slower cars on whichever side has room and follow when
+// neither has, and line up for their route's side of each fork. Decisions run in parallel batches; each one
+// reads other cars only through the TrafficIndex snapshot and writes only its own car, so the result doesn't
+// depend on the batching. Cars further than Globals.AI_FULL_SIM_DISTANCE along the course from the focus car are
+// put on rails: the driver sets their speed and lateral offset directly and physics just moves them along.
+public class DriverSystem {
+
+    private static final float MIN_LOOKAHEAD = 8.0f;
+    private static final float LOOKAHEAD_TIME = 0.5f; // seconds of travel ahead the steering aims at
+    private static final float LATERAL_GAIN = 0.08f; // steer per metre off the target
+    private static final float YAW_GAIN = 1.5f;
+    private static final float THROTTLE_GAIN = 0.5f; // throttle per m/s under the target speed
+    private static final float BRAKE_GAIN = 0.1f;
+    private static final float CORNER_BRAKE = 0.15f; // most brake while steering hard, so as not to start a drift
+    private static final float LIFT_STEER = 0.8f;
+    private static final float STUCK_SPEED = 1.0f;
+    private static final float RECOVERY_TIME = 1.0f; // seconds spent reversing once stuck
+
+    private static final float CAR_WIDTH = 2.4f; // closer than this across the road is in the way
+    private static final float FOLLOW_TIME = 1.2f; // seconds of gap ahead that counts as catching up
+    private static final float MIN_FOLLOW_RANGE = 15.0f;
+    private static final float MIN_GAP = 8.0f; // match speed with the car ahead when closer than this
+    private static final float ALONGSIDE_RANGE = 5.5f; // metres either way that counts as side by side
+    private static final float SIDE_GAP = 2.8f; // kept across the road from a car alongside
+    private static final float PASS_OFFSET = 3.2f; // metres to either side of the car being passed
+    private static final float OFFSET_RATE = 1.5f; // metres per second the offset from the line can change
+    private static final float EDGE_MARGIN = 1.8f;
+
+    private static final float FORK_APPROACH = 150.0f; // metres before a fork to start moving over for it
+    private static final float FORK_COMMIT = 60.0f; // metres before a fork to be on its side, clear of the divider
+    private static final float FORK_LANE = 3.5f;
+
+    private static final float RAIL_ACCEL = 10.0f;
+    private static final float RAIL_LATERAL_RATE = 2.0f; // metres per second
+    private static final float RAIL_HYSTERESIS = 1.2f; // back on rails only this much further out than off them
+
+    private final Course course;
+    private final RacingLineLibrary racingLines;
+    private final TrafficIndex traffic = new TrafficIndex();
+    private final BatchRunner batchRunner = new BatchRunner();
+    private final RangeTask updateTask = this::updateRange;
+
+    private EntityStore entities;
+    private float delta;
+    private boolean hasFocus;
+    private float focusDistance;
+
+    private int simulatedCount;
+    private int railCount;
+    private long updateNanos;
+
+    public DriverSystem(Course course, RacingLineLibrary racingLines) {
+        this.course = course;
+        this.racingLines = racingLines;
+    }
+
+    // Sim thread, once per tick before VehiclePhysics.step. Level of detail is judged from the focus entity's car,
+    // and every car is fully simulated if it has none.
+    public void update(EntityStore entities, int focus, float delta) {
+        long start = System.nanoTime();
+        Vehicles vehicles = entities.vehicles;
+        traffic.rebuild(vehicles);
+
+        int focusIndex = vehicles.indexOf(focus);
+        hasFocus = focusIndex >= 0;
+        focusDistance = hasFocus ? vehicles.getCourseDistance(focusIndex) : 0.0f;
+
+        this.entities = entities;
+        this.delta = delta;
+        batchRunner.run(entities.drivers.size(), Globals.AI_BATCH_SIZE, Globals.PARALLEL_AI, updateTask);
+        this.entities = null;
+
+        railCount = 0;
+        for (int i = 0; i < vehicles.size(); i++) {
+            if (vehicles.hasFlag(i, Vehicles.RAIL))
+                railCount++;
+        }
+        simulatedCount = entities.drivers.size() - railCount;
+        updateNanos = System.nanoTime() - start;
+    }
+
+    private void updateRange(int start, int end) {
+        Drivers drivers = entities.drivers;
+        Vehicles vehicles = entities.vehicles;
+
+        for (int i = start; i < end; i++) {
+            int vehicle = vehicles.indexOf(drivers.getEntity(i));
+            if (vehicle < 0)
+                continue;
+
+            Stage stage = vehicles.stage.get(vehicle).getStage();
+            RacingLine line = racingLines.get(stage);
+            float distance = traffic.getDistance(vehicle);
+            float lateral = traffic.getLateral(vehicle);
+            float forward = traffic.getSpeed(vehicle);
+            float limit = Math.max(0.0f, stage.getWidth(distance) * 0.5f - EDGE_MARGIN);
+            float targetSpeed = line.getSpeed(distance) * drivers.pace.get(i);
+
+            // Catching someone: move out to the side of them with more road, if nobody's already there.
+            float desiredOffset = 0.0f;
+            float range = Math.max(MIN_FOLLOW_RANGE, forward * FOLLOW_TIME);
+            int ahead = traffic.findAhead(vehicle, range, CAR_WIDTH);
+            if (ahead >= 0 && traffic.getSpeed(ahead) < targetSpeed) {
+                float aheadLateral = traffic.getLateral(ahead);
+                float left = aheadLateral - PASS_OFFSET;
+                float right = aheadLateral + PASS_OFFSET;
+                boolean leftClear = left > -limit && !traffic.isOccupied(vehicle, left, range, CAR_WIDTH);
+                boolean rightClear = right < limit && !traffic.isOccupied(vehicle, right, range, CAR_WIDTH);
+
+                if (rightClear && (!leftClear || aheadLateral < 0.0f))
+                    desiredOffset = right - line.getLateral(distance);
+                else if (leftClear)
+                    desiredOffset = left - line.getLateral(distance);
+                else
+                    targetSpeed = traffic.getSpeed(ahead);
+            }
+            if (ahead >= 0 && traffic.getDistance(ahead) - distance < MIN_GAP)
+                targetSpeed = Math.min(targetSpeed, traffic.getSpeed(ahead));
+
+            float offset = drivers.offset.get(i);
+            offset += clamp(desiredOffset - offset, OFFSET_RATE * delta);
+            drivers.offset.set(i, offset);
+
+            float target = line.getLateral(distance + Math.max(MIN_LOOKAHEAD, forward * LOOKAHEAD_TIME)) + offset;
+            // Never steer into a car alongside; hold our side of it instead.
+            int alongside = traffic.findAlongside(vehicle, ALONGSIDE_RANGE, SIDE_GAP + 1.0f);
+            if (alongside >= 0) {
+                float otherLateral = traffic.getLateral(alongside);
+                if (lateral < otherLateral)
+                    target = Math.min(target, otherLateral - SIDE_GAP);
+                else
+                    target = Math.max(target, otherLateral + SIDE_GAP);
+            }
+
+            // The fork's side wins over everything else by the time the divider starts.
+            float remaining = stage.getLength() - distance;
+            if (remaining < FORK_APPROACH && stage.getRow() < course.getRows() - 1) {
+                float side = drivers.takesRightFork(i, stage.getRow()) ? FORK_LANE : -FORK_LANE;
+                target += (side - target) * Math.min(1.0f, (FORK_APPROACH - remaining) / (FORK_APPROACH - FORK_COMMIT));
+            }
+            target = clamp(target, limit);
+
+            int flags = vehicles.flags.get(vehicle);
+            float gap = Math.abs(vehicles.getCourseDistance(vehicle) - focusDistance);
+            boolean rail = hasFocus && gap > Globals.AI_FULL_SIM_DISTANCE
+                    * ((flags & Vehicles.RAIL) != 0 ? 1.0f : RAIL_HYSTERESIS);
+
+            if (rail) {
+                float speedChange = targetSpeed - forward;
+                speedChange = Math.max(-VehiclePhysics.BRAKE_DECEL * delta, Math.min(RAIL_ACCEL * delta, speedChange));
+                vehicles.forwardSpeed.set(vehicle, forward + speedChange);
+                vehicles.lateral.set(vehicle, lateral + clamp(target - lateral, RAIL_LATERAL_RATE * delta));
+                vehicles.flags.set(vehicle, flags | Vehicles.RAIL);
+                vehicles.setInput(vehicle, 0.0f, 0.0f, 0.0f);
+                continue;
+            }
+
+            vehicles.flags.set(vehicle, flags & ~Vehicles.RAIL);
+
+            // Stopped dead against something: back off it for a while, steering so the nose swings towards the
+            // target, then carry on.
+            float recovery = drivers.recovery.get(i);
+            if (recovery <= 0.0f && (flags & Vehicles.COLLISION) != 0 && forward < STUCK_SPEED)
+                recovery = RECOVERY_TIME;
+            if (recovery > 0.0f) {
+                drivers.recovery.set(i, recovery - delta);
+                vehicles.setInput(vehicle, target < lateral ? 1.0f : -1.0f, 0.0f, 1.0f);
+                continue;
+            }
+
+            // Curvature feedforward so the line is held through bends without a standing error, plus a pull
+            // towards the target and damping of the heading relative to the road.
+            float steer = stage.getCurvature(distance) * forward / VehiclePhysics.MAX_YAW_RATE
+                    + (target - lateral) * LATERAL_GAIN - vehicles.yaw.get(vehicle) * YAW_GAIN;
+            steer = clamp(steer, 1.0f);
+
+            // Running out of lock means the car is going to run wide: lift, and brake as hard as is safe.
+            float speedError = targetSpeed - forward;
+            float throttle = Math.max(0.0f, Math.min(1.0f, speedError * THROTTLE_GAIN));
+            float brake = Math.max(0.0f, Math.min(1.0f, -speedError * BRAKE_GAIN));
+            if (Math.abs(steer) > LIFT_STEER) {
+                throttle = 0.0f;
+                brake = Math.max(brake, CORNER_BRAKE);
+            }
+            if (Math.abs(steer) > VehiclePhysics.DRIFT_STEER)
+                brake = Math.min(brake, CORNER_BRAKE);
+
+            vehicles.setInput(vehicle, steer, throttle, brake);
+        }
+    }
+
+    private static float clamp(float value, float limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AI: %d simulated, %d on rails, %.3f ms", simulatedCount, railCount, updateNanos / 1e6);
+    }
+}
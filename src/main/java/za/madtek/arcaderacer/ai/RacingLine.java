@@ -0,0 +1,101 @@
+package za.madtek.arcaderacer.ai;
+
+import za.madtek.arcaderacer.physics.VehiclePhysics;
+import za.madtek.arcaderacer.track.Stage;
+
+// The line and speed to drive one stage at, sampled every STEP metres of centre line. The line is the road's
+// centre line relaxed towards zero curvature inside the edges, which cuts every bend from outside to apex to
+// outside; the speed is what the car can hold round the line's own curvature, brought down ahead of each bend
+// so there's room to brake for it. Both ends stay on the centre line so consecutive stages join up.
+public class RacingLine {
+
+    public static final float STEP = 2.0f;
+
+    private static final float EDGE_MARGIN = 1.8f; // from the edge to the car's centre
+    private static final int SWEEPS = 400;
+    private static final float OVER_RELAXATION = 1.8f;
+    private static final float CORNERING_MARGIN = 0.85f;
+    private static final float BRAKING_MARGIN = 0.5f;
+
+    private final float[] lateral;
+    private final float[] speed;
+
+    protected RacingLine(float[] lateral, float[] speed) {
+        this.lateral = lateral;
+        this.speed = speed;
+    }
+
+    public static int sampleCount(Stage stage) {
+        return (int) Math.ceil(stage.getLength() / STEP) + 1;
+    }
+
+    // Deterministic in the stage's geometry.
+    public static RacingLine compute(Stage stage) {
+        int count = sampleCount(stage);
+        float[] lateral = new float[count];
+        float[] curvature = new float[count];
+        float[] limit = new float[count];
+        for (int i = 0; i < count; i++) {
+            float distance = Math.min(stage.getLength(), i * STEP);
+            curvature[i] = stage.getCurvature(distance);
+            limit[i] = Math.max(0.0f, stage.getWidth(distance) * 0.5f - EDGE_MARGIN);
+        }
+
+        // The line's curvature at i is the road's plus the second difference of the offset. Each sweep sets every
+        // point to zero it, as far as the edges allow.
+        float halfStepSquared = STEP * STEP * 0.5f;
+        for (int sweep = 0; sweep < SWEEPS; sweep++) {
+            for (int i = 1; i < count - 1; i++) {
+                float target = (lateral[i - 1] + lateral[i + 1]) * 0.5f + curvature[i] * halfStepSquared;
+                float relaxed = lateral[i] + (target - lateral[i]) * OVER_RELAXATION;
+                lateral[i] = Math.max(-limit[i], Math.min(limit[i], relaxed));
+            }
+        }
+
+        float[] speed = new float[count];
+        for (int i = 0; i < count; i++) {
+            float bend = curvature[i];
+            if (i > 0 && i < count - 1)
+                bend += (lateral[i - 1] - 2.0f * lateral[i] + lateral[i + 1]) / (STEP * STEP);
+            speed[i] = VehiclePhysics.getCorneringSpeed(bend) * CORNERING_MARGIN;
+        }
+
+        // Backwards, so every bend's speed is reachable from the one before it under braking.
+        float braking = 2.0f * VehiclePhysics.BRAKE_DECEL * BRAKING_MARGIN * STEP;
+        for (int i = count - 2; i >= 0; i--)
+            speed[i] = Math.min(speed[i], (float) Math.sqrt(speed[i + 1] * speed[i + 1] + braking));
+
+        return new RacingLine(lateral, speed);
+    }
+
+    public int getSampleCount() {
+        return lateral.length;
+    }
+
+    // Metres right of the centre line at a distance along the stage.
+    public float getLateral(float distance) {
+        return sample(lateral, distance);
+    }
+
+    public float getSpeed(float distance) {
+        return sample(speed, distance);
+    }
+
+    protected float[] getLaterals() {
+        return lateral;
+    }
+
+    protected float[] getSpeeds() {
+        return speed;
+    }
+
+    private static float sample(float[] values, float distance) {
+        float position = Math.max(0.0f, distance / STEP);
+        int index = (int) position;
+        if (index >= values.length - 1)
+            return values[values.length - 1];
+
+        float t = position - index;
+        return values[index] + (values[index + 1] - values[index]) * t;
+    }
+}
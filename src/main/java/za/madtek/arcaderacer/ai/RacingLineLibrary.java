@@ -0,0 +1,131 @@
+package za.madtek.arcaderacer.ai;
+
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.track.Course;
+import za.madtek.arcaderacer.track.Segment;
+import za.madtek.arcaderacer.track.Stage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+// Racing lines for every stage of a course, computed once and cached in Globals.CACHE_DIR, one file per stage
+// named by the course seed and the stage's row and column. A file is only used if it was computed by this
+// version of RacingLine from the same stage geometry, so changing either simply recomputes it.
+//
+// File layout, little endian: magic, version, sample count, reserved, geometry hash (8 bytes), then the lateral
+// offsets and the speeds, one float per sample each.
+public class RacingLineLibrary {
+
+    private static final String EXTENSION = ".line";
+    private static final int MAGIC = 0x4E494C41; // "ALIN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final Course course;
+    private final Path cacheDirectory;
+    private final RacingLine[] lines;
+    private final AtomicInteger loadedCount = new AtomicInteger();
+    private final AtomicInteger computedCount = new AtomicInteger();
+    private long initNanos;
+
+    public RacingLineLibrary(Course course) {
+        this.course = course;
+        this.cacheDirectory = Globals.CACHE_DIR.resolve("racing-lines");
+        this.lines = new RacingLine[course.getRows() * course.getRows()];
+    }
+
+    // Blocks until every stage has its line, loading or computing them in parallel. All of them are needed before
+    // the first tick: a line turning up partway through a race would make the race depend on timing.
+    public void init() {
+        long start = System.nanoTime();
+        int rows = course.getRows();
+
+        IntStream.range(0, lines.length).parallel().forEach(key -> {
+            int row = key / rows;
+            int column = key % rows;
+            if (column <= row)
+                lines[key] = load(course.getStage(row, column));
+        });
+
+        initNanos = System.nanoTime() - start;
+    }
+
+    public RacingLine get(Stage stage) {
+        return lines[stage.getRow() * course.getRows() + stage.getColumn()];
+    }
+
+    private RacingLine load(Stage stage) {
+        Path file = cacheDirectory.resolve(String.format("%x-%d-%d%s", course.getSeed(), stage.getRow(),
+                stage.getColumn(), EXTENSION));
+        long hash = hash(stage);
+        int count = RacingLine.sampleCount(stage);
+
+        if (Files.isRegularFile(file)) {
+            try {
+                ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(BYTE_ORDER);
+                if (data.capacity() == HEADER_SIZE + count * 8 && data.getInt(0) == MAGIC && data.getInt(4) == VERSION
+                        && data.getInt(8) == count && data.getLong(16) == hash) {
+                    float[] lateral = new float[count];
+                    float[] speed = new float[count];
+                    data.position(HEADER_SIZE);
+                    data.asFloatBuffer().get(lateral).get(speed);
+                    loadedCount.incrementAndGet();
+                    return new RacingLine(lateral, speed);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to read racing line " + file + ": " + e.getMessage());
+            }
+        }
+
+        RacingLine line = RacingLine.compute(stage);
+        computedCount.incrementAndGet();
+        save(file, line, hash);
+        return line;
+    }
+
+    private void save(Path file, RacingLine line, long hash) {
+        int count = line.getSampleCount();
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + count * 8).order(BYTE_ORDER);
+        data.putInt(0, MAGIC);
+        data.putInt(4, VERSION);
+        data.putInt(8, count);
+        data.putLong(16, hash);
+        data.position(HEADER_SIZE);
+        data.asFloatBuffer().put(line.getLaterals()).put(line.getSpeeds());
+
+        // Write-then-rename so a crash mid-save can't leave a truncated line for the next launch.
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.createDirectories(cacheDirectory);
+            Files.write(temp, data.array());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to save racing line " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static long hash(Stage stage) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < stage.getSegmentCount(); i++) {
+            Segment segment = stage.getSegment(i);
+            hash = hash * 31 + Float.floatToIntBits(segment.getLength());
+            hash = hash * 31 + Float.floatToIntBits(segment.getCurve());
+            hash = hash * 31 + Float.floatToIntBits(segment.getHill());
+            hash = hash * 31 + Float.floatToIntBits(segment.getWidth());
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Racing lines: %d loaded, %d computed in %.1f ms", loadedCount.get(), computedCount.get(),
+                initNanos / 1e6);
+    }
+}
@@ -0,0 +1,145 @@
+package za.madtek.arcaderacer.ai;
+
+import za.madtek.arcaderacer.entity.Vehicles;
+
+import java.util.Arrays;
+
+// A snapshot of every vehicle at the start of the tick, ordered by stage placement and then distance, so a car's
+// neighbours on the road are the entries next to its own. Drivers read each other only through the snapshot,
+// which is what keeps parallel decisions independent of the order they run in. The order is kept between ticks
+// and insertion sorted, which is linear while cars only overtake a few at a time, and nothing is allocated once
+// the arrays have grown.
+public class TrafficIndex {
+
+    private int[] order = new int[64];
+    private int[] rank = new int[64];
+    private int[] placement = new int[64];
+    private float[] distance = new float[64];
+    private float[] lateral = new float[64];
+    private float[] speed = new float[64];
+    private int count;
+
+    // Sim thread, before any driver reads it.
+    public void rebuild(Vehicles vehicles) {
+        int newCount = vehicles.size();
+        if (newCount > order.length) {
+            int capacity = Math.max(newCount, order.length * 2);
+            order = new int[capacity];
+            rank = Arrays.copyOf(rank, capacity);
+            placement = Arrays.copyOf(placement, capacity);
+            distance = Arrays.copyOf(distance, capacity);
+            lateral = Arrays.copyOf(lateral, capacity);
+            speed = Arrays.copyOf(speed, capacity);
+            count = -1;
+        }
+
+        // A different count means dense indices have moved, so last tick's order is no use. The same count after a
+        // remove and an add is still a permutation and just sorts slower.
+        if (newCount != count) {
+            for (int i = 0; i < newCount; i++)
+                order[i] = i;
+        }
+        count = newCount;
+
+        for (int i = 0; i < count; i++) {
+            placement[i] = vehicles.stage.get(i).getId();
+            distance[i] = vehicles.distance.get(i);
+            lateral[i] = vehicles.lateral.get(i);
+            speed[i] = vehicles.forwardSpeed.get(i);
+        }
+
+        for (int i = 1; i < count; i++) {
+            int vehicle = order[i];
+            int j = i - 1;
+            while (j >= 0 && compare(order[j], vehicle) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = vehicle;
+        }
+
+        for (int i = 0; i < count; i++)
+            rank[order[i]] = i;
+    }
+
+    // Nearest vehicle ahead on the same stage placement within range metres and less than width apart across the
+    // road, or -1. Doesn't look past the end of the stage.
+    public int findAhead(int vehicle, float range, float width) {
+        for (int i = rank[vehicle] + 1; i < count; i++) {
+            int other = order[i];
+            if (placement[other] != placement[vehicle] || distance[other] - distance[vehicle] > range)
+                return -1;
+            if (Math.abs(lateral[other] - lateral[vehicle]) < width)
+                return other;
+        }
+        return -1;
+    }
+
+    // The vehicle closest across the road among those on the same placement within range metres either way and
+    // less than width across, or -1.
+    public int findAlongside(int vehicle, float range, float width) {
+        int closest = -1;
+        float closestGap = width;
+        for (int i = rank[vehicle] - 1; i >= 0; i--) {
+            int other = order[i];
+            if (placement[other] != placement[vehicle] || distance[vehicle] - distance[other] > range)
+                break;
+            float gap = Math.abs(lateral[other] - lateral[vehicle]);
+            if (gap < closestGap) {
+                closest = other;
+                closestGap = gap;
+            }
+        }
+        for (int i = rank[vehicle] + 1; i < count; i++) {
+            int other = order[i];
+            if (placement[other] != placement[vehicle] || distance[other] - distance[vehicle] > range)
+                break;
+            float gap = Math.abs(lateral[other] - lateral[vehicle]);
+            if (gap < closestGap) {
+                closest = other;
+                closestGap = gap;
+            }
+        }
+        return closest;
+    }
+
+    // Whether anything on the same placement is within range metres either way and less than width across from
+    // the given lateral offset. Used to check a passing side is clear.
+    public boolean isOccupied(int vehicle, float lateralOffset, float range, float width) {
+        for (int i = rank[vehicle] - 1; i >= 0; i--) {
+            int other = order[i];
+            if (placement[other] != placement[vehicle] || distance[vehicle] - distance[other] > range)
+                break;
+            if (Math.abs(lateral[other] - lateralOffset) < width)
+                return true;
+        }
+        for (int i = rank[vehicle] + 1; i < count; i++) {
+            int other = order[i];
+            if (placement[other] != placement[vehicle] || distance[other] - distance[vehicle] > range)
+                break;
+            if (Math.abs(lateral[other] - lateralOffset) < width)
+                return true;
+        }
+        return false;
+    }
+
+    public float getDistance(int vehicle) {
+        return distance[vehicle];
+    }
+
+    public float getLateral(int vehicle) {
+        return lateral[vehicle];
+    }
+
+    public float getSpeed(int vehicle) {
+        return speed[vehicle];
+    }
+
+    // Placement, then distance, then dense index so ties still sort the same way every time.
+    private int compare(int a, int b) {
+        if (placement[a] != placement[b])
+            return Integer.compare(placement[a], placement[b]);
+        int byDistance = Float.compare(distance[a], distance[b]);
+        return byDistance != 0 ? byDistance : Integer.compare(a, b);
+    }
+}
@@ -0,0 +1,124 @@
+package za.madtek.arcaderacer.asset;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A range of the shared MeshPool buffers. LOD first indices are relative to getFirstIndex(), and indices to
+// getBaseVertex().
+public class Mesh {
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final int id;
+    private final String name;
+    private final MeshPool pool;
+    private final int baseVertex;
+    private final int vertexCount;
+    private final int firstIndex;
+    private final int indexCount;
+    private final MeshLod[] lods;
+
+    private final Vector3f boundsMin;
+    private final Vector3f boundsMax;
+    private final Vector3f center;
+    private final float radius;
+
+    private final CompletableFuture<Void> ready;
+
+    protected Mesh(String name, MeshPool pool, int baseVertex, int vertexCount, int firstIndex, int indexCount,
+                   MeshLod[] lods, Vector3f boundsMin, Vector3f boundsMax, Vector3f center, float radius,
+                   CompletableFuture<Void> ready) {
+        this.id = nextId.getAndIncrement();
+        this.name = name;
+        this.pool = pool;
+        this.baseVertex = baseVertex;
+        this.vertexCount = vertexCount;
+        this.firstIndex = firstIndex;
+        this.indexCount = indexCount;
+        this.lods = lods;
+        this.boundsMin = boundsMin;
+        this.boundsMax = boundsMax;
+        this.center = center;
+        this.radius = radius;
+        this.ready = ready;
+    }
+
+    // Returns the ranges to the pool; the GPU must be done with the mesh.
+    public void free() {
+        pool.free(this);
+    }
+
+    // Unique per mesh for the life of the process, for sorting draws by mesh.
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MeshPool getPool() {
+        return pool;
+    }
+
+    public int getBaseVertex() {
+        return baseVertex;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int getLodCount() {
+        return lods.length;
+    }
+
+    public MeshLod getLod(int lod) {
+        return lods[Math.min(lod, lods.length - 1)];
+    }
+
+    public Vector3fc getBoundsMin() {
+        return boundsMin;
+    }
+
+    public Vector3fc getBoundsMax() {
+        return boundsMax;
+    }
+
+    public Vector3fc getCenter() {
+        return center;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    // Positions are stored as SNORM relative to the bounds; the vertex shader scales them back with these.
+    public Vector3f getPositionScale(Vector3f dest) {
+        return dest.set(boundsMax).sub(boundsMin).mul(0.5f);
+    }
+
+    public Vector3f getPositionOffset(Vector3f dest) {
+        return dest.set(boundsMin).add(boundsMax).mul(0.5f);
+    }
+
+    // Completes once the vertex and index data are visible to the graphics queue.
+    public CompletableFuture<Void> getReady() {
+        return ready;
+    }
+
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+}
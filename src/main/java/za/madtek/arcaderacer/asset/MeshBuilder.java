@@ -0,0 +1,153 @@
+package za.madtek.arcaderacer.asset;
+
+import org.joml.Vector3f;
+import za.madtek.arcaderacer.vulkan.UploadService;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+// Builds meshes generated at runtime (track chunks, debug geometry) in the same vertex format as cooked meshes,
+// quantizing straight into staging memory on upload. Meant to be kept per thread and cleared between meshes, so
+// its arrays stop growing after the first few builds.
+public class MeshBuilder {
+
+    private float[] vertices = new float[8 * 256];
+    private int[] indices = new int[3 * 256];
+    private int vertexCount;
+    private int indexCount;
+
+    public void clear() {
+        vertexCount = 0;
+        indexCount = 0;
+    }
+
+    public int vertex(float px, float py, float pz, float nx, float ny, float nz, float u, float v) {
+        if ((vertexCount + 1) * 8 > vertices.length)
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+
+        int offset = vertexCount * 8;
+        vertices[offset] = px;
+        vertices[offset + 1] = py;
+        vertices[offset + 2] = pz;
+        vertices[offset + 3] = nx;
+        vertices[offset + 4] = ny;
+        vertices[offset + 5] = nz;
+        vertices[offset + 6] = u;
+        vertices[offset + 7] = v;
+        return vertexCount++;
+    }
+
+    public void triangle(int a, int b, int c) {
+        if (indexCount + 3 > indices.length)
+            indices = Arrays.copyOf(indices, indices.length * 2);
+
+        indices[indexCount++] = a;
+        indices[indexCount++] = b;
+        indices[indexCount++] = c;
+    }
+
+    // Two triangles, counter-clockwise when a, b, c, d go counter-clockwise.
+    public void quad(int a, int b, int c, int d) {
+        triangle(a, b, c);
+        triangle(a, c, d);
+    }
+
+    // Axis aligned, with a flat normal per face.
+    public void box(float x0, float y0, float z0, float x1, float y1, float z1) {
+        face(0.0f, 1.0f, 0.0f, x0, y1, z1, x1, y1, z1, x1, y1, z0, x0, y1, z0);
+        face(0.0f, -1.0f, 0.0f, x0, y0, z0, x1, y0, z0, x1, y0, z1, x0, y0, z1);
+        face(1.0f, 0.0f, 0.0f, x1, y0, z1, x1, y0, z0, x1, y1, z0, x1, y1, z1);
+        face(-1.0f, 0.0f, 0.0f, x0, y0, z0, x0, y0, z1, x0, y1, z1, x0, y1, z0);
+        face(0.0f, 0.0f, 1.0f, x0, y0, z1, x1, y0, z1, x1, y1, z1, x0, y1, z1);
+        face(0.0f, 0.0f, -1.0f, x1, y0, z0, x0, y0, z0, x0, y1, z0, x1, y1, z0);
+    }
+
+    // Standing on base and turned to the given unit axes: width along right, height along up, length along forward.
+    public void box(Vector3f base, Vector3f right, Vector3f up, Vector3f forward, float halfWidth, float height,
+                    float halfLength) {
+        // Corner i is at -/+ halfWidth by bit 0, 0/height by bit 1 and +/- halfLength forward by bit 2, which puts
+        // it where the axis aligned box above has it with x right, y up and z back.
+        float[] corners = new float[24];
+        for (int i = 0; i < 8; i++) {
+            float x = (i & 1) != 0 ? halfWidth : -halfWidth;
+            float y = (i & 2) != 0 ? height : 0.0f;
+            float z = (i & 4) != 0 ? -halfLength : halfLength;
+            corners[i * 3] = base.x + right.x * x + up.x * y + forward.x * z;
+            corners[i * 3 + 1] = base.y + right.y * x + up.y * y + forward.y * z;
+            corners[i * 3 + 2] = base.z + right.z * x + up.z * y + forward.z * z;
+        }
+
+        face(up.x, up.y, up.z, corners, 6, 7, 3, 2);
+        face(-up.x, -up.y, -up.z, corners, 0, 1, 5, 4);
+        face(right.x, right.y, right.z, corners, 5, 1, 3, 7);
+        face(-right.x, -right.y, -right.z, corners, 0, 4, 6, 2);
+        face(-forward.x, -forward.y, -forward.z, corners, 4, 5, 7, 6);
+        face(forward.x, forward.y, forward.z, corners, 1, 0, 2, 3);
+    }
+
+    private void face(float nx, float ny, float nz, float[] corners, int a, int b, int c, int d) {
+        face(nx, ny, nz, corners[a * 3], corners[a * 3 + 1], corners[a * 3 + 2], corners[b * 3], corners[b * 3 + 1],
+                corners[b * 3 + 2], corners[c * 3], corners[c * 3 + 1], corners[c * 3 + 2], corners[d * 3],
+                corners[d * 3 + 1], corners[d * 3 + 2]);
+    }
+
+    // Corners counter-clockwise seen from outside, starting bottom left.
+    private void face(float nx, float ny, float nz, float ax, float ay, float az, float bx, float by, float bz,
+                      float cx, float cy, float cz, float dx, float dy, float dz) {
+        int a = vertex(ax, ay, az, nx, ny, nz, 0.0f, 1.0f);
+        int b = vertex(bx, by, bz, nx, ny, nz, 1.0f, 1.0f);
+        int c = vertex(cx, cy, cz, nx, ny, nz, 1.0f, 0.0f);
+        int d = vertex(dx, dy, dz, nx, ny, nz, 0.0f, 0.0f);
+        quad(a, b, c, d);
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    // Safe from any thread. The builder can be cleared and reused as soon as this returns.
+    public Mesh upload(String name, MeshPool pool, UploadService uploadService) {
+        if (vertexCount == 0 || indexCount == 0)
+            throw new IllegalStateException("Mesh " + name + " is empty");
+
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+        for (int v = 0; v < vertexCount; v++) {
+            int offset = v * 8;
+            min.set(Math.min(min.x, vertices[offset]), Math.min(min.y, vertices[offset + 1]), Math.min(min.z, vertices[offset + 2]));
+            max.set(Math.max(max.x, vertices[offset]), Math.max(max.y, vertices[offset + 1]), Math.max(max.z, vertices[offset + 2]));
+        }
+
+        Vector3f center = new Vector3f(min).add(max).mul(0.5f);
+        Vector3f halfExtent = new Vector3f(max).sub(min).mul(0.5f);
+        float radius = 0.0f;
+        for (int v = 0; v < vertexCount; v++)
+            radius = Math.max(radius, center.distance(vertices[v * 8], vertices[v * 8 + 1], vertices[v * 8 + 2]));
+
+        int baseVertex = pool.allocateVertices(vertexCount);
+        int firstIndex = pool.allocateIndices(indexCount);
+        long vertexBytes = (long) vertexCount * MeshFormat.VERTEX_SIZE;
+        long indexBytes = (long) indexCount * 4;
+
+        CompletableFuture<Void> ready = CompletableFuture.allOf(
+                uploadService.uploadBuffer(pool.getVertexBuffer(), pool.getVertexOffset(baseVertex), vertexBytes, staging -> {
+                    for (int v = 0; v < vertexCount; v++) {
+                        int offset = v * 8;
+                        MeshFormat.putVertex(staging, center, halfExtent, vertices[offset], vertices[offset + 1],
+                                vertices[offset + 2], vertices[offset + 3], vertices[offset + 4], vertices[offset + 5],
+                                vertices[offset + 6], vertices[offset + 7]);
+                    }
+                }),
+                uploadService.uploadBuffer(pool.getIndexBuffer(), pool.getIndexOffset(firstIndex), indexBytes, staging -> {
+                    for (int i = 0; i < indexCount; i++)
+                        staging.putInt(indices[i]);
+                }));
+
+        return new Mesh(name, pool, baseVertex, vertexCount, firstIndex, indexCount,
+                new MeshLod[]{new MeshLod(0, indexCount, 0.0f)}, min, max, center, radius, ready);
+    }
+}
@@ -0,0 +1,75 @@
+package za.madtek.arcaderacer.asset;
+
+import org.joml.Vector3fc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Layout of a cooked .mesh file, little endian:
+//
+//   0  magic, version, vertex count, index count, index size (2 or 4), LOD count, 2 x reserved
+//  32  bounds min xyz, bounds max xyz
+//  56  bounding sphere center xyz, radius
+//  72  reserved
+//  80  MAX_LODS x (first index, index count, error, reserved)
+// 144  vertices, VERTEX_SIZE bytes each, then indices for every LOD back to back
+//
+// Vertices are exactly what the mesh pipeline's vertex layout expects, so loading is a straight copy.
+public class MeshFormat {
+
+    public static final String EXTENSION = ".mesh";
+
+    protected static final int MAGIC = 0x48534D41; // "AMSH"
+    protected static final int VERSION = 1;
+    protected static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int MAX_LODS = 4;
+
+    // position: R16G16B16A16_SNORM relative to the bounds, normal: R8G8B8A8_SNORM, uv: R16G16_UNORM
+    public static final int VERTEX_SIZE = 16;
+    public static final int POSITION_OFFSET = 0;
+    public static final int NORMAL_OFFSET = 8;
+    public static final int TEX_COORD_OFFSET = 12;
+
+    protected static final int VERTEX_COUNT = 8;
+    protected static final int INDEX_COUNT = 12;
+    protected static final int INDEX_SIZE = 16;
+    protected static final int LOD_COUNT = 20;
+    protected static final int BOUNDS = 32;
+    protected static final int SPHERE = 56;
+    protected static final int LODS = 80;
+    protected static final int LOD_ENTRY_SIZE = 16;
+    protected static final int HEADER_SIZE = LODS + MAX_LODS * LOD_ENTRY_SIZE;
+
+    // Writes one vertex at the buffer's position. Positions are stored relative to the mesh bounds, normals don't
+    // need to be normalised, and texture coordinates outside 0..1 are clamped.
+    public static void putVertex(ByteBuffer buffer, Vector3fc center, Vector3fc halfExtent, float px, float py, float pz,
+                                 float nx, float ny, float nz, float u, float v) {
+        buffer.putShort(snorm16(halfExtent.x() > 0.0f ? (px - center.x()) / halfExtent.x() : 0.0f));
+        buffer.putShort(snorm16(halfExtent.y() > 0.0f ? (py - center.y()) / halfExtent.y() : 0.0f));
+        buffer.putShort(snorm16(halfExtent.z() > 0.0f ? (pz - center.z()) / halfExtent.z() : 0.0f));
+        buffer.putShort(Short.MAX_VALUE);
+
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        float scale = length > 0.0f ? 1.0f / length : 0.0f;
+        buffer.put(snorm8(nx * scale));
+        buffer.put(snorm8(ny * scale));
+        buffer.put(snorm8(nz * scale));
+        buffer.put((byte) 0);
+
+        buffer.putShort(unorm16(u));
+        buffer.putShort(unorm16(v));
+    }
+
+    private static short snorm16(float value) {
+        return (short) Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * Short.MAX_VALUE);
+    }
+
+    private static byte snorm8(float value) {
+        return (byte) Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * Byte.MAX_VALUE);
+    }
+
+    private static short unorm16(float value) {
+        return (short) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 0xFFFF);
+    }
+}
@@ -0,0 +1,340 @@
+package za.madtek.arcaderacer.asset;
+
+import org.joml.Vector3f;
+import org.lwjgl.assimp.*;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.lwjgl.assimp.Assimp.*;
+
+// Runs assimp once per model and writes the result in MeshFormat. Used by the importMeshes Gradle task, and by
+// MeshLibrary on first run when a cooked mesh is missing or older than its source.
+public class MeshImporter {
+
+    public static final Set<String> SOURCE_EXTENSIONS = Set.of(".glb", ".gltf", ".obj", ".fbx");
+
+    private static final int IMPORT_FLAGS = aiProcess_Triangulate | aiProcess_JoinIdenticalVertices |
+            aiProcess_PreTransformVertices | aiProcess_GenSmoothNormals | aiProcess_ImproveCacheLocality |
+            aiProcess_FlipUVs | aiProcess_SortByPType | aiProcess_FindDegenerates;
+
+    // Vertex clustering grid resolution along the longest side of the bounds, for LOD 1 and up.
+    private static final int[] LOD_GRID = {24, 12, 6};
+    // A LOD that doesn't drop at least this fraction of the previous one's triangles isn't worth a draw.
+    private static final float MIN_LOD_REDUCTION = 0.2f;
+
+    public static void importMesh(Path source, Path destination) throws IOException {
+        AIScene scene = aiImportFile(source.toAbsolutePath().toString(), IMPORT_FLAGS);
+        if (scene == null)
+            throw new IOException("Failed to import " + source + ": " + aiGetErrorString());
+
+        try {
+            write(scene, destination);
+        } finally {
+            aiReleaseImport(scene);
+        }
+    }
+
+    public static String cookedName(Path source) {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot < 0 ? name : name.substring(0, dot)) + MeshFormat.EXTENSION;
+    }
+
+    public static boolean isSource(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && SOURCE_EXTENSIONS.contains(name.substring(dot));
+    }
+
+    private static void write(AIScene scene, Path destination) throws IOException {
+        int meshCount = scene.mNumMeshes();
+        if (meshCount == 0)
+            throw new IOException("Scene has no meshes");
+
+        // PreTransformVertices has already flattened the node hierarchy, so every mesh is in model space and
+        // they can all be merged into one vertex buffer and drawn with a single call.
+        int vertexCount = 0;
+        int triangleCount = 0;
+        for (int i = 0; i < meshCount; i++) {
+            AIMesh mesh = AIMesh.create(scene.mMeshes().get(i));
+            vertexCount += mesh.mNumVertices();
+            triangleCount += mesh.mNumFaces();
+        }
+
+        float[] positions = new float[vertexCount * 3];
+        float[] normals = new float[vertexCount * 3];
+        float[] texCoords = new float[vertexCount * 2];
+        int[] indices = new int[triangleCount * 3];
+
+        int baseVertex = 0;
+        int indexCount = 0;
+        for (int i = 0; i < meshCount; i++) {
+            AIMesh mesh = AIMesh.create(scene.mMeshes().get(i));
+            AIVector3D.Buffer meshPositions = mesh.mVertices();
+            AIVector3D.Buffer meshNormals = mesh.mNormals();
+            AIVector3D.Buffer meshTexCoords = mesh.mTextureCoords(0);
+
+            for (int v = 0; v < mesh.mNumVertices(); v++) {
+                int vertex = baseVertex + v;
+                AIVector3D position = meshPositions.get(v);
+                positions[vertex * 3] = position.x();
+                positions[vertex * 3 + 1] = position.y();
+                positions[vertex * 3 + 2] = position.z();
+
+                if (meshNormals != null) {
+                    AIVector3D normal = meshNormals.get(v);
+                    normals[vertex * 3] = normal.x();
+                    normals[vertex * 3 + 1] = normal.y();
+                    normals[vertex * 3 + 2] = normal.z();
+                }
+
+                if (meshTexCoords != null) {
+                    AIVector3D texCoord = meshTexCoords.get(v);
+                    texCoords[vertex * 2] = texCoord.x();
+                    texCoords[vertex * 2 + 1] = texCoord.y();
+                }
+            }
+
+            AIFace.Buffer faces = mesh.mFaces();
+            for (int f = 0; f < mesh.mNumFaces(); f++) {
+                IntBuffer faceIndices = faces.get(f).mIndices();
+                // SortByPType leaves stray points and lines in their own meshes, but skip them to be safe.
+                if (faceIndices.remaining() != 3)
+                    continue;
+
+                for (int corner = 0; corner < 3; corner++)
+                    indices[indexCount++] = baseVertex + faceIndices.get(corner);
+            }
+
+            baseVertex += mesh.mNumVertices();
+        }
+        indices = Arrays.copyOf(indices, indexCount);
+
+        int[] remap = optimizeVertexFetch(indices, vertexCount);
+        positions = applyRemap(positions, remap, 3);
+        normals = applyRemap(normals, remap, 3);
+        texCoords = applyRemap(texCoords, remap, 2);
+
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+        for (int v = 0; v < vertexCount; v++) {
+            min.set(Math.min(min.x, positions[v * 3]), Math.min(min.y, positions[v * 3 + 1]), Math.min(min.z, positions[v * 3 + 2]));
+            max.set(Math.max(max.x, positions[v * 3]), Math.max(max.y, positions[v * 3 + 1]), Math.max(max.z, positions[v * 3 + 2]));
+        }
+
+        Vector3f center = new Vector3f(min).add(max).mul(0.5f);
+        float radius = 0.0f;
+        for (int v = 0; v < vertexCount; v++)
+            radius = Math.max(radius, center.distance(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]));
+
+        List<int[]> lods = new ArrayList<>();
+        List<Float> lodErrors = new ArrayList<>();
+        lods.add(indices);
+        lodErrors.add(0.0f);
+
+        float longestSide = Math.max(max.x - min.x, Math.max(max.y - min.y, max.z - min.z));
+        for (int grid : LOD_GRID) {
+            if (lods.size() == MeshFormat.MAX_LODS || longestSide <= 0.0f)
+                break;
+
+            float cellSize = longestSide / grid;
+            int[] previous = lods.get(lods.size() - 1);
+            int[] simplified = simplify(indices, positions, min, cellSize);
+            if (simplified.length == 0 || simplified.length > previous.length * (1.0f - MIN_LOD_REDUCTION))
+                continue;
+
+            lods.add(simplified);
+            // Worst case a vertex moves by the cell diagonal, which is what LOD selection projects to the screen.
+            lodErrors.add(cellSize * (float) Math.sqrt(3.0));
+        }
+
+        int totalIndices = lods.stream().mapToInt(lod -> lod.length).sum();
+        int indexSize = vertexCount <= 0x10000 ? 2 : 4;
+        long fileSize = MeshFormat.HEADER_SIZE + (long) vertexCount * MeshFormat.VERTEX_SIZE + (long) totalIndices * indexSize;
+
+        ByteBuffer buffer = MemoryUtil.memAlloc((int) fileSize).order(MeshFormat.BYTE_ORDER);
+        try {
+            buffer.putInt(0, MeshFormat.MAGIC);
+            buffer.putInt(4, MeshFormat.VERSION);
+            buffer.putInt(MeshFormat.VERTEX_COUNT, vertexCount);
+            buffer.putInt(MeshFormat.INDEX_COUNT, totalIndices);
+            buffer.putInt(MeshFormat.INDEX_SIZE, indexSize);
+            buffer.putInt(MeshFormat.LOD_COUNT, lods.size());
+            buffer.putInt(24, 0);
+            buffer.putInt(28, 0);
+            putVector(buffer, MeshFormat.BOUNDS, min);
+            putVector(buffer, MeshFormat.BOUNDS + 12, max);
+            putVector(buffer, MeshFormat.SPHERE, center);
+            buffer.putFloat(MeshFormat.SPHERE + 12, radius);
+            buffer.putLong(72, 0L);
+
+            int firstIndex = 0;
+            for (int lod = 0; lod < MeshFormat.MAX_LODS; lod++) {
+                int entry = MeshFormat.LODS + lod * MeshFormat.LOD_ENTRY_SIZE;
+                int count = lod < lods.size() ? lods.get(lod).length : 0;
+                buffer.putInt(entry, lod < lods.size() ? firstIndex : 0);
+                buffer.putInt(entry + 4, count);
+                buffer.putFloat(entry + 8, lod < lods.size() ? lodErrors.get(lod) : 0.0f);
+                buffer.putInt(entry + 12, 0);
+                firstIndex += count;
+            }
+
+            Vector3f halfExtent = new Vector3f(max).sub(min).mul(0.5f);
+            buffer.position(MeshFormat.HEADER_SIZE);
+            // Kenney models map into a single palette texture, so coordinates outside 0..1 being clamped is fine.
+            for (int v = 0; v < vertexCount; v++) {
+                MeshFormat.putVertex(buffer, center, halfExtent, positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2],
+                        normals[v * 3], normals[v * 3 + 1], normals[v * 3 + 2], texCoords[v * 2], texCoords[v * 2 + 1]);
+            }
+
+            for (int[] lod : lods) {
+                for (int index : lod) {
+                    if (indexSize == 2)
+                        buffer.putShort((short) index);
+                    else
+                        buffer.putInt(index);
+                }
+            }
+            buffer.flip();
+
+            // Write-then-rename, same as the pipeline cache, so a killed import never leaves a truncated mesh.
+            Path temp = destination.resolveSibling(destination.getFileName() + ".tmp");
+            if (destination.getParent() != null)
+                Files.createDirectories(destination.getParent());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            MemoryUtil.memFree(buffer);
+        }
+    }
+
+    // Renumbers vertices in the order the index buffer first touches them, so vertex fetches walk memory linearly.
+    private static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int vertex = indices[i];
+            if (remap[vertex] == -1)
+                remap[vertex] = next++;
+            indices[i] = remap[vertex];
+        }
+
+        // Vertices no triangle references keep their relative order at the end.
+        for (int v = 0; v < vertexCount; v++) {
+            if (remap[v] == -1)
+                remap[v] = next++;
+        }
+
+        return remap;
+    }
+
+    private static float[] applyRemap(float[] data, int[] remap, int components) {
+        float[] result = new float[data.length];
+        for (int v = 0; v < remap.length; v++)
+            System.arraycopy(data, v * components, result, remap[v] * components, components);
+        return result;
+    }
+
+    // Vertex clustering: every vertex snaps to the first vertex found in its grid cell and triangles that collapse
+    // are dropped. Crude compared to edge collapse, but it never creates vertices, so all LODs share one vertex
+    // buffer, and for the low-poly Kenney models it holds up well at the distances the LODs are used at.
+    private static int[] simplify(int[] indices, float[] positions, Vector3f min, float cellSize) {
+        Map<Long, Integer> representatives = new HashMap<>();
+        int[] cluster = new int[positions.length / 3];
+        for (int v = 0; v < cluster.length; v++) {
+            long x = (long) ((positions[v * 3] - min.x) / cellSize);
+            long y = (long) ((positions[v * 3 + 1] - min.y) / cellSize);
+            long z = (long) ((positions[v * 3 + 2] - min.z) / cellSize);
+            int vertex = v;
+            cluster[v] = representatives.computeIfAbsent((x << 42) | (y << 21) | z, cell -> vertex);
+        }
+
+        int[] result = new int[indices.length];
+        int count = 0;
+        for (int i = 0; i < indices.length; i += 3) {
+            int a = cluster[indices[i]];
+            int b = cluster[indices[i + 1]];
+            int c = cluster[indices[i + 2]];
+            if (a == b || b == c || a == c)
+                continue;
+
+            result[count++] = a;
+            result[count++] = b;
+            result[count++] = c;
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    private static void putVector(ByteBuffer buffer, int offset, Vector3f vector) {
+        buffer.putFloat(offset, vector.x);
+        buffer.putFloat(offset + 4, vector.y);
+        buffer.putFloat(offset + 8, vector.z);
+    }
+
+    // Usage: MeshImporter <model dir> <output dir>. Only models newer than their cooked mesh are imported.
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MeshImporter <model dir> <output dir>");
+            System.exit(1);
+        }
+
+        Path sourceDir = Path.of(args[0]);
+        Path outputDir = Path.of(args[1]);
+        if (!Files.isDirectory(sourceDir))
+            throw new IOException("Model directory not found: " + sourceDir);
+
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(sourceDir)) {
+            sources = files.filter(Files::isRegularFile).filter(MeshImporter::isSource).collect(Collectors.toList());
+        }
+
+        AtomicInteger imported = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+
+        // Assimp imports are independent of each other and its import functions are thread safe.
+        sources.parallelStream().forEach(source -> {
+            Path destination = outputDir.resolve(cookedName(source));
+            try {
+                if (Files.isRegularFile(destination) &&
+                        Files.getLastModifiedTime(destination).compareTo(Files.getLastModifiedTime(source)) >= 0)
+                    return;
+
+                importMesh(source, destination);
+                imported.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                failed.incrementAndGet();
+            }
+        });
+
+        System.out.printf("Imported %d of %d models in %.2f ms%n", imported.get(), sources.size(),
+                (System.nanoTime() - start) / 1e6);
+        if (failed.get() > 0)
+            System.exit(1);
+    }
+}
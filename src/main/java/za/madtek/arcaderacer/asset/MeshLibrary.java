@@ -0,0 +1,154 @@
+package za.madtek.arcaderacer.asset;
+
+import org.joml.Vector3f;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.vulkan.UploadService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Loads cooked meshes by memory-mapping them and copying the vertex and index sections straight into staging
+// memory, so the data never passes through the Java heap. Missing or stale meshes are imported on first use.
+// The pool only holds 32-bit indices, so 16-bit files are widened during that copy.
+public class MeshLibrary {
+
+    private final Map<String, Mesh> meshes = new ConcurrentHashMap<>();
+    private final Path modelDirectory;
+    private final Path cookedDirectory;
+
+    private final AtomicLong bytesLoaded = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    private MeshPool meshPool;
+    private UploadService uploadService;
+
+    public MeshLibrary() {
+        modelDirectory = Globals.MODEL_DIR;
+        cookedDirectory = Globals.CACHE_DIR.resolve("meshes");
+    }
+
+    public void init(MeshPool meshPool, UploadService uploadService) {
+        this.meshPool = meshPool;
+        this.uploadService = uploadService;
+    }
+
+    public void free() {
+        meshes.values().forEach(Mesh::free);
+        meshes.clear();
+    }
+
+    // Safe to call from any thread; the returned mesh can't be drawn until isReady().
+    public Mesh load(String name) {
+        return meshes.computeIfAbsent(name, this::loadMesh);
+    }
+
+    public Mesh get(String name) {
+        return meshes.get(name);
+    }
+
+    public long getBytesLoaded() {
+        return bytesLoaded.get();
+    }
+
+    public long getLoadNanos() {
+        return loadNanos.get();
+    }
+
+    private Mesh loadMesh(String name) {
+        long start = System.nanoTime();
+        Path cooked = cookedDirectory.resolve(name + MeshFormat.EXTENSION);
+
+        try {
+            Path source = findSource(name);
+            if (source != null && (!Files.isRegularFile(cooked) ||
+                    Files.getLastModifiedTime(cooked).compareTo(Files.getLastModifiedTime(source)) < 0)) {
+                MeshImporter.importMesh(source, cooked);
+                System.out.printf("Imported %s in %.2f ms%n", source, (System.nanoTime() - start) / 1e6);
+            }
+
+            if (!Files.isRegularFile(cooked))
+                throw new RuntimeException("Failed to find mesh " + name);
+
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(cooked, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mapped.order(MeshFormat.BYTE_ORDER);
+
+            Mesh mesh = upload(name, mapped);
+            loadNanos.addAndGet(System.nanoTime() - start);
+            return mesh;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load mesh " + name, e);
+        }
+    }
+
+    private Path findSource(String name) {
+        for (String extension : MeshImporter.SOURCE_EXTENSIONS) {
+            Path source = modelDirectory.resolve(name + extension);
+            if (Files.isRegularFile(source))
+                return source;
+        }
+
+        return null;
+    }
+
+    private Mesh upload(String name, ByteBuffer data) {
+        if (data.capacity() < MeshFormat.HEADER_SIZE || data.getInt(0) != MeshFormat.MAGIC)
+            throw new RuntimeException("Invalid mesh file " + name);
+        if (data.getInt(4) != MeshFormat.VERSION)
+            throw new RuntimeException("Unsupported mesh version " + data.getInt(4) + " in " + name);
+
+        int vertexCount = data.getInt(MeshFormat.VERTEX_COUNT);
+        int indexCount = data.getInt(MeshFormat.INDEX_COUNT);
+        int indexSize = data.getInt(MeshFormat.INDEX_SIZE);
+        int lodCount = data.getInt(MeshFormat.LOD_COUNT);
+
+        long vertexBytes = (long) vertexCount * MeshFormat.VERTEX_SIZE;
+        long indexBytes = (long) indexCount * indexSize;
+        if (MeshFormat.HEADER_SIZE + vertexBytes + indexBytes > data.capacity() || lodCount < 1 || lodCount > MeshFormat.MAX_LODS
+                || (indexSize != 2 && indexSize != 4))
+            throw new RuntimeException("Truncated or corrupt mesh file " + name);
+
+        MeshLod[] lods = new MeshLod[lodCount];
+        for (int lod = 0; lod < lodCount; lod++) {
+            int entry = MeshFormat.LODS + lod * MeshFormat.LOD_ENTRY_SIZE;
+            lods[lod] = new MeshLod(data.getInt(entry), data.getInt(entry + 4), data.getFloat(entry + 8));
+        }
+
+        int baseVertex = meshPool.allocateVertices(vertexCount);
+        int firstIndex = meshPool.allocateIndices(indexCount);
+        long indexOffset = meshPool.getIndexOffset(firstIndex);
+        ByteBuffer indices = data.slice(MeshFormat.HEADER_SIZE + (int) vertexBytes, (int) indexBytes).order(MeshFormat.BYTE_ORDER);
+
+        // The slices are views of the mapping, so the copy into staging is the first and only time the pages are read.
+        CompletableFuture<Void> ready = CompletableFuture.allOf(
+                uploadService.uploadBuffer(meshPool.getVertexBuffer(), meshPool.getVertexOffset(baseVertex),
+                        data.slice(MeshFormat.HEADER_SIZE, (int) vertexBytes)),
+                indexSize == 4
+                        ? uploadService.uploadBuffer(meshPool.getIndexBuffer(), indexOffset, indices)
+                        : uploadService.uploadBuffer(meshPool.getIndexBuffer(), indexOffset, (long) indexCount * 4, staging -> {
+                            for (int i = 0; i < indexCount; i++)
+                                staging.putInt(indices.getShort(i * 2) & 0xFFFF);
+                        }));
+        bytesLoaded.addAndGet(vertexBytes + indexBytes);
+
+        return new Mesh(name, meshPool, baseVertex, vertexCount, firstIndex, indexCount, lods,
+                readVector(data, MeshFormat.BOUNDS), readVector(data, MeshFormat.BOUNDS + 12),
+                readVector(data, MeshFormat.SPHERE), data.getFloat(MeshFormat.SPHERE + 12), ready);
+    }
+
+    private static Vector3f readVector(ByteBuffer data, int offset) {
+        return new Vector3f(data.getFloat(offset), data.getFloat(offset + 4), data.getFloat(offset + 8));
+    }
+}
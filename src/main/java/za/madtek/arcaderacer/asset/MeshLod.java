@@ -0,0 +1,27 @@
+package za.madtek.arcaderacer.asset;
+
+public class MeshLod {
+
+    private final int firstIndex;
+    private final int indexCount;
+    private final float error;
+
+    protected MeshLod(int firstIndex, int indexCount, float error) {
+        this.firstIndex = firstIndex;
+        this.indexCount = indexCount;
+        this.error = error;
+    }
+
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    // Largest distance, in model units, any vertex of this LOD can be from where it is in LOD 0.
+    public float getError() {
+        return error;
+    }
+}
@@ -0,0 +1,77 @@
+package za.madtek.arcaderacer.asset;
+
+import za.madtek.arcaderacer.vulkan.memory.AllocatedBuffer;
+import za.madtek.arcaderacer.vulkan.memory.BufferType;
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
+
+// Every mesh lives in one vertex buffer and one 32-bit index buffer, addressed by base vertex and first index.
+// Binding them once covers every draw, which is what lets a whole pipeline go out as a single indirect draw.
+public class MeshPool {
+
+    private final RangeAllocator vertices;
+    private final RangeAllocator indices;
+
+    private MemoryAllocator memoryAllocator;
+    private AllocatedBuffer vertexBuffer;
+    private AllocatedBuffer indexBuffer;
+
+    public MeshPool(int vertexCapacity, int indexCapacity) {
+        vertices = new RangeAllocator(vertexCapacity);
+        indices = new RangeAllocator(indexCapacity);
+    }
+
+    public void init(MemoryAllocator memoryAllocator) {
+        this.memoryAllocator = memoryAllocator;
+        vertexBuffer = memoryAllocator.createBuffer(BufferType.VERTEX, (long) vertices.getCapacity() * MeshFormat.VERTEX_SIZE);
+        indexBuffer = memoryAllocator.createBuffer(BufferType.INDEX, (long) indices.getCapacity() * 4);
+    }
+
+    public void free() {
+        memoryAllocator.destroyBuffer(vertexBuffer);
+        memoryAllocator.destroyBuffer(indexBuffer);
+    }
+
+    // Safe from any thread. Returns the base vertex.
+    public int allocateVertices(int count) {
+        int offset = vertices.allocate(count);
+        if (offset < 0)
+            throw new RuntimeException("Failed to allocate " + count + " vertices, mesh pool is full");
+        return offset;
+    }
+
+    // Safe from any thread. Returns the first index.
+    public int allocateIndices(int count) {
+        int offset = indices.allocate(count);
+        if (offset < 0)
+            throw new RuntimeException("Failed to allocate " + count + " indices, mesh pool is full");
+        return offset;
+    }
+
+    // The GPU must be done with the mesh.
+    protected void free(Mesh mesh) {
+        vertices.free(mesh.getBaseVertex(), mesh.getVertexCount());
+        indices.free(mesh.getFirstIndex(), mesh.getIndexCount());
+    }
+
+    public AllocatedBuffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
+    public AllocatedBuffer getIndexBuffer() {
+        return indexBuffer;
+    }
+
+    public long getVertexOffset(int baseVertex) {
+        return (long) baseVertex * MeshFormat.VERTEX_SIZE;
+    }
+
+    public long getIndexOffset(int firstIndex) {
+        return (long) firstIndex * 4;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Mesh pool: %d / %d vertices, %d / %d indices", vertices.getUsed(), vertices.getCapacity(),
+                indices.getUsed(), indices.getCapacity());
+    }
+}
@@ -0,0 +1,67 @@
+package za.madtek.arcaderacer.asset;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// First-fit allocator over [0, capacity) for carving ranges out of a shared buffer. Freed ranges merge with their
+// neighbours, so streaming chunks of similar size in and out doesn't fragment it.
+public class RangeAllocator {
+
+    // Offset to length of every free range.
+    private final TreeMap<Integer, Integer> free = new TreeMap<>();
+    private final int capacity;
+    private int used;
+
+    public RangeAllocator(int capacity) {
+        this.capacity = capacity;
+        free.put(0, capacity);
+    }
+
+    // Offset of the range, or -1 if there's no free range long enough.
+    public synchronized int allocate(int length) {
+        for (Map.Entry<Integer, Integer> range : free.entrySet()) {
+            int available = range.getValue();
+            if (available < length)
+                continue;
+
+            // Read before removing: TreeMap may reuse the removed entry for its successor.
+            int offset = range.getKey();
+            free.remove(offset);
+            if (available > length)
+                free.put(offset + length, available - length);
+
+            used += length;
+            return offset;
+        }
+
+        return -1;
+    }
+
+    public synchronized void free(int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+
+        Map.Entry<Integer, Integer> before = free.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            start = before.getKey();
+            free.remove(start);
+        }
+
+        Integer after = free.get(end);
+        if (after != null) {
+            free.remove(end);
+            end += after;
+        }
+
+        free.put(start, end - start);
+        used -= length;
+    }
+
+    public synchronized int getUsed() {
+        return used;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
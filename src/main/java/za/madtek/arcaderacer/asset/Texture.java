@@ -0,0 +1,128 @@
+package za.madtek.arcaderacer.asset;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkImageViewCreateInfo;
+import za.madtek.arcaderacer.vulkan.ResourceRegistry;
+import za.madtek.arcaderacer.vulkan.ResourceType;
+import za.madtek.arcaderacer.vulkan.memory.AllocatedImage;
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
+
+import java.nio.LongBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Mips stream in smallest first, so a texture is usable as soon as its tail has arrived. Only levels from
+// getResidentMip() down are defined; getView() always covers exactly those, so sampling it is always valid.
+public class Texture {
+
+    private final String name;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    private AllocatedImage image;
+    // views[i] covers mips i to mipLevels - 1.
+    private long[] views;
+    private int arrivedMask;
+    private volatile int residentMip;
+
+    protected Texture(String name) {
+        this.name = name;
+    }
+
+    // Decoder thread, once the size is known. Nothing is resident until the first mip lands.
+    protected void init(VkDevice device, AllocatedImage image) {
+        this.views = new long[image.getMipLevels()];
+
+        try (MemoryStack stack = stackPush()) {
+            VkImageViewCreateInfo viewInfo = VkImageViewCreateInfo.calloc(stack);
+            viewInfo.sType(VK_STRUCTURE_TYPE_IMAGE_VIEW_CREATE_INFO);
+            viewInfo.image(image.getImage());
+            viewInfo.viewType(VK_IMAGE_VIEW_TYPE_2D);
+            viewInfo.format(image.getFormat());
+            viewInfo.subresourceRange().aspectMask(VK_IMAGE_ASPECT_COLOR_BIT);
+            viewInfo.subresourceRange().baseArrayLayer(0);
+            viewInfo.subresourceRange().layerCount(1);
+
+            LongBuffer pView = stack.mallocLong(1);
+            for (int mip = 0; mip < views.length; mip++) {
+                viewInfo.subresourceRange().baseMipLevel(mip);
+                viewInfo.subresourceRange().levelCount(views.length - mip);
+
+                if (vkCreateImageView(device, viewInfo, null, pView) != VK_SUCCESS)
+                    throw new RuntimeException("Failed to create image view for texture " + name);
+                views[mip] = ResourceRegistry.track(ResourceType.IMAGE_VIEW, pView.get(0));
+            }
+        }
+
+        this.residentMip = image.getMipLevels();
+        this.image = image;
+    }
+
+    protected void free(VkDevice device, MemoryAllocator memoryAllocator) {
+        if (views != null) {
+            for (long view : views) {
+                ResourceRegistry.untrack(ResourceType.IMAGE_VIEW, view);
+                vkDestroyImageView(device, view, null);
+            }
+        }
+
+        if (image != null)
+            memoryAllocator.destroyImage(image);
+    }
+
+    // Render thread, from the upload future. Residency only advances over a contiguous run from the smallest mip.
+    protected synchronized void onMipArrived(int mip) {
+        arrivedMask |= 1 << mip;
+
+        int resident = residentMip;
+        while (resident > 0 && (arrivedMask & (1 << (resident - 1))) != 0)
+            resident--;
+
+        boolean first = residentMip == image.getMipLevels() && resident < residentMip;
+        residentMip = resident;
+        if (first)
+            ready.complete(null);
+    }
+
+    protected void onFailed(Throwable error) {
+        ready.completeExceptionally(error);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AllocatedImage getImage() {
+        return image;
+    }
+
+    public int getMipLevels() {
+        return image != null ? image.getMipLevels() : 0;
+    }
+
+    // Finest mip that is safe to sample; equal to getMipLevels() until anything has arrived.
+    public int getResidentMip() {
+        return residentMip;
+    }
+
+    public boolean isFullyResident() {
+        return image != null && residentMip == 0;
+    }
+
+    public long getView() {
+        if (!isReady())
+            throw new IllegalStateException("Texture " + name + " has no resident mips yet");
+        return views[residentMip];
+    }
+
+    // Completes when the first (smallest) mips are resident and the texture can be drawn with.
+    public CompletableFuture<Void> getReady() {
+        return ready;
+    }
+
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+}
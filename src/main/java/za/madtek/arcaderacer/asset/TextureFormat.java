@@ -0,0 +1,41 @@
+package za.madtek.arcaderacer.asset;
+
+import java.nio.ByteOrder;
+
+import static org.lwjgl.vulkan.VK10.VK_FORMAT_R8G8B8A8_SRGB;
+
+// Layout of a cached .tex file, little endian:
+//
+//   0  magic, version, width, height, mip count, Vulkan format, 2 x reserved
+//  32  MAX_MIPS x (offset, size) as longs, indexed by mip level
+// 288  pixel data, smallest mip first
+//
+// Storing the tail first means streaming lowest-first reads the file front to back.
+public class TextureFormat {
+
+    public static final String EXTENSION = ".tex";
+
+    protected static final int MAGIC = 0x58455441; // "ATEX"
+    protected static final int VERSION = 1;
+    protected static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int FORMAT = VK_FORMAT_R8G8B8A8_SRGB;
+    public static final int BYTES_PER_PIXEL = 4;
+    public static final int MAX_MIPS = 16;
+
+    protected static final int WIDTH = 8;
+    protected static final int HEIGHT = 12;
+    protected static final int MIP_COUNT = 16;
+    protected static final int VK_FORMAT = 20;
+    protected static final int MIPS = 32;
+    protected static final int MIP_ENTRY_SIZE = 16;
+    protected static final int HEADER_SIZE = MIPS + MAX_MIPS * MIP_ENTRY_SIZE;
+
+    public static int mipCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    public static long mipSize(int width, int height, int mip) {
+        return (long) Math.max(1, width >> mip) * Math.max(1, height >> mip) * BYTES_PER_PIXEL;
+    }
+}
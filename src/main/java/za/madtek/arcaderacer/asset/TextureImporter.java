@@ -0,0 +1,104 @@
+package za.madtek.arcaderacer.asset;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.stb.STBImageResize.stbir_resize_uint8_srgb;
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+// Decodes a PNG with stb_image, builds the full mip chain on the CPU and writes it out in TextureFormat. Safe to
+// run on several threads at once; every call works in its own memory.
+public class TextureImporter {
+
+    private static final int ALPHA_CHANNEL = 3;
+
+    // Returns the number of decoded bytes, for throughput reporting.
+    public static long importTexture(Path source, Path destination) throws IOException {
+        int width;
+        int height;
+        ByteBuffer pixels;
+
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer pWidth = stack.mallocInt(1);
+            IntBuffer pHeight = stack.mallocInt(1);
+            IntBuffer pChannels = stack.mallocInt(1);
+
+            pixels = stbi_load(source.toAbsolutePath().toString(), pWidth, pHeight, pChannels, TextureFormat.BYTES_PER_PIXEL);
+            if (pixels == null)
+                throw new IOException("Failed to decode " + source + ": " + stbi_failure_reason());
+
+            width = pWidth.get(0);
+            height = pHeight.get(0);
+        }
+
+        int mipCount = Math.min(TextureFormat.mipCount(width, height), TextureFormat.MAX_MIPS);
+        long[] offsets = new long[mipCount];
+        long dataSize = 0;
+        for (int mip = mipCount - 1; mip >= 0; mip--) {
+            offsets[mip] = TextureFormat.HEADER_SIZE + dataSize;
+            dataSize += TextureFormat.mipSize(width, height, mip);
+        }
+
+        ByteBuffer buffer = MemoryUtil.memAlloc((int) (TextureFormat.HEADER_SIZE + dataSize)).order(TextureFormat.BYTE_ORDER);
+        try {
+            buffer.putInt(0, TextureFormat.MAGIC);
+            buffer.putInt(4, TextureFormat.VERSION);
+            buffer.putInt(TextureFormat.WIDTH, width);
+            buffer.putInt(TextureFormat.HEIGHT, height);
+            buffer.putInt(TextureFormat.MIP_COUNT, mipCount);
+            buffer.putInt(TextureFormat.VK_FORMAT, TextureFormat.FORMAT);
+            buffer.putInt(24, 0);
+            buffer.putInt(28, 0);
+
+            for (int mip = 0; mip < TextureFormat.MAX_MIPS; mip++) {
+                int entry = TextureFormat.MIPS + mip * TextureFormat.MIP_ENTRY_SIZE;
+                buffer.putLong(entry, mip < mipCount ? offsets[mip] : 0L);
+                buffer.putLong(entry + 8, mip < mipCount ? TextureFormat.mipSize(width, height, mip) : 0L);
+            }
+
+            MemoryUtil.memCopy(pixels, mipSlice(buffer, offsets, width, height, 0));
+
+            // Each level is filtered from the one above it in linear space, weighting colour by alpha.
+            for (int mip = 1; mip < mipCount; mip++) {
+                int srcWidth = Math.max(1, width >> (mip - 1));
+                int srcHeight = Math.max(1, height >> (mip - 1));
+                int dstWidth = Math.max(1, width >> mip);
+                int dstHeight = Math.max(1, height >> mip);
+
+                if (!stbir_resize_uint8_srgb(mipSlice(buffer, offsets, width, height, mip - 1), srcWidth, srcHeight, 0,
+                        mipSlice(buffer, offsets, width, height, mip), dstWidth, dstHeight, 0,
+                        TextureFormat.BYTES_PER_PIXEL, ALPHA_CHANNEL, 0))
+                    throw new IOException("Failed to generate mip " + mip + " of " + source);
+            }
+
+            Path temp = destination.resolveSibling(destination.getFileName() + ".tmp");
+            if (destination.getParent() != null)
+                Files.createDirectories(destination.getParent());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            MemoryUtil.memFree(buffer);
+            stbi_image_free(pixels);
+        }
+
+        return (long) width * height * TextureFormat.BYTES_PER_PIXEL;
+    }
+
+    private static ByteBuffer mipSlice(ByteBuffer buffer, long[] offsets, int width, int height, int mip) {
+        return buffer.slice((int) offsets[mip], (int) TextureFormat.mipSize(width, height, mip));
+    }
+}
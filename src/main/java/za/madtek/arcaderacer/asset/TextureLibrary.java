@@ -0,0 +1,249 @@
+package za.madtek.arcaderacer.asset;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.vulkan.ResourceRegistry;
+import za.madtek.arcaderacer.vulkan.ResourceType;
+import za.madtek.arcaderacer.vulkan.UploadService;
+import za.madtek.arcaderacer.vulkan.memory.AllocatedImage;
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.vulkan.VK10.*;
+
+// PNGs are decoded and mipped on worker threads and cached in TextureFormat, which later launches just map. Mip
+// uploads from every texture share one queue ordered by size, so all the small mips of a track land before any
+// full resolution data, within Globals.TEXTURE_UPLOAD_BUDGET per frame.
+public class TextureLibrary {
+
+    private static final String SOURCE_EXTENSION = ".png";
+
+    private final Map<String, Texture> textures = new ConcurrentHashMap<>();
+    private final PriorityBlockingQueue<MipUpload> uploads = new PriorityBlockingQueue<>();
+    private final AtomicLong uploadSequence = new AtomicLong();
+    private final TextureStats stats = new TextureStats();
+    private final Path sourceDirectory;
+    private final Path cacheDirectory;
+
+    private VkDevice device;
+    private MemoryAllocator memoryAllocator;
+    private UploadService uploadService;
+    private ExecutorService executor;
+    private long sampler;
+
+    public TextureLibrary() {
+        sourceDirectory = Globals.TEXTURE_DIR;
+        cacheDirectory = Globals.CACHE_DIR.resolve("textures");
+    }
+
+    public void init(VkDevice device, VkPhysicalDevice physicalDevice, MemoryAllocator memoryAllocator, UploadService uploadService) {
+        this.device = device;
+        this.memoryAllocator = memoryAllocator;
+        this.uploadService = uploadService;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+            Thread thread = new Thread(runnable, "texture-decoder-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        createSampler(physicalDevice);
+    }
+
+    public void free() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        uploads.clear();
+        textures.values().forEach(texture -> texture.free(device, memoryAllocator));
+        textures.clear();
+
+        ResourceRegistry.untrack(ResourceType.SAMPLER, sampler);
+        vkDestroySampler(device, sampler, null);
+    }
+
+    // Safe to call from any thread. The texture is returned straight away and becomes drawable once isReady().
+    public Texture load(String name) {
+        return textures.computeIfAbsent(name, key -> {
+            Texture texture = new Texture(key);
+            executor.execute(() -> decode(texture));
+            return texture;
+        });
+    }
+
+    public Texture get(String name) {
+        return textures.get(name);
+    }
+
+    // Anisotropic, trilinear, repeating: what every material in the Kenney kits wants.
+    public long getSampler() {
+        return sampler;
+    }
+
+    public TextureStats getStats() {
+        return stats;
+    }
+
+    // Render thread, once per frame before the upload service flushes.
+    public void update() {
+        long queued = 0;
+        long now = System.nanoTime();
+
+        MipUpload upload;
+        while ((upload = uploads.poll()) != null) {
+            // Always let one through, so a mip bigger than the budget still makes progress.
+            if (queued > 0 && queued + upload.size > Globals.TEXTURE_UPLOAD_BUDGET) {
+                uploads.add(upload);
+                break;
+            }
+
+            MipUpload current = upload;
+            stats.recordUploadStart(now);
+            uploadService.uploadImage(current.texture.getImage(), current.mip, current.size, staging -> memCopy(current.data, staging))
+                    .whenComplete((result, error) -> {
+                        if (error != null) {
+                            current.texture.onFailed(error);
+                            return;
+                        }
+
+                        current.texture.onMipArrived(current.mip);
+                        stats.recordUpload(current.size, System.nanoTime());
+                    });
+            queued += upload.size;
+        }
+    }
+
+    private void decode(Texture texture) {
+        String name = texture.getName();
+        Path source = sourceDirectory.resolve(name + SOURCE_EXTENSION);
+        Path cached = cacheDirectory.resolve(name + TextureFormat.EXTENSION);
+
+        try {
+            if (Files.isRegularFile(source) && (!Files.isRegularFile(cached) ||
+                    Files.getLastModifiedTime(cached).compareTo(Files.getLastModifiedTime(source)) < 0)) {
+                long start = System.nanoTime();
+                long bytes = TextureImporter.importTexture(source, cached);
+                stats.recordDecode(bytes, System.nanoTime() - start);
+            } else {
+                stats.recordCacheHit();
+            }
+
+            if (!Files.isRegularFile(cached))
+                throw new IOException("Failed to find texture " + name);
+
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(cached, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mapped.order(TextureFormat.BYTE_ORDER);
+
+            queueMips(texture, mapped);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to load texture " + name + ": " + e.getMessage());
+            texture.onFailed(e);
+        }
+    }
+
+    private void queueMips(Texture texture, ByteBuffer data) throws IOException {
+        if (data.capacity() < TextureFormat.HEADER_SIZE || data.getInt(0) != TextureFormat.MAGIC)
+            throw new IOException("Invalid texture file");
+        if (data.getInt(4) != TextureFormat.VERSION)
+            throw new IOException("Unsupported texture version " + data.getInt(4));
+
+        int width = data.getInt(TextureFormat.WIDTH);
+        int height = data.getInt(TextureFormat.HEIGHT);
+        int mipCount = data.getInt(TextureFormat.MIP_COUNT);
+        int format = data.getInt(TextureFormat.VK_FORMAT);
+        if (mipCount < 1 || mipCount > TextureFormat.MAX_MIPS)
+            throw new IOException("Corrupt texture file");
+
+        for (int mip = 0; mip < mipCount; mip++) {
+            int entry = TextureFormat.MIPS + mip * TextureFormat.MIP_ENTRY_SIZE;
+            if (data.getLong(entry) + data.getLong(entry + 8) > data.capacity())
+                throw new IOException("Truncated texture file");
+        }
+
+        AllocatedImage image = memoryAllocator.createImage(width, height, mipCount, format,
+                VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT);
+        texture.init(device, image);
+
+        for (int mip = mipCount - 1; mip >= 0; mip--) {
+            int entry = TextureFormat.MIPS + mip * TextureFormat.MIP_ENTRY_SIZE;
+            int offset = (int) data.getLong(entry);
+            int size = (int) data.getLong(entry + 8);
+            uploads.add(new MipUpload(texture, mip, data.slice(offset, size), uploadSequence.getAndIncrement()));
+        }
+    }
+
+    private void createSampler(VkPhysicalDevice physicalDevice) {
+        try (MemoryStack stack = stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(physicalDevice, properties);
+
+            VkSamplerCreateInfo samplerInfo = VkSamplerCreateInfo.calloc(stack);
+            samplerInfo.sType(VK_STRUCTURE_TYPE_SAMPLER_CREATE_INFO);
+            samplerInfo.magFilter(VK_FILTER_LINEAR);
+            samplerInfo.minFilter(VK_FILTER_LINEAR);
+            samplerInfo.mipmapMode(VK_SAMPLER_MIPMAP_MODE_LINEAR);
+            samplerInfo.addressModeU(VK_SAMPLER_ADDRESS_MODE_REPEAT);
+            samplerInfo.addressModeV(VK_SAMPLER_ADDRESS_MODE_REPEAT);
+            samplerInfo.addressModeW(VK_SAMPLER_ADDRESS_MODE_REPEAT);
+            samplerInfo.anisotropyEnable(true);
+            samplerInfo.maxAnisotropy(Math.min(16.0f, properties.limits().maxSamplerAnisotropy()));
+            samplerInfo.minLod(0.0f);
+            samplerInfo.maxLod(VK_LOD_CLAMP_NONE);
+
+            LongBuffer pSampler = stack.mallocLong(1);
+            if (vkCreateSampler(device, samplerInfo, null, pSampler) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create texture sampler");
+            sampler = ResourceRegistry.track(ResourceType.SAMPLER, pSampler.get(0));
+        }
+    }
+
+    private static class MipUpload implements Comparable<MipUpload> {
+        private final Texture texture;
+        private final int mip;
+        private final ByteBuffer data;
+        private final long size;
+        private final long sequence;
+
+        private MipUpload(Texture texture, int mip, ByteBuffer data, long sequence) {
+            this.texture = texture;
+            this.mip = mip;
+            this.data = data;
+            this.size = data.remaining();
+            this.sequence = sequence;
+        }
+
+        // Smallest first, then in the order they were queued.
+        @Override
+        public int compareTo(MipUpload other) {
+            int bySize = Long.compare(size, other.size);
+            return bySize != 0 ? bySize : Long.compare(sequence, other.sequence);
+        }
+    }
+}
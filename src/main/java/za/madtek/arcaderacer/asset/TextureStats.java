@@ -0,0 +1,69 @@
+package za.madtek.arcaderacer.asset;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TextureStats {
+
+    private final AtomicLong decoded = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    // Uploads are only recorded on the render thread.
+    private long uploadedBytes;
+    private long mipsUploaded;
+    private long firstUploadStart;
+    private long lastUploadEnd;
+
+    protected void recordDecode(long bytes, long nanos) {
+        decoded.incrementAndGet();
+        decodedBytes.addAndGet(bytes);
+        decodeNanos.addAndGet(nanos);
+    }
+
+    protected void recordCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    protected void recordUploadStart(long time) {
+        if (firstUploadStart == 0)
+            firstUploadStart = time;
+    }
+
+    protected void recordUpload(long bytes, long time) {
+        uploadedBytes += bytes;
+        mipsUploaded++;
+        lastUploadEnd = time;
+    }
+
+    public long getDecoded() {
+        return decoded.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    // Per decoder thread, including mip generation and writing the cache file.
+    public double getDecodeMiBPerSecond() {
+        long nanos = decodeNanos.get();
+        return nanos > 0 ? (decodedBytes.get() / (double) (1 << 20)) / (nanos / 1e9) : 0.0;
+    }
+
+    // Wall clock, from the first mip handed to the upload service to the last one resident.
+    public double getUploadMiBPerSecond() {
+        long nanos = lastUploadEnd - firstUploadStart;
+        return nanos > 0 ? (uploadedBytes / (double) (1 << 20)) / (nanos / 1e9) : 0.0;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Textures: %d decoded (%.1f MiB, %.1f MiB/s per thread), %d from cache, %d mips uploaded (%.1f MiB, %.1f MiB/s)%n",
+                decoded.get(), decodedBytes.get() / (double) (1 << 20), getDecodeMiBPerSecond(), cacheHits.get(),
+                mipsUploaded, uploadedBytes / (double) (1 << 20), getUploadMiBPerSecond());
+    }
+}
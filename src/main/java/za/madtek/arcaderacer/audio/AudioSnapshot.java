@@ -0,0 +1,42 @@
+package za.madtek.arcaderacer.audio;
+
+import java.util.Arrays;
+
+// What the audio thread needs from one frame of the game: the listener and every car's engine. Written whole by
+// the game thread, then handed over through AudioSystem's triple buffer, so neither side ever waits on the other.
+public class AudioSnapshot {
+
+    protected float listenerX;
+    protected float listenerY;
+    protected float listenerZ;
+    protected float listenerForwardX;
+    protected float listenerForwardY;
+    protected float listenerForwardZ;
+
+    protected int engineCount;
+    protected int[] entity = new int[64];
+    protected float[] x = new float[64];
+    protected float[] y = new float[64];
+    protected float[] z = new float[64];
+    protected float[] velocityX = new float[64];
+    protected float[] velocityY = new float[64];
+    protected float[] velocityZ = new float[64];
+    protected float[] rpm = new float[64];
+    protected float[] load = new float[64]; // throttle, 0 to 1
+
+    protected void ensureCapacity(int count) {
+        if (count <= entity.length)
+            return;
+
+        int capacity = Math.max(count, entity.length * 2);
+        entity = Arrays.copyOf(entity, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        velocityZ = Arrays.copyOf(velocityZ, capacity);
+        rpm = Arrays.copyOf(rpm, capacity);
+        load = Arrays.copyOf(load, capacity);
+    }
+}
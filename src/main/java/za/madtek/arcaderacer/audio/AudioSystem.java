@@ -0,0 +1,252 @@
+package za.madtek.arcaderacer.audio;
+
+import org.joml.Vector3fc;
+import org.lwjgl.openal.AL;
+import org.lwjgl.openal.ALC;
+import org.lwjgl.openal.ALCCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.entity.EntityStore;
+import za.madtek.arcaderacer.entity.Transforms;
+import za.madtek.arcaderacer.entity.Vehicles;
+import za.madtek.arcaderacer.profile.Profiler;
+
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.lwjgl.openal.AL10.*;
+import static org.lwjgl.openal.AL11.alSpeedOfSound;
+import static org.lwjgl.openal.ALC10.*;
+
+// Sound, on a thread of its own that owns the OpenAL device and context outright. The game thread never calls
+// OpenAL: once a frame it writes a snapshot of the listener and the cars and publishes it through a triple
+// buffer, and anything else (starting music) goes through a command queue. Neither can block, so a slow or
+// missing audio device can't hold up a frame; if the device can't be opened the thread just logs it and ends.
+public class AudioSystem {
+
+    private static final long UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final float SPEED_OF_SOUND = 343.0f;
+
+    // Engine note from road speed, through a five speed box shifting at the redline.
+    private static final float IDLE_RPM = 900.0f;
+    private static final float SHIFT_RPM = 4200.0f; // where each gear above first starts
+    private static final float REDLINE_RPM = 7200.0f;
+    private static final float[] GEAR_TOP_SPEEDS = {14.0f, 26.0f, 40.0f, 56.0f, 76.0f};
+
+    // Triple buffer state: index of the middle snapshot, plus FRESH when it's newer than the reader's.
+    private static final int FRESH = 4;
+
+    private final AudioSnapshot[] snapshots = {new AudioSnapshot(), new AudioSnapshot(), new AudioSnapshot()};
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private Thread thread;
+    private volatile boolean running;
+
+    // Audio thread only.
+    private long device;
+    private long context;
+    private SourcePool sourcePool;
+    private EngineVoices engineVoices;
+    private MusicStream music;
+
+    // Written by the audio thread for toString().
+    private volatile int statEngines;
+    private volatile int statPlaying;
+    private volatile int statFreeSources;
+    private volatile int statStolen;
+    private volatile int statMusicQueued;
+    private volatile int statUnderruns;
+    private volatile long statUpdateNanos;
+
+    public void init() {
+        if (!Globals.AUDIO_ENABLED)
+            return;
+
+        running = true;
+        thread = new Thread(this::run, "audio");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    // Game thread, once a frame. Engine pitch follows each car's road speed and gear, volume its throttle.
+    public void publish(EntityStore entities, Vector3fc listener, Vector3fc listenerTarget) {
+        AudioSnapshot snapshot = snapshots[back];
+        snapshot.listenerX = listener.x();
+        snapshot.listenerY = listener.y();
+        snapshot.listenerZ = listener.z();
+        snapshot.listenerForwardX = listenerTarget.x() - listener.x();
+        snapshot.listenerForwardY = listenerTarget.y() - listener.y();
+        snapshot.listenerForwardZ = listenerTarget.z() - listener.z();
+
+        Vehicles vehicles = entities.vehicles;
+        Transforms transforms = entities.transforms;
+        snapshot.ensureCapacity(vehicles.size());
+        int count = 0;
+        for (int i = 0; i < vehicles.size(); i++) {
+            int entity = vehicles.getEntity(i);
+            int transform = transforms.indexOf(entity);
+            if (transform < 0)
+                continue;
+
+            // Velocity along the car's nose, which is -Z rotated by its orientation.
+            float qx = transforms.rotationX.get(transform);
+            float qy = transforms.rotationY.get(transform);
+            float qz = transforms.rotationZ.get(transform);
+            float qw = transforms.rotationW.get(transform);
+            float speed = vehicles.forwardSpeed.get(i);
+
+            snapshot.entity[count] = entity;
+            snapshot.x[count] = transforms.positionX.get(transform);
+            snapshot.y[count] = transforms.positionY.get(transform);
+            snapshot.z[count] = transforms.positionZ.get(transform);
+            snapshot.velocityX[count] = -2.0f * (qx * qz + qw * qy) * speed;
+            snapshot.velocityY[count] = -2.0f * (qy * qz - qw * qx) * speed;
+            snapshot.velocityZ[count] = -(1.0f - 2.0f * (qx * qx + qy * qy)) * speed;
+            snapshot.rpm[count] = getRpm(Math.abs(speed));
+            snapshot.load[count] = vehicles.throttle.get(i);
+            count++;
+        }
+        snapshot.engineCount = count;
+
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    public void playMusic(Path file) {
+        commands.add(() -> {
+            if (music != null)
+                music.free();
+            music = new MusicStream(sourcePool, file);
+            if (!music.start(Globals.MUSIC_VOLUME * Globals.MASTER_VOLUME))
+                music = null;
+        });
+    }
+
+    private static float getRpm(float speed) {
+        float gearStart = 0.0f;
+        for (int gear = 0; gear < GEAR_TOP_SPEEDS.length; gear++) {
+            float gearEnd = GEAR_TOP_SPEEDS[gear];
+            if (speed < gearEnd || gear == GEAR_TOP_SPEEDS.length - 1) {
+                float t = Math.min(1.0f, (speed - gearStart) / (gearEnd - gearStart));
+                float from = gear == 0 ? IDLE_RPM : SHIFT_RPM;
+                return from + (REDLINE_RPM - from) * t;
+            }
+            gearStart = gearEnd;
+        }
+        return IDLE_RPM;
+    }
+
+    private void run() {
+        try {
+            open();
+        } catch (Exception e) {
+            System.err.println("Audio disabled: " + e.getMessage());
+            close();
+            return;
+        }
+
+        long next = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            Profiler.begin("audio update");
+
+            Runnable command;
+            while ((command = commands.poll()) != null)
+                command.run();
+
+            if ((middle.get() & FRESH) != 0)
+                front = middle.getAndSet(front) & ~FRESH;
+            AudioSnapshot snapshot = snapshots[front];
+
+            alListener3f(AL_POSITION, snapshot.listenerX, snapshot.listenerY, snapshot.listenerZ);
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                alListenerfv(AL_ORIENTATION, stack.floats(snapshot.listenerForwardX, snapshot.listenerForwardY,
+                        snapshot.listenerForwardZ, 0.0f, 1.0f, 0.0f));
+            }
+            engineVoices.update(snapshot, Globals.ENGINE_VOLUME * Globals.MASTER_VOLUME);
+            if (music != null)
+                music.update();
+
+            statEngines = engineVoices.getEngineCount();
+            statPlaying = engineVoices.getPlayingCount();
+            statFreeSources = sourcePool.getFreeCount();
+            statStolen = sourcePool.getStolenCount();
+            statMusicQueued = music != null ? music.getQueuedCount() : 0;
+            statUnderruns = music != null ? music.getUnderrunCount() : 0;
+            statUpdateNanos = System.nanoTime() - start;
+            Profiler.end();
+
+            next += UPDATE_NANOS;
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            else
+                next = System.nanoTime();
+        }
+
+        close();
+    }
+
+    private void open() {
+        device = alcOpenDevice(Globals.AUDIO_DEVICE);
+        if (device == MemoryUtil.NULL)
+            throw new RuntimeException("Failed to open audio device " + (Globals.AUDIO_DEVICE != null ? Globals.AUDIO_DEVICE : "(default)"));
+
+        ALCCapabilities deviceCapabilities = ALC.createCapabilities(device);
+        context = alcCreateContext(device, (IntBuffer) null);
+        if (context == MemoryUtil.NULL || !alcMakeContextCurrent(context))
+            throw new RuntimeException("Failed to create audio context");
+        AL.createCapabilities(deviceCapabilities);
+
+        alDistanceModel(AL_INVERSE_DISTANCE_CLAMPED);
+        alDopplerFactor(1.0f);
+        alSpeedOfSound(SPEED_OF_SOUND);
+        sourcePool = new SourcePool(Globals.AUDIO_SOURCES);
+        engineVoices = new EngineVoices(sourcePool, Math.min(Globals.ENGINE_VOICES, Globals.AUDIO_SOURCES - 1));
+        System.out.println("Audio: " + alcGetString(device, ALC_DEVICE_SPECIFIER) + ", " + Globals.AUDIO_SOURCES + " sources");
+    }
+
+    private void close() {
+        if (music != null)
+            music.free();
+        if (engineVoices != null)
+            engineVoices.free();
+        if (sourcePool != null)
+            sourcePool.free();
+        if (context != MemoryUtil.NULL) {
+            alcMakeContextCurrent(MemoryUtil.NULL);
+            alcDestroyContext(context);
+        }
+        if (device != MemoryUtil.NULL)
+            alcCloseDevice(device);
+        AL.setCurrentProcess(null);
+    }
+
+    public void free() {
+        if (thread == null)
+            return;
+
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Audio: %d/%d engines playing, %d sources free, %d stolen, music %d buffers queued, %d underruns, %.3f ms",
+                statPlaying, statEngines, statFreeSources, statStolen, statMusicQueued, statUnderruns, statUpdateNanos / 1e6);
+    }
+}
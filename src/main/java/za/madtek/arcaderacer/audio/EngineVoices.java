@@ -0,0 +1,227 @@
+package za.madtek.arcaderacer.audio;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.lwjgl.openal.AL10.*;
+import static org.lwjgl.openal.AL11.AL_SAMPLE_OFFSET;
+
+// Engine sound for every car, with only the loudest few actually playing. Every car in the snapshot is a virtual
+// voice whose loudness is worked out the way OpenAL will attenuate it; the loudest maxVoices get a real source,
+// the rest cost a multiply and a compare. A voice that's already playing is favoured by KEEP_BIAS so two cars at
+// about the same distance don't swap back and forth. All voices share one synthesized loop, pitched by rpm.
+// Audio thread only.
+public class EngineVoices {
+
+    private static final int SAMPLE_RATE = 22050;
+    private static final int BASE_FREQUENCY = 45; // Hz the loop fires at, which is BASE_RPM
+    private static final float BASE_RPM = 1350.0f; // four cylinders, four stroke: two firings a revolution
+    private static final int LOOP_PERIODS = 16;
+    private static final int HARMONICS = 12;
+    private static final long LOOP_SEED = 0xE9619EL;
+
+    private static final float REFERENCE_DISTANCE = 8.0f;
+    private static final float ROLLOFF = 1.0f;
+    private static final float MAX_DISTANCE = 400.0f;
+    private static final float IDLE_GAIN = 0.35f; // share of full volume off the throttle
+    private static final float KEEP_BIAS = 1.25f;
+    private static final float INAUDIBLE = 1e-3f;
+
+    private final SourcePool sourcePool;
+    private final int maxVoices;
+    private final int buffer;
+    private final int loopFrames;
+
+    private final int[] voiceEntity; // -1 for a free slot
+    private final int[] voiceHandle;
+    private final int[] voiceEngine; // index into this update's snapshot
+
+    private final int[] chosen; // snapshot indices of the loudest engines, loudest first
+    private final float[] chosenLoudness;
+    private int chosenCount;
+    private int engineCount;
+
+    protected EngineVoices(SourcePool sourcePool, int maxVoices) {
+        this.sourcePool = sourcePool;
+        this.maxVoices = maxVoices;
+        voiceEntity = new int[maxVoices];
+        voiceHandle = new int[maxVoices];
+        voiceEngine = new int[maxVoices];
+        chosen = new int[maxVoices];
+        chosenLoudness = new float[maxVoices];
+        for (int i = 0; i < maxVoices; i++)
+            voiceEntity[i] = -1;
+
+        loopFrames = SAMPLE_RATE * LOOP_PERIODS / BASE_FREQUENCY;
+        buffer = alGenBuffers();
+        ShortBuffer pcm = MemoryUtil.memAllocShort(loopFrames);
+        try {
+            synthesize(pcm);
+            alBufferData(buffer, AL_FORMAT_MONO16, pcm, SAMPLE_RATE);
+        } finally {
+            MemoryUtil.memFree(pcm);
+        }
+        if (alGetError() != AL_NO_ERROR)
+            throw new RuntimeException("Failed to create engine sound buffer");
+    }
+
+    // A whole number of firing periods of a lumpy harmonic series, so it loops without a click: harmonics falling
+    // off as 1/k at fixed random phases, and a half-rate component for the uneven beat of a real engine.
+    private void synthesize(ShortBuffer pcm) {
+        Random random = new Random(LOOP_SEED);
+        float[] phases = new float[HARMONICS + 1];
+        for (int k = 0; k <= HARMONICS; k++)
+            phases[k] = random.nextFloat() * (float) (Math.PI * 2.0);
+
+        float[] samples = new float[loopFrames];
+        float peak = 0.0f;
+        for (int n = 0; n < loopFrames; n++) {
+            double cycle = (double) n * BASE_FREQUENCY / SAMPLE_RATE * Math.PI * 2.0;
+            double value = 0.5 * Math.sin(cycle * 0.5 + phases[0]);
+            for (int k = 1; k <= HARMONICS; k++)
+                value += Math.sin(cycle * k + phases[k]) / k;
+            samples[n] = (float) value;
+            peak = Math.max(peak, Math.abs(samples[n]));
+        }
+
+        for (int n = 0; n < loopFrames; n++)
+            pcm.put(n, (short) (samples[n] / peak * 0.9f * Short.MAX_VALUE));
+    }
+
+    protected void update(AudioSnapshot snapshot, float gain) {
+        engineCount = snapshot.engineCount;
+        chooseLoudest(snapshot, gain);
+
+        // Give up sources for voices that dropped out, or that were stolen.
+        for (int slot = 0; slot < maxVoices; slot++) {
+            voiceEngine[slot] = -1;
+            if (voiceEntity[slot] < 0)
+                continue;
+
+            int engine = findChosen(snapshot, voiceEntity[slot]);
+            if (engine >= 0 && sourcePool.isValid(voiceHandle[slot])) {
+                voiceEngine[slot] = engine;
+            } else {
+                sourcePool.release(voiceHandle[slot]);
+                voiceEntity[slot] = -1;
+            }
+        }
+
+        for (int c = 0; c < chosenCount; c++) {
+            int engine = chosen[c];
+            if (findVoice(snapshot.entity[engine]) >= 0)
+                continue;
+
+            int handle = sourcePool.acquire(chosenLoudness[c]);
+            if (handle < 0)
+                break;
+
+            int slot = findVoice(-1);
+            voiceEntity[slot] = snapshot.entity[engine];
+            voiceHandle[slot] = handle;
+            voiceEngine[slot] = engine;
+
+            // Started part way into the loop by entity, so cars that start together aren't in phase.
+            int source = sourcePool.getSource(handle);
+            alSourcei(source, AL_BUFFER, buffer);
+            alSourcei(source, AL_LOOPING, AL_TRUE);
+            alSourcef(source, AL_REFERENCE_DISTANCE, REFERENCE_DISTANCE);
+            alSourcef(source, AL_ROLLOFF_FACTOR, ROLLOFF);
+            alSourcef(source, AL_MAX_DISTANCE, MAX_DISTANCE);
+            alSourcei(source, AL_SAMPLE_OFFSET, (int) ((snapshot.entity[engine] * 2654435761L & 0xFFFFFFFFL) % loopFrames));
+            setParameters(source, snapshot, engine, gain);
+            alSourcePlay(source);
+        }
+
+        for (int slot = 0; slot < maxVoices; slot++) {
+            int engine = voiceEngine[slot];
+            if (voiceEntity[slot] >= 0 && engine >= 0) {
+                sourcePool.setPriority(voiceHandle[slot], loudness(snapshot, engine, gain));
+                setParameters(sourcePool.getSource(voiceHandle[slot]), snapshot, engine, gain);
+            }
+        }
+    }
+
+    // Keeps the loudest maxVoices in chosen, in order, by insertion.
+    private void chooseLoudest(AudioSnapshot snapshot, float gain) {
+        chosenCount = 0;
+        for (int engine = 0; engine < snapshot.engineCount; engine++) {
+            float loudness = loudness(snapshot, engine, gain);
+            if (findVoice(snapshot.entity[engine]) >= 0)
+                loudness *= KEEP_BIAS;
+            if (loudness < INAUDIBLE || (chosenCount == maxVoices && loudness <= chosenLoudness[maxVoices - 1]))
+                continue;
+
+            int position = Math.min(chosenCount, maxVoices - 1);
+            while (position > 0 && chosenLoudness[position - 1] < loudness) {
+                chosen[position] = chosen[position - 1];
+                chosenLoudness[position] = chosenLoudness[position - 1];
+                position--;
+            }
+            chosen[position] = engine;
+            chosenLoudness[position] = loudness;
+            chosenCount = Math.min(maxVoices, chosenCount + 1);
+        }
+    }
+
+    // Source gain after OpenAL's inverse distance clamped attenuation.
+    private static float loudness(AudioSnapshot snapshot, int engine, float gain) {
+        float dx = snapshot.x[engine] - snapshot.listenerX;
+        float dy = snapshot.y[engine] - snapshot.listenerY;
+        float dz = snapshot.z[engine] - snapshot.listenerZ;
+        float distance = Math.max(REFERENCE_DISTANCE, Math.min(MAX_DISTANCE, (float) Math.sqrt(dx * dx + dy * dy + dz * dz)));
+        float attenuation = REFERENCE_DISTANCE / (REFERENCE_DISTANCE + ROLLOFF * (distance - REFERENCE_DISTANCE));
+        return engineGain(snapshot, engine, gain) * attenuation;
+    }
+
+    private static float engineGain(AudioSnapshot snapshot, int engine, float gain) {
+        return (IDLE_GAIN + (1.0f - IDLE_GAIN) * snapshot.load[engine]) * gain;
+    }
+
+    private static void setParameters(int source, AudioSnapshot snapshot, int engine, float gain) {
+        alSource3f(source, AL_POSITION, snapshot.x[engine], snapshot.y[engine], snapshot.z[engine]);
+        alSource3f(source, AL_VELOCITY, snapshot.velocityX[engine], snapshot.velocityY[engine], snapshot.velocityZ[engine]);
+        alSourcef(source, AL_PITCH, snapshot.rpm[engine] / BASE_RPM);
+        alSourcef(source, AL_GAIN, engineGain(snapshot, engine, gain));
+    }
+
+    private int findChosen(AudioSnapshot snapshot, int entity) {
+        for (int c = 0; c < chosenCount; c++) {
+            if (snapshot.entity[chosen[c]] == entity)
+                return chosen[c];
+        }
+        return -1;
+    }
+
+    private int findVoice(int entity) {
+        for (int slot = 0; slot < maxVoices; slot++) {
+            if (voiceEntity[slot] == entity)
+                return slot;
+        }
+        return -1;
+    }
+
+    public int getPlayingCount() {
+        int playing = 0;
+        for (int entity : voiceEntity) {
+            if (entity >= 0)
+                playing++;
+        }
+        return playing;
+    }
+
+    public int getEngineCount() {
+        return engineCount;
+    }
+
+    protected void free() {
+        for (int slot = 0; slot < maxVoices; slot++) {
+            if (voiceEntity[slot] >= 0)
+                sourcePool.release(voiceHandle[slot]);
+            voiceEntity[slot] = -1;
+        }
+        alDeleteBuffers(buffer);
+    }
+}
@@ -0,0 +1,140 @@
+package za.madtek.arcaderacer.audio;
+
+import org.lwjgl.stb.STBVorbisInfo;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+
+import static org.lwjgl.openal.AL10.*;
+import static org.lwjgl.stb.STBVorbis.*;
+
+// An Ogg Vorbis file played through a ring of OpenAL buffers, decoded a buffer at a time as the source finishes
+// with each one, so only BUFFER_COUNT * BUFFER_FRAMES frames are ever decoded ahead. Loops at the end. Audio
+// thread only; update() has to run more often than one buffer lasts or the source starves and is restarted.
+public class MusicStream {
+
+    private static final int BUFFER_COUNT = 4;
+    private static final int BUFFER_FRAMES = 8192; // about 0.19 s each at 44.1 kHz
+
+    private final SourcePool sourcePool;
+    private final int[] buffers = new int[BUFFER_COUNT];
+    private final Path file;
+    private long decoder;
+    private int channels;
+    private int sampleRate;
+    private int format;
+    private ShortBuffer pcm;
+    private int handle = -1;
+    private int underrunCount;
+
+    protected MusicStream(SourcePool sourcePool, Path file) {
+        this.sourcePool = sourcePool;
+        this.file = file;
+    }
+
+    // False, with the reason logged, if the file can't be opened or there's no source to play it on.
+    protected boolean start(float gain) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer error = stack.mallocInt(1);
+            decoder = stb_vorbis_open_filename(file.toString(), error, null);
+            if (decoder == MemoryUtil.NULL) {
+                System.err.println("Failed to open music " + file + ": stb_vorbis error " + error.get(0));
+                return false;
+            }
+
+            STBVorbisInfo info = STBVorbisInfo.malloc(stack);
+            stb_vorbis_get_info(decoder, info);
+            channels = Math.min(2, info.channels());
+            sampleRate = info.sample_rate();
+            format = channels == 2 ? AL_FORMAT_STEREO16 : AL_FORMAT_MONO16;
+        }
+
+        // Top priority: the music is never given up for an engine.
+        handle = sourcePool.acquire(Float.MAX_VALUE);
+        if (handle < 0) {
+            System.err.println("Failed to play music " + file + ": no free audio source");
+            stb_vorbis_close(decoder);
+            decoder = MemoryUtil.NULL;
+            return false;
+        }
+
+        pcm = MemoryUtil.memAllocShort(BUFFER_FRAMES * channels);
+        alGenBuffers(buffers);
+        int source = sourcePool.getSource(handle);
+        alSourcei(source, AL_SOURCE_RELATIVE, AL_TRUE);
+        alSourcef(source, AL_GAIN, gain);
+        for (int buffer : buffers) {
+            if (fill(buffer))
+                alSourceQueueBuffers(source, buffer);
+        }
+        alSourcePlay(source);
+        return true;
+    }
+
+    protected void update() {
+        if (handle < 0)
+            return;
+
+        int source = sourcePool.getSource(handle);
+        int processed = alGetSourcei(source, AL_BUFFERS_PROCESSED);
+        for (int i = 0; i < processed; i++) {
+            int buffer = alSourceUnqueueBuffers(source);
+            if (fill(buffer))
+                alSourceQueueBuffers(source, buffer);
+        }
+
+        // Stopped with buffers still queued means it ran dry between updates.
+        if (alGetSourcei(source, AL_SOURCE_STATE) != AL_PLAYING && alGetSourcei(source, AL_BUFFERS_QUEUED) > 0) {
+            underrunCount++;
+            alSourcePlay(source);
+        }
+    }
+
+    public void setGain(float gain) {
+        if (handle >= 0)
+            alSourcef(sourcePool.getSource(handle), AL_GAIN, gain);
+    }
+
+    // Decodes the next BUFFER_FRAMES frames into buffer, going back to the start at the end of the file.
+    private boolean fill(int buffer) {
+        pcm.clear();
+        int frames = stb_vorbis_get_samples_short_interleaved(decoder, channels, pcm);
+        if (frames == 0) {
+            stb_vorbis_seek_start(decoder);
+            frames = stb_vorbis_get_samples_short_interleaved(decoder, channels, pcm);
+            if (frames == 0)
+                return false;
+        }
+
+        pcm.limit(frames * channels);
+        alBufferData(buffer, format, pcm, sampleRate);
+        return true;
+    }
+
+    public int getQueuedCount() {
+        return handle < 0 ? 0 : alGetSourcei(sourcePool.getSource(handle), AL_BUFFERS_QUEUED);
+    }
+
+    public int getUnderrunCount() {
+        return underrunCount;
+    }
+
+    protected void free() {
+        if (handle >= 0) {
+            sourcePool.release(handle);
+            alDeleteBuffers(buffers);
+            handle = -1;
+        }
+        if (decoder != MemoryUtil.NULL) {
+            stb_vorbis_close(decoder);
+            decoder = MemoryUtil.NULL;
+        }
+        if (pcm != null) {
+            MemoryUtil.memFree(pcm);
+            pcm = null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package za.madtek.arcaderacer.audio;
+
+import static org.lwjgl.openal.AL10.*;
+
+// A fixed set of OpenAL sources, generated once and handed out by priority. When they're all taken, a request
+// steals the lowest priority source if it's lower than its own, so a quiet far-off car gives way to a loud close
+// one. Handles carry a generation, so an owner whose source was stolen finds out from isValid() instead of
+// playing through someone else's. Audio thread only.
+public class SourcePool {
+
+    private static final int INDEX_BITS = 8;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+    private final int[] sources;
+    private final int[] generations;
+    private final boolean[] inUse;
+    private final float[] priorities;
+    private int stolenCount;
+
+    protected SourcePool(int size) {
+        if (size > INDEX_MASK + 1)
+            throw new IllegalArgumentException("At most " + (INDEX_MASK + 1) + " sources");
+
+        sources = new int[size];
+        generations = new int[size];
+        inUse = new boolean[size];
+        priorities = new float[size];
+        for (int i = 0; i < size; i++) {
+            sources[i] = alGenSources();
+            if (alGetError() != AL_NO_ERROR) {
+                free(i);
+                throw new RuntimeException("Failed to generate audio source " + i + " of " + size);
+            }
+        }
+    }
+
+    // A handle, or -1 if every source is busy with something at least as important.
+    public int acquire(float priority) {
+        int chosen = -1;
+        for (int i = 0; i < sources.length; i++) {
+            if (!inUse[i]) {
+                chosen = i;
+                break;
+            }
+            if (priorities[i] < priority && (chosen < 0 || priorities[i] < priorities[chosen]))
+                chosen = i;
+        }
+        if (chosen < 0)
+            return -1;
+
+        if (inUse[chosen]) {
+            stolenCount++;
+            reset(chosen);
+        }
+        inUse[chosen] = true;
+        priorities[chosen] = priority;
+        return generations[chosen] << INDEX_BITS | chosen;
+    }
+
+    public boolean isValid(int handle) {
+        int index = handle & INDEX_MASK;
+        return handle >= 0 && inUse[index] && generations[index] == handle >>> INDEX_BITS;
+    }
+
+    public int getSource(int handle) {
+        return sources[handle & INDEX_MASK];
+    }
+
+    public void setPriority(int handle, float priority) {
+        if (isValid(handle))
+            priorities[handle & INDEX_MASK] = priority;
+    }
+
+    public void release(int handle) {
+        if (!isValid(handle))
+            return;
+
+        int index = handle & INDEX_MASK;
+        reset(index);
+        inUse[index] = false;
+    }
+
+    public int getFreeCount() {
+        int free = 0;
+        for (boolean used : inUse) {
+            if (!used)
+                free++;
+        }
+        return free;
+    }
+
+    public int getStolenCount() {
+        return stolenCount;
+    }
+
+    // Stopped, emptied and back to defaults, so the next owner starts from a clean source.
+    private void reset(int index) {
+        int source = sources[index];
+        alSourceStop(source);
+        alSourcei(source, AL_BUFFER, 0);
+        alSourcei(source, AL_LOOPING, AL_FALSE);
+        alSourcei(source, AL_SOURCE_RELATIVE, AL_FALSE);
+        alSourcef(source, AL_GAIN, 1.0f);
+        alSourcef(source, AL_PITCH, 1.0f);
+        alSource3f(source, AL_POSITION, 0.0f, 0.0f, 0.0f);
+        alSource3f(source, AL_VELOCITY, 0.0f, 0.0f, 0.0f);
+        generations[index] = (generations[index] + 1) & (Integer.MAX_VALUE >>> INDEX_BITS);
+    }
+
+    protected void free() {
+        free(sources.length);
+    }
+
+    private void free(int count) {
+        for (int i = 0; i < count; i++) {
+            alSourceStop(sources[i]);
+            alDeleteSources(sources[i]);
+        }
+    }
+}
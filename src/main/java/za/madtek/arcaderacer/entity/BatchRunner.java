@@ -0,0 +1,55 @@
+package za.madtek.arcaderacer.entity;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+// Runs a RangeTask over [0, count) in batches on the common fork-join pool, for per-tick work on a few dozen to a
+// few thousand entities where parallelForEachChunk's chunks are too coarse. The tasks are kept and reinitialised
+// between runs, so once warmed up a run allocates nothing. The calling thread takes the first batch itself.
+public class BatchRunner {
+
+    private Batch[] batches = new Batch[0];
+
+    // Not reentrant: one run at a time per runner.
+    public void run(int count, int batchSize, boolean parallel, RangeTask task) {
+        int batchCount = (count + batchSize - 1) / batchSize;
+        if (batchCount <= 1 || !parallel) {
+            task.run(0, count);
+            return;
+        }
+
+        if (batchCount > batches.length) {
+            int oldLength = batches.length;
+            batches = Arrays.copyOf(batches, batchCount);
+            for (int i = oldLength; i < batchCount; i++)
+                batches[i] = new Batch();
+        }
+
+        for (int i = 1; i < batchCount; i++) {
+            Batch batch = batches[i];
+            batch.reinitialize();
+            batch.task = task;
+            batch.start = i * batchSize;
+            batch.end = Math.min(count, batch.start + batchSize);
+            batch.fork();
+        }
+
+        task.run(0, batchSize);
+
+        for (int i = batchCount - 1; i >= 1; i--) {
+            batches[i].join();
+            batches[i].task = null;
+        }
+    }
+
+    private static class Batch extends RecursiveAction {
+        private RangeTask task;
+        private int start;
+        private int end;
+
+        @Override
+        protected void compute() {
+            task.run(start, end);
+        }
+    }
+}
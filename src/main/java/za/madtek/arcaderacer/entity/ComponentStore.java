@@ -0,0 +1,147 @@
+package za.madtek.arcaderacer.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Sparse set: entities map to a dense index and every column is packed by that index, so iterating a component
+// is a linear walk with no holes. Removal swaps the last entity into the gap, which means dense indices are only
+// stable until the next add or remove; hold on to entity IDs, not indices.
+public class ComponentStore {
+
+    public static final int CHUNK_SIZE = 1024;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final List<FloatColumn> floatColumns = new ArrayList<>();
+    private final List<IntColumn> intColumns = new ArrayList<>();
+    private final List<ObjectColumn<?>> objectColumns = new ArrayList<>();
+
+    private int[] sparse = new int[INITIAL_CAPACITY];
+    private int[] entities = new int[INITIAL_CAPACITY];
+    private int capacity = INITIAL_CAPACITY;
+    private int size;
+
+    protected ComponentStore() {
+        Arrays.fill(sparse, -1);
+    }
+
+    protected FloatColumn floatColumn() {
+        FloatColumn column = new FloatColumn(capacity);
+        floatColumns.add(column);
+        return column;
+    }
+
+    protected IntColumn intColumn() {
+        IntColumn column = new IntColumn(capacity);
+        intColumns.add(column);
+        return column;
+    }
+
+    protected <T> ObjectColumn<T> objectColumn() {
+        ObjectColumn<T> column = new ObjectColumn<>(capacity);
+        objectColumns.add(column);
+        return column;
+    }
+
+    // Returns the dense index; the caller is expected to fill in the columns.
+    public int add(int entity) {
+        int existing = indexOf(entity);
+        if (existing >= 0)
+            return existing;
+
+        int index = Entity.index(entity);
+        if (index >= sparse.length) {
+            int oldLength = sparse.length;
+            sparse = Arrays.copyOf(sparse, Math.max(index + 1, oldLength * 2));
+            Arrays.fill(sparse, oldLength, sparse.length, -1);
+        }
+
+        if (size == capacity)
+            grow(capacity * 2);
+
+        sparse[index] = size;
+        entities[size] = entity;
+        return size++;
+    }
+
+    public void remove(int entity) {
+        int dense = indexOf(entity);
+        if (dense < 0)
+            return;
+
+        int last = size - 1;
+        if (dense != last) {
+            floatColumns.forEach(column -> column.move(last, dense));
+            intColumns.forEach(column -> column.move(last, dense));
+            objectColumns.forEach(column -> column.move(last, dense));
+            entities[dense] = entities[last];
+            sparse[Entity.index(entities[dense])] = dense;
+        } else {
+            objectColumns.forEach(column -> column.clear(last));
+        }
+
+        sparse[Entity.index(entity)] = -1;
+        size--;
+    }
+
+    public boolean has(int entity) {
+        return indexOf(entity) >= 0;
+    }
+
+    // Dense index of the entity, or -1 if it doesn't have this component.
+    public int indexOf(int entity) {
+        int index = Entity.index(entity);
+        if (entity < 0 || index >= sparse.length)
+            return -1;
+
+        int dense = sparse[index];
+        return dense >= 0 && entities[dense] == entity ? dense : -1;
+    }
+
+    public int getEntity(int dense) {
+        return entities[dense];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEachChunk(RangeTask task) {
+        for (int start = 0; start < size; start += CHUNK_SIZE)
+            task.run(start, Math.min(size, start + CHUNK_SIZE));
+    }
+
+    // Chunks run on the common fork-join pool. The task may write the columns of the index range it's given, but
+    // nothing may add or remove entities until this returns.
+    public void parallelForEachChunk(RangeTask task) {
+        int count = size;
+        int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunks <= 1) {
+            forEachChunk(task);
+            return;
+        }
+
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int start = chunk * CHUNK_SIZE;
+            task.run(start, Math.min(count, start + CHUNK_SIZE));
+        });
+    }
+
+    protected void free() {
+        floatColumns.forEach(FloatColumn::free);
+        intColumns.forEach(IntColumn::free);
+        objectColumns.forEach(ObjectColumn::free);
+        floatColumns.clear();
+        intColumns.clear();
+        objectColumns.clear();
+    }
+
+    private void grow(int newCapacity) {
+        floatColumns.forEach(column -> column.grow(newCapacity));
+        intColumns.forEach(column -> column.grow(newCapacity));
+        objectColumns.forEach(column -> column.grow(newCapacity));
+        entities = Arrays.copyOf(entities, newCapacity);
+        capacity = newCapacity;
+    }
+}
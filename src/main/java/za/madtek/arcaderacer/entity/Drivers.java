@@ -0,0 +1,27 @@
+package za.madtek.arcaderacer.entity;
+
+// Cars driven by DriverSystem. Each follows its stage's racing line at its own share of the line's speed, moves
+// off the line to get past slower cars, and takes the forks its route says.
+public class Drivers extends ComponentStore {
+
+    public final FloatColumn pace = floatColumn(); // share of the racing line's speed, about 1 for a rival
+    public final FloatColumn offset = floatColumn(); // metres right of the racing line, eased in and out to pass
+    public final IntColumn route = intColumn(); // bit per row: set takes the right fork at the end of that row
+    public final FloatColumn recovery = floatColumn(); // seconds left backing away from something it got stuck on
+
+    protected Drivers() {
+    }
+
+    public int add(int entity, float pace, int route) {
+        int index = add(entity);
+        this.pace.set(index, pace);
+        offset.set(index, 0.0f);
+        this.route.set(index, route);
+        recovery.set(index, 0.0f);
+        return index;
+    }
+
+    public boolean takesRightFork(int index, int row) {
+        return (route.get(index) & 1 << row) != 0;
+    }
+}
@@ -0,0 +1,25 @@
+package za.madtek.arcaderacer.entity;
+
+// Entities are plain ints: the low bits index the component stores, the high bits are a generation that is bumped
+// whenever an index is reused, so a stale ID held by someone else never aliases the new entity.
+public class Entity {
+
+    public static final int NONE = -1;
+
+    protected static final int INDEX_BITS = 20;
+    protected static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    protected static final int GENERATION_MASK = (1 << (31 - INDEX_BITS)) - 1;
+    public static final int MAX_ENTITIES = 1 << INDEX_BITS;
+
+    public static int index(int entity) {
+        return entity & INDEX_MASK;
+    }
+
+    public static int generation(int entity) {
+        return entity >>> INDEX_BITS;
+    }
+
+    protected static int create(int index, int generation) {
+        return ((generation & GENERATION_MASK) << INDEX_BITS) | index;
+    }
+}
@@ -0,0 +1,90 @@
+package za.madtek.arcaderacer.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Hands out entity IDs and owns the component stores. Destroying is deferred to flushDestroyed() so systems can
+// destroy entities while iterating without the dense arrays shifting underneath them.
+public class EntityStore {
+
+    private final List<ComponentStore> stores = new ArrayList<>();
+
+    public final Transforms transforms = register(new Transforms());
+    public final Velocities velocities = register(new Velocities());
+    public final Renderables renderables = register(new Renderables());
+    public final Vehicles vehicles = register(new Vehicles());
+    public final Drivers drivers = register(new Drivers());
+
+    private int[] generations = new int[256];
+    private int[] freeIndices = new int[256];
+    private int freeCount;
+    private int nextIndex;
+    private int alive;
+
+    private int[] pendingDestroy = new int[64];
+    private int pendingCount;
+
+    public int create() {
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            if (nextIndex == Entity.MAX_ENTITIES)
+                throw new IllegalStateException("Out of entity IDs");
+
+            index = nextIndex++;
+            if (index == generations.length)
+                generations = Arrays.copyOf(generations, generations.length * 2);
+        }
+
+        alive++;
+        return Entity.create(index, generations[index]);
+    }
+
+    public boolean isAlive(int entity) {
+        int index = Entity.index(entity);
+        return entity >= 0 && index < nextIndex && Entity.create(index, generations[index]) == entity;
+    }
+
+    public void destroy(int entity) {
+        if (pendingCount == pendingDestroy.length)
+            pendingDestroy = Arrays.copyOf(pendingDestroy, pendingCount * 2);
+        pendingDestroy[pendingCount++] = entity;
+    }
+
+    // Call between system updates, never during one.
+    public void flushDestroyed() {
+        for (int i = 0; i < pendingCount; i++) {
+            int entity = pendingDestroy[i];
+            if (!isAlive(entity))
+                continue;
+
+            for (ComponentStore store : stores)
+                store.remove(entity);
+
+            int index = Entity.index(entity);
+            generations[index] = (generations[index] + 1) & Entity.GENERATION_MASK;
+            if (freeCount == freeIndices.length)
+                freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+            freeIndices[freeCount++] = index;
+            alive--;
+        }
+
+        pendingCount = 0;
+    }
+
+    public int getAliveCount() {
+        return alive;
+    }
+
+    public void free() {
+        stores.forEach(ComponentStore::free);
+        stores.clear();
+    }
+
+    protected <T extends ComponentStore> T register(T store) {
+        stores.add(store);
+        return store;
+    }
+}
@@ -0,0 +1,40 @@
+package za.madtek.arcaderacer.entity;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+// One field of a component, for every entity in the store, packed by dense index. Off-heap so the GC never sees
+// it and whole columns can be copied straight into GPU buffers.
+public class FloatColumn {
+
+    private FloatBuffer data;
+
+    protected FloatColumn(int capacity) {
+        data = memAllocFloat(capacity);
+    }
+
+    public float get(int index) {
+        return data.get(index);
+    }
+
+    public void set(int index, float value) {
+        data.put(index, value);
+    }
+
+    public long getAddress() {
+        return memAddress(data);
+    }
+
+    protected void grow(int capacity) {
+        data = memRealloc(data, capacity);
+    }
+
+    protected void move(int from, int to) {
+        data.put(to, data.get(from));
+    }
+
+    protected void free() {
+        memFree(data);
+    }
+}
@@ -0,0 +1,38 @@
+package za.madtek.arcaderacer.entity;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+public class IntColumn {
+
+    private IntBuffer data;
+
+    protected IntColumn(int capacity) {
+        data = memAllocInt(capacity);
+    }
+
+    public int get(int index) {
+        return data.get(index);
+    }
+
+    public void set(int index, int value) {
+        data.put(index, value);
+    }
+
+    public long getAddress() {
+        return memAddress(data);
+    }
+
+    protected void grow(int capacity) {
+        data = memRealloc(data, capacity);
+    }
+
+    protected void move(int from, int to) {
+        data.put(to, data.get(from));
+    }
+
+    protected void free() {
+        memFree(data);
+    }
+}
@@ -0,0 +1,47 @@
+package za.madtek.arcaderacer.entity;
+
+// Integrates velocities into transforms. Anything physically simulated is stepped by the physics instead; this
+// is for props and effects that just drift or spin.
+public class MovementSystem {
+
+    public static void update(EntityStore entities, float delta) {
+        Transforms transforms = entities.transforms;
+        Velocities velocities = entities.velocities;
+
+        velocities.parallelForEachChunk((start, end) -> {
+            for (int i = start; i < end; i++) {
+                int transform = transforms.indexOf(velocities.getEntity(i));
+                if (transform < 0)
+                    continue;
+
+                transforms.positionX.set(transform, transforms.positionX.get(transform) + velocities.linearX.get(i) * delta);
+                transforms.positionY.set(transform, transforms.positionY.get(transform) + velocities.linearY.get(i) * delta);
+                transforms.positionZ.set(transform, transforms.positionZ.get(transform) + velocities.linearZ.get(i) * delta);
+
+                float wx = velocities.angularX.get(i);
+                float wy = velocities.angularY.get(i);
+                float wz = velocities.angularZ.get(i);
+                if (wx == 0.0f && wy == 0.0f && wz == 0.0f)
+                    continue;
+
+                // q' = q + 0.5 * dt * (w, 0) * q, then renormalise.
+                float qx = transforms.rotationX.get(transform);
+                float qy = transforms.rotationY.get(transform);
+                float qz = transforms.rotationZ.get(transform);
+                float qw = transforms.rotationW.get(transform);
+                float h = 0.5f * delta;
+
+                float nx = qx + h * (wx * qw + wy * qz - wz * qy);
+                float ny = qy + h * (wy * qw + wz * qx - wx * qz);
+                float nz = qz + h * (wz * qw + wx * qy - wy * qx);
+                float nw = qw - h * (wx * qx + wy * qy + wz * qz);
+                float inverseLength = 1.0f / (float) Math.sqrt(nx * nx + ny * ny + nz * nz + nw * nw);
+
+                transforms.rotationX.set(transform, nx * inverseLength);
+                transforms.rotationY.set(transform, ny * inverseLength);
+                transforms.rotationZ.set(transform, nz * inverseLength);
+                transforms.rotationW.set(transform, nw * inverseLength);
+            }
+        });
+    }
+}
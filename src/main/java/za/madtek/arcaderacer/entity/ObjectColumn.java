@@ -0,0 +1,41 @@
+package za.madtek.arcaderacer.entity;
+
+import java.util.Arrays;
+
+// For the few component fields that have to be references (meshes, materials). Lives on the heap, unlike the
+// primitive columns, so keep these to a minimum.
+public class ObjectColumn<T> {
+
+    private Object[] data;
+
+    protected ObjectColumn(int capacity) {
+        data = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) data[index];
+    }
+
+    public void set(int index, T value) {
+        data[index] = value;
+    }
+
+    protected void grow(int capacity) {
+        data = Arrays.copyOf(data, capacity);
+    }
+
+    // The vacated slot is cleared so nothing is kept alive by a removed entity.
+    protected void move(int from, int to) {
+        data[to] = data[from];
+        data[from] = null;
+    }
+
+    protected void clear(int index) {
+        data[index] = null;
+    }
+
+    protected void free() {
+        Arrays.fill(data, null);
+    }
+}
@@ -0,0 +1,8 @@
+package za.madtek.arcaderacer.entity;
+
+@FunctionalInterface
+public interface RangeTask {
+
+    // Processes dense indices [start, end) of a component store.
+    void run(int start, int end);
+}
@@ -0,0 +1,110 @@
+package za.madtek.arcaderacer.entity;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import za.madtek.arcaderacer.asset.Mesh;
+
+// Anything the visibility stage should consider drawing. Placed by the entity's transform if it has one, and at
+// the origin otherwise (track chunks are built in world space).
+public class Renderables extends ComponentStore {
+
+    public final ObjectColumn<Mesh> mesh = objectColumn();
+    public final IntColumn pipeline = intColumn(); // index into VisibilityStage.PIPELINES
+    public final IntColumn color = intColumn(); // RGBA8, red in the high byte
+
+    // Copy of the transform the bounds were last computed from, so culling never leaves this store.
+    public final FloatColumn positionX = floatColumn();
+    public final FloatColumn positionY = floatColumn();
+    public final FloatColumn positionZ = floatColumn();
+    public final FloatColumn rotationX = floatColumn();
+    public final FloatColumn rotationY = floatColumn();
+    public final FloatColumn rotationZ = floatColumn();
+    public final FloatColumn rotationW = floatColumn();
+    public final FloatColumn scale = floatColumn();
+
+    // World-space bounds, only valid once ready is set.
+    public final IntColumn ready = intColumn(); // 1 once the mesh is drawable and the bounds are filled in
+    public final FloatColumn centerX = floatColumn();
+    public final FloatColumn centerY = floatColumn();
+    public final FloatColumn centerZ = floatColumn();
+    public final FloatColumn radius = floatColumn();
+    public final FloatColumn minX = floatColumn();
+    public final FloatColumn minY = floatColumn();
+    public final FloatColumn minZ = floatColumn();
+    public final FloatColumn maxX = floatColumn();
+    public final FloatColumn maxY = floatColumn();
+    public final FloatColumn maxZ = floatColumn();
+
+    protected Renderables() {
+    }
+
+    public int add(int entity, Mesh mesh, int pipeline, int color) {
+        int index = add(entity);
+        this.mesh.set(index, mesh);
+        this.pipeline.set(index, pipeline);
+        this.color.set(index, color);
+
+        positionX.set(index, 0.0f);
+        positionY.set(index, 0.0f);
+        positionZ.set(index, 0.0f);
+        rotationX.set(index, 0.0f);
+        rotationY.set(index, 0.0f);
+        rotationZ.set(index, 0.0f);
+        rotationW.set(index, 1.0f);
+        scale.set(index, 1.0f);
+        ready.set(index, 0);
+        return index;
+    }
+
+    // Copies the transform in if it moved. Returns whether it did, so the caller knows to update the bounds.
+    public boolean syncTransform(int index, Transforms transforms, int transform) {
+        float px = transforms.positionX.get(transform);
+        float py = transforms.positionY.get(transform);
+        float pz = transforms.positionZ.get(transform);
+        float qx = transforms.rotationX.get(transform);
+        float qy = transforms.rotationY.get(transform);
+        float qz = transforms.rotationZ.get(transform);
+        float qw = transforms.rotationW.get(transform);
+        float s = transforms.scale.get(transform);
+        if (px == positionX.get(index) && py == positionY.get(index) && pz == positionZ.get(index)
+                && qx == rotationX.get(index) && qy == rotationY.get(index) && qz == rotationZ.get(index)
+                && qw == rotationW.get(index) && s == scale.get(index))
+            return false;
+
+        positionX.set(index, px);
+        positionY.set(index, py);
+        positionZ.set(index, pz);
+        rotationX.set(index, qx);
+        rotationY.set(index, qy);
+        rotationZ.set(index, qz);
+        rotationW.set(index, qw);
+        scale.set(index, s);
+        return true;
+    }
+
+    // The mesh must be set. model and the vectors are scratch space.
+    public void updateBounds(int index, Matrix4f model, Vector3f min, Vector3f max) {
+        Mesh mesh = this.mesh.get(index);
+        getModelMatrix(index, model);
+
+        model.transformPosition(min.set(mesh.getCenter()));
+        centerX.set(index, min.x);
+        centerY.set(index, min.y);
+        centerZ.set(index, min.z);
+        radius.set(index, mesh.getRadius() * scale.get(index));
+
+        model.transformAab(mesh.getBoundsMin(), mesh.getBoundsMax(), min, max);
+        minX.set(index, min.x);
+        minY.set(index, min.y);
+        minZ.set(index, min.z);
+        maxX.set(index, max.x);
+        maxY.set(index, max.y);
+        maxZ.set(index, max.z);
+    }
+
+    public Matrix4f getModelMatrix(int index, Matrix4f dest) {
+        float s = scale.get(index);
+        return dest.translationRotateScale(positionX.get(index), positionY.get(index), positionZ.get(index),
+                rotationX.get(index), rotationY.get(index), rotationZ.get(index), rotationW.get(index), s, s, s);
+    }
+}
@@ -0,0 +1,58 @@
+package za.madtek.arcaderacer.entity;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+// World position, orientation and uniform scale.
+public class Transforms extends ComponentStore {
+
+    public final FloatColumn positionX = floatColumn();
+    public final FloatColumn positionY = floatColumn();
+    public final FloatColumn positionZ = floatColumn();
+    public final FloatColumn rotationX = floatColumn();
+    public final FloatColumn rotationY = floatColumn();
+    public final FloatColumn rotationZ = floatColumn();
+    public final FloatColumn rotationW = floatColumn();
+    public final FloatColumn scale = floatColumn();
+
+    protected Transforms() {
+    }
+
+    public int add(int entity, Vector3fc position, Quaternionfc rotation, float scale) {
+        int index = add(entity);
+        setPosition(index, position);
+        setRotation(index, rotation);
+        this.scale.set(index, scale);
+        return index;
+    }
+
+    public Vector3f getPosition(int index, Vector3f dest) {
+        return dest.set(positionX.get(index), positionY.get(index), positionZ.get(index));
+    }
+
+    public void setPosition(int index, Vector3fc position) {
+        positionX.set(index, position.x());
+        positionY.set(index, position.y());
+        positionZ.set(index, position.z());
+    }
+
+    public Quaternionf getRotation(int index, Quaternionf dest) {
+        return dest.set(rotationX.get(index), rotationY.get(index), rotationZ.get(index), rotationW.get(index));
+    }
+
+    public void setRotation(int index, Quaternionfc rotation) {
+        rotationX.set(index, rotation.x());
+        rotationY.set(index, rotation.y());
+        rotationZ.set(index, rotation.z());
+        rotationW.set(index, rotation.w());
+    }
+
+    public Matrix4f getModelMatrix(int index, Matrix4f dest) {
+        float s = scale.get(index);
+        return dest.translationRotateScale(positionX.get(index), positionY.get(index), positionZ.get(index),
+                rotationX.get(index), rotationY.get(index), rotationZ.get(index), rotationW.get(index), s, s, s);
+    }
+}
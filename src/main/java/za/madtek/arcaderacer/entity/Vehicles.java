@@ -0,0 +1,68 @@
+package za.madtek.arcaderacer.entity;
+
+import za.madtek.arcaderacer.track.PlacedStage;
+
+// Cars, simulated in track space by VehiclePhysics: where they are along and across the stage they're on, and how
+// they're moving relative to their own heading. Inputs are written by whoever drives the car before each step.
+public class Vehicles extends ComponentStore {
+
+    public static final int GROUNDED = 1;
+    public static final int DRIFTING = 1 << 1;
+    public static final int WALL_CONTACT = 1 << 2; // touched a track edge this step
+    public static final int LANDED = 1 << 3; // came down from a jump this step
+    public static final int RAIL = 1 << 4; // moved along the road by its AI driver instead of simulated
+    public static final int COLLISION = 1 << 5; // hit another car or a prop this step
+
+    public final ObjectColumn<PlacedStage> stage = objectColumn();
+    public final FloatColumn distance = floatColumn(); // metres along the stage's centre line
+    public final FloatColumn stageStart = floatColumn(); // course distance covered before this stage
+    public final FloatColumn lateral = floatColumn(); // metres right of the centre line
+    public final FloatColumn height = floatColumn(); // above the start of the stage
+    public final FloatColumn yaw = floatColumn(); // heading relative to the road, positive to the right
+    public final FloatColumn forwardSpeed = floatColumn();
+    public final FloatColumn sideSpeed = floatColumn(); // positive sliding right
+    public final FloatColumn yawRate = floatColumn();
+    public final FloatColumn verticalSpeed = floatColumn();
+    public final IntColumn flags = intColumn();
+
+    public final FloatColumn steer = floatColumn(); // -1 full left to 1 full right
+    public final FloatColumn throttle = floatColumn(); // 0 to 1
+    public final FloatColumn brake = floatColumn(); // 0 to 1; held while steering at speed starts a drift
+
+    protected Vehicles() {
+    }
+
+    // At rest on the road, facing along it.
+    public int add(int entity, PlacedStage stage, float distance, float lateral) {
+        int index = add(entity);
+        this.stage.set(index, stage);
+        this.distance.set(index, distance);
+        stageStart.set(index, 0.0f);
+        this.lateral.set(index, lateral);
+        height.set(index, stage.getStage().getHeight(distance));
+        yaw.set(index, 0.0f);
+        forwardSpeed.set(index, 0.0f);
+        sideSpeed.set(index, 0.0f);
+        yawRate.set(index, 0.0f);
+        verticalSpeed.set(index, 0.0f);
+        flags.set(index, GROUNDED);
+        setInput(index, 0.0f, 0.0f, 0.0f);
+        return index;
+    }
+
+    public void setInput(int index, float steer, float throttle, float brake) {
+        this.steer.set(index, steer);
+        this.throttle.set(index, throttle);
+        this.brake.set(index, brake);
+    }
+
+    // Metres driven along the course, whichever way the forks went, which is what race order and AI level of
+    // detail go by.
+    public float getCourseDistance(int index) {
+        return stageStart.get(index) + distance.get(index);
+    }
+
+    public boolean hasFlag(int index, int flag) {
+        return (flags.get(index) & flag) != 0;
+    }
+}
@@ -0,0 +1,45 @@
+package za.madtek.arcaderacer.entity;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+// Linear velocity in units per second and angular velocity in radians per second, both in world space.
+public class Velocities extends ComponentStore {
+
+    public final FloatColumn linearX = floatColumn();
+    public final FloatColumn linearY = floatColumn();
+    public final FloatColumn linearZ = floatColumn();
+    public final FloatColumn angularX = floatColumn();
+    public final FloatColumn angularY = floatColumn();
+    public final FloatColumn angularZ = floatColumn();
+
+    protected Velocities() {
+    }
+
+    public int add(int entity, Vector3fc linear, Vector3fc angular) {
+        int index = add(entity);
+        setLinear(index, linear);
+        setAngular(index, angular);
+        return index;
+    }
+
+    public Vector3f getLinear(int index, Vector3f dest) {
+        return dest.set(linearX.get(index), linearY.get(index), linearZ.get(index));
+    }
+
+    public void setLinear(int index, Vector3fc linear) {
+        linearX.set(index, linear.x());
+        linearY.set(index, linear.y());
+        linearZ.set(index, linear.z());
+    }
+
+    public Vector3f getAngular(int index, Vector3f dest) {
+        return dest.set(angularX.get(index), angularY.get(index), angularZ.get(index));
+    }
+
+    public void setAngular(int index, Vector3fc angular) {
+        angularX.set(index, angular.x());
+        angularY.set(index, angular.y());
+        angularZ.set(index, angular.z());
+    }
+}
@@ -0,0 +1,101 @@
+package za.madtek.arcaderacer.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fixed size ring of timestamped input events for exactly one producer and one consumer, which never lock or
+// allocate. Events are stored column-wise in preallocated arrays; the producer publishes a slot by moving tail
+// past it with a release store, and the consumer frees it the same way with head. When the ring is full new
+// events are dropped and counted, so a stalled consumer can't make the producer wait.
+public class InputQueue {
+
+    private final int mask;
+    private final long[] times;
+    private final int[] types;
+    private final int[] codes;
+    private final float[] values;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long cachedHead; // producer's last look at head
+    private long cachedTail; // consumer's last look at tail
+
+    private volatile long droppedCount;
+    private volatile int highWater;
+
+    public InputQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Input queue capacity must be a power of two: " + capacity);
+
+        mask = capacity - 1;
+        times = new long[capacity];
+        types = new int[capacity];
+        codes = new int[capacity];
+        values = new float[capacity];
+    }
+
+    // Producer only. False if the ring was full and the event was dropped.
+    public boolean offer(long time, int type, int code, float value) {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) {
+                droppedCount++;
+                return false;
+            }
+        }
+
+        int slot = (int) t & mask;
+        times[slot] = time;
+        types[slot] = type;
+        codes[slot] = code;
+        values[slot] = value;
+        tail.lazySet(t + 1);
+
+        int used = (int) (t + 1 - cachedHead);
+        if (used > highWater)
+            highWater = used;
+        return true;
+    }
+
+    // Consumer only. The peek methods read the oldest event, which stays queued until pop().
+    public boolean isEmpty() {
+        long h = head.get();
+        if (h < cachedTail)
+            return false;
+        cachedTail = tail.get();
+        return h >= cachedTail;
+    }
+
+    public long peekTime() {
+        return times[(int) head.get() & mask];
+    }
+
+    public int peekType() {
+        return types[(int) head.get() & mask];
+    }
+
+    public int peekCode() {
+        return codes[(int) head.get() & mask];
+    }
+
+    public float peekValue() {
+        return values[(int) head.get() & mask];
+    }
+
+    public void pop() {
+        head.lazySet(head.get() + 1);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    // Most events ever queued at once, as seen by the producer.
+    public int getHighWater() {
+        return highWater;
+    }
+}
@@ -0,0 +1,254 @@
+package za.madtek.arcaderacer.input;
+
+import org.lwjgl.glfw.GLFWGamepadState;
+import org.lwjgl.glfw.GLFWJoystickCallback;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.Window;
+
+import java.util.Arrays;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+// Keyboard and gamepad driving controls, handed to the simulation a tick at a time. GLFW callbacks and gamepad
+// sampling stamp every change with System.nanoTime() and push it onto an InputQueue; before each tick the
+// events up to the moment that tick stands for are applied, in order, and the rest wait for a later tick. So a
+// frame that runs several ticks to catch up doesn't give its earlier ticks input that hadn't happened yet, and
+// a key tapped and released between two ticks still counts for one. Key steering is eased per tick, so it
+// swings at the same rate whatever the frame rate.
+public class InputSystem {
+
+    public static final int KEY = 0; // code is the GLFW key, value 1 pressed or 0 released
+    public static final int GAMEPAD_AXIS = 1; // code is the GLFW gamepad axis, value -1 to 1
+    public static final int GAMEPAD_BUTTON = 2; // code is the GLFW gamepad button, value 1 pressed or 0 released
+    public static final int GAMEPAD_CONNECTED = 3; // code is the joystick id, value 1 connected or 0 gone
+
+    private static final float AXIS_EPSILON = 1.0f / 256.0f; // smaller stick movements aren't worth an event
+    private static final float STICK_DEAD_ZONE = 0.12f;
+    private static final float TRIGGER_DEAD_ZONE = 0.05f;
+    private static final float STEER_RATE = 5.0f; // key steering, full lock per second
+    private static final float CENTRE_RATE = 8.0f; // back to straight once the keys are let go
+    private static final int LATENCY_WINDOW = 256; // events the max latency is taken over
+
+    private final InputQueue queue = new InputQueue(Globals.INPUT_QUEUE_SIZE);
+
+    // Producer: GLFW callbacks and sampleGamepad(), on the thread that polls the window's events.
+    private GLFWGamepadState gamepadState;
+    private int gamepad = -1;
+    private final float[] sampledAxes = new float[GLFW_GAMEPAD_AXIS_LAST + 1];
+    private final byte[] sampledButtons = new byte[GLFW_GAMEPAD_BUTTON_LAST + 1];
+    private long pollTime;
+
+    // Consumer: the simulation, in apply().
+    private final boolean[] keysHeld = new boolean[GLFW_KEY_LAST + 1];
+    private final boolean[] keysTapped = new boolean[GLFW_KEY_LAST + 1]; // pressed during this tick, even if let go
+    private final float[] axes = new float[GLFW_GAMEPAD_AXIS_LAST + 1];
+    private final boolean[] buttonsHeld = new boolean[GLFW_GAMEPAD_BUTTON_LAST + 1];
+    private final boolean[] buttonsTapped = new boolean[GLFW_GAMEPAD_BUTTON_LAST + 1];
+    private float steer;
+    private float throttle;
+    private float brake;
+    private boolean active;
+    private boolean captureRequested;
+
+    private long eventCount;
+    private double averageLatencyNanos;
+    private long maxLatencyNanos;
+    private long windowMaxLatencyNanos;
+    private int windowEvents;
+
+    public void init(Window window) {
+        gamepadState = GLFWGamepadState.malloc();
+        resetAxes(sampledAxes);
+        resetAxes(axes);
+
+        glfwSetKeyCallback(window.getHandle(), (handle, key, scancode, action, mods) -> {
+            if (key != GLFW_KEY_UNKNOWN && action != GLFW_REPEAT)
+                queue.offer(System.nanoTime(), KEY, key, action == GLFW_PRESS ? 1.0f : 0.0f);
+        });
+
+        glfwSetJoystickCallback((jid, event) -> {
+            if (event == GLFW_CONNECTED && gamepad < 0 && glfwJoystickIsGamepad(jid)) {
+                gamepad = jid;
+                queue.offer(System.nanoTime(), GAMEPAD_CONNECTED, jid, 1.0f);
+            } else if (event == GLFW_DISCONNECTED && jid == gamepad) {
+                gamepad = -1;
+                resetAxes(sampledAxes);
+                Arrays.fill(sampledButtons, (byte) GLFW_RELEASE);
+                queue.offer(System.nanoTime(), GAMEPAD_CONNECTED, jid, 0.0f);
+            }
+        });
+
+        for (int jid = GLFW_JOYSTICK_1; jid <= GLFW_JOYSTICK_LAST && gamepad < 0; jid++) {
+            if (glfwJoystickIsGamepad(jid))
+                gamepad = jid;
+        }
+        if (gamepad >= 0)
+            System.out.println("Gamepad: " + glfwGetGamepadName(gamepad));
+    }
+
+    // Right after the window's events are polled, which is when every key event this frame was stamped.
+    public void beginFrame() {
+        pollTime = System.nanoTime();
+    }
+
+    // Right before each tick, ticksLeft counting this one. Earlier catch-up ticks stand for time before the poll,
+    // a tick length apart; the last one takes everything that's arrived.
+    public void beforeTick(int ticksLeft, long tickNanos, float delta) {
+        sampleGamepad();
+        long deadline = ticksLeft > 1 ? pollTime - (ticksLeft - 1) * tickNanos : System.nanoTime();
+        apply(deadline, delta);
+    }
+
+    // As late as possible, so the stick and triggers are as fresh as they can be for the tick about to run.
+    // Only changes are queued.
+    private void sampleGamepad() {
+        if (gamepad < 0 || !glfwGetGamepadState(gamepad, gamepadState))
+            return;
+
+        long now = System.nanoTime();
+        for (int axis = 0; axis <= GLFW_GAMEPAD_AXIS_LAST; axis++) {
+            float value = gamepadState.axes(axis);
+            if (Math.abs(value - sampledAxes[axis]) >= AXIS_EPSILON) {
+                sampledAxes[axis] = value;
+                queue.offer(now, GAMEPAD_AXIS, axis, value);
+            }
+        }
+        for (int button = 0; button <= GLFW_GAMEPAD_BUTTON_LAST; button++) {
+            byte value = gamepadState.buttons(button);
+            if (value != sampledButtons[button]) {
+                sampledButtons[button] = value;
+                queue.offer(now, GAMEPAD_BUTTON, button, value == GLFW_PRESS ? 1.0f : 0.0f);
+            }
+        }
+    }
+
+    private void apply(long deadline, float delta) {
+        long now = System.nanoTime();
+        while (!queue.isEmpty() && queue.peekTime() <= deadline) {
+            handle(queue.peekType(), queue.peekCode(), queue.peekValue());
+            recordLatency(now - queue.peekTime());
+            queue.pop();
+        }
+
+        float keySteer = (isPressed(GLFW_KEY_RIGHT) || isPressed(GLFW_KEY_D) ? 1.0f : 0.0f)
+                - (isPressed(GLFW_KEY_LEFT) || isPressed(GLFW_KEY_A) ? 1.0f : 0.0f);
+        float stick = deadZone(axes[GLFW_GAMEPAD_AXIS_LEFT_X], STICK_DEAD_ZONE);
+        if (stick != 0.0f) {
+            steer = stick;
+        } else {
+            float rate = keySteer != 0.0f ? STEER_RATE : CENTRE_RATE;
+            steer += Math.max(-rate * delta, Math.min(rate * delta, keySteer - steer));
+        }
+
+        throttle = Math.max(trigger(GLFW_GAMEPAD_AXIS_RIGHT_TRIGGER),
+                isPressed(GLFW_KEY_UP) || isPressed(GLFW_KEY_W) || isButtonPressed(GLFW_GAMEPAD_BUTTON_A) ? 1.0f : 0.0f);
+        brake = Math.max(trigger(GLFW_GAMEPAD_AXIS_LEFT_TRIGGER),
+                isPressed(GLFW_KEY_DOWN) || isPressed(GLFW_KEY_S) || isPressed(GLFW_KEY_SPACE)
+                        || isButtonPressed(GLFW_GAMEPAD_BUTTON_X) ? 1.0f : 0.0f);
+        if (steer != 0.0f || throttle > 0.0f || brake > 0.0f)
+            active = true;
+
+        Arrays.fill(keysTapped, false);
+        Arrays.fill(buttonsTapped, false);
+    }
+
+    private void handle(int type, int code, float value) {
+        eventCount++;
+        switch (type) {
+            case KEY -> {
+                keysHeld[code] = value != 0.0f;
+                keysTapped[code] |= value != 0.0f;
+                captureRequested |= code == GLFW_KEY_F12 && value != 0.0f;
+            }
+            case GAMEPAD_AXIS -> axes[code] = value;
+            case GAMEPAD_BUTTON -> {
+                buttonsHeld[code] = value != 0.0f;
+                buttonsTapped[code] |= value != 0.0f;
+            }
+            case GAMEPAD_CONNECTED -> {
+                // Whatever was held on a pad that's gone is let go.
+                resetAxes(axes);
+                Arrays.fill(buttonsHeld, false);
+            }
+        }
+    }
+
+    private void recordLatency(long latency) {
+        averageLatencyNanos += (latency - averageLatencyNanos) / Math.min(eventCount, LATENCY_WINDOW);
+        windowMaxLatencyNanos = Math.max(windowMaxLatencyNanos, latency);
+        if (++windowEvents == LATENCY_WINDOW) {
+            maxLatencyNanos = windowMaxLatencyNanos;
+            windowMaxLatencyNanos = 0;
+            windowEvents = 0;
+        }
+    }
+
+    private boolean isPressed(int key) {
+        return keysHeld[key] || keysTapped[key];
+    }
+
+    private boolean isButtonPressed(int button) {
+        return buttonsHeld[button] || buttonsTapped[button];
+    }
+
+    // Triggers rest at -1.
+    private float trigger(int axis) {
+        return deadZone((axes[axis] + 1.0f) * 0.5f, TRIGGER_DEAD_ZONE);
+    }
+
+    private static float deadZone(float value, float deadZone) {
+        float magnitude = Math.abs(value);
+        if (magnitude <= deadZone)
+            return 0.0f;
+        return Math.copySign(Math.min(1.0f, (magnitude - deadZone) / (1.0f - deadZone)), value);
+    }
+
+    private static void resetAxes(float[] axes) {
+        Arrays.fill(axes, 0.0f);
+        axes[GLFW_GAMEPAD_AXIS_LEFT_TRIGGER] = -1.0f;
+        axes[GLFW_GAMEPAD_AXIS_RIGHT_TRIGGER] = -1.0f;
+    }
+
+    // Whether anyone has touched the controls yet; until then the game stays in attract mode.
+    public boolean isActive() {
+        return active;
+    }
+
+    // F12 since the last call, for the profiler capture.
+    public boolean takeCaptureRequest() {
+        boolean requested = captureRequested;
+        captureRequested = false;
+        return requested;
+    }
+
+    public float getSteer() {
+        return steer;
+    }
+
+    public float getThrottle() {
+        return throttle;
+    }
+
+    public float getBrake() {
+        return brake;
+    }
+
+    public InputQueue getQueue() {
+        return queue;
+    }
+
+    public void free() {
+        GLFWJoystickCallback joystickCallback = glfwSetJoystickCallback(null);
+        if (joystickCallback != null)
+            joystickCallback.free();
+        if (gamepadState != null)
+            gamepadState.free();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Input: %d events, %d dropped, queue high water %d/%d, latency %.3f ms avg, %.3f ms max, gamepad %s",
+                eventCount, queue.getDroppedCount(), queue.getHighWater(), queue.getCapacity(),
+                averageLatencyNanos / 1e6, maxLatencyNanos / 1e6, gamepad >= 0 ? gamepad : "none");
+    }
+}
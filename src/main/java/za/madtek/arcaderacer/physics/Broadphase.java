@@ -0,0 +1,166 @@
+package za.madtek.arcaderacer.physics;
+
+import za.madtek.arcaderacer.entity.Vehicles;
+import za.madtek.arcaderacer.track.Prop;
+import za.madtek.arcaderacer.track.Stage;
+
+import java.util.Arrays;
+
+// Candidate pairs for collision, by sort and sweep along the track. A course is nearly one dimensional, so the
+// distance along the stage does almost all the culling: cars are kept ordered by placement and distance, the
+// order carried over between ticks and insertion sorted, which is linear while cars only pass a few at a time.
+// The sweep walks forward from each car only as far as a car length, so pairs cost what's actually close.
+//
+// Props never move, so they aren't in the list at all: each stage keeps its own sorted by distance and a car
+// binary searches its stage's for the stretch it covers. The cost per tick is in cars and the props beside them,
+// however long the course or however many props it has.
+//
+// Bodies are boxes aligned to the road in track space. Cars within a car length of the end of a stage aren't
+// paired with cars just onto the next one; the gap is a few metres at each fork.
+public class Broadphase {
+
+    private int[] order = new int[64];
+    private int[] placement = new int[64];
+    private float[] distance = new float[64];
+    private int count;
+
+    private int[] pairA = new int[64];
+    private int[] pairB = new int[64];
+    private int pairCount;
+    private int[] propVehicle = new int[64];
+    private int[] propIndex = new int[64];
+    private int propPairCount;
+
+    private int moved;
+    private int propsTested;
+    private long updateNanos;
+
+    // Sim thread, after the step has moved the cars. Cars on rails are kept in the order but never paired.
+    public void update(Vehicles vehicles, float halfLength, float halfWidth) {
+        long start = System.nanoTime();
+        int newCount = vehicles.size();
+        if (newCount > order.length) {
+            int capacity = Math.max(newCount, order.length * 2);
+            order = new int[capacity];
+            placement = Arrays.copyOf(placement, capacity);
+            distance = Arrays.copyOf(distance, capacity);
+            count = -1;
+        }
+        if (newCount != count) {
+            for (int i = 0; i < newCount; i++)
+                order[i] = i;
+        }
+        count = newCount;
+
+        for (int i = 0; i < count; i++) {
+            placement[i] = vehicles.stage.get(i).getId();
+            distance[i] = vehicles.distance.get(i);
+        }
+
+        moved = 0;
+        for (int i = 1; i < count; i++) {
+            int vehicle = order[i];
+            int j = i - 1;
+            while (j >= 0 && compare(order[j], vehicle) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            if (j != i - 1)
+                moved++;
+            order[j + 1] = vehicle;
+        }
+
+        pairCount = 0;
+        propPairCount = 0;
+        propsTested = 0;
+        float length = halfLength * 2.0f;
+        float width = halfWidth * 2.0f;
+        for (int i = 0; i < count; i++) {
+            int a = order[i];
+            if (vehicles.hasFlag(a, Vehicles.RAIL))
+                continue;
+
+            for (int j = i + 1; j < count; j++) {
+                int b = order[j];
+                if (placement[b] != placement[a] || distance[b] - distance[a] >= length)
+                    break;
+                if (!vehicles.hasFlag(b, Vehicles.RAIL) && Math.abs(vehicles.lateral.get(b) - vehicles.lateral.get(a)) < width)
+                    addPair(a, b);
+            }
+
+            Stage stage = vehicles.stage.get(a).getStage();
+            float reach = halfLength + stage.getMaxPropHalfLength();
+            float lateral = vehicles.lateral.get(a);
+            for (int p = stage.propAt(distance[a] - reach); p < stage.getPropCount(); p++) {
+                Prop prop = stage.getProp(p);
+                if (prop.getDistance() > distance[a] + reach)
+                    break;
+                propsTested++;
+                if (Math.abs(prop.getDistance() - distance[a]) < halfLength + prop.getHalfLength()
+                        && Math.abs(prop.getLateral() - lateral) < halfWidth + prop.getHalfWidth())
+                    addPropPair(a, p);
+            }
+        }
+        updateNanos = System.nanoTime() - start;
+    }
+
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    // The two cars of a pair, the one further back first.
+    public int getPairA(int pair) {
+        return pairA[pair];
+    }
+
+    public int getPairB(int pair) {
+        return pairB[pair];
+    }
+
+    public int getPropPairCount() {
+        return propPairCount;
+    }
+
+    public int getPropVehicle(int pair) {
+        return propVehicle[pair];
+    }
+
+    // Index into the car's stage's props.
+    public int getPropIndex(int pair) {
+        return propIndex[pair];
+    }
+
+    private void addPair(int a, int b) {
+        if (pairCount == pairA.length) {
+            pairA = Arrays.copyOf(pairA, pairCount * 2);
+            pairB = Arrays.copyOf(pairB, pairCount * 2);
+        }
+        pairA[pairCount] = a;
+        pairB[pairCount] = b;
+        pairCount++;
+    }
+
+    private void addPropPair(int vehicle, int prop) {
+        if (propPairCount == propVehicle.length) {
+            propVehicle = Arrays.copyOf(propVehicle, propPairCount * 2);
+            propIndex = Arrays.copyOf(propIndex, propPairCount * 2);
+        }
+        propVehicle[propPairCount] = vehicle;
+        propIndex[propPairCount] = prop;
+        propPairCount++;
+    }
+
+    // Placement, then distance, then dense index so ties still sort the same way every time.
+    private int compare(int a, int b) {
+        if (placement[a] != placement[b])
+            return Integer.compare(placement[a], placement[b]);
+        int byDistance = Float.compare(distance[a], distance[b]);
+        return byDistance != 0 ? byDistance : Integer.compare(a, b);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Broadphase: %d bodies, %d reordered, %d pairs, %d prop pairs of %d tested, %.3f ms",
+                count, moved, pairCount, propPairCount, propsTested, updateNanos / 1e6);
+    }
+}
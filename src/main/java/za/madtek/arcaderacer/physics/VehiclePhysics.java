@@ -0,0 +1,481 @@
+package za.madtek.arcaderacer.physics;
+
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.entity.BatchRunner;
+import za.madtek.arcaderacer.entity.EntityStore;
+import za.madtek.arcaderacer.entity.RangeTask;
+import za.madtek.arcaderacer.entity.Transforms;
+import za.madtek.arcaderacer.entity.Vehicles;
+import za.madtek.arcaderacer.track.Course;
+import za.madtek.arcaderacer.track.PlacedStage;
+import za.madtek.arcaderacer.track.Prop;
+import za.madtek.arcaderacer.track.Stage;
+import za.madtek.arcaderacer.track.TrackFrame;
+
+// Arcade handling, stepped at the fixed tick. Cars live in track space (distance, lateral offset, yaw relative
+// to the road) so the track edges are a clamp, hills are a height lookup and nothing drifts off a curve through
+// accumulated error. A car's step reads only its own state, its inputs and the course, and the only trig on
+// state is StrictMath, so the same inputs give the same bits whatever the thread count or machine: replays and
+// ghosts just feed the inputs back. Cars are stepped in batches of Globals.PHYSICS_BATCH_SIZE by a BatchRunner,
+// so a step allocates nothing except when the first car onto a stage places it. Cars flagged Vehicles.RAIL skip
+// the handling model and just move along the road as their AI driver says. Once every car has moved, the pairs
+// the Broadphase finds are pushed apart one at a time in its order, which is the same every run, and only then
+// are poses written.
+public class VehiclePhysics {
+
+    private static final float GRAVITY = 9.81f;
+    private static final float HALF_PI = (float) (Math.PI * 0.5);
+    private static final float HALF_WIDTH = 1.0f; // car's half width, kept inside the road edge
+    private static final float HALF_LENGTH = 2.2f;
+    private static final float CAR_HEIGHT = 1.4f;
+
+    public static final float MAX_SPEED = 75.0f;
+    public static final float BRAKE_DECEL = 28.0f;
+    public static final float MAX_YAW_RATE = 1.6f; // radians per second at full lock
+    private static final float ENGINE_ACCEL = 14.0f;
+    private static final float REVERSE_ACCEL = 6.0f;
+    private static final float MAX_REVERSE_SPEED = 10.0f;
+    private static final float ROLLING_RESISTANCE = 0.03f;
+    private static final float AIR_DRAG = 0.0012f;
+
+    private static final float FULL_STEER_SPEED = 12.0f; // below this, steering fades out
+    private static final float HIGH_SPEED_STEER = 0.45f; // share of lock left at top speed
+    private static final float YAW_RESPONSE = 8.0f; // radians per second squared towards the target rate
+    private static final float GRIP = 30.0f; // side speed the tyres kill per second
+    private static final float DRIFT_GRIP = 7.0f;
+    private static final float DRIFT_YAW_BOOST = 1.5f;
+    private static final float DRIFT_CARRY = 0.6f; // share of killed side speed handed back as forward speed
+    private static final float DRIFT_MIN_SPEED = 20.0f;
+    public static final float DRIFT_STEER = 0.5f;
+    public static final float DRIFT_BRAKE = 0.2f; // brake held past this while steering past DRIFT_STEER starts a drift
+    private static final float SLIDE_SPEED = 6.0f; // side speed past which the car breaks into a drift on its own
+    private static final float DRIFT_EXIT_SPEED = 1.5f;
+
+    private static final float WALL_RESTITUTION = 0.3f;
+    private static final float WALL_FRICTION = 0.5f;
+    private static final float WALL_SPIN_DAMPING = 0.5f;
+    private static final float WALL_ALIGN = 0.1f; // share of the angle to the wall taken out per step of contact
+    private static final float AIR_SPIN_DAMPING = 1.5f; // per second
+    private static final float LIFT_OFF = 0.02f; // metres the road must fall away by in a step to leave it
+    private static final float LANDING_SCRUB = 0.3f;
+    private static final float CONTACT_RESTITUTION = 0.2f;
+    private static final float CONTACT_FRICTION = 0.3f; // share of the impact speed scrubbed off sliding along
+
+    private final Course course;
+    private final BatchRunner batchRunner = new BatchRunner();
+    private final RangeTask stepTask = this::stepRange;
+    private final RangeTask poseTask = this::poseRange;
+    private final Broadphase broadphase = new Broadphase();
+    private final ThreadLocal<TrackFrame> frames = ThreadLocal.withInitial(TrackFrame::new);
+
+    private EntityStore entities;
+    private float delta;
+    private int contactCount;
+
+    public VehiclePhysics(Course course) {
+        this.course = course;
+    }
+
+    // Sim thread, once per tick after inputs are written. Nothing may add or remove vehicles until this returns.
+    public void step(EntityStore entities, float delta) {
+        this.entities = entities;
+        this.delta = delta;
+        batchRunner.run(entities.vehicles.size(), Globals.PHYSICS_BATCH_SIZE, Globals.PARALLEL_PHYSICS, stepTask);
+
+        Vehicles vehicles = entities.vehicles;
+        broadphase.update(vehicles, HALF_LENGTH, HALF_WIDTH);
+        contactCount = 0;
+        for (int pair = 0; pair < broadphase.getPairCount(); pair++)
+            collideVehicles(vehicles, broadphase.getPairA(pair), broadphase.getPairB(pair));
+        for (int pair = 0; pair < broadphase.getPropPairCount(); pair++)
+            collideProp(vehicles, broadphase.getPropVehicle(pair), broadphase.getPropIndex(pair));
+
+        batchRunner.run(vehicles.size(), Globals.PHYSICS_BATCH_SIZE, Globals.PARALLEL_PHYSICS, poseTask);
+        this.entities = null;
+    }
+
+    // Fastest steady speed round a bend of the given curvature on full lock without drifting, for planning.
+    public static float getCorneringSpeed(float curvature) {
+        // Needed yaw rate |curvature| * v against what steering gives at v, which falls off linearly with speed.
+        float speed = MAX_YAW_RATE / (Math.abs(curvature) + MAX_YAW_RATE * (1.0f - HIGH_SPEED_STEER) / MAX_SPEED);
+        return Math.min(MAX_SPEED, speed);
+    }
+
+    private void stepRange(int start, int end) {
+        Vehicles vehicles = entities.vehicles;
+        for (int i = start; i < end; i++) {
+            if (vehicles.hasFlag(i, Vehicles.RAIL))
+                stepRail(vehicles, i, delta);
+            else
+                stepVehicle(vehicles, i, delta);
+        }
+    }
+
+    private void poseRange(int start, int end) {
+        Vehicles vehicles = entities.vehicles;
+        Transforms transforms = entities.transforms;
+        TrackFrame frame = frames.get();
+
+        for (int i = start; i < end; i++) {
+            int transform = transforms.indexOf(vehicles.getEntity(i));
+            if (transform >= 0)
+                writePose(vehicles, i, transforms, transform, frame);
+        }
+    }
+
+    private void stepVehicle(Vehicles vehicles, int i, float dt) {
+        PlacedStage placed = vehicles.stage.get(i);
+        Stage stage = placed.getStage();
+
+        float distance = vehicles.distance.get(i);
+        float lateral = vehicles.lateral.get(i);
+        float height = vehicles.height.get(i);
+        float yaw = vehicles.yaw.get(i);
+        float forward = vehicles.forwardSpeed.get(i);
+        float side = vehicles.sideSpeed.get(i);
+        float yawRate = vehicles.yawRate.get(i);
+        float vertical = vehicles.verticalSpeed.get(i);
+        int flags = vehicles.flags.get(i) & ~(Vehicles.WALL_CONTACT | Vehicles.LANDED | Vehicles.COLLISION);
+
+        float steer = Math.max(-1.0f, Math.min(1.0f, vehicles.steer.get(i)));
+        float throttle = Math.max(0.0f, Math.min(1.0f, vehicles.throttle.get(i)));
+        float brake = Math.max(0.0f, Math.min(1.0f, vehicles.brake.get(i)));
+
+        boolean grounded = (flags & Vehicles.GROUNDED) != 0;
+        boolean drifting = (flags & Vehicles.DRIFTING) != 0;
+
+        if (grounded && !drifting && brake > DRIFT_BRAKE && Math.abs(steer) > DRIFT_STEER && forward > DRIFT_MIN_SPEED)
+            drifting = true;
+
+        // Steering follows forward speed, so it fades out at a standstill and flips in reverse, and loses authority
+        // towards top speed where the quick way round is a drift.
+        if (grounded) {
+            float lowSpeed = Math.max(-1.0f, Math.min(1.0f, forward / FULL_STEER_SPEED));
+            float highSpeed = 1.0f - (1.0f - HIGH_SPEED_STEER) * Math.min(1.0f, Math.abs(forward) / MAX_SPEED);
+            float target = steer * MAX_YAW_RATE * lowSpeed * highSpeed * (drifting ? DRIFT_YAW_BOOST : 1.0f);
+            float response = YAW_RESPONSE * dt;
+            yawRate += Math.max(-response, Math.min(response, target - yawRate));
+        }
+
+        // The body turns under a velocity that hasn't, which shows up as side speed. Small angle rotation.
+        float turn = yawRate * dt;
+        float cosTurn = 1.0f - turn * turn * 0.5f;
+        float rotatedForward = forward * cosTurn + side * turn;
+        side = side * cosTurn - forward * turn;
+        forward = rotatedForward;
+        yaw += turn;
+
+        float grade = stage.getGrade(distance);
+        float cosYaw = (float) StrictMath.cos(yaw);
+        float sinYaw = (float) StrictMath.sin(yaw);
+        // On the road, speed is along its slope; only the horizontal part of it covers track distance.
+        float cosSlope = grounded ? 1.0f / (float) Math.sqrt(1.0f + grade * grade) : 1.0f;
+
+        if (grounded) {
+            float accel = throttle * ENGINE_ACCEL * Math.max(0.0f, 1.0f - forward / MAX_SPEED);
+            if (forward > 0.5f)
+                accel -= brake * BRAKE_DECEL;
+            else if (forward > -MAX_REVERSE_SPEED)
+                accel -= brake * REVERSE_ACCEL;
+            accel -= ROLLING_RESISTANCE * forward + AIR_DRAG * forward * Math.abs(forward);
+            accel -= GRAVITY * grade * cosYaw * cosSlope;
+            forward += accel * dt;
+
+            // The tyres kill side speed up to their grip; while drifting they grip less and hand some back forwards.
+            float grip = (drifting ? DRIFT_GRIP : GRIP) * dt;
+            float killed = Math.max(-grip, Math.min(grip, side));
+            side -= killed;
+            if (drifting)
+                forward += Math.copySign(Math.abs(killed) * DRIFT_CARRY, forward);
+
+            if (!drifting && Math.abs(side) > SLIDE_SPEED)
+                drifting = true;
+            else if (drifting && Math.abs(side) < DRIFT_EXIT_SPEED && (brake <= DRIFT_BRAKE || Math.abs(steer) <= DRIFT_STEER))
+                drifting = false;
+        } else {
+            forward -= AIR_DRAG * forward * Math.abs(forward) * dt;
+            yawRate -= yawRate * Math.min(1.0f, AIR_SPIN_DAMPING * dt);
+        }
+
+        // Into track space. The inside of a bend is shorter, so the same speed covers more centre line there.
+        float along = (forward * cosYaw - side * sinYaw) * cosSlope;
+        float across = forward * sinYaw + side * cosYaw;
+        float curvature = stage.getCurvature(distance);
+        float step = along * dt / Math.max(0.2f, 1.0f - curvature * lateral);
+        distance += step;
+        lateral += across * dt;
+        yaw -= curvature * step;
+
+        if (distance >= stage.getLength()) {
+            distance -= stage.getLength();
+            height -= stage.getEndHeight();
+            vehicles.stageStart.set(i, vehicles.stageStart.get(i) + stage.getLength());
+
+            // The fork is taken on whichever side of the centre line the car is. Past the last row there's nowhere
+            // to go, so the final stage starts over.
+            boolean right = lateral > 0.0f;
+            PlacedStage next = placed.placeNext(course, right);
+            if (next != null) {
+                placed = next;
+                stage = next.getStage();
+                yaw -= right ? PlacedStage.FORK_ANGLE : -PlacedStage.FORK_ANGLE;
+                vehicles.stage.set(i, next);
+            }
+        } else if (distance < 0.0f) {
+            // Which fork led here isn't known, so reversing out of a stage stops at its start.
+            distance = 0.0f;
+            forward = 0.0f;
+            side = 0.0f;
+        }
+
+        // Track edges: bounce the speed into the wall, scrub speed along it in proportion to the hit, and turn the
+        // car towards the wall so it slides along rather than sticking nose first.
+        float limit = stage.getWidth(distance) * 0.5f - HALF_WIDTH;
+        if (Math.abs(lateral) > limit) {
+            lateral = Math.copySign(limit, lateral);
+            if (across * lateral > 0.0f) {
+                float impact = Math.abs(across);
+                across = -across * WALL_RESTITUTION;
+                along -= Math.copySign(Math.min(Math.abs(along), impact * WALL_FRICTION), along);
+                along /= cosSlope;
+
+                float tangent = Math.abs(yaw) > HALF_PI ? (float) Math.copySign(Math.PI, yaw) : 0.0f;
+                yaw -= (yaw - tangent) * WALL_ALIGN;
+                cosYaw = (float) StrictMath.cos(yaw);
+                sinYaw = (float) StrictMath.sin(yaw);
+
+                forward = along * cosYaw + across * sinYaw;
+                side = across * cosYaw - along * sinYaw;
+                along *= cosSlope;
+                yawRate *= WALL_SPIN_DAMPING;
+                flags |= Vehicles.WALL_CONTACT;
+            }
+        }
+
+        // Vertical: stuck to the road unless it drops away faster than gravity pulls the car after it, which is a
+        // jump off a crest.
+        float road = stage.getHeight(distance);
+        float follow = stage.getGrade(distance) * along;
+        float fallSpeed = vertical - GRAVITY * dt;
+        if (grounded) {
+            float ballistic = height + fallSpeed * dt;
+            if (ballistic > road + LIFT_OFF) {
+                grounded = false;
+                drifting = false;
+                height = ballistic;
+                vertical = fallSpeed;
+            } else {
+                height = road;
+                vertical = follow;
+            }
+        } else {
+            vertical = fallSpeed;
+            height += vertical * dt;
+            if (height <= road) {
+                float impact = Math.max(0.0f, follow - vertical);
+                forward -= Math.copySign(Math.min(Math.abs(forward), impact * LANDING_SCRUB), forward);
+                height = road;
+                vertical = follow;
+                grounded = true;
+                flags |= Vehicles.LANDED;
+            }
+        }
+
+        flags = grounded ? flags | Vehicles.GROUNDED : flags & ~Vehicles.GROUNDED;
+        flags = drifting ? flags | Vehicles.DRIFTING : flags & ~Vehicles.DRIFTING;
+
+        vehicles.distance.set(i, distance);
+        vehicles.lateral.set(i, lateral);
+        vehicles.height.set(i, height);
+        vehicles.yaw.set(i, yaw);
+        vehicles.forwardSpeed.set(i, forward);
+        vehicles.sideSpeed.set(i, side);
+        vehicles.yawRate.set(i, yawRate);
+        vehicles.verticalSpeed.set(i, vertical);
+        vehicles.flags.set(i, flags);
+    }
+
+    // Moves along the road at forwardSpeed, keeping whatever lateral offset the driver set. No yaw, no slip and no
+    // jumps, so a car can drop in and out of full simulation without a jolt.
+    private void stepRail(Vehicles vehicles, int i, float dt) {
+        PlacedStage placed = vehicles.stage.get(i);
+        Stage stage = placed.getStage();
+        float forward = vehicles.forwardSpeed.get(i);
+        float distance = vehicles.distance.get(i) + forward * dt;
+        float lateral = vehicles.lateral.get(i);
+
+        if (distance >= stage.getLength()) {
+            distance -= stage.getLength();
+            vehicles.stageStart.set(i, vehicles.stageStart.get(i) + stage.getLength());
+            PlacedStage next = placed.placeNext(course, lateral > 0.0f);
+            if (next != null) {
+                stage = next.getStage();
+                vehicles.stage.set(i, next);
+            }
+        } else if (distance < 0.0f) {
+            distance = 0.0f;
+        }
+
+        float limit = stage.getWidth(distance) * 0.5f - HALF_WIDTH;
+        vehicles.distance.set(i, distance);
+        vehicles.lateral.set(i, Math.max(-limit, Math.min(limit, lateral)));
+        vehicles.height.set(i, stage.getHeight(distance));
+        vehicles.yaw.set(i, 0.0f);
+        vehicles.sideSpeed.set(i, 0.0f);
+        vehicles.yawRate.set(i, 0.0f);
+        vehicles.verticalSpeed.set(i, stage.getGrade(distance) * forward);
+        vehicles.flags.set(i, Vehicles.GROUNDED | Vehicles.RAIL);
+    }
+
+    // Two cars as boxes lined up with the road. They're pushed apart along whichever of distance or lateral they
+    // overlap least in, and if they're closing on that axis, they share an inelastic impulse and rub off some of
+    // their difference in speed along the other.
+    private void collideVehicles(Vehicles vehicles, int a, int b) {
+        if (Math.abs(vehicles.height.get(a) - vehicles.height.get(b)) > CAR_HEIGHT)
+            return;
+
+        float gapDistance = vehicles.distance.get(b) - vehicles.distance.get(a);
+        float gapLateral = vehicles.lateral.get(b) - vehicles.lateral.get(a);
+        float overlapDistance = HALF_LENGTH * 2.0f - Math.abs(gapDistance);
+        float overlapLateral = HALF_WIDTH * 2.0f - Math.abs(gapLateral);
+        if (overlapDistance <= 0.0f || overlapLateral <= 0.0f)
+            return;
+
+        float cosA = (float) StrictMath.cos(vehicles.yaw.get(a));
+        float sinA = (float) StrictMath.sin(vehicles.yaw.get(a));
+        float cosB = (float) StrictMath.cos(vehicles.yaw.get(b));
+        float sinB = (float) StrictMath.sin(vehicles.yaw.get(b));
+        float alongA = vehicles.forwardSpeed.get(a) * cosA - vehicles.sideSpeed.get(a) * sinA;
+        float acrossA = vehicles.forwardSpeed.get(a) * sinA + vehicles.sideSpeed.get(a) * cosA;
+        float alongB = vehicles.forwardSpeed.get(b) * cosB - vehicles.sideSpeed.get(b) * sinB;
+        float acrossB = vehicles.forwardSpeed.get(b) * sinB + vehicles.sideSpeed.get(b) * cosB;
+
+        if (overlapLateral < overlapDistance) {
+            float normal = gapLateral >= 0.0f ? 1.0f : -1.0f;
+            moveLateral(vehicles, a, -normal * overlapLateral * 0.5f);
+            moveLateral(vehicles, b, normal * overlapLateral * 0.5f);
+
+            float closing = (acrossB - acrossA) * normal;
+            if (closing < 0.0f) {
+                float impulse = -(1.0f + CONTACT_RESTITUTION) * closing * 0.5f;
+                acrossA -= impulse * normal;
+                acrossB += impulse * normal;
+                float slip = alongB - alongA;
+                float rub = Math.copySign(Math.min(Math.abs(slip) * 0.5f, impulse * CONTACT_FRICTION), slip);
+                alongA += rub;
+                alongB -= rub;
+            }
+        } else {
+            // Sorted by distance, so b is never behind a.
+            moveDistance(vehicles, a, -overlapDistance * 0.5f);
+            moveDistance(vehicles, b, overlapDistance * 0.5f);
+
+            float closing = alongB - alongA;
+            if (closing < 0.0f) {
+                float impulse = -(1.0f + CONTACT_RESTITUTION) * closing * 0.5f;
+                alongA -= impulse;
+                alongB += impulse;
+                float slip = acrossB - acrossA;
+                float rub = Math.copySign(Math.min(Math.abs(slip) * 0.5f, impulse * CONTACT_FRICTION), slip);
+                acrossA += rub;
+                acrossB -= rub;
+            }
+        }
+
+        setTrackVelocity(vehicles, a, alongA, acrossA, cosA, sinA);
+        setTrackVelocity(vehicles, b, alongB, acrossB, cosB, sinB);
+        contactCount++;
+    }
+
+    // As for two cars, with the prop taking none of the push or the impulse. Cars in the air clear props shorter
+    // than their height above the road.
+    private void collideProp(Vehicles vehicles, int i, int index) {
+        Stage stage = vehicles.stage.get(i).getStage();
+        Prop prop = stage.getProp(index);
+        float distance = vehicles.distance.get(i);
+        if (vehicles.height.get(i) - stage.getHeight(distance) > prop.getHeight())
+            return;
+
+        float gapDistance = distance - prop.getDistance();
+        float gapLateral = vehicles.lateral.get(i) - prop.getLateral();
+        float overlapDistance = HALF_LENGTH + prop.getHalfLength() - Math.abs(gapDistance);
+        float overlapLateral = HALF_WIDTH + prop.getHalfWidth() - Math.abs(gapLateral);
+        if (overlapDistance <= 0.0f || overlapLateral <= 0.0f)
+            return;
+
+        float cos = (float) StrictMath.cos(vehicles.yaw.get(i));
+        float sin = (float) StrictMath.sin(vehicles.yaw.get(i));
+        float along = vehicles.forwardSpeed.get(i) * cos - vehicles.sideSpeed.get(i) * sin;
+        float across = vehicles.forwardSpeed.get(i) * sin + vehicles.sideSpeed.get(i) * cos;
+
+        if (overlapLateral < overlapDistance) {
+            float normal = gapLateral >= 0.0f ? 1.0f : -1.0f;
+            moveLateral(vehicles, i, normal * overlapLateral);
+            if (across * normal < 0.0f) {
+                float impact = Math.abs(across);
+                across = -across * CONTACT_RESTITUTION;
+                along -= Math.copySign(Math.min(Math.abs(along), impact * CONTACT_FRICTION), along);
+            }
+        } else {
+            float normal = gapDistance >= 0.0f ? 1.0f : -1.0f;
+            moveDistance(vehicles, i, normal * overlapDistance);
+            if (along * normal < 0.0f) {
+                float impact = Math.abs(along);
+                along = -along * CONTACT_RESTITUTION;
+                across -= Math.copySign(Math.min(Math.abs(across), impact * CONTACT_FRICTION), across);
+            }
+        }
+
+        setTrackVelocity(vehicles, i, along, across, cos, sin);
+        contactCount++;
+    }
+
+    // Kept on the road, as the step would.
+    private static void moveLateral(Vehicles vehicles, int i, float amount) {
+        Stage stage = vehicles.stage.get(i).getStage();
+        float limit = stage.getWidth(vehicles.distance.get(i)) * 0.5f - HALF_WIDTH;
+        vehicles.lateral.set(i, Math.max(-limit, Math.min(limit, vehicles.lateral.get(i) + amount)));
+    }
+
+    // Never back past the start of the stage; past the end is fine, the next step carries the car onto the next.
+    private static void moveDistance(Vehicles vehicles, int i, float amount) {
+        vehicles.distance.set(i, Math.max(0.0f, vehicles.distance.get(i) + amount));
+    }
+
+    // Back from the road's frame to the car's, and marked as having hit something.
+    private static void setTrackVelocity(Vehicles vehicles, int i, float along, float across, float cos, float sin) {
+        vehicles.forwardSpeed.set(i, along * cos + across * sin);
+        vehicles.sideSpeed.set(i, across * cos - along * sin);
+        vehicles.flags.set(i, vehicles.flags.get(i) | Vehicles.COLLISION);
+    }
+
+    // World pose for rendering. Not part of the simulated state, so ordinary Math is fine here.
+    private static void writePose(Vehicles vehicles, int i, Transforms transforms, int transform, TrackFrame frame) {
+        PlacedStage placed = vehicles.stage.get(i);
+        float lateral = vehicles.lateral.get(i);
+        placed.sample(vehicles.distance.get(i), frame);
+
+        float x = frame.x + (float) Math.cos(frame.heading) * lateral;
+        float z = frame.z + (float) Math.sin(frame.heading) * lateral;
+        transforms.positionX.set(transform, x);
+        transforms.positionY.set(transform, placed.getOrigin().y + vehicles.height.get(i));
+        transforms.positionZ.set(transform, z);
+
+        // Yaw about +Y (heading turns right, so it's negated), then pitch to the direction of travel.
+        float heading = frame.heading + vehicles.yaw.get(i);
+        float pitch = (float) Math.atan2(vehicles.verticalSpeed.get(i), Math.max(1.0f, Math.abs(vehicles.forwardSpeed.get(i))));
+        float sy = (float) Math.sin(-heading * 0.5f);
+        float cy = (float) Math.cos(-heading * 0.5f);
+        float sp = (float) Math.sin(pitch * 0.5f);
+        float cp = (float) Math.cos(pitch * 0.5f);
+        transforms.rotationX.set(transform, cy * sp);
+        transforms.rotationY.set(transform, sy * cp);
+        transforms.rotationZ.set(transform, -sy * sp);
+        transforms.rotationW.set(transform, cy * cp);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Physics: %d contacts, %s", contactCount, broadphase);
+    }
+}
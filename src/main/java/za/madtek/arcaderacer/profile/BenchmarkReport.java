@@ -0,0 +1,127 @@
+package za.madtek.arcaderacer.profile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+// Frame and simulation tick time distributions over a whole benchmark run, written out as JSON with what was run
+// and where, so results from different builds and machines can be lined up. Capacity is the most samples of each
+// kind the run can produce; every one is kept, so the percentiles cover the run and not just its tail.
+public class BenchmarkReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final String name;
+    private final String build;
+    private final String device;
+    private final Distribution frames;
+    private final Distribution ticks;
+    private long start;
+    private long end;
+
+    public BenchmarkReport(String name, String build, String device, int frameCapacity, int tickCapacity) {
+        this.name = name;
+        this.build = build;
+        this.device = device;
+        frames = new Distribution(frameCapacity);
+        ticks = new Distribution(tickCapacity);
+    }
+
+    public void begin() {
+        start = System.nanoTime();
+    }
+
+    public void addFrame(long nanos) {
+        frames.add(nanos);
+    }
+
+    public void addTick(long nanos) {
+        ticks.add(nanos);
+    }
+
+    public void end() {
+        end = System.nanoTime();
+    }
+
+    public void write(Path directory) {
+        String timestamp = String.valueOf(System.currentTimeMillis());
+        Path file = directory.resolve(name + "-" + build.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + timestamp + ".json");
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"name\": \"").append(escape(name)).append("\",\n");
+        json.append("  \"build\": \"").append(escape(build)).append("\",\n");
+        json.append("  \"device\": \"").append(escape(device)).append("\",\n");
+        json.append("  \"timestamp\": ").append(timestamp).append(",\n");
+        json.append("  \"seconds\": ").append(format((end - start) / 1e9)).append(",\n");
+        json.append("  \"frames\": ");
+        frames.appendJson(json);
+        json.append(",\n  \"ticks\": ");
+        ticks.appendJson(json);
+        json.append("\n}\n");
+
+        try {
+            Files.createDirectories(directory);
+            Files.writeString(file, json);
+        } catch (IOException e) {
+            System.err.println("Failed to write benchmark report " + file + ": " + e.getMessage());
+            return;
+        }
+        System.out.println("Benchmark: report written to " + file);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    @Override
+    public String toString() {
+        double seconds = (end - start) / 1e9;
+        return String.format("Benchmark %s on %s, build %s: %.2f s, %.1f fps%n  frame %s%n  tick  %s", name, device,
+                build, seconds, seconds > 0 ? frames.count / seconds : 0.0, frames, ticks);
+    }
+
+    private static class Distribution {
+
+        private final RollingPercentiles percentiles;
+        private long count;
+        private long total;
+        private long max;
+
+        private Distribution(int capacity) {
+            percentiles = new RollingPercentiles(Math.max(1, capacity));
+        }
+
+        private void add(long nanos) {
+            percentiles.add(nanos);
+            count++;
+            total += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        private double mean() {
+            return count > 0 ? total / 1e6 / count : 0.0;
+        }
+
+        private void appendJson(StringBuilder json) {
+            json.append("{\"count\": ").append(count).append(", \"meanMillis\": ").append(format(mean()));
+            for (double p : PERCENTILES) {
+                json.append(", \"p").append(String.valueOf(p).replace(".0", "").replace('.', '_')).append("Millis\": ")
+                        .append(format(percentiles.get(p) / 1e6));
+            }
+            json.append(", \"maxMillis\": ").append(format(max / 1e6)).append('}');
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms (%d)",
+                    mean(), percentiles.get(50) / 1e6, percentiles.get(90) / 1e6, percentiles.get(99) / 1e6,
+                    percentiles.get(99.9) / 1e6, max / 1e6, count);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package za.madtek.arcaderacer.profile;
+
+import za.madtek.arcaderacer.Globals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Frame profiler. Code marks CPU work with begin(name)/end() pairs, which nest, on any thread; each thread keeps
+// its finished scopes in its own ScopeRing, so recording takes no locks. The renderer adds GPU scopes measured
+// with timestamp queries once each frame's results are back. capture() writes the last few hundred frames of all
+// of it as a Chrome trace (chrome://tracing or ui.perfetto.dev). Switched off, begin and end are a field read and
+// a branch, so the calls stay in release builds. Frame time percentiles are kept either way.
+//
+// Names should be string constants: they're stored as is, not copied.
+public class Profiler {
+
+    private static final int FRAME_HISTORY = 1024;
+    private static final int PERCENTILE_WINDOW = 600;
+
+    private static volatile boolean enabled = Globals.PROFILING;
+    private static volatile int session;
+    private static final List<ScopeRing> rings = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger nextThreadId = new AtomicInteger(1);
+    private static final ThreadLocal<ScopeRing> threadRing = ThreadLocal.withInitial(() ->
+            register(Thread.currentThread().getName()));
+    private static final ScopeRing gpuRing = register("GPU");
+
+    // Main thread only.
+    private static final long[] frameStarts = new long[FRAME_HISTORY];
+    private static long frameCount;
+    private static final RollingPercentiles cpuFrames = new RollingPercentiles(PERCENTILE_WINDOW);
+    private static final RollingPercentiles gpuFrames = new RollingPercentiles(PERCENTILE_WINDOW);
+
+    private Profiler() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Main thread.
+    public static void setEnabled(boolean enabled) {
+        if (enabled && !Profiler.enabled)
+            session++;
+        Profiler.enabled = enabled;
+    }
+
+    public static void begin(String name) {
+        if (enabled)
+            threadRing.get().begin(name, System.nanoTime(), session);
+    }
+
+    public static void end() {
+        if (enabled)
+            threadRing.get().end(System.nanoTime(), session);
+    }
+
+    // Render thread, from the GPU timer once a frame's queries are read back; times already in System.nanoTime().
+    public static void addGpuScope(String name, long start, long end) {
+        if (enabled)
+            gpuRing.add(name, start, end);
+    }
+
+    public static void addGpuFrame(long nanos) {
+        gpuFrames.add(nanos);
+    }
+
+    // Main thread, at the start of every frame.
+    public static void markFrame(long time) {
+        if (frameCount > 0)
+            cpuFrames.add(time - frameStarts[(int) ((frameCount - 1) % FRAME_HISTORY)]);
+        frameStarts[(int) (frameCount % FRAME_HISTORY)] = time;
+        frameCount++;
+    }
+
+    public static long getFramePercentile(double p) {
+        return cpuFrames.get(p);
+    }
+
+    public static long getGpuFramePercentile(double p) {
+        return gpuFrames.get(p);
+    }
+
+    // Main thread. Writes every scope from the last frames frames as Chrome trace JSON, or logs why it couldn't.
+    public static boolean capture(int frames, Path file) {
+        frames = (int) Math.min(Math.min(frames, FRAME_HISTORY - 1), frameCount - 1);
+        if (frames <= 0) {
+            System.err.println("Failed to capture profile: no frames recorded yet");
+            return false;
+        }
+        long since = frameStarts[(int) ((frameCount - 1 - frames) % FRAME_HISTORY)];
+
+        StringBuilder json = new StringBuilder(1 << 20);
+        json.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        int[] eventCount = {0};
+        for (ScopeRing ring : rings) {
+            appendSeparator(json, eventCount);
+            json.append("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":").append(ring.threadId)
+                    .append(",\"args\":{\"name\":\"");
+            appendEscaped(json, ring.threadName);
+            json.append("\"}}");
+
+            ring.copySince(since, (source, name, start, end) -> {
+                appendSeparator(json, eventCount);
+                json.append("{\"ph\":\"X\",\"cat\":\"").append(source == gpuRing ? "gpu" : "cpu").append("\",\"name\":\"");
+                appendEscaped(json, name);
+                json.append("\",\"pid\":1,\"tid\":").append(source.threadId)
+                        .append(",\"ts\":").append(micros(start - since))
+                        .append(",\"dur\":").append(micros(end - start)).append('}');
+            });
+        }
+        for (long frame = frameCount - 1 - frames; frame < frameCount; frame++) {
+            appendSeparator(json, eventCount);
+            json.append("{\"ph\":\"i\",\"s\":\"g\",\"name\":\"frame ").append(frame).append("\",\"pid\":1,\"tid\":0,\"ts\":")
+                    .append(micros(frameStarts[(int) (frame % FRAME_HISTORY)] - since)).append('}');
+        }
+        json.append("\n]}\n");
+
+        try {
+            if (file.getParent() != null)
+                Files.createDirectories(file.getParent());
+            Files.writeString(file, json);
+        } catch (IOException e) {
+            System.err.println("Failed to write profile capture " + file + ": " + e.getMessage());
+            return false;
+        }
+        System.out.println("Profiler: captured " + frames + " frames, " + eventCount[0] + " events to " + file);
+        return true;
+    }
+
+    private static ScopeRing register(String threadName) {
+        ScopeRing ring = new ScopeRing(threadName, nextThreadId.getAndIncrement(), Globals.PROFILE_RING_SIZE);
+        rings.add(ring);
+        return ring;
+    }
+
+    private static void appendSeparator(StringBuilder json, int[] eventCount) {
+        if (eventCount[0]++ > 0)
+            json.append(",\n");
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e3);
+    }
+
+    private static void appendEscaped(StringBuilder json, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c < 0x20)
+                json.append(String.format("\\u%04x", (int) c));
+            else
+                json.append(c);
+        }
+    }
+
+    public static String getSummary() {
+        return String.format("Profiler: frame p50 %.3f ms, p99 %.3f ms, GPU p50 %.3f ms, p99 %.3f ms%s",
+                getFramePercentile(50) / 1e6, getFramePercentile(99) / 1e6,
+                getGpuFramePercentile(50) / 1e6, getGpuFramePercentile(99) / 1e6, enabled ? ", recording" : "");
+    }
+}
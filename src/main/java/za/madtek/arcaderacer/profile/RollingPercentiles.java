@@ -0,0 +1,39 @@
+package za.madtek.arcaderacer.profile;
+
+import java.util.Arrays;
+
+// Percentiles over the last size samples. Adding is a store; a query sorts a copy of the window, which is fine
+// for the few times a second anyone asks. Not thread safe.
+public class RollingPercentiles {
+
+    private final long[] samples;
+    private final long[] sorted;
+    private int count;
+    private int next;
+
+    public RollingPercentiles(int size) {
+        samples = new long[size];
+        sorted = new long[size];
+    }
+
+    public void add(long sample) {
+        samples[next] = sample;
+        next = (next + 1) % samples.length;
+        count = Math.min(samples.length, count + 1);
+    }
+
+    // Nearest rank, p from 0 to 100; 0 with no samples yet.
+    public long get(double p) {
+        if (count == 0)
+            return 0;
+
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int rank = (int) Math.ceil(p / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
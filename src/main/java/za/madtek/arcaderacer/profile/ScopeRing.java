@@ -0,0 +1,106 @@
+package za.madtek.arcaderacer.profile;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// One thread's finished scopes, oldest overwritten first. Only the owning thread writes; a capture on another
+// thread copies out what's there without stopping it, publishing through written with a release store and
+// throwing away anything the writer lapped while it was being copied. Open scopes are kept on a small stack here
+// too, so a scope is written once, whole, when it ends.
+public class ScopeRing {
+
+    private static final int MAX_DEPTH = 32;
+
+    protected final String threadName;
+    protected final int threadId;
+
+    private final int mask;
+    private final String[] names;
+    private final long[] starts;
+    private final long[] ends;
+    private final AtomicLong written = new AtomicLong();
+
+    private final String[] openNames = new String[MAX_DEPTH];
+    private final long[] openStarts = new long[MAX_DEPTH];
+    private int depth;
+    private int overflowDepth; // scopes begun past MAX_DEPTH, which are dropped
+    private int session;
+
+    protected ScopeRing(String threadName, int threadId, int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Scope ring capacity must be a power of two: " + capacity);
+
+        this.threadName = threadName;
+        this.threadId = threadId;
+        mask = capacity - 1;
+        names = new String[capacity];
+        starts = new long[capacity];
+        ends = new long[capacity];
+    }
+
+    // Owning thread. Scopes left open when profiling was switched off are forgotten when it's switched back on.
+    protected void begin(String name, long time, int session) {
+        if (session != this.session) {
+            this.session = session;
+            depth = 0;
+            overflowDepth = 0;
+        }
+        if (depth == MAX_DEPTH) {
+            overflowDepth++;
+            return;
+        }
+        openNames[depth] = name;
+        openStarts[depth] = time;
+        depth++;
+    }
+
+    protected void end(long time, int session) {
+        if (session != this.session)
+            return;
+        if (overflowDepth > 0) {
+            overflowDepth--;
+            return;
+        }
+        if (depth == 0)
+            return;
+
+        depth--;
+        add(openNames[depth], openStarts[depth], time);
+        openNames[depth] = null;
+    }
+
+    protected void add(String name, long start, long end) {
+        long w = written.get();
+        int slot = (int) w & mask;
+        names[slot] = name;
+        starts[slot] = start;
+        ends[slot] = end;
+        written.lazySet(w + 1);
+    }
+
+    // Any thread. Copies every scope that started at or after since into sink, oldest first.
+    protected void copySince(long since, ScopeSink sink) {
+        long last = written.get();
+        long first = Math.max(0, last - names.length);
+        int count = (int) (last - first);
+        String[] copiedNames = new String[count];
+        long[] copiedStarts = new long[count];
+        long[] copiedEnds = new long[count];
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (first + i) & mask;
+            copiedNames[i] = names[slot];
+            copiedStarts[i] = starts[slot];
+            copiedEnds[i] = ends[slot];
+        }
+
+        // Slots the writer got round to again while we were copying, or is writing now, may be half overwritten.
+        long lapped = Math.max(first, written.get() - names.length + 1);
+        for (int i = (int) (lapped - first); i < count; i++) {
+            if (copiedStarts[i] >= since && copiedNames[i] != null)
+                sink.accept(this, copiedNames[i], copiedStarts[i], copiedEnds[i]);
+        }
+    }
+
+    protected interface ScopeSink {
+        void accept(ScopeRing ring, String name, long start, long end);
+    }
+}
@@ -0,0 +1,78 @@
+package za.madtek.arcaderacer.render;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+public class Camera {
+
+    private static final Vector3fc UP = new Vector3f(0.0f, 1.0f, 0.0f);
+
+    private final Vector3f position = new Vector3f();
+    private final Vector3f target = new Vector3f(0.0f, 0.0f, -1.0f);
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Matrix4f cullMatrix = new Matrix4f();
+    private final FrustumIntersection frustum = new FrustumIntersection();
+
+    private float fieldOfView = (float) Math.toRadians(70.0);
+    private float near = 0.1f;
+    private float far = 2000.0f;
+    private float projectionScale;
+
+    public void lookAt(Vector3fc eye, Vector3fc target) {
+        position.set(eye);
+        this.target.set(target);
+    }
+
+    public void setFieldOfView(float fieldOfView) {
+        this.fieldOfView = fieldOfView;
+    }
+
+    public void setClipPlanes(float near, float far) {
+        this.near = near;
+        this.far = far;
+    }
+
+    // Once per frame, after the camera has been placed and before anything reads the matrices.
+    public void update(int width, int height) {
+        float aspect = (float) width / Math.max(1, height);
+        view.setLookAt(position, target, UP);
+
+        // Vulkan clip space: depth 0..1 and Y pointing down, so flip Y to keep counter-clockwise front faces.
+        projection.setPerspective(fieldOfView, aspect, near, far, true);
+        projection.m11(-projection.m11());
+        projection.mul(view, viewProjection);
+
+        // FrustumIntersection extracts planes assuming OpenGL clip space, so cull against the matching matrix.
+        cullMatrix.setPerspective(fieldOfView, aspect, near, far).mul(view);
+        frustum.set(cullMatrix);
+
+        projectionScale = height / (2.0f * (float) Math.tan(fieldOfView * 0.5f));
+    }
+
+    public Vector3fc getPosition() {
+        return position;
+    }
+
+    public Matrix4fc getViewProjection() {
+        return viewProjection;
+    }
+
+    public FrustumIntersection getFrustum() {
+        return frustum;
+    }
+
+    public float getNear() {
+        return near;
+    }
+
+    // Pixels covered by one unit at a distance of one unit; a sphere of radius r at distance d is about
+    // r * scale / d pixels across its radius.
+    public float getProjectionScale() {
+        return projectionScale;
+    }
+}
@@ -0,0 +1,111 @@
+package za.madtek.arcaderacer.render;
+
+import org.joml.Vector3fc;
+import za.madtek.arcaderacer.asset.Mesh;
+
+import java.util.Arrays;
+
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+
+// Visible draws for one pipeline, packed so the recording threads only ever read arrays. Rebuilt by the
+// visibility stage every frame and left alone until the next one.
+public class DrawList {
+
+    // DrawData in common.glsl: model-view-projection, position scale, position offset, base colour, rotation.
+    public static final int DRAW_DATA_SIZE = 128;
+
+    private Mesh[] meshes = new Mesh[64];
+    private int[] lods = new int[64];
+    private int[] colors = new int[64];
+    private float[] matrices = new float[64 * 16];
+    private float[] rotations = new float[64 * 4];
+    private int size;
+
+    protected void clear() {
+        // Drop the references so a freed mesh isn't kept reachable through an old slot.
+        Arrays.fill(meshes, 0, size, null);
+        size = 0;
+    }
+
+    protected void add(Mesh mesh, int lod, int color, float[] matrix, int matrixOffset, float[] rotation, int rotationOffset) {
+        if (size == meshes.length) {
+            int capacity = size * 2;
+            meshes = Arrays.copyOf(meshes, capacity);
+            lods = Arrays.copyOf(lods, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            matrices = Arrays.copyOf(matrices, capacity * 16);
+            rotations = Arrays.copyOf(rotations, capacity * 4);
+        }
+
+        meshes[size] = mesh;
+        lods[size] = lod;
+        colors[size] = color;
+        System.arraycopy(matrix, matrixOffset, matrices, size * 16, 16);
+        System.arraycopy(rotation, rotationOffset, rotations, size * 4, 4);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Mesh getMesh(int draw) {
+        return meshes[draw];
+    }
+
+    public int getLod(int draw) {
+        return lods[draw];
+    }
+
+    public int getColor(int draw) {
+        return colors[draw];
+    }
+
+    // Model-view-projection, column major, 16 floats from getMatrixOffset(draw).
+    public float[] getMatrices() {
+        return matrices;
+    }
+
+    public int getMatrixOffset(int draw) {
+        return draw * 16;
+    }
+
+    // Model rotation quaternion (x, y, z, w), 4 floats from getRotationOffset(draw).
+    public float[] getRotations() {
+        return rotations;
+    }
+
+    public int getRotationOffset(int draw) {
+        return draw * 4;
+    }
+
+    // Writes the draw's DrawData at address, for push constants or an instance buffer alike.
+    public void writeDrawData(int draw, long address) {
+        int matrix = draw * 16;
+        for (int i = 0; i < 16; i++)
+            memPutFloat(address + i * 4, matrices[matrix + i]);
+
+        // Half extent and centre of the bounds the positions were quantized to.
+        Mesh mesh = meshes[draw];
+        Vector3fc min = mesh.getBoundsMin();
+        Vector3fc max = mesh.getBoundsMax();
+        memPutFloat(address + 64, (max.x() - min.x()) * 0.5f);
+        memPutFloat(address + 68, (max.y() - min.y()) * 0.5f);
+        memPutFloat(address + 72, (max.z() - min.z()) * 0.5f);
+        memPutFloat(address + 76, 0.0f);
+        memPutFloat(address + 80, (min.x() + max.x()) * 0.5f);
+        memPutFloat(address + 84, (min.y() + max.y()) * 0.5f);
+        memPutFloat(address + 88, (min.z() + max.z()) * 0.5f);
+        memPutFloat(address + 92, 1.0f);
+
+        int color = colors[draw];
+        memPutFloat(address + 96, (color >>> 24) / 255.0f);
+        memPutFloat(address + 100, ((color >>> 16) & 0xFF) / 255.0f);
+        memPutFloat(address + 104, ((color >>> 8) & 0xFF) / 255.0f);
+        memPutFloat(address + 108, (color & 0xFF) / 255.0f);
+
+        int rotation = draw * 4;
+        for (int i = 0; i < 4; i++)
+            memPutFloat(address + 112 + i * 4, rotations[rotation + i]);
+    }
+}
@@ -0,0 +1,114 @@
+package za.madtek.arcaderacer.render;
+
+import org.lwjgl.system.MemoryStack;
+import za.madtek.arcaderacer.Globals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+// Writes frames read back from the renderer out as PNGs and compares each against the golden image of the same
+// name, if there is one. Software and hardware rasterizers disagree by a few levels along edges, so a frame only
+// fails when more than Globals.GOLDEN_PIXEL_TOLERANCE of its pixels are off by more than
+// Globals.GOLDEN_CHANNEL_TOLERANCE. To (re)bless a run, copy its captures over the golden directory.
+public class FrameCapture {
+
+    private final Path captureDirectory;
+    private final Path goldenDirectory;
+
+    private int captured;
+    private int compared;
+    private int mismatched;
+
+    public FrameCapture(Path captureDirectory, Path goldenDirectory) {
+        this.captureDirectory = captureDirectory;
+        this.goldenDirectory = goldenDirectory;
+    }
+
+    // pixels as handed to a ReadbackHandler. frame names the files, so should be the same for the same picture.
+    public void save(long frame, int width, int height, ByteBuffer pixels) {
+        String name = String.format("frame-%06d.png", frame);
+        Path file = captureDirectory.resolve(name);
+        try {
+            Files.createDirectories(captureDirectory);
+        } catch (IOException e) {
+            System.err.println("Failed to create capture directory " + captureDirectory + ": " + e.getMessage());
+            return;
+        }
+
+        if (!stbi_write_png(file.toAbsolutePath().toString(), width, height, 4, pixels, width * 4)) {
+            System.err.println("Failed to write capture " + file);
+            return;
+        }
+        captured++;
+
+        Path golden = goldenDirectory.resolve(name);
+        if (Files.exists(golden))
+            compare(golden, width, height, pixels);
+    }
+
+    private void compare(Path golden, int width, int height, ByteBuffer pixels) {
+        compared++;
+
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer pWidth = stack.mallocInt(1);
+            IntBuffer pHeight = stack.mallocInt(1);
+            IntBuffer pChannels = stack.mallocInt(1);
+            ByteBuffer expected = stbi_load(golden.toAbsolutePath().toString(), pWidth, pHeight, pChannels, 4);
+            if (expected == null) {
+                System.err.println("Failed to load golden image " + golden + ": " + stbi_failure_reason());
+                mismatched++;
+                return;
+            }
+
+            try {
+                if (pWidth.get(0) != width || pHeight.get(0) != height) {
+                    System.out.println("Golden " + golden.getFileName() + ": MISMATCH, " + pWidth.get(0) + "x"
+                            + pHeight.get(0) + " golden against a " + width + "x" + height + " frame");
+                    mismatched++;
+                    return;
+                }
+
+                int pixelCount = width * height;
+                int differing = 0;
+                int largest = 0;
+                for (int pixel = 0; pixel < pixelCount; pixel++) {
+                    int difference = 0;
+                    for (int channel = pixel * 4; channel < pixel * 4 + 4; channel++)
+                        difference = Math.max(difference, Math.abs((pixels.get(channel) & 0xFF) - (expected.get(channel) & 0xFF)));
+                    if (difference > Globals.GOLDEN_CHANNEL_TOLERANCE)
+                        differing++;
+                    largest = Math.max(largest, difference);
+                }
+
+                boolean match = differing <= pixelCount * Globals.GOLDEN_PIXEL_TOLERANCE;
+                if (!match)
+                    mismatched++;
+                System.out.printf("Golden %s: %s, %.3f%% of pixels differ, by up to %d%n", golden.getFileName(),
+                        match ? "match" : "MISMATCH", differing * 100.0 / pixelCount, largest);
+            } finally {
+                stbi_image_free(expected);
+            }
+        }
+    }
+
+    public int getCapturedCount() {
+        return captured;
+    }
+
+    public int getMismatchCount() {
+        return mismatched;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Captures: %d written to %s, %d compared against %s, %d mismatched", captured,
+                captureDirectory, compared, goldenDirectory, mismatched);
+    }
+}
@@ -0,0 +1,300 @@
+package za.madtek.arcaderacer.render;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.asset.Mesh;
+import za.madtek.arcaderacer.asset.MeshLod;
+import za.madtek.arcaderacer.asset.MeshPool;
+import za.madtek.arcaderacer.vulkan.DrawTask;
+import za.madtek.arcaderacer.vulkan.Pipeline;
+import za.madtek.arcaderacer.vulkan.PipelineLibrary;
+import za.madtek.arcaderacer.vulkan.RenderSystem;
+import za.madtek.arcaderacer.vulkan.ResourceRegistry;
+import za.madtek.arcaderacer.vulkan.ResourceType;
+import za.madtek.arcaderacer.vulkan.memory.AllocatedBuffer;
+import za.madtek.arcaderacer.vulkan.memory.BufferType;
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memPutInt;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Draws every draw list with a handful of vkCmdDrawIndexedIndirect calls. Each frame the lists are sorted by mesh
+// and LOD, DrawData for every visible object goes into a storage buffer in that order, and each run of the same
+// mesh and LOD becomes one instanced command. Every mesh lives in the shared MeshPool, so nothing is rebound
+// between commands and a pipeline is one call where multiDrawIndirect is supported.
+public class IndirectDrawTask implements DrawTask {
+
+    private static final int COMMAND_SIZE = VkDrawIndexedIndirectCommand.SIZEOF;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final RenderSystem renderSystem;
+    private final PipelineLibrary pipelineLibrary;
+    private final DrawList[] drawLists;
+    private final String[] pipelineNames;
+    private final TextureSet[] textureSets; // per draw list, null for the flat-colored pipelines
+    private final int[] firstCommands;
+    private final int[] commandCounts;
+    private final FrameBuffers[] frames = new FrameBuffers[Globals.MAX_FRAMES_IN_FLIGHT];
+
+    private long descriptorPool;
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private boolean enabled = true;
+    private int frameIndex;
+    private int lastCommandCount;
+    private int lastInstanceCount;
+
+    public IndirectDrawTask(RenderSystem renderSystem, DrawList[] drawLists, String[] pipelineNames,
+                            TextureSet[] textureSets) {
+        this.renderSystem = renderSystem;
+        this.pipelineLibrary = renderSystem.getPipelineLibrary();
+        this.drawLists = drawLists;
+        this.pipelineNames = pipelineNames;
+        this.textureSets = textureSets;
+        this.firstCommands = new int[drawLists.length];
+        this.commandCounts = new int[drawLists.length];
+    }
+
+    public void init() {
+        VkDevice device = renderSystem.getDevice();
+
+        try (MemoryStack stack = stackPush()) {
+            VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.calloc(1, stack);
+            poolSizes.type(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+            poolSizes.descriptorCount(frames.length);
+
+            VkDescriptorPoolCreateInfo poolInfo = VkDescriptorPoolCreateInfo.calloc(stack);
+            poolInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_POOL_CREATE_INFO);
+            poolInfo.maxSets(frames.length);
+            poolInfo.pPoolSizes(poolSizes);
+
+            LongBuffer pDescriptorPool = stack.mallocLong(1);
+            if (vkCreateDescriptorPool(device, poolInfo, null, pDescriptorPool) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create instance descriptor pool");
+            descriptorPool = ResourceRegistry.track(ResourceType.DESCRIPTOR_POOL, pDescriptorPool.get(0));
+
+            LongBuffer layouts = stack.mallocLong(frames.length);
+            for (int i = 0; i < frames.length; i++)
+                layouts.put(i, renderSystem.getInstanceSetLayout());
+
+            VkDescriptorSetAllocateInfo allocInfo = VkDescriptorSetAllocateInfo.calloc(stack);
+            allocInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO);
+            allocInfo.descriptorPool(descriptorPool);
+            allocInfo.pSetLayouts(layouts);
+
+            LongBuffer pDescriptorSets = stack.mallocLong(frames.length);
+            if (vkAllocateDescriptorSets(device, allocInfo, pDescriptorSets) != VK_SUCCESS)
+                throw new RuntimeException("Failed to allocate instance descriptor sets");
+
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = new FrameBuffers(pDescriptorSets.get(i));
+                frames[i].resize(INITIAL_CAPACITY);
+            }
+        }
+    }
+
+    // Caller waits for the device to go idle first.
+    public void free() {
+        for (FrameBuffers frame : frames) {
+            if (frame != null)
+                frame.destroyBuffers();
+        }
+
+        if (descriptorPool != VK_NULL_HANDLE) {
+            ResourceRegistry.untrack(ResourceType.DESCRIPTOR_POOL, descriptorPool);
+            vkDestroyDescriptorPool(renderSystem.getDevice(), descriptorPool, null);
+        }
+    }
+
+    // Needs firstInstance to index the instance buffer; without it MeshDrawTask is the only option.
+    public boolean isSupported() {
+        return renderSystem.isDrawIndirectFirstInstanceEnabled();
+    }
+
+    // Render thread, between frames.
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getLastCommandCount() {
+        return lastCommandCount;
+    }
+
+    public int getLastInstanceCount() {
+        return lastInstanceCount;
+    }
+
+    @Override
+    public void prepare(int frameIndex) {
+        this.frameIndex = frameIndex;
+        for (TextureSet textureSet : textureSets) {
+            if (textureSet != null)
+                textureSet.prepare(frameIndex);
+        }
+
+        Arrays.fill(commandCounts, 0);
+        lastCommandCount = 0;
+        lastInstanceCount = 0;
+        if (!enabled)
+            return;
+
+        int total = 0;
+        for (DrawList drawList : drawLists)
+            total += drawList.size();
+
+        FrameBuffers frame = frames[frameIndex];
+        if (total > frame.capacity)
+            frame.resize(Math.max(total, frame.capacity * 2));
+        if (total > keys.length)
+            keys = new long[Math.max(total, keys.length * 2)];
+
+        long instanceAddress = frame.instances.getMappedAddress();
+        long commandAddress = frame.commands.getMappedAddress();
+        int instance = 0;
+        int command = 0;
+
+        for (int list = 0; list < drawLists.length; list++) {
+            DrawList drawList = drawLists[list];
+            int size = drawList.size();
+            firstCommands[list] = command;
+
+            // Mesh, then LOD, then the draw itself so the order within a batch is stable.
+            for (int draw = 0; draw < size; draw++)
+                keys[draw] = (long) drawList.getMesh(draw).getId() << 40 | (long) drawList.getLod(draw) << 32 | draw;
+            Arrays.sort(keys, 0, size);
+
+            int draw = 0;
+            while (draw < size) {
+                long batch = keys[draw] >>> 32;
+                int first = instance;
+                do {
+                    drawList.writeDrawData((int) keys[draw], instanceAddress + (long) instance * DrawList.DRAW_DATA_SIZE);
+                    instance++;
+                    draw++;
+                } while (draw < size && keys[draw] >>> 32 == batch);
+
+                int last = (int) keys[draw - 1];
+                Mesh mesh = drawList.getMesh(last);
+                MeshLod lod = mesh.getLod(drawList.getLod(last));
+
+                long address = commandAddress + (long) command * COMMAND_SIZE;
+                memPutInt(address + VkDrawIndexedIndirectCommand.INDEXCOUNT, lod.getIndexCount());
+                memPutInt(address + VkDrawIndexedIndirectCommand.INSTANCECOUNT, instance - first);
+                memPutInt(address + VkDrawIndexedIndirectCommand.FIRSTINDEX, mesh.getFirstIndex() + lod.getFirstIndex());
+                memPutInt(address + VkDrawIndexedIndirectCommand.VERTEXOFFSET, mesh.getBaseVertex());
+                memPutInt(address + VkDrawIndexedIndirectCommand.FIRSTINSTANCE, first);
+                command++;
+            }
+
+            commandCounts[list] = command - firstCommands[list];
+        }
+
+        MemoryAllocator memoryAllocator = renderSystem.getMemoryAllocator();
+        if (instance > 0) {
+            memoryAllocator.flush(frame.instances, 0, (long) instance * DrawList.DRAW_DATA_SIZE);
+            memoryAllocator.flush(frame.commands, 0, (long) command * COMMAND_SIZE);
+        }
+
+        lastCommandCount = command;
+        lastInstanceCount = instance;
+    }
+
+    // One "draw" per pipeline, so the recorder can still split the pipelines across threads.
+    @Override
+    public int getDrawCount() {
+        return enabled ? drawLists.length : 0;
+    }
+
+    @Override
+    public void record(VkCommandBuffer commandBuffer, int start, int end) {
+        FrameBuffers frame = frames[frameIndex];
+        MeshPool pool = renderSystem.getMeshPool();
+
+        try (MemoryStack stack = stackPush()) {
+            for (int list = start; list < end; list++) {
+                int count = commandCounts[list];
+                Pipeline pipeline = pipelineLibrary.get(pipelineNames[list]);
+                TextureSet textureSet = textureSets[list];
+                if (count == 0 || pipeline == null || textureSet != null && !textureSet.isBound())
+                    continue;
+
+                vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getHandle());
+                LongBuffer descriptorSets = textureSet != null
+                        ? stack.longs(frame.descriptorSet, textureSet.getDescriptorSet())
+                        : stack.longs(frame.descriptorSet);
+                vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getLayout(), 0,
+                        descriptorSets, null);
+                vkCmdBindVertexBuffers(commandBuffer, 0, stack.longs(pool.getVertexBuffer().getBuffer()), stack.longs(0));
+                vkCmdBindIndexBuffer(commandBuffer, pool.getIndexBuffer().getBuffer(), 0, VK_INDEX_TYPE_UINT32);
+
+                long offset = (long) firstCommands[list] * COMMAND_SIZE;
+                if (renderSystem.isMultiDrawIndirectEnabled()) {
+                    vkCmdDrawIndexedIndirect(commandBuffer, frame.commands.getBuffer(), offset, count, COMMAND_SIZE);
+                } else {
+                    for (int i = 0; i < count; i++)
+                        vkCmdDrawIndexedIndirect(commandBuffer, frame.commands.getBuffer(), offset + (long) i * COMMAND_SIZE,
+                                1, COMMAND_SIZE);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Indirect: %s, %d commands for %d instances", enabled ? "on" : "off",
+                lastCommandCount, lastInstanceCount);
+    }
+
+    // The instance and command buffers of one frame slot. Only touched in prepare(), after the slot's fence, so a
+    // buffer that's outgrown can be destroyed on the spot.
+    private class FrameBuffers {
+        private final long descriptorSet;
+        private AllocatedBuffer instances;
+        private AllocatedBuffer commands;
+        private int capacity;
+
+        private FrameBuffers(long descriptorSet) {
+            this.descriptorSet = descriptorSet;
+        }
+
+        private void resize(int capacity) {
+            destroyBuffers();
+
+            MemoryAllocator memoryAllocator = renderSystem.getMemoryAllocator();
+            instances = memoryAllocator.createBuffer(BufferType.STORAGE, (long) capacity * DrawList.DRAW_DATA_SIZE);
+            commands = memoryAllocator.createBuffer(BufferType.INDIRECT, (long) capacity * COMMAND_SIZE);
+            this.capacity = capacity;
+
+            try (MemoryStack stack = stackPush()) {
+                VkDescriptorBufferInfo.Buffer bufferInfo = VkDescriptorBufferInfo.calloc(1, stack);
+                bufferInfo.buffer(instances.getBuffer());
+                bufferInfo.offset(0);
+                bufferInfo.range(VK_WHOLE_SIZE);
+
+                VkWriteDescriptorSet.Buffer write = VkWriteDescriptorSet.calloc(1, stack);
+                write.sType(VK_STRUCTURE_TYPE_WRITE_DESCRIPTOR_SET);
+                write.dstSet(descriptorSet);
+                write.dstBinding(0);
+                write.descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+                write.descriptorCount(1);
+                write.pBufferInfo(bufferInfo);
+
+                vkUpdateDescriptorSets(renderSystem.getDevice(), write, null);
+            }
+        }
+
+        private void destroyBuffers() {
+            MemoryAllocator memoryAllocator = renderSystem.getMemoryAllocator();
+            if (instances != null)
+                memoryAllocator.destroyBuffer(instances);
+            if (commands != null)
+                memoryAllocator.destroyBuffer(commands);
+            instances = null;
+            commands = null;
+        }
+    }
+}
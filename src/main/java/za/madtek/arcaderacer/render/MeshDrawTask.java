@@ -0,0 +1,87 @@
+package za.madtek.arcaderacer.render;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import za.madtek.arcaderacer.asset.Mesh;
+import za.madtek.arcaderacer.asset.MeshLod;
+import za.madtek.arcaderacer.asset.MeshPool;
+import za.madtek.arcaderacer.vulkan.DrawTask;
+import za.madtek.arcaderacer.vulkan.Pipeline;
+import za.madtek.arcaderacer.vulkan.PipelineLibrary;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Draws one pipeline's draw list, one vkCmdDrawIndexed per visible object with its DrawData pushed inline. The
+// straightforward path, kept for devices without indirect first instance and to benchmark IndirectDrawTask against.
+public class MeshDrawTask implements DrawTask {
+
+    private final PipelineLibrary pipelineLibrary;
+    private final String pipelineName;
+    private final DrawList drawList;
+    private final TextureSet textureSet; // null for the flat-colored pipelines
+    private boolean enabled = true;
+
+    public MeshDrawTask(PipelineLibrary pipelineLibrary, String pipelineName, DrawList drawList,
+                        TextureSet textureSet) {
+        this.pipelineLibrary = pipelineLibrary;
+        this.pipelineName = pipelineName;
+        this.drawList = drawList;
+        this.textureSet = textureSet;
+    }
+
+    // Render thread, between frames.
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void prepare(int frameIndex) {
+        if (textureSet != null)
+            textureSet.prepare(frameIndex);
+    }
+
+    // Nothing to draw until the pipeline has been built and its texture bound.
+    @Override
+    public int getDrawCount() {
+        boolean drawable = pipelineLibrary.isBuilt(pipelineName) && (textureSet == null || textureSet.isBound());
+        return enabled && drawable ? drawList.size() : 0;
+    }
+
+    @Override
+    public void record(VkCommandBuffer commandBuffer, int start, int end) {
+        Pipeline pipeline = pipelineLibrary.get(pipelineName);
+        if (pipeline == null)
+            return;
+
+        vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getHandle());
+
+        try (MemoryStack stack = stackPush()) {
+            if (textureSet != null)
+                vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getLayout(), 0,
+                        stack.longs(textureSet.getDescriptorSet()), null);
+
+            // Every mesh shares the pool's buffers, so they're bound once.
+            MeshPool pool = drawList.getMesh(start).getPool();
+            vkCmdBindVertexBuffers(commandBuffer, 0, stack.longs(pool.getVertexBuffer().getBuffer()), stack.longs(0));
+            vkCmdBindIndexBuffer(commandBuffer, pool.getIndexBuffer().getBuffer(), 0, VK_INDEX_TYPE_UINT32);
+
+            ByteBuffer constants = stack.malloc(DrawList.DRAW_DATA_SIZE);
+            long address = memAddress(constants);
+
+            for (int draw = start; draw < end; draw++) {
+                drawList.writeDrawData(draw, address);
+                vkCmdPushConstants(commandBuffer, pipeline.getLayout(), VK_SHADER_STAGE_VERTEX_BIT | VK_SHADER_STAGE_FRAGMENT_BIT,
+                        0, constants);
+
+                Mesh mesh = drawList.getMesh(draw);
+                MeshLod lod = mesh.getLod(drawList.getLod(draw));
+                vkCmdDrawIndexed(commandBuffer, lod.getIndexCount(), 1, mesh.getFirstIndex() + lod.getFirstIndex(),
+                        mesh.getBaseVertex(), 0);
+            }
+        }
+    }
+}
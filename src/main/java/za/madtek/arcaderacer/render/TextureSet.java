@@ -0,0 +1,124 @@
+package za.madtek.arcaderacer.render;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.asset.Texture;
+import za.madtek.arcaderacer.vulkan.RenderSystem;
+import za.madtek.arcaderacer.vulkan.ResourceRegistry;
+import za.madtek.arcaderacer.vulkan.ResourceType;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+// One texture for the textured mesh pipelines, as a descriptor set per frame slot. Mips keep landing after the
+// texture first becomes drawable, so a slot's set is pointed at the finest resident ones each time the slot comes
+// round, once its fence says no frame still reads the old view.
+public class TextureSet {
+
+    private final RenderSystem renderSystem;
+    private final String textureName;
+    private final long[] descriptorSets = new long[Globals.MAX_FRAMES_IN_FLIGHT];
+    // Resident mip each slot's set was last written with, -1 if it never was.
+    private final int[] boundMips = new int[Globals.MAX_FRAMES_IN_FLIGHT];
+
+    private Texture texture;
+    private long descriptorPool;
+    private int frameIndex;
+
+    public TextureSet(RenderSystem renderSystem, String textureName) {
+        this.renderSystem = renderSystem;
+        this.textureName = textureName;
+        Arrays.fill(boundMips, -1);
+    }
+
+    public void init() {
+        VkDevice device = renderSystem.getDevice();
+        texture = renderSystem.getTextureLibrary().load(textureName);
+
+        try (MemoryStack stack = stackPush()) {
+            VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.calloc(1, stack);
+            poolSizes.type(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER);
+            poolSizes.descriptorCount(descriptorSets.length);
+
+            VkDescriptorPoolCreateInfo poolInfo = VkDescriptorPoolCreateInfo.calloc(stack);
+            poolInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_POOL_CREATE_INFO);
+            poolInfo.maxSets(descriptorSets.length);
+            poolInfo.pPoolSizes(poolSizes);
+
+            LongBuffer pDescriptorPool = stack.mallocLong(1);
+            if (vkCreateDescriptorPool(device, poolInfo, null, pDescriptorPool) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create texture descriptor pool for " + textureName);
+            descriptorPool = ResourceRegistry.track(ResourceType.DESCRIPTOR_POOL, pDescriptorPool.get(0));
+
+            LongBuffer layouts = stack.mallocLong(descriptorSets.length);
+            for (int i = 0; i < descriptorSets.length; i++)
+                layouts.put(i, renderSystem.getTextureSetLayout());
+
+            VkDescriptorSetAllocateInfo allocInfo = VkDescriptorSetAllocateInfo.calloc(stack);
+            allocInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO);
+            allocInfo.descriptorPool(descriptorPool);
+            allocInfo.pSetLayouts(layouts);
+
+            LongBuffer pDescriptorSets = stack.mallocLong(descriptorSets.length);
+            if (vkAllocateDescriptorSets(device, allocInfo, pDescriptorSets) != VK_SUCCESS)
+                throw new RuntimeException("Failed to allocate texture descriptor sets for " + textureName);
+            pDescriptorSets.get(descriptorSets);
+        }
+    }
+
+    // Caller waits for the device to go idle first. The texture itself belongs to the TextureLibrary.
+    public void free() {
+        if (descriptorPool != VK_NULL_HANDLE) {
+            ResourceRegistry.untrack(ResourceType.DESCRIPTOR_POOL, descriptorPool);
+            vkDestroyDescriptorPool(renderSystem.getDevice(), descriptorPool, null);
+        }
+    }
+
+    // Until the smallest mips are in there's nothing to sample, and the textured pipelines draw flat instead.
+    // Stays true once set, so a draw list filled on the strength of it is still drawable when recorded.
+    public boolean isReady() {
+        return texture != null && texture.isReady();
+    }
+
+    // From the draw tasks' prepare(), after the slot's fence. Safe to call more than once per frame.
+    public void prepare(int frameIndex) {
+        this.frameIndex = frameIndex;
+        if (!isReady())
+            return;
+
+        int mip = texture.getResidentMip();
+        if (boundMips[frameIndex] == mip)
+            return;
+
+        try (MemoryStack stack = stackPush()) {
+            VkDescriptorImageInfo.Buffer imageInfo = VkDescriptorImageInfo.calloc(1, stack);
+            imageInfo.sampler(renderSystem.getTextureLibrary().getSampler());
+            imageInfo.imageView(texture.getView());
+            imageInfo.imageLayout(VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
+
+            VkWriteDescriptorSet.Buffer write = VkWriteDescriptorSet.calloc(1, stack);
+            write.sType(VK_STRUCTURE_TYPE_WRITE_DESCRIPTOR_SET);
+            write.dstSet(descriptorSets[frameIndex]);
+            write.dstBinding(0);
+            write.descriptorType(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER);
+            write.descriptorCount(1);
+            write.pImageInfo(imageInfo);
+
+            vkUpdateDescriptorSets(renderSystem.getDevice(), write, null);
+        }
+        boundMips[frameIndex] = mip;
+    }
+
+    // Whether the current slot's set points at the texture yet; nothing may be drawn with it before.
+    public boolean isBound() {
+        return boundMips[frameIndex] >= 0;
+    }
+
+    public long getDescriptorSet() {
+        return descriptorSets[frameIndex];
+    }
+}
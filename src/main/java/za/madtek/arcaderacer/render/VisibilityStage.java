@@ -0,0 +1,286 @@
+package za.madtek.arcaderacer.render;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.asset.Mesh;
+import za.madtek.arcaderacer.entity.BatchRunner;
+import za.madtek.arcaderacer.entity.EntityStore;
+import za.madtek.arcaderacer.entity.RangeTask;
+import za.madtek.arcaderacer.entity.Renderables;
+import za.madtek.arcaderacer.entity.Transforms;
+import za.madtek.arcaderacer.vulkan.RenderSystem;
+
+import java.util.Arrays;
+
+// Decides what gets drawn each frame. World-space bounds live in the Renderables columns and are only recomputed
+// for renderables whose transform moved or whose mesh just became ready. The cull then tests those packed columns
+// against the camera frustum in Globals.CULL_BATCH_SIZE batches on the fork-join pool, writing one result per dense
+// index into flat arrays, and a single pass compacts the survivors into a draw list per pipeline. Objects smaller
+// than Globals.MIN_SCREEN_RADIUS pixels are dropped, and the rest get the coarsest LOD whose error projects to under
+// Globals.LOD_ERROR_PIXELS.
+public class VisibilityStage {
+
+    public static final int OPAQUE = 0;
+    public static final int ALPHA_TEST = 1;
+    public static final int ROAD = 2;
+    public static final String[] PIPELINES = {"mesh", "mesh_alpha_test", "road"};
+    public static final String[] INSTANCED_PIPELINES =
+            {"mesh_instanced", "mesh_alpha_test_instanced", "road_instanced"};
+    // The texture each pipeline samples, null if it's flat-colored. Until a texture's first mips are in, its
+    // renderables are drawn flat with OPAQUE, in their own color.
+    public static final String[] TEXTURES = {null, null, "road"};
+
+    // Negative results; anything else is the chosen LOD.
+    private static final int NOT_READY = -1;
+    private static final int OUTSIDE = -2;
+    private static final int TOO_SMALL = -3;
+
+    private final DrawList[] drawLists = new DrawList[PIPELINES.length];
+    private final MeshDrawTask[] meshDrawTasks = new MeshDrawTask[PIPELINES.length];
+    private final TextureSet[] textureSets = new TextureSet[PIPELINES.length];
+    private IndirectDrawTask indirectDrawTask;
+
+    private final BatchRunner batchRunner = new BatchRunner();
+    private final RangeTask boundsTask = this::updateBounds;
+    private final RangeTask cullTask = this::cull;
+    private EntityStore entities;
+    private Camera camera;
+
+    private int[] results = new int[256];
+    private float[] matrices = new float[256 * 16];
+    private float[] rotations = new float[256 * 4];
+
+    private int visibleCount;
+    private int outsideCount;
+    private int tooSmallCount;
+    private long lastCullNanos;
+
+    public VisibilityStage() {
+        for (int i = 0; i < drawLists.length; i++)
+            drawLists[i] = new DrawList();
+    }
+
+    // Both paths are registered; update() enables whichever Globals.INDIRECT_DRAWING and the device allow.
+    public void init(RenderSystem renderSystem) {
+        for (int i = 0; i < PIPELINES.length; i++) {
+            if (TEXTURES[i] != null) {
+                textureSets[i] = new TextureSet(renderSystem, TEXTURES[i]);
+                textureSets[i].init();
+            }
+
+            meshDrawTasks[i] = new MeshDrawTask(renderSystem.getPipelineLibrary(), PIPELINES[i], drawLists[i],
+                    textureSets[i]);
+            renderSystem.addDrawTask(meshDrawTasks[i]);
+        }
+
+        indirectDrawTask = new IndirectDrawTask(renderSystem, drawLists, INSTANCED_PIPELINES, textureSets);
+        indirectDrawTask.init();
+        renderSystem.addDrawTask(indirectDrawTask);
+    }
+
+    // After the device is idle.
+    public void free() {
+        if (indirectDrawTask != null)
+            indirectDrawTask.free();
+        for (TextureSet textureSet : textureSets) {
+            if (textureSet != null)
+                textureSet.free();
+        }
+    }
+
+    // Render thread, once per frame after the camera is updated and before drawFrame(). Nothing may add or remove
+    // renderables while this runs.
+    public void update(EntityStore entities, Camera camera) {
+        long start = System.nanoTime();
+
+        boolean indirect = Globals.INDIRECT_DRAWING && indirectDrawTask.isSupported();
+        indirectDrawTask.setEnabled(indirect);
+        for (MeshDrawTask task : meshDrawTasks)
+            task.setEnabled(!indirect);
+
+        collectVisible(entities, camera);
+        lastCullNanos = System.nanoTime() - start;
+    }
+
+    // Culls every renderable and fills the draw lists, without touching the draw tasks.
+    protected void collectVisible(EntityStore entities, Camera camera) {
+        Renderables renderables = entities.renderables;
+        int count = renderables.size();
+        ensureCapacity(count);
+
+        this.entities = entities;
+        this.camera = camera;
+        batchRunner.run(count, Globals.CULL_BATCH_SIZE, Globals.PARALLEL_CULLING, boundsTask);
+        batchRunner.run(count, Globals.CULL_BATCH_SIZE, Globals.PARALLEL_CULLING, cullTask);
+        this.entities = null;
+        this.camera = null;
+
+        for (DrawList drawList : drawLists)
+            drawList.clear();
+
+        visibleCount = 0;
+        outsideCount = 0;
+        tooSmallCount = 0;
+        for (int i = 0; i < count; i++) {
+            int result = results[i];
+            if (result >= 0) {
+                int pipeline = renderables.pipeline.get(i);
+                if (textureSets[pipeline] != null && !textureSets[pipeline].isReady())
+                    pipeline = OPAQUE;
+
+                drawLists[pipeline].add(renderables.mesh.get(i), result, renderables.color.get(i),
+                        matrices, i * 16, rotations, i * 4);
+                visibleCount++;
+            } else if (result == OUTSIDE) {
+                outsideCount++;
+            } else if (result == TOO_SMALL) {
+                tooSmallCount++;
+            }
+        }
+    }
+
+    public DrawList getDrawList(int pipeline) {
+        return drawLists[pipeline];
+    }
+
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    // Outside the frustum plus too small to see.
+    public int getCulledCount() {
+        return outsideCount + tooSmallCount;
+    }
+
+    public int getOutsideCount() {
+        return outsideCount;
+    }
+
+    public int getTooSmallCount() {
+        return tooSmallCount;
+    }
+
+    public long getLastCullNanos() {
+        return lastCullNanos;
+    }
+
+    public IndirectDrawTask getIndirectDrawTask() {
+        return indirectDrawTask;
+    }
+
+    // Worker thread: only touches renderables in [start, end). Static renderables (no transform, like track chunks)
+    // are done once, when their mesh becomes ready; moving ones again whenever their transform changes.
+    private void updateBounds(int start, int end) {
+        Renderables renderables = entities.renderables;
+        Transforms transforms = entities.transforms;
+
+        Matrix4f model = null;
+        Vector3f boxMin = null;
+        Vector3f boxMax = null;
+
+        for (int i = start; i < end; i++) {
+            boolean moved = false;
+            if (renderables.ready.get(i) == 0) {
+                Mesh mesh = renderables.mesh.get(i);
+                if (mesh == null || !mesh.isReady())
+                    continue;
+                renderables.ready.set(i, 1);
+                moved = true;
+            }
+
+            int transform = transforms.indexOf(renderables.getEntity(i));
+            if (transform >= 0 && renderables.syncTransform(i, transforms, transform))
+                moved = true;
+            if (!moved)
+                continue;
+
+            if (model == null) {
+                model = new Matrix4f();
+                boxMin = new Vector3f();
+                boxMax = new Vector3f();
+            }
+            renderables.updateBounds(i, model, boxMin, boxMax);
+        }
+    }
+
+    // Worker thread: only writes the result slots in [start, end). Reads nothing but the packed columns until an
+    // object survives, then its mesh for the LOD errors.
+    private void cull(int start, int end) {
+        Renderables renderables = entities.renderables;
+        FrustumIntersection frustum = camera.getFrustum();
+        Matrix4fc viewProjection = camera.getViewProjection();
+        Vector3fc eye = camera.getPosition();
+        float projectionScale = camera.getProjectionScale();
+        float near = camera.getNear();
+
+        Matrix4f model = new Matrix4f();
+        Matrix4f modelViewProjection = new Matrix4f();
+
+        for (int i = start; i < end; i++) {
+            if (renderables.ready.get(i) == 0) {
+                results[i] = NOT_READY;
+                continue;
+            }
+
+            // The sphere settles most objects on its own.
+            float x = renderables.centerX.get(i);
+            float y = renderables.centerY.get(i);
+            float z = renderables.centerZ.get(i);
+            float radius = renderables.radius.get(i);
+            int test = frustum.intersectSphere(x, y, z, radius);
+            if (test == FrustumIntersection.OUTSIDE) {
+                results[i] = OUTSIDE;
+                continue;
+            }
+
+            // Straddling a plane: the box is much tighter than the sphere for long, flat things like road chunks.
+            if (test == FrustumIntersection.INTERSECT && !frustum.testAab(
+                    renderables.minX.get(i), renderables.minY.get(i), renderables.minZ.get(i),
+                    renderables.maxX.get(i), renderables.maxY.get(i), renderables.maxZ.get(i))) {
+                results[i] = OUTSIDE;
+                continue;
+            }
+
+            // Nearest point of the sphere, so both tests err towards keeping detail.
+            float distance = Math.max(near, eye.distance(x, y, z) - radius);
+            float pixelsPerUnit = projectionScale / distance;
+            if (radius * pixelsPerUnit < Globals.MIN_SCREEN_RADIUS) {
+                results[i] = TOO_SMALL;
+                continue;
+            }
+
+            Mesh mesh = renderables.mesh.get(i);
+            float scale = renderables.scale.get(i);
+            int lod = mesh.getLodCount() - 1;
+            while (lod > 0 && mesh.getLod(lod).getError() * scale * pixelsPerUnit > Globals.LOD_ERROR_PIXELS)
+                lod--;
+            results[i] = lod;
+
+            viewProjection.mul(renderables.getModelMatrix(i, model), modelViewProjection).get(matrices, i * 16);
+            rotations[i * 4] = renderables.rotationX.get(i);
+            rotations[i * 4 + 1] = renderables.rotationY.get(i);
+            rotations[i * 4 + 2] = renderables.rotationZ.get(i);
+            rotations[i * 4 + 3] = renderables.rotationW.get(i);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (count <= results.length)
+            return;
+
+        int capacity = Math.max(count, results.length * 2);
+        results = Arrays.copyOf(results, capacity);
+        matrices = Arrays.copyOf(matrices, capacity * 16);
+        rotations = Arrays.copyOf(rotations, capacity * 4);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Visibility: %d visible, %d culled (%d outside, %d too small) in %.3f ms",
+                visibleCount, getCulledCount(), outsideCount, tooSmallCount, lastCullNanos / 1e6);
+    }
+}
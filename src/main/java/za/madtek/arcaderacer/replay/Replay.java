@@ -0,0 +1,207 @@
+package za.madtek.arcaderacer.replay;
+
+import za.madtek.arcaderacer.Globals;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// The player's input for every tick of a session, plus what's needed to set up the same race: the simulation is
+// deterministic, so feeding the same inputs to the same build replays it exactly, which is what makes benchmark
+// runs comparable and lets a replay stand in as a ghost car. Inputs are packed into an int per tick (quantized to
+// 8 bits each, and live play uses the same quantized values so it matches its replay) and stored run-length
+// encoded, since they rarely change from one tick to the next: a minute of driving is a few kilobytes.
+//
+// File layout, big endian: magic, version, build (UTF), seed, grid size, traffic count, tick count, the hash of
+// the simulation state after the last tick, run count, then per run a varint length and the packed input.
+public class Replay {
+
+    private static final int MAGIC = 0x41524550; // "AREP"
+    private static final int VERSION = 1;
+
+    // Nobody has touched the controls yet, so the AI is still driving the player's car.
+    public static final int NO_INPUT = 0;
+    private static final int ACTIVE = 1 << 24;
+
+    private final String build;
+    private final long seed;
+    private final int gridSize;
+    private final int trafficCount;
+    private int[] inputs;
+    private int tickCount;
+    private long finalHash;
+
+    public Replay(String build, long seed, int gridSize, int trafficCount) {
+        this(build, seed, gridSize, trafficCount, new int[4096], 0, 0);
+    }
+
+    private Replay(String build, long seed, int gridSize, int trafficCount, int[] inputs, int tickCount, long finalHash) {
+        this.build = build;
+        this.seed = seed;
+        this.gridSize = gridSize;
+        this.trafficCount = trafficCount;
+        this.inputs = inputs;
+        this.tickCount = tickCount;
+        this.finalHash = finalHash;
+    }
+
+    public static int pack(float steer, float throttle, float brake) {
+        return ACTIVE | (Math.round(clamp(steer, -1.0f) * 127.0f) & 0xFF) << 16
+                | Math.round(clamp(throttle, 0.0f) * 255.0f) << 8 | Math.round(clamp(brake, 0.0f) * 255.0f);
+    }
+
+    public static boolean isActive(int input) {
+        return (input & ACTIVE) != 0;
+    }
+
+    public static float getSteer(int input) {
+        return (byte) (input >> 16) / 127.0f;
+    }
+
+    public static float getThrottle(int input) {
+        return (input >> 8 & 0xFF) / 255.0f;
+    }
+
+    public static float getBrake(int input) {
+        return (input & 0xFF) / 255.0f;
+    }
+
+    private static float clamp(float value, float min) {
+        return Math.max(min, Math.min(1.0f, value));
+    }
+
+    // Once per tick while recording.
+    public void add(int input) {
+        if (tickCount == inputs.length)
+            inputs = Arrays.copyOf(inputs, tickCount * 2);
+        inputs[tickCount++] = input;
+    }
+
+    public int getInput(int tick) {
+        return inputs[tick];
+    }
+
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    public String getBuild() {
+        return build;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public int getTrafficCount() {
+        return trafficCount;
+    }
+
+    // What the simulation state should hash to after replaying every tick; a mismatch means the run diverged.
+    public long getFinalHash() {
+        return finalHash;
+    }
+
+    public void setFinalHash(long finalHash) {
+        this.finalHash = finalHash;
+    }
+
+    public void write(Path file) throws IOException {
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(build);
+            out.writeLong(seed);
+            out.writeInt(gridSize);
+            out.writeInt(trafficCount);
+            out.writeInt(tickCount);
+            out.writeLong(finalHash);
+
+            int runs = 0;
+            for (int tick = 0; tick < tickCount; tick++) {
+                if (tick == 0 || inputs[tick] != inputs[tick - 1])
+                    runs++;
+            }
+            out.writeInt(runs);
+
+            for (int start = 0; start < tickCount; ) {
+                int end = start + 1;
+                while (end < tickCount && inputs[end] == inputs[start])
+                    end++;
+                writeVarInt(out, end - start);
+                out.writeInt(inputs[start]);
+                start = end;
+            }
+        }
+    }
+
+    public static Replay read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a replay: " + file);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported replay version " + version + ": " + file);
+
+            String build = in.readUTF();
+            long seed = in.readLong();
+            int gridSize = in.readInt();
+            int trafficCount = in.readInt();
+            int tickCount = in.readInt();
+            long finalHash = in.readLong();
+
+            int[] inputs = new int[Math.max(1, tickCount)];
+            int runs = in.readInt();
+            int tick = 0;
+            for (int run = 0; run < runs; run++) {
+                int length = readVarInt(in);
+                int input = in.readInt();
+                if (length > tickCount - tick)
+                    throw new IOException("Corrupt replay, runs overflow " + tickCount + " ticks: " + file);
+                Arrays.fill(inputs, tick, tick + length, input);
+                tick += length;
+            }
+            if (tick != tickCount)
+                throw new IOException("Corrupt replay, " + tick + " of " + tickCount + " ticks: " + file);
+
+            return new Replay(build, seed, gridSize, trafficCount, inputs, tickCount, finalHash);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Corrupt replay, bad run length");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Replay: %d ticks (%.1f s), build %s, seed %x, %d cars + %d traffic", tickCount,
+                (double) tickCount / Globals.TICK_RATE, build, seed, gridSize, trafficCount);
+    }
+}
@@ -0,0 +1,66 @@
+package za.madtek.arcaderacer.track;
+
+import org.joml.Vector3f;
+import za.madtek.arcaderacer.asset.MeshBuilder;
+
+// Turns a stretch of a placed stage into geometry in world space: the road surface with a verge either side that
+// drops away slightly, and the props standing on it. Cross sections are sampled every STEP metres, plus one at each end of the chunk so
+// neighbouring chunks share their edge exactly.
+public class ChunkBuilder {
+
+    private static final float STEP = 2.0f;
+    private static final float VERGE_WIDTH = 6.0f;
+    private static final float VERGE_DROP = 0.4f;
+
+    public static void build(TrackChunk chunk, MeshBuilder builder) {
+        PlacedStage placed = chunk.getPlacedStage();
+        Stage stage = placed.getStage();
+        TrackFrame frame = new TrackFrame();
+        Vector3f right = new Vector3f();
+        Vector3f forward = new Vector3f();
+        Vector3f up = new Vector3f();
+
+        float length = chunk.getEnd() - chunk.getStart();
+        int steps = Math.max(1, (int) Math.ceil(length / STEP));
+
+        int previous = -1;
+        for (int i = 0; i <= steps; i++) {
+            float distance = chunk.getStart() + length * i / steps;
+            float v = (float) i / steps;
+            placed.sample(distance, frame);
+            frame.getRight(right);
+            frame.getForward(forward);
+            right.cross(forward, up);
+
+            float halfWidth = stage.getWidth(distance) * 0.5f;
+            float outer = halfWidth + VERGE_WIDTH;
+
+            int first = builder.vertex(frame.x - right.x * outer, frame.y - VERGE_DROP, frame.z - right.z * outer, up.x, up.y, up.z, 0.0f, v);
+            builder.vertex(frame.x - right.x * halfWidth, frame.y, frame.z - right.z * halfWidth, up.x, up.y, up.z, 0.25f, v);
+            builder.vertex(frame.x + right.x * halfWidth, frame.y, frame.z + right.z * halfWidth, up.x, up.y, up.z, 0.75f, v);
+            builder.vertex(frame.x + right.x * outer, frame.y - VERGE_DROP, frame.z + right.z * outer, up.x, up.y, up.z, 1.0f, v);
+
+            // Counter-clockwise seen from above: across the road, then forward.
+            if (previous >= 0) {
+                for (int strip = 0; strip < 3; strip++)
+                    builder.quad(previous + strip, previous + strip + 1, first + strip + 1, first + strip);
+            }
+            previous = first;
+        }
+
+        // Each prop belongs to the chunk its centre is in.
+        Vector3f base = new Vector3f();
+        for (int i = stage.propAt(chunk.getStart()); i < stage.getPropCount(); i++) {
+            Prop prop = stage.getProp(i);
+            if (prop.getDistance() >= chunk.getEnd())
+                break;
+
+            placed.sample(prop.getDistance(), frame);
+            frame.getRight(right);
+            frame.getForward(forward);
+            right.cross(forward, up);
+            frame.getPosition(base).fma(prop.getLateral(), right);
+            builder.box(base, right, up, forward, prop.getHalfWidth(), prop.getHeight(), prop.getHalfLength());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package za.madtek.arcaderacer.track;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// An OutRun style tour: row r has r + 1 stages and every stage forks into the two below it, (r + 1, c) on the
+// left and (r + 1, c + 1) on the right. Stages are generated from the seed when first asked for and only the most
+// recently used few are kept, so the course can be as long as it likes without the whole thing sitting in memory.
+public class Course {
+
+    private static final int MAX_CACHED_STAGES = 8;
+
+    private static final float ROAD_WIDTH = 14.0f;
+    private static final int MIN_SEGMENTS = 40;
+    private static final int MAX_SEGMENTS = 80;
+    private static final float MIN_SEGMENT_LENGTH = 20.0f;
+    private static final float MAX_SEGMENT_LENGTH = 80.0f;
+    private static final float MAX_CURVE = 1.2f;
+    private static final float MAX_HILL = 24.0f;
+    private static final float DIVIDER_LENGTH = 40.0f; // bollards down the middle before a fork
+    private static final float DIVIDER_SPACING = 4.0f;
+    private static final float BOLLARD_HALF_SIZE = 0.25f;
+    private static final float BOLLARD_HEIGHT = 1.0f;
+
+    private final long seed;
+    private final int rows;
+
+    private final Map<Integer, Stage> stages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Stage> eldest) {
+            return size() > MAX_CACHED_STAGES;
+        }
+    };
+
+    public Course(long seed, int rows) {
+        this.seed = seed;
+        this.rows = rows;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public Stage getStart() {
+        return getStage(0, 0);
+    }
+
+    // Safe from any thread.
+    public synchronized Stage getStage(int row, int column) {
+        if (row < 0 || row >= rows || column < 0 || column > row)
+            throw new IllegalArgumentException("No stage at " + row + ", " + column);
+
+        return stages.computeIfAbsent(row * rows + column, key -> generate(row, column));
+    }
+
+    // The stage a fork leads to, or null after the last row.
+    public Stage getNext(Stage stage, boolean right) {
+        if (stage.getRow() + 1 >= rows)
+            return null;
+
+        return getStage(stage.getRow() + 1, stage.getColumn() + (right ? 1 : 0));
+    }
+
+    // Deterministic in (seed, row, column), so an evicted stage comes back exactly as it was.
+    private Stage generate(int row, int column) {
+        Random random = new Random(seed ^ (row * 0x9E3779B97F4A7C15L) ^ (column * 0xC2B2AE3D27D4EB4FL));
+        Segment[] segments = new Segment[MIN_SEGMENTS + random.nextInt(MAX_SEGMENTS - MIN_SEGMENTS + 1)];
+
+        // Straight run out of the fork so both branches read clearly before they bend away.
+        segments[0] = new Segment(MAX_SEGMENT_LENGTH, 0.0f, 0.0f, ROAD_WIDTH);
+
+        for (int i = 1; i < segments.length; i++) {
+            float length = MIN_SEGMENT_LENGTH + random.nextFloat() * (MAX_SEGMENT_LENGTH - MIN_SEGMENT_LENGTH);
+            float curve = 0.0f;
+            // Roughly a third straights, the rest bends leaning gentle.
+            if (random.nextInt(3) != 0) {
+                float amount = random.nextFloat();
+                curve = amount * amount * MAX_CURVE * (random.nextBoolean() ? 1.0f : -1.0f);
+            }
+
+            float hill = random.nextInt(4) == 0 ? (random.nextFloat() * 2.0f - 1.0f) * MAX_HILL : 0.0f;
+            segments[i] = new Segment(length, curve, hill, ROAD_WIDTH);
+        }
+
+        // A line of bollards splits the road before a fork, so the choice of branch is made before the end.
+        List<Prop> props = new ArrayList<>();
+        if (row + 1 < rows) {
+            float length = 0.0f;
+            for (Segment segment : segments)
+                length += segment.getLength();
+            for (float distance = length - DIVIDER_LENGTH; distance < length; distance += DIVIDER_SPACING)
+                props.add(new Prop(distance, 0.0f, BOLLARD_HALF_SIZE, BOLLARD_HALF_SIZE, BOLLARD_HEIGHT));
+        }
+
+        return new Stage(row, column, segments, props.toArray(new Prop[0]));
+    }
+}
@@ -0,0 +1,68 @@
+package za.madtek.arcaderacer.track;
+
+// A stage positioned in the world. The same stage can be placed more than once (reached from either fork), so
+// chunks are keyed by placement rather than by stage.
+public class PlacedStage {
+
+    public static final float FORK_ANGLE = 0.15f; // radians each branch is turned away from the centre line
+
+    private final int id;
+    private final Stage stage;
+    private final TrackFrame origin;
+    private final PlacedStage[] successors = new PlacedStage[2]; // left, right; placed on first use
+
+    // The first stage of a course.
+    public PlacedStage(Stage stage, TrackFrame origin) {
+        this(1, stage, origin);
+    }
+
+    private PlacedStage(int id, Stage stage, TrackFrame origin) {
+        this.id = id;
+        this.stage = stage;
+        this.origin = new TrackFrame().set(origin);
+    }
+
+    // A leading one and then a bit per fork taken to get here, set for right: unique within a course and the
+    // same every run, so it's safe to order by in the simulation.
+    public int getId() {
+        return id;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public TrackFrame getOrigin() {
+        return origin;
+    }
+
+    public float getLength() {
+        return stage.getLength();
+    }
+
+    public TrackFrame sample(float distance, TrackFrame dest) {
+        return stage.sample(distance, origin, dest);
+    }
+
+    public TrackFrame getEnd(TrackFrame dest) {
+        return stage.sample(stage.getLength(), origin, dest);
+    }
+
+    // The branch of the fork at the end of this stage, leaving from where this one ends and splayed FORK_ANGLE to
+    // its side so the two are told apart. Null after the last row. Every caller gets the same placement, so cars
+    // that took the same forks are on the same one as each other and as the streamed road.
+    public synchronized PlacedStage placeNext(Course course, boolean right) {
+        int side = right ? 1 : 0;
+        if (successors[side] != null)
+            return successors[side];
+
+        Stage next = course.getNext(stage, right);
+        if (next == null)
+            return null;
+
+        TrackFrame end = getEnd(new TrackFrame());
+        end.heading += right ? FORK_ANGLE : -FORK_ANGLE;
+        successors[side] = new PlacedStage(id << 1 | side, next, end);
+        return successors[side];
+    }
+}
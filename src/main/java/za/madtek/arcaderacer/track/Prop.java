@@ -0,0 +1,40 @@
+package za.madtek.arcaderacer.track;
+
+// Something solid standing on a stage, in stage space: a box centred at distance along the centre line and lateral
+// metres right of it, standing height metres tall on the road.
+public class Prop {
+
+    private final float distance;
+    private final float lateral;
+    private final float halfLength;
+    private final float halfWidth;
+    private final float height;
+
+    public Prop(float distance, float lateral, float halfLength, float halfWidth, float height) {
+        this.distance = distance;
+        this.lateral = lateral;
+        this.halfLength = halfLength;
+        this.halfWidth = halfWidth;
+        this.height = height;
+    }
+
+    public float getDistance() {
+        return distance;
+    }
+
+    public float getLateral() {
+        return lateral;
+    }
+
+    public float getHalfLength() {
+        return halfLength;
+    }
+
+    public float getHalfWidth() {
+        return halfWidth;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+}
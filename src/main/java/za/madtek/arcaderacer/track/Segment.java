@@ -0,0 +1,34 @@
+package za.madtek.arcaderacer.track;
+
+// A stretch of road with constant curvature. curve is the total change in heading over the segment in radians
+// (positive turns right), hill the total change in height, eased in and out so joints between segments are smooth.
+public class Segment {
+
+    private final float length;
+    private final float curve;
+    private final float hill;
+    private final float width;
+
+    public Segment(float length, float curve, float hill, float width) {
+        this.length = length;
+        this.curve = curve;
+        this.hill = hill;
+        this.width = width;
+    }
+
+    public float getLength() {
+        return length;
+    }
+
+    public float getCurve() {
+        return curve;
+    }
+
+    public float getHill() {
+        return hill;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+}
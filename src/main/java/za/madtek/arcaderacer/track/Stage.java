@@ -0,0 +1,183 @@
+package za.madtek.arcaderacer.track;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// One stage of the course: a run of segments between two forks. Geometry is evaluated in stage space (starting
+// at the origin facing -Z) and placed in the world by the frame the stage starts at, since the same stage can be
+// reached from two different forks.
+public class Stage {
+
+    private final int row;
+    private final int column;
+    private final Segment[] segments;
+    private final Prop[] props; // by distance
+    private final float[] propDistance;
+    private final float maxPropHalfLength;
+
+    // Stage space frame at the start of every segment, plus one past the end.
+    private final float[] startDistance;
+    private final float[] startX;
+    private final float[] startY;
+    private final float[] startZ;
+    private final float[] startHeading;
+
+    public Stage(int row, int column, Segment[] segments, Prop[] props) {
+        this.row = row;
+        this.column = column;
+        this.segments = segments;
+        this.props = props.clone();
+        Arrays.sort(this.props, Comparator.comparingDouble(Prop::getDistance));
+        propDistance = new float[props.length];
+        float maxHalfLength = 0.0f;
+        for (int i = 0; i < props.length; i++) {
+            propDistance[i] = this.props[i].getDistance();
+            maxHalfLength = Math.max(maxHalfLength, this.props[i].getHalfLength());
+        }
+        maxPropHalfLength = maxHalfLength;
+
+        int count = segments.length;
+        startDistance = new float[count + 1];
+        startX = new float[count + 1];
+        startY = new float[count + 1];
+        startZ = new float[count + 1];
+        startHeading = new float[count + 1];
+
+        TrackFrame frame = new TrackFrame();
+        for (int i = 0; i < count; i++) {
+            sampleSegment(i, segments[i].getLength(), frame);
+            startDistance[i + 1] = startDistance[i] + segments[i].getLength();
+            startX[i + 1] = frame.x;
+            startY[i + 1] = frame.y;
+            startZ[i + 1] = frame.z;
+            startHeading[i + 1] = frame.heading;
+        }
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public float getLength() {
+        return startDistance[segments.length];
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public Segment getSegment(int index) {
+        return segments[index];
+    }
+
+    public int segmentAt(float distance) {
+        int index = Arrays.binarySearch(startDistance, 0, segments.length, distance);
+        int segment = index >= 0 ? index : -index - 2;
+        return Math.max(0, Math.min(segments.length - 1, segment));
+    }
+
+    public int getPropCount() {
+        return props.length;
+    }
+
+    public Prop getProp(int index) {
+        return props[index];
+    }
+
+    public float getMaxPropHalfLength() {
+        return maxPropHalfLength;
+    }
+
+    // Index of the first prop centred at or past distance, or getPropCount() if there's none.
+    public int propAt(float distance) {
+        int low = 0;
+        int high = propDistance.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (propDistance[middle] < distance)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    public float getWidth(float distance) {
+        return segments[segmentAt(distance)].getWidth();
+    }
+
+    // The queries below are plain arithmetic on the segment tables, with no trig, so they give the same bits on
+    // every machine. Vehicle physics runs on them and relies on that for replays.
+
+    // Height above the start of the stage.
+    public float getHeight(float distance) {
+        float clamped = Math.max(0.0f, Math.min(getLength(), distance));
+        int segment = segmentAt(clamped);
+        float t = (clamped - startDistance[segment]) / segments[segment].getLength();
+        return startY[segment] + segments[segment].getHill() * t * t * (3.0f - 2.0f * t);
+    }
+
+    // Rise over run.
+    public float getGrade(float distance) {
+        float clamped = Math.max(0.0f, Math.min(getLength(), distance));
+        int segment = segmentAt(clamped);
+        float t = (clamped - startDistance[segment]) / segments[segment].getLength();
+        return segments[segment].getHill() * 6.0f * t * (1.0f - t) / segments[segment].getLength();
+    }
+
+    // Change in heading per metre, positive turning right.
+    public float getCurvature(float distance) {
+        Segment segment = segments[segmentAt(distance)];
+        return segment.getCurve() / segment.getLength();
+    }
+
+    public float getEndHeight() {
+        return startY[segments.length];
+    }
+
+    // World frame at the given distance along the stage, for a stage starting at origin.
+    public TrackFrame sample(float distance, TrackFrame origin, TrackFrame dest) {
+        float clamped = Math.max(0.0f, Math.min(getLength(), distance));
+        int segment = segmentAt(clamped);
+        sampleSegment(segment, clamped - startDistance[segment], dest);
+
+        float cos = (float) Math.cos(origin.heading);
+        float sin = (float) Math.sin(origin.heading);
+        float x = dest.x;
+        float z = dest.z;
+        dest.x = origin.x + x * cos - z * sin;
+        dest.z = origin.z + x * sin + z * cos;
+        dest.y += origin.y;
+        dest.heading += origin.heading;
+        return dest;
+    }
+
+    // Stage space frame at offset into a segment. Constant curvature means the centre line is a circular arc,
+    // which integrates exactly.
+    private void sampleSegment(int index, float offset, TrackFrame dest) {
+        Segment segment = segments[index];
+        float heading = startHeading[index];
+        float curvature = segment.getCurve() / segment.getLength();
+        float newHeading = heading + curvature * offset;
+
+        float dx;
+        float dz;
+        if (Math.abs(curvature) < 1e-6f) {
+            dx = (float) Math.sin(heading) * offset;
+            dz = (float) -Math.cos(heading) * offset;
+        } else {
+            dx = (float) ((Math.cos(heading) - Math.cos(newHeading)) / curvature);
+            dz = (float) ((Math.sin(heading) - Math.sin(newHeading)) / curvature);
+        }
+
+        float t = offset / segment.getLength();
+        float ease = t * t * (3.0f - 2.0f * t);
+        float grade = segment.getHill() * 6.0f * t * (1.0f - t) / segment.getLength();
+
+        dest.set(startX[index] + dx, startY[index] + segment.getHill() * ease, startZ[index] + dz, newHeading, grade);
+    }
+}
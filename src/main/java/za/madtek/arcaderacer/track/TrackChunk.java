@@ -0,0 +1,92 @@
+package za.madtek.arcaderacer.track;
+
+import za.madtek.arcaderacer.asset.Mesh;
+import za.madtek.arcaderacer.entity.Entity;
+
+import java.util.concurrent.CompletableFuture;
+
+public class TrackChunk {
+
+    public static final float LENGTH = 50.0f;
+
+    private final PlacedStage placed;
+    private final int index;
+    private final float start;
+    private final float end;
+
+    private CompletableFuture<Mesh> build;
+    private volatile boolean cancelled;
+    private int entity = Entity.NONE;
+
+    protected TrackChunk(PlacedStage placed, int index) {
+        this.placed = placed;
+        this.index = index;
+        this.start = index * LENGTH;
+        this.end = Math.min(placed.getLength(), start + LENGTH);
+    }
+
+    public static int count(PlacedStage placed) {
+        return (int) Math.ceil(placed.getLength() / LENGTH);
+    }
+
+    // Unique while the placement is alive: 32 bits of placement, 32 of chunk index.
+    public static long key(PlacedStage placed, int index) {
+        return ((long) placed.getId() << 32) | index;
+    }
+
+    public PlacedStage getPlacedStage() {
+        return placed;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public float getStart() {
+        return start;
+    }
+
+    public float getEnd() {
+        return end;
+    }
+
+    // Null until the build has finished, and drawable once the mesh isReady().
+    public Mesh getMesh() {
+        return build != null && build.isDone() && !build.isCompletedExceptionally() ? build.getNow(null) : null;
+    }
+
+    public boolean isReady() {
+        Mesh mesh = getMesh();
+        return mesh != null && mesh.isReady();
+    }
+
+    protected CompletableFuture<Mesh> getBuild() {
+        return build;
+    }
+
+    protected void setBuild(CompletableFuture<Mesh> build) {
+        this.build = build;
+    }
+
+    protected boolean isCancelled() {
+        return cancelled;
+    }
+
+    protected void cancel() {
+        cancelled = true;
+    }
+
+    // The renderable drawing this chunk, once its mesh is ready.
+    public int getEntity() {
+        return entity;
+    }
+
+    protected void setEntity(int entity) {
+        this.entity = entity;
+    }
+
+    @Override
+    public String toString() {
+        return "stage " + placed.getStage().getRow() + "," + placed.getStage().getColumn() + " chunk " + index;
+    }
+}
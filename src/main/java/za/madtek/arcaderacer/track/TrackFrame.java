@@ -0,0 +1,39 @@
+package za.madtek.arcaderacer.track;
+
+import org.joml.Vector3f;
+
+// A point on the road centre line. Heading 0 faces -Z and increases turning right; grade is rise over run.
+public class TrackFrame {
+
+    public float x;
+    public float y;
+    public float z;
+    public float heading;
+    public float grade;
+
+    public TrackFrame set(float x, float y, float z, float heading, float grade) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.heading = heading;
+        this.grade = grade;
+        return this;
+    }
+
+    public TrackFrame set(TrackFrame other) {
+        return set(other.x, other.y, other.z, other.heading, other.grade);
+    }
+
+    public Vector3f getPosition(Vector3f dest) {
+        return dest.set(x, y, z);
+    }
+
+    public Vector3f getForward(Vector3f dest) {
+        return dest.set((float) Math.sin(heading), grade, (float) -Math.cos(heading)).normalize();
+    }
+
+    // Flat, pointing to the right hand side of the road.
+    public Vector3f getRight(Vector3f dest) {
+        return dest.set((float) Math.cos(heading), 0.0f, (float) Math.sin(heading));
+    }
+}
@@ -0,0 +1,259 @@
+package za.madtek.arcaderacer.track;
+
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.asset.Mesh;
+import za.madtek.arcaderacer.asset.MeshBuilder;
+import za.madtek.arcaderacer.entity.Entity;
+import za.madtek.arcaderacer.entity.EntityStore;
+import za.madtek.arcaderacer.render.VisibilityStage;
+import za.madtek.arcaderacer.vulkan.RenderSystem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps chunks resident in a window from Globals.TRACK_VIEW_BEHIND metres behind the player to
+// Globals.TRACK_VIEW_AHEAD ahead, across the previous stage and both branches of the coming fork. Chunks are built
+// on worker threads and freed through the render system's deletion queue once the GPU is past the last frame that
+// could have drawn them, without waiting for the device to go idle. So the resident
+// set, and the memory behind it, stays the same size however long the course is.
+public class TrackStreamer {
+
+    private static final int ROAD_COLOR = 0x4A4A52FF;
+
+    private final Course course;
+    private final Map<Long, TrackChunk> chunks = new HashMap<>();
+    // Scrolled out while still building or uploading, so not yet safe to hand to the deletion queue.
+    private final List<TrackChunk> settling = new ArrayList<>();
+    private final Set<Long> wanted = new HashSet<>();
+    private final ThreadLocal<MeshBuilder> builders = ThreadLocal.withInitial(MeshBuilder::new);
+    private final PlacedStage[] successors = new PlacedStage[2];
+
+    private RenderSystem renderSystem;
+    private EntityStore entities;
+    private ExecutorService executor;
+    private PlacedStage previous;
+    private PlacedStage current;
+
+    public TrackStreamer(Course course) {
+        this.course = course;
+    }
+
+    public void init(RenderSystem renderSystem, EntityStore entities) {
+        this.renderSystem = renderSystem;
+        this.entities = entities;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+            Thread thread = new Thread(runnable, "track-builder-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        current = new PlacedStage(course.getStart(), new TrackFrame());
+        placeSuccessors();
+    }
+
+    // The device must be idle.
+    public void free() {
+        if (executor == null)
+            return;
+
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        chunks.values().forEach(chunk -> {
+            hide(chunk);
+            freeChunk(chunk);
+        });
+        chunks.clear();
+        settling.forEach(this::freeChunk);
+        settling.clear();
+    }
+
+    public Course getCourse() {
+        return course;
+    }
+
+    public PlacedStage getCurrentStage() {
+        return current;
+    }
+
+    // Null until the first fork is taken.
+    public PlacedStage getPreviousStage() {
+        return previous;
+    }
+
+    // Null after the last row.
+    public PlacedStage getSuccessor(boolean right) {
+        return successors[right ? 1 : 0];
+    }
+
+    // Render thread. Chunks come and go between frames, and some may still be building.
+    public Iterable<TrackChunk> getChunks() {
+        return chunks.values();
+    }
+
+    public int getResidentCount() {
+        return chunks.size();
+    }
+
+    public int getSettlingCount() {
+        return settling.size();
+    }
+
+    // Whether a chunk wanted by the last update() is still building or uploading, so isn't being drawn yet.
+    public boolean isLoading() {
+        for (TrackChunk chunk : chunks.values()) {
+            if (chunk.getEntity() == Entity.NONE)
+                return true;
+        }
+        return false;
+    }
+
+    // Takes the chosen branch at the end of the current stage. Distances passed to update() are measured along
+    // the new stage from then on.
+    public void advance(boolean right) {
+        PlacedStage next = successors[right ? 1 : 0];
+        if (next == null)
+            return;
+
+        previous = current;
+        current = next;
+        placeSuccessors();
+    }
+
+    // Render thread, once per frame before drawing. distance is the player's distance along the current stage.
+    public void update(float distance) {
+        wanted.clear();
+
+        float from = distance - Globals.TRACK_VIEW_BEHIND;
+        float to = distance + Globals.TRACK_VIEW_AHEAD;
+        want(current, from, to);
+
+        float overshoot = to - current.getLength();
+        for (PlacedStage successor : successors) {
+            if (successor != null && overshoot > 0.0f)
+                want(successor, 0.0f, overshoot);
+        }
+
+        if (previous != null && from < 0.0f)
+            want(previous, previous.getLength() + from, previous.getLength());
+
+        Iterator<TrackChunk> iterator = chunks.values().iterator();
+        while (iterator.hasNext()) {
+            TrackChunk chunk = iterator.next();
+            if (!wanted.contains(TrackChunk.key(chunk.getPlacedStage(), chunk.getIndex()))) {
+                iterator.remove();
+                hide(chunk);
+                chunk.cancel();
+                retire(chunk);
+            } else if (chunk.getEntity() == Entity.NONE && chunk.isReady()) {
+                show(chunk);
+            }
+        }
+
+        // Their uploads may still land in a later frame, so the clock only starts once they have.
+        settling.removeIf(chunk -> {
+            if (!isSettled(chunk))
+                return false;
+
+            renderSystem.getDeletionQueue().defer(() -> freeChunk(chunk));
+            return true;
+        });
+    }
+
+    // It may have been recorded into the frame about to be drawn, nothing later.
+    private void retire(TrackChunk chunk) {
+        if (isSettled(chunk))
+            renderSystem.getDeletionQueue().defer(() -> freeChunk(chunk));
+        else
+            settling.add(chunk);
+    }
+
+    private void want(PlacedStage placed, float from, float to) {
+        int count = TrackChunk.count(placed);
+        int first = Math.max(0, (int) Math.floor(from / TrackChunk.LENGTH));
+        int last = Math.min(count - 1, (int) Math.floor(to / TrackChunk.LENGTH));
+
+        for (int index = first; index <= last; index++) {
+            long key = TrackChunk.key(placed, index);
+            wanted.add(key);
+            if (!chunks.containsKey(key)) {
+                TrackChunk chunk = new TrackChunk(placed, index);
+                chunk.setBuild(CompletableFuture.supplyAsync(() -> build(chunk), executor));
+                chunks.put(key, chunk);
+            }
+        }
+    }
+
+    private void show(TrackChunk chunk) {
+        int entity = entities.create();
+        entities.renderables.add(entity, chunk.getMesh(), VisibilityStage.ROAD, ROAD_COLOR);
+        chunk.setEntity(entity);
+    }
+
+    // The renderable goes straight away rather than at the next flush, so the chunk can't be drawn again after
+    // the frame it was retired in.
+    private void hide(TrackChunk chunk) {
+        int entity = chunk.getEntity();
+        if (entity == Entity.NONE)
+            return;
+
+        entities.renderables.remove(entity);
+        entities.destroy(entity);
+        chunk.setEntity(Entity.NONE);
+    }
+
+    // Worker thread.
+    private Mesh build(TrackChunk chunk) {
+        // Scrolled out of the window before a worker got to it.
+        if (chunk.isCancelled())
+            return null;
+
+        MeshBuilder builder = builders.get();
+        builder.clear();
+        ChunkBuilder.build(chunk, builder);
+        return builder.upload("track " + chunk, renderSystem.getMeshPool(), renderSystem.getUploadService());
+    }
+
+    // Built and uploaded (or failed), so nothing but the GPU can still be touching its buffers.
+    private boolean isSettled(TrackChunk chunk) {
+        if (!chunk.getBuild().isDone())
+            return false;
+
+        Mesh mesh = chunk.getMesh();
+        return mesh == null || mesh.getReady().isDone();
+    }
+
+    private void freeChunk(TrackChunk chunk) {
+        chunk.getBuild().cancel(false);
+        Mesh mesh = chunk.getMesh();
+        if (mesh != null)
+            mesh.free();
+    }
+
+    private void placeSuccessors() {
+        for (int side = 0; side < 2; side++)
+            successors[side] = current.placeNext(course, side == 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Track: stage %d,%d, %d chunks resident, %d settling before free",
+                current.getStage().getRow(), current.getStage().getColumn(), chunks.size(), settling.size());
+    }
+}
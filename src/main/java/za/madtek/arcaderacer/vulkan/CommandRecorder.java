@@ -0,0 +1,253 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.profile.Profiler;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Records the main render pass. With enough draws, the draw tasks are cut into chunks that worker threads record
+// into secondary command buffers, which the primary then executes in order. Every worker has its own command pool
+// per frame in flight, reset wholesale once that frame's fence has signalled rather than freeing buffers.
+public class CommandRecorder {
+
+    // Below this many draws per chunk the hand-off costs more than the recording it saves.
+    private static final int MIN_DRAWS_PER_CHUNK = 64;
+    private static final int BUFFERS_PER_ALLOCATION = 8;
+
+    private VkDevice device;
+    private ExecutorService executor;
+    private int workerCount;
+    // [frame in flight][worker]
+    private WorkerPool[][] pools;
+    private final ThreadLocal<Integer> workerIndex = new ThreadLocal<>();
+
+    private int lastChunkCount;
+    private long lastRecordNanos;
+
+    protected void init(VkDevice device, int graphicsFamily, int framesInFlight) {
+        this.device = device;
+        this.workerCount = Math.max(1, Globals.RECORDING_THREADS);
+
+        pools = new WorkerPool[framesInFlight][workerCount];
+        for (int frame = 0; frame < framesInFlight; frame++) {
+            for (int worker = 0; worker < workerCount; worker++)
+                pools[frame][worker] = new WorkerPool(createCommandPool(graphicsFamily));
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            int index = threadCount.getAndIncrement();
+            Thread thread = new Thread(() -> {
+                workerIndex.set(index);
+                runnable.run();
+            }, "command-recorder-" + index);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    protected void free() {
+        executor.shutdownNow();
+
+        for (WorkerPool[] framePools : pools) {
+            for (WorkerPool pool : framePools) {
+                ResourceRegistry.untrack(ResourceType.COMMAND_POOL, pool.commandPool);
+                vkDestroyCommandPool(device, pool.commandPool, null);
+            }
+        }
+    }
+
+    // Render thread. The slot's fence must have been waited on, since this resets its pools.
+    protected void recordPass(VkCommandBuffer commandBuffer, int frameIndex, VkRenderPassBeginInfo renderPassInfo,
+                              List<DrawTask> tasks) {
+        long start = System.nanoTime();
+
+        int drawCount = tasks.stream().mapToInt(DrawTask::getDrawCount).sum();
+        boolean parallel = Globals.PARALLEL_RECORDING && workerCount > 1 && drawCount >= MIN_DRAWS_PER_CHUNK * 2;
+
+        if (parallel) {
+            vkCmdBeginRenderPass(commandBuffer, renderPassInfo, VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS);
+            recordParallel(commandBuffer, frameIndex, renderPassInfo, tasks, drawCount);
+        } else {
+            vkCmdBeginRenderPass(commandBuffer, renderPassInfo, VK_SUBPASS_CONTENTS_INLINE);
+            setViewportAndScissor(commandBuffer, renderPassInfo.renderArea().extent());
+            for (DrawTask task : tasks) {
+                if (task.getDrawCount() > 0)
+                    task.record(commandBuffer, 0, task.getDrawCount());
+            }
+            lastChunkCount = 0;
+        }
+
+        vkCmdEndRenderPass(commandBuffer);
+        lastRecordNanos = System.nanoTime() - start;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    // Number of secondary command buffers the last frame was split into; 0 when it was recorded inline.
+    public int getLastChunkCount() {
+        return lastChunkCount;
+    }
+
+    public long getLastRecordNanos() {
+        return lastRecordNanos;
+    }
+
+    private void recordParallel(VkCommandBuffer commandBuffer, int frameIndex, VkRenderPassBeginInfo renderPassInfo,
+                                List<DrawTask> tasks, int drawCount) {
+        WorkerPool[] framePools = pools[frameIndex];
+        for (WorkerPool pool : framePools)
+            pool.reset();
+
+        // A couple of chunks per worker evens out tasks whose draws cost different amounts to record.
+        int chunkSize = Math.max(MIN_DRAWS_PER_CHUNK, (drawCount + workerCount * 2 - 1) / (workerCount * 2));
+
+        long renderPass = renderPassInfo.renderPass();
+        long framebuffer = renderPassInfo.framebuffer();
+        int width = renderPassInfo.renderArea().extent().width();
+        int height = renderPassInfo.renderArea().extent().height();
+
+        List<CompletableFuture<VkCommandBuffer>> chunks = new ArrayList<>();
+        for (DrawTask task : tasks) {
+            int count = task.getDrawCount();
+            for (int first = 0; first < count; first += chunkSize) {
+                int start = first;
+                int end = Math.min(count, first + chunkSize);
+                chunks.add(CompletableFuture.supplyAsync(() ->
+                        recordChunk(framePools[workerIndex.get()], renderPass, framebuffer, width, height, task, start, end), executor));
+            }
+        }
+
+        try (MemoryStack stack = stackPush()) {
+            PointerBuffer secondaries = stack.mallocPointer(chunks.size());
+            for (CompletableFuture<VkCommandBuffer> chunk : chunks)
+                secondaries.put(chunk.join());
+            secondaries.flip();
+
+            vkCmdExecuteCommands(commandBuffer, secondaries);
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to record draw chunk", e.getCause());
+        }
+
+        lastChunkCount = chunks.size();
+    }
+
+    private VkCommandBuffer recordChunk(WorkerPool pool, long renderPass, long framebuffer, int width, int height,
+                                        DrawTask task, int start, int end) {
+        Profiler.begin("record chunk");
+        VkCommandBuffer commandBuffer = pool.obtain();
+
+        try (MemoryStack stack = stackPush()) {
+            VkCommandBufferInheritanceInfo inheritanceInfo = VkCommandBufferInheritanceInfo.calloc(stack);
+            inheritanceInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_INHERITANCE_INFO);
+            inheritanceInfo.renderPass(renderPass);
+            inheritanceInfo.subpass(0);
+            inheritanceInfo.framebuffer(framebuffer);
+
+            VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc(stack);
+            beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+            beginInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT | VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT);
+            beginInfo.pInheritanceInfo(inheritanceInfo);
+
+            if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS)
+                throw new RuntimeException("Failed to begin recording secondary command buffer");
+
+            // Dynamic state isn't inherited from the primary.
+            setViewportAndScissor(commandBuffer, VkExtent2D.malloc(stack).set(width, height));
+            task.record(commandBuffer, start, end);
+
+            if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS)
+                throw new RuntimeException("Failed to record secondary command buffer");
+        } finally {
+            Profiler.end();
+        }
+
+        return commandBuffer;
+    }
+
+    private static void setViewportAndScissor(VkCommandBuffer commandBuffer, VkExtent2D extent) {
+        try (MemoryStack stack = stackPush()) {
+            VkViewport.Buffer viewport = VkViewport.calloc(1, stack);
+            viewport.x(0.0f);
+            viewport.y(0.0f);
+            viewport.width(extent.width());
+            viewport.height(extent.height());
+            viewport.minDepth(0.0f);
+            viewport.maxDepth(1.0f);
+            vkCmdSetViewport(commandBuffer, 0, viewport);
+
+            VkRect2D.Buffer scissor = VkRect2D.calloc(1, stack);
+            scissor.offset().set(0, 0);
+            scissor.extent(extent);
+            vkCmdSetScissor(commandBuffer, 0, scissor);
+        }
+    }
+
+    private long createCommandPool(int graphicsFamily) {
+        try (MemoryStack stack = stackPush()) {
+            VkCommandPoolCreateInfo poolInfo = VkCommandPoolCreateInfo.calloc(stack);
+            poolInfo.sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
+            poolInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+            poolInfo.queueFamilyIndex(graphicsFamily);
+
+            LongBuffer pCommandPool = stack.mallocLong(1);
+            if (vkCreateCommandPool(device, poolInfo, null, pCommandPool) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create recording command pool");
+
+            return ResourceRegistry.track(ResourceType.COMMAND_POOL, pCommandPool.get(0));
+        }
+    }
+
+    // Only ever touched by its own worker thread while recording, and by the render thread between frames.
+    private class WorkerPool {
+        private final long commandPool;
+        private final List<VkCommandBuffer> buffers = new ArrayList<>();
+        private int used;
+
+        private WorkerPool(long commandPool) {
+            this.commandPool = commandPool;
+        }
+
+        private void reset() {
+            if (used > 0)
+                vkResetCommandPool(device, commandPool, 0);
+            used = 0;
+        }
+
+        private VkCommandBuffer obtain() {
+            if (used == buffers.size()) {
+                try (MemoryStack stack = stackPush()) {
+                    VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.calloc(stack);
+                    allocInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+                    allocInfo.commandPool(commandPool);
+                    allocInfo.level(VK_COMMAND_BUFFER_LEVEL_SECONDARY);
+                    allocInfo.commandBufferCount(BUFFERS_PER_ALLOCATION);
+
+                    PointerBuffer pCommandBuffers = stack.mallocPointer(BUFFERS_PER_ALLOCATION);
+                    if (vkAllocateCommandBuffers(device, allocInfo, pCommandBuffers) != VK_SUCCESS)
+                        throw new RuntimeException("Failed to allocate secondary command buffers");
+
+                    for (int i = 0; i < BUFFERS_PER_ALLOCATION; i++)
+                        buffers.add(new VkCommandBuffer(pCommandBuffers.get(i), device));
+                }
+            }
+
+            return buffers.get(used++);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package za.madtek.arcaderacer.vulkan;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Destruction of anything the GPU may still be using, put off until it can't be. Each deletion is stamped with
+// the frame being recorded when it was queued, so nothing recorded up to then can still be in flight once that
+// frame's fence has signalled. Deletions are kept per frame slot and each slot's are checked right after its fence
+// wait, so objects can go mid-game (swap chains, pipelines, streamed track) without a vkDeviceWaitIdle.
+// Render thread only.
+public class DeletionQueue {
+
+    private final RenderSystem renderSystem;
+    private final Deque<Deletion>[] slots;
+    private int pending;
+    private long deleted;
+
+    @SuppressWarnings("unchecked")
+    protected DeletionQueue(RenderSystem renderSystem, int framesInFlight) {
+        this.renderSystem = renderSystem;
+        slots = new Deque[framesInFlight];
+        for (int i = 0; i < framesInFlight; i++)
+            slots[i] = new ArrayDeque<>();
+    }
+
+    // deletion may destroy anything recorded into the frame being built now or any before it.
+    public void defer(Runnable deletion) {
+        long frame = renderSystem.getFrameCount();
+        slots[(int) (frame % slots.length)].add(new Deletion(frame, deletion));
+        pending++;
+    }
+
+    // After the slot's fence wait, when every frame before completedFrames has finished on the GPU.
+    protected void release(int slot, long completedFrames) {
+        Deque<Deletion> deletions = slots[slot];
+        while (!deletions.isEmpty() && deletions.peek().frame < completedFrames)
+            run(deletions.poll());
+    }
+
+    // With the device idle: runs everything still queued, oldest first.
+    protected void flush() {
+        while (pending > 0) {
+            Deque<Deletion> oldest = null;
+            for (Deque<Deletion> deletions : slots) {
+                if (!deletions.isEmpty() && (oldest == null || deletions.peek().frame < oldest.peek().frame))
+                    oldest = deletions;
+            }
+            run(oldest.poll());
+        }
+    }
+
+    private void run(Deletion deletion) {
+        deletion.deletion.run();
+        pending--;
+        deleted++;
+    }
+
+    public int getPendingCount() {
+        return pending;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Deletion queue: %d pending, %d deleted", pending, deleted);
+    }
+
+    private static class Deletion {
+        private final long frame;
+        private final Runnable deletion;
+
+        private Deletion(long frame, Runnable deletion) {
+            this.frame = frame;
+            this.deletion = deletion;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.vulkan.VkCommandBuffer;
+
+// A block of draws in the main render pass (track chunks, cars, props, UI). Tasks are executed in the order they
+// were added, and the draws of one task in index order, however many threads recorded them.
+public interface DrawTask {
+
+    // Render thread, once per frame after the frame slot's fence has signalled and before getDrawCount() or
+    // record(), so per-frame GPU data for that slot can be rewritten here.
+    default void prepare(int frameIndex) {
+    }
+
+    int getDrawCount();
+
+    // Records draws [start, end) into a command buffer that is inside the main render pass with the viewport and
+    // scissor already set. Called concurrently for disjoint ranges of the same task, so it must not mutate
+    // shared state.
+    void record(VkCommandBuffer commandBuffer, int start, int end);
+}
@@ -0,0 +1,69 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+public class Frame {
+
+    private VkCommandBuffer commandBuffer;
+    private long imageAvailableSemaphore;
+    private long inFlightFence;
+
+    protected void init(VkDevice device, long commandPool) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.calloc(stack);
+            allocInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+            allocInfo.commandPool(commandPool);
+            allocInfo.level(VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+            allocInfo.commandBufferCount(1);
+
+            PointerBuffer pCommandBuffer = stack.mallocPointer(1);
+            if (vkAllocateCommandBuffers(device, allocInfo, pCommandBuffer) != VK_SUCCESS)
+                throw new RuntimeException("Failed to allocate command buffer");
+            commandBuffer = new VkCommandBuffer(pCommandBuffer.get(0), device);
+
+            VkSemaphoreCreateInfo semaphoreInfo = VkSemaphoreCreateInfo.calloc(stack);
+            semaphoreInfo.sType(VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+
+            // Created signaled so the very first wait on this frame doesn't block forever.
+            VkFenceCreateInfo fenceInfo = VkFenceCreateInfo.calloc(stack);
+            fenceInfo.sType(VK_STRUCTURE_TYPE_FENCE_CREATE_INFO);
+            fenceInfo.flags(VK_FENCE_CREATE_SIGNALED_BIT);
+
+            LongBuffer pSemaphore = stack.longs(VK_NULL_HANDLE);
+            if (vkCreateSemaphore(device, semaphoreInfo, null, pSemaphore) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create image available semaphore");
+            imageAvailableSemaphore = ResourceRegistry.track(ResourceType.SEMAPHORE, pSemaphore.get(0));
+
+            LongBuffer pFence = stack.longs(VK_NULL_HANDLE);
+            if (vkCreateFence(device, fenceInfo, null, pFence) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create in flight fence");
+            inFlightFence = ResourceRegistry.track(ResourceType.FENCE, pFence.get(0));
+        }
+    }
+
+    protected void free(VkDevice device, long commandPool) {
+        ResourceRegistry.untrack(ResourceType.FENCE, inFlightFence);
+        vkDestroyFence(device, inFlightFence, null);
+        ResourceRegistry.untrack(ResourceType.SEMAPHORE, imageAvailableSemaphore);
+        vkDestroySemaphore(device, imageAvailableSemaphore, null);
+        vkFreeCommandBuffers(device, commandPool, commandBuffer);
+    }
+
+    public VkCommandBuffer getCommandBuffer() {
+        return commandBuffer;
+    }
+
+    public long getImageAvailableSemaphore() {
+        return imageAvailableSemaphore;
+    }
+
+    public long getInFlightFence() {
+        return inFlightFence;
+    }
+}
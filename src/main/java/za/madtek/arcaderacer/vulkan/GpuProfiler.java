@@ -0,0 +1,164 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.profile.Profiler;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+// GPU side of the Profiler: timestamp queries written around the parts of each frame's primary command buffer,
+// one query pool per frame in flight. A frame's results are read once its fence has signalled, so reading them
+// never stalls, converted to nanoseconds with the device's timestampPeriod and handed to the Profiler. GPU clocks
+// have their own zero, so a frame's scopes are placed on the CPU timeline starting at its submit; the durations
+// are exact, the offset from the CPU scopes only approximate. Nothing is written while the Profiler is off.
+public class GpuProfiler {
+
+    private static final int MAX_SCOPES = 32; // per frame
+    private static final int MAX_DEPTH = 8;
+
+    private VkDevice device;
+    private long[] queryPools;
+    private double timestampPeriod; // nanoseconds per tick
+    private long timestampMask;
+    private boolean supported;
+    private LongBuffer results;
+
+    // [frame in flight][scope]
+    private String[][] names;
+    private int[] scopeCounts;
+    private long[] submitTimes;
+
+    // The frame being recorded, or -1 when none is.
+    private int recordingFrame = -1;
+    private final int[] openScopes = new int[MAX_DEPTH];
+    private int depth;
+
+    protected void init(VkPhysicalDevice physicalDevice, VkDevice device, int graphicsFamily, int framesInFlight) {
+        this.device = device;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(physicalDevice, properties);
+            timestampPeriod = properties.limits().timestampPeriod();
+
+            IntBuffer familyCount = stack.ints(0);
+            vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, familyCount, null);
+            VkQueueFamilyProperties.Buffer families = VkQueueFamilyProperties.malloc(familyCount.get(0), stack);
+            vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, familyCount, families);
+            int validBits = families.get(graphicsFamily).timestampValidBits();
+            timestampMask = validBits >= 64 ? -1L : (1L << validBits) - 1;
+
+            supported = validBits > 0 && timestampPeriod > 0.0;
+            if (!supported) {
+                System.err.println("GPU profiling unavailable: graphics queue has no timestamps");
+                return;
+            }
+
+            VkQueryPoolCreateInfo poolInfo = VkQueryPoolCreateInfo.calloc(stack);
+            poolInfo.sType(VK_STRUCTURE_TYPE_QUERY_POOL_CREATE_INFO);
+            poolInfo.queryType(VK_QUERY_TYPE_TIMESTAMP);
+            poolInfo.queryCount(MAX_SCOPES * 2);
+
+            queryPools = new long[framesInFlight];
+            LongBuffer pQueryPool = stack.mallocLong(1);
+            for (int i = 0; i < framesInFlight; i++) {
+                if (vkCreateQueryPool(device, poolInfo, null, pQueryPool) != VK_SUCCESS)
+                    throw new RuntimeException("Failed to create timestamp query pool");
+                queryPools[i] = ResourceRegistry.track(ResourceType.QUERY_POOL, pQueryPool.get(0));
+            }
+        }
+
+        results = MemoryUtil.memAllocLong(MAX_SCOPES * 2);
+        names = new String[framesInFlight][MAX_SCOPES];
+        scopeCounts = new int[framesInFlight];
+        submitTimes = new long[framesInFlight];
+    }
+
+    protected void free() {
+        if (queryPools != null) {
+            for (long queryPool : queryPools) {
+                ResourceRegistry.untrack(ResourceType.QUERY_POOL, queryPool);
+                vkDestroyQueryPool(device, queryPool, null);
+            }
+        }
+        if (results != null)
+            MemoryUtil.memFree(results);
+    }
+
+    // Render thread, first thing in the frame's primary command buffer: query resets aren't allowed in a pass.
+    protected void beginFrame(VkCommandBuffer commandBuffer, int frameIndex) {
+        recordingFrame = -1;
+        if (!supported || !Profiler.isEnabled())
+            return;
+
+        recordingFrame = frameIndex;
+        depth = 0;
+        scopeCounts[frameIndex] = 0;
+        vkCmdResetQueryPool(commandBuffer, queryPools[frameIndex], 0, MAX_SCOPES * 2);
+        begin(commandBuffer, "frame");
+    }
+
+    // Outside render passes whose contents are secondary command buffers, which can't have anything else in them.
+    public void begin(VkCommandBuffer commandBuffer, String name) {
+        if (recordingFrame < 0 || depth == MAX_DEPTH || scopeCounts[recordingFrame] == MAX_SCOPES)
+            return;
+
+        int scope = scopeCounts[recordingFrame]++;
+        names[recordingFrame][scope] = name;
+        openScopes[depth++] = scope;
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, queryPools[recordingFrame], scope * 2);
+    }
+
+    public void end(VkCommandBuffer commandBuffer) {
+        if (recordingFrame < 0 || depth == 0)
+            return;
+
+        int scope = openScopes[--depth];
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, queryPools[recordingFrame], scope * 2 + 1);
+    }
+
+    protected void endFrame(VkCommandBuffer commandBuffer) {
+        while (depth > 0)
+            end(commandBuffer);
+    }
+
+    protected void markSubmitted(int frameIndex, long time) {
+        submitTimes[frameIndex] = time;
+    }
+
+    // Render thread, once the slot's fence has signalled and before it's recorded again.
+    protected void collect(int frameIndex) {
+        if (!supported || scopeCounts[frameIndex] == 0)
+            return;
+
+        int count = scopeCounts[frameIndex];
+        scopeCounts[frameIndex] = 0;
+        results.clear().limit(count * 2);
+        if (vkGetQueryPoolResults(device, queryPools[frameIndex], 0, count * 2, results, Long.BYTES,
+                VK_QUERY_RESULT_64_BIT) != VK_SUCCESS)
+            return;
+
+        // Scope 0 is the whole frame and starts first.
+        long base = results.get(0) & timestampMask;
+        long submit = submitTimes[frameIndex];
+        for (int scope = 0; scope < count; scope++) {
+            long start = submit + toNanos(results.get(scope * 2) - base);
+            long end = submit + toNanos(results.get(scope * 2 + 1) - base);
+            Profiler.addGpuScope(names[frameIndex][scope], start, end);
+            if (scope == 0)
+                Profiler.addGpuFrame(end - start);
+        }
+    }
+
+    private long toNanos(long ticks) {
+        return (long) ((ticks & timestampMask) * timestampPeriod);
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+}
@@ -0,0 +1,194 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.vulkan.memory.AllocatedBuffer;
+import za.madtek.arcaderacer.vulkan.memory.AllocatedImage;
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+// Headless stand-in for the swap chain: one colour image per frame in flight, so a frame slot always renders to
+// its own image and nothing has to be acquired or presented. Any frame can be copied back to host memory after
+// its pass and handed to a ReadbackHandler once its fence has signalled.
+public class OffscreenTarget implements RenderTarget {
+
+    // Guaranteed to support colour attachment and transfer on every implementation.
+    private static final int IMAGE_FORMAT = VK_FORMAT_R8G8B8A8_SRGB;
+
+    private VkDevice device;
+    private MemoryAllocator memoryAllocator;
+    private AllocatedImage[] images;
+    private long[] imageViews;
+    private long[] framebuffers;
+    private AllocatedImage depthImage;
+    private long depthImageView;
+    private long renderPass;
+    private VkExtent2D extent;
+
+    // [frame in flight]; buffers are created on the first readback.
+    private AllocatedBuffer[] readbackBuffers;
+    private ReadbackHandler[] readbackHandlers;
+    private long[] readbackFrames;
+    private ReadbackHandler requestedReadback;
+
+    protected void init(VkPhysicalDevice physicalDevice, VkDevice device, MemoryAllocator memoryAllocator,
+                        int width, int height, int imageCount) {
+        this.device = device;
+        this.memoryAllocator = memoryAllocator;
+        extent = VkExtent2D.create().set(width, height);
+
+        int depthFormat = SwapChain.findDepthFormat(physicalDevice);
+        renderPass = SwapChain.createRenderPass(device, IMAGE_FORMAT, depthFormat, true);
+
+        depthImage = memoryAllocator.createImage(width, height, 1, depthFormat, VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT);
+        depthImageView = createImageView(depthImage.getImage(), depthFormat, VK_IMAGE_ASPECT_DEPTH_BIT);
+
+        images = new AllocatedImage[imageCount];
+        imageViews = new long[imageCount];
+        framebuffers = new long[imageCount];
+        for (int i = 0; i < imageCount; i++) {
+            images[i] = memoryAllocator.createImage(width, height, 1, IMAGE_FORMAT,
+                    VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT | VK_IMAGE_USAGE_TRANSFER_SRC_BIT);
+            imageViews[i] = createImageView(images[i].getImage(), IMAGE_FORMAT, VK_IMAGE_ASPECT_COLOR_BIT);
+            framebuffers[i] = createFramebuffer(imageViews[i]);
+        }
+
+        readbackBuffers = new AllocatedBuffer[imageCount];
+        readbackHandlers = new ReadbackHandler[imageCount];
+        readbackFrames = new long[imageCount];
+    }
+
+    // After the device is idle.
+    protected void free() {
+        for (int i = 0; i < images.length; i++) {
+            ResourceRegistry.untrack(ResourceType.FRAMEBUFFER, framebuffers[i]);
+            vkDestroyFramebuffer(device, framebuffers[i], null);
+            ResourceRegistry.untrack(ResourceType.IMAGE_VIEW, imageViews[i]);
+            vkDestroyImageView(device, imageViews[i], null);
+            memoryAllocator.destroyImage(images[i]);
+            if (readbackBuffers[i] != null)
+                memoryAllocator.destroyBuffer(readbackBuffers[i]);
+        }
+        ResourceRegistry.untrack(ResourceType.IMAGE_VIEW, depthImageView);
+        vkDestroyImageView(device, depthImageView, null);
+        memoryAllocator.destroyImage(depthImage);
+        ResourceRegistry.untrack(ResourceType.RENDER_PASS, renderPass);
+        vkDestroyRenderPass(device, renderPass, null);
+    }
+
+    // The next frame drawn is read back and handed to handler.
+    protected void requestReadback(ReadbackHandler handler) {
+        requestedReadback = handler;
+    }
+
+    // Render thread, after the main pass in the frame's primary command buffer.
+    protected void recordReadback(VkCommandBuffer commandBuffer, int imageIndex, long frame) {
+        if (requestedReadback == null)
+            return;
+
+        if (readbackBuffers[imageIndex] == null)
+            readbackBuffers[imageIndex] = memoryAllocator.createReadbackBuffer((long) extent.width() * extent.height() * 4);
+        readbackHandlers[imageIndex] = requestedReadback;
+        readbackFrames[imageIndex] = frame;
+        requestedReadback = null;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            // The render pass left the image in TRANSFER_SRC_OPTIMAL, its writes already visible to transfers.
+            VkBufferImageCopy.Buffer region = VkBufferImageCopy.calloc(1, stack);
+            region.imageSubresource().aspectMask(VK_IMAGE_ASPECT_COLOR_BIT);
+            region.imageSubresource().layerCount(1);
+            region.imageExtent().set(extent.width(), extent.height(), 1);
+            vkCmdCopyImageToBuffer(commandBuffer, images[imageIndex].getImage(), VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+                    readbackBuffers[imageIndex].getBuffer(), region);
+
+            VkBufferMemoryBarrier.Buffer barrier = VkBufferMemoryBarrier.calloc(1, stack);
+            barrier.sType(VK_STRUCTURE_TYPE_BUFFER_MEMORY_BARRIER);
+            barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT);
+            barrier.dstAccessMask(VK_ACCESS_HOST_READ_BIT);
+            barrier.srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+            barrier.dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+            barrier.buffer(readbackBuffers[imageIndex].getBuffer());
+            barrier.size(VK_WHOLE_SIZE);
+            vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_HOST_BIT, 0,
+                    null, barrier, null);
+        }
+    }
+
+    // Render thread, once the slot's fence has signalled and before it's recorded again.
+    protected void collect(int imageIndex) {
+        ReadbackHandler handler = readbackHandlers[imageIndex];
+        if (handler == null)
+            return;
+
+        readbackHandlers[imageIndex] = null;
+        AllocatedBuffer buffer = readbackBuffers[imageIndex];
+        memoryAllocator.invalidate(buffer, 0, VK_WHOLE_SIZE);
+        handler.onReadback(readbackFrames[imageIndex], extent.width(), extent.height(),
+                MemoryUtil.memByteBuffer(buffer.getMappedAddress(), (int) buffer.getSize()));
+    }
+
+    public int getImageCount() {
+        return images.length;
+    }
+
+    @Override
+    public long getRenderPass() {
+        return renderPass;
+    }
+
+    @Override
+    public long getFramebuffer(int imageIndex) {
+        return framebuffers[imageIndex];
+    }
+
+    @Override
+    public VkExtent2D getExtent() {
+        return extent;
+    }
+
+    @Override
+    public int getImageFormat() {
+        return IMAGE_FORMAT;
+    }
+
+    private long createImageView(long image, int format, int aspectMask) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageViewCreateInfo createInfo = VkImageViewCreateInfo.calloc(stack);
+            createInfo.sType(VK_STRUCTURE_TYPE_IMAGE_VIEW_CREATE_INFO);
+            createInfo.image(image);
+            createInfo.viewType(VK_IMAGE_VIEW_TYPE_2D);
+            createInfo.format(format);
+            createInfo.subresourceRange().aspectMask(aspectMask);
+            createInfo.subresourceRange().levelCount(1);
+            createInfo.subresourceRange().layerCount(1);
+
+            LongBuffer pImageView = stack.mallocLong(1);
+            if (vkCreateImageView(device, createInfo, null, pImageView) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create offscreen image view");
+
+            return ResourceRegistry.track(ResourceType.IMAGE_VIEW, pImageView.get(0));
+        }
+    }
+
+    private long createFramebuffer(long imageView) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkFramebufferCreateInfo framebufferInfo = VkFramebufferCreateInfo.calloc(stack);
+            framebufferInfo.sType(VK_STRUCTURE_TYPE_FRAMEBUFFER_CREATE_INFO);
+            framebufferInfo.renderPass(renderPass);
+            framebufferInfo.pAttachments(stack.longs(imageView, depthImageView));
+            framebufferInfo.width(extent.width());
+            framebufferInfo.height(extent.height());
+            framebufferInfo.layers(1);
+
+            LongBuffer pFramebuffer = stack.mallocLong(1);
+            if (vkCreateFramebuffer(device, framebufferInfo, null, pFramebuffer) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create offscreen framebuffer");
+
+            return ResourceRegistry.track(ResourceType.FRAMEBUFFER, pFramebuffer.get(0));
+        }
+    }
+}
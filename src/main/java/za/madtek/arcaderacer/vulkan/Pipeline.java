@@ -0,0 +1,60 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.vulkan.VkDevice;
+
+import static org.lwjgl.vulkan.VK10.vkDestroyPipeline;
+import static org.lwjgl.vulkan.VK10.vkDestroyPipelineLayout;
+
+public class Pipeline {
+
+    public enum CacheResult { HIT, MISS, UNKNOWN }
+
+    private final String name;
+    private final long pipeline;
+    private final long layout;
+    private final long renderPass;
+    private final long creationNanos;
+    private final CacheResult cacheResult;
+
+    protected Pipeline(String name, long pipeline, long layout, long renderPass, long creationNanos,
+                       CacheResult cacheResult) {
+        this.name = name;
+        this.pipeline = pipeline;
+        this.layout = layout;
+        this.renderPass = renderPass;
+        this.creationNanos = creationNanos;
+        this.cacheResult = cacheResult;
+    }
+
+    protected void free(VkDevice device) {
+        ResourceRegistry.untrack(ResourceType.PIPELINE, pipeline);
+        vkDestroyPipeline(device, pipeline, null);
+        ResourceRegistry.untrack(ResourceType.PIPELINE_LAYOUT, layout);
+        vkDestroyPipelineLayout(device, layout, null);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHandle() {
+        return pipeline;
+    }
+
+    public long getLayout() {
+        return layout;
+    }
+
+    // The render pass it was built against.
+    public long getRenderPass() {
+        return renderPass;
+    }
+
+    public long getCreationNanos() {
+        return creationNanos;
+    }
+
+    public CacheResult getCacheResult() {
+        return cacheResult;
+    }
+}
@@ -0,0 +1,125 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.Globals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class PipelineCache {
+
+    private static final String FILE_NAME = "pipeline.cache";
+    private static final int HEADER_SIZE = 16 + VK_UUID_SIZE;
+
+    private long pipelineCache;
+    private boolean warm;
+
+    protected void init(VkPhysicalDevice physicalDevice, VkDevice device) {
+        ByteBuffer initialData = null;
+
+        try (MemoryStack stack = stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(physicalDevice, properties);
+
+            initialData = load(properties);
+            warm = initialData != null;
+
+            VkPipelineCacheCreateInfo createInfo = VkPipelineCacheCreateInfo.calloc(stack);
+            createInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_CACHE_CREATE_INFO);
+            if (initialData != null)
+                createInfo.pInitialData(initialData);
+
+            LongBuffer pPipelineCache = stack.longs(VK_NULL_HANDLE);
+            if (vkCreatePipelineCache(device, createInfo, null, pPipelineCache) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create pipeline cache");
+            pipelineCache = ResourceRegistry.track(ResourceType.PIPELINE_CACHE, pPipelineCache.get(0));
+        } finally {
+            if (initialData != null)
+                MemoryUtil.memFree(initialData);
+        }
+    }
+
+    protected void save(VkDevice device) {
+        try (MemoryStack stack = stackPush()) {
+            PointerBuffer pDataSize = stack.mallocPointer(1);
+            if (vkGetPipelineCacheData(device, pipelineCache, pDataSize, null) != VK_SUCCESS)
+                return;
+
+            ByteBuffer data = MemoryUtil.memAlloc((int) pDataSize.get(0));
+            try {
+                if (vkGetPipelineCacheData(device, pipelineCache, pDataSize, data) != VK_SUCCESS)
+                    return;
+                data.limit((int) pDataSize.get(0));
+
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+
+                // Write-then-rename so a crash mid-save can't leave a truncated cache for the next launch.
+                Path file = Globals.CACHE_DIR.resolve(FILE_NAME);
+                Path temp = Globals.CACHE_DIR.resolve(FILE_NAME + ".tmp");
+                Files.createDirectories(Globals.CACHE_DIR);
+                Files.write(temp, bytes);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Failed to save pipeline cache: " + e.getMessage());
+            } finally {
+                MemoryUtil.memFree(data);
+            }
+        }
+    }
+
+    protected void free(VkDevice device) {
+        ResourceRegistry.untrack(ResourceType.PIPELINE_CACHE, pipelineCache);
+        vkDestroyPipelineCache(device, pipelineCache, null);
+    }
+
+    public long getHandle() {
+        return pipelineCache;
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    // Drivers are supposed to reject foreign data themselves, but a few crash on it instead, so only hand over
+    // data whose header matches this exact device and driver build.
+    private ByteBuffer load(VkPhysicalDeviceProperties properties) {
+        Path file = Globals.CACHE_DIR.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file))
+            return null;
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            System.err.println("Failed to read pipeline cache: " + e.getMessage());
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder());
+        if (bytes.length < HEADER_SIZE
+                || header.getInt(0) < HEADER_SIZE
+                || header.getInt(4) != VK_PIPELINE_CACHE_HEADER_VERSION_ONE
+                || header.getInt(8) != properties.vendorID()
+                || header.getInt(12) != properties.deviceID()
+                || !header.slice(16, VK_UUID_SIZE).equals(properties.pipelineCacheUUID())) {
+            System.out.println("Pipeline cache does not match this device or driver, starting cold");
+            return null;
+        }
+
+        ByteBuffer data = MemoryUtil.memAlloc(bytes.length);
+        data.put(bytes).flip();
+        return data;
+    }
+}
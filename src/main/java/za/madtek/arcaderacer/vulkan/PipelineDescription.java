@@ -0,0 +1,135 @@
+package za.madtek.arcaderacer.vulkan;
+
+import za.madtek.arcaderacer.vulkan.shader.ShaderVariant;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+public class PipelineDescription {
+
+    private final String name;
+    private ByteBuffer vertexShader;
+    private ByteBuffer fragmentShader;
+    private ShaderVariant vertexVariant;
+    private ShaderVariant fragmentVariant;
+    private VertexLayout vertexLayout = new VertexLayout();
+    private int topology = VK_PRIMITIVE_TOPOLOGY_TRIANGLE_LIST;
+    private int cullMode = VK_CULL_MODE_BACK_BIT;
+    private boolean depthTest = true;
+    private boolean blend;
+    private int pushConstantSize;
+    private long[] descriptorSetLayouts = new long[0];
+
+    public PipelineDescription(String name) {
+        this.name = name;
+    }
+
+    public PipelineDescription vertexShader(ByteBuffer spirv) {
+        this.vertexShader = spirv;
+        return this;
+    }
+
+    public PipelineDescription fragmentShader(ByteBuffer spirv) {
+        this.fragmentShader = spirv;
+        return this;
+    }
+
+    // Resolved through the ShaderLibrary at build time, and rebuilt when the shader is hot reloaded.
+    public PipelineDescription vertexShader(ShaderVariant variant) {
+        this.vertexVariant = variant;
+        return this;
+    }
+
+    public PipelineDescription fragmentShader(ShaderVariant variant) {
+        this.fragmentVariant = variant;
+        return this;
+    }
+
+    public PipelineDescription vertexLayout(VertexLayout vertexLayout) {
+        this.vertexLayout = vertexLayout;
+        return this;
+    }
+
+    public PipelineDescription topology(int topology) {
+        this.topology = topology;
+        return this;
+    }
+
+    public PipelineDescription cullMode(int cullMode) {
+        this.cullMode = cullMode;
+        return this;
+    }
+
+    public PipelineDescription depthTest(boolean depthTest) {
+        this.depthTest = depthTest;
+        return this;
+    }
+
+    public PipelineDescription blend(boolean blend) {
+        this.blend = blend;
+        return this;
+    }
+
+    public PipelineDescription pushConstantSize(int pushConstantSize) {
+        this.pushConstantSize = pushConstantSize;
+        return this;
+    }
+
+    public PipelineDescription descriptorSetLayouts(long... descriptorSetLayouts) {
+        this.descriptorSetLayouts = descriptorSetLayouts;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ByteBuffer getVertexShader() {
+        return vertexShader;
+    }
+
+    public ByteBuffer getFragmentShader() {
+        return fragmentShader;
+    }
+
+    public ShaderVariant getVertexVariant() {
+        return vertexVariant;
+    }
+
+    public ShaderVariant getFragmentVariant() {
+        return fragmentVariant;
+    }
+
+    public boolean uses(ShaderVariant variant) {
+        return variant.equals(vertexVariant) || variant.equals(fragmentVariant);
+    }
+
+    public VertexLayout getVertexLayout() {
+        return vertexLayout;
+    }
+
+    public int getTopology() {
+        return topology;
+    }
+
+    public int getCullMode() {
+        return cullMode;
+    }
+
+    public boolean isDepthTest() {
+        return depthTest;
+    }
+
+    public boolean isBlend() {
+        return blend;
+    }
+
+    public int getPushConstantSize() {
+        return pushConstantSize;
+    }
+
+    public long[] getDescriptorSetLayouts() {
+        return descriptorSetLayouts;
+    }
+}
@@ -0,0 +1,370 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.vulkan.shader.ShaderLibrary;
+import za.madtek.arcaderacer.vulkan.shader.ShaderVariant;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.EXTPipelineCreationFeedback.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class PipelineLibrary {
+
+    private final Map<String, PipelineDescription> descriptions = new LinkedHashMap<>();
+    private final Map<String, Pipeline> pipelines = new ConcurrentHashMap<>();
+    private final Queue<Pipeline> pendingSwaps = new ConcurrentLinkedQueue<>();
+
+    private VkDevice device;
+    private PipelineCache pipelineCache;
+    private ShaderLibrary shaderLibrary;
+    private DeletionQueue deletionQueue;
+    private volatile long renderPass;
+    private boolean creationFeedback;
+    private ExecutorService executor;
+
+    protected void init(VkDevice device, PipelineCache pipelineCache, ShaderLibrary shaderLibrary,
+                        DeletionQueue deletionQueue, long renderPass, boolean creationFeedback) {
+        this.device = device;
+        this.pipelineCache = pipelineCache;
+        this.shaderLibrary = shaderLibrary;
+        this.deletionQueue = deletionQueue;
+        this.renderPass = renderPass;
+        this.creationFeedback = creationFeedback;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-builder-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        shaderLibrary.addReloadListener(this::onShadersReloaded);
+    }
+
+    protected void free() {
+        executor.shutdownNow();
+        pipelines.values().forEach(pipeline -> pipeline.free(device));
+        pipelines.clear();
+        pendingSwaps.forEach(pipeline -> pipeline.free(device));
+        pendingSwaps.clear();
+    }
+
+    public synchronized void register(PipelineDescription description) {
+        descriptions.put(description.getName(), description);
+    }
+
+    // Builds every registered pipeline that doesn't exist yet on the worker threads. Meant to run behind the
+    // loading screen; vkCreateGraphicsPipelines and the pipeline cache are both safe to use concurrently.
+    public CompletableFuture<Void> prebuild() {
+        List<PipelineDescription> toBuild = new ArrayList<>();
+        synchronized (this) {
+            descriptions.values().stream()
+                    .filter(description -> !pipelines.containsKey(description.getName()))
+                    .forEach(toBuild::add);
+        }
+
+        long start = System.nanoTime();
+
+        // Compile every shader first, in parallel, so pipelines sharing a shader don't wait on each other.
+        List<ShaderVariant> variants = toBuild.stream()
+                .flatMap(description -> Stream.of(description.getVertexVariant(), description.getFragmentVariant()))
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+
+        Queue<Pipeline> built = new ConcurrentLinkedQueue<>();
+        return shaderLibrary.compileAll(variants).thenCompose(compiled -> CompletableFuture.allOf(toBuild.stream()
+                .map(description -> CompletableFuture.runAsync(() -> {
+                    Pipeline pipeline = build(description);
+                    built.add(pipeline);
+                    install(pipeline);
+                }, executor))
+                .toArray(CompletableFuture[]::new))).whenComplete((result, error) -> {
+            if (error != null) {
+                System.err.println("Pipeline pre-build failed: " + error.getMessage());
+                return;
+            }
+
+            long hits = built.stream().filter(pipeline -> pipeline.getCacheResult() == Pipeline.CacheResult.HIT).count();
+            long misses = built.stream().filter(pipeline -> pipeline.getCacheResult() == Pipeline.CacheResult.MISS).count();
+            System.out.printf("Pre-built %d pipelines in %.2f ms (%s cache, %d hits, %d misses)%n", toBuild.size(),
+                    (System.nanoTime() - start) / 1e6, pipelineCache.isWarm() ? "warm" : "cold", hits, misses);
+        });
+    }
+
+    // Worker thread, once a pre-built pipeline is done. Dropped if the render pass changed while it was building, or
+    // if a swap got there first; either way it was never bound.
+    private void install(Pipeline pipeline) {
+        if (pipeline.getRenderPass() != renderPass || pipelines.putIfAbsent(pipeline.getName(), pipeline) != null)
+            pipeline.free(device);
+    }
+
+    // Render pass compatibility only breaks if the surface format changes, which is rare enough to just rebuild.
+    // The replacements arrive through the same swaps as hot reload, so the render thread never waits for them. The
+    // old pipelines can't be bound in the new pass, so their draws are skipped until then.
+    protected void rebuild(long renderPass) {
+        this.renderPass = renderPass;
+
+        for (Iterator<Pipeline> iterator = pipelines.values().iterator(); iterator.hasNext(); ) {
+            Pipeline old = iterator.next();
+            if (old.getRenderPass() != renderPass) {
+                iterator.remove();
+                deletionQueue.defer(() -> old.free(device));
+            }
+        }
+
+        List<PipelineDescription> toBuild;
+        synchronized (this) {
+            toBuild = new ArrayList<>(descriptions.values());
+        }
+        toBuild.forEach(this::rebuildLater);
+    }
+
+    // Render thread, before recording. The replaced pipelines are destroyed once the frames in flight are done
+    // with them.
+    protected void applyPendingSwaps() {
+        Pipeline pipeline;
+        while ((pipeline = pendingSwaps.poll()) != null) {
+            // Built against a render pass that has since been replaced; the rebuild queued its successor. Never
+            // bound, so it can go straight away.
+            if (pipeline.getRenderPass() != renderPass) {
+                pipeline.free(device);
+                continue;
+            }
+
+            Pipeline old = pipelines.put(pipeline.getName(), pipeline);
+            if (old != null)
+                deletionQueue.defer(() -> old.free(device));
+        }
+    }
+
+    private void onShadersReloaded(Set<ShaderVariant> variants) {
+        List<PipelineDescription> affected = new ArrayList<>();
+        synchronized (this) {
+            descriptions.values().stream()
+                    .filter(description -> variants.stream().anyMatch(description::uses))
+                    .forEach(affected::add);
+        }
+
+        affected.forEach(this::rebuildLater);
+    }
+
+    private void rebuildLater(PipelineDescription description) {
+        executor.execute(() -> {
+            try {
+                pendingSwaps.add(build(description));
+            } catch (RuntimeException e) {
+                System.err.println("Failed to rebuild pipeline " + description.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // Null until the pipeline exists for the current render pass.
+    public Pipeline get(String name) {
+        Pipeline pipeline = pipelines.get(name);
+        return pipeline != null && pipeline.getRenderPass() == renderPass ? pipeline : null;
+    }
+
+    public boolean isBuilt(String name) {
+        return get(name) != null;
+    }
+
+    public long getRenderPass() {
+        return renderPass;
+    }
+
+    private Pipeline build(PipelineDescription description) {
+        long start = System.nanoTime();
+        long renderPass = this.renderPass;
+
+        try (MemoryStack stack = stackPush()) {
+            long vertexModule = VK_NULL_HANDLE;
+            long fragmentModule = VK_NULL_HANDLE;
+
+            try {
+                vertexModule = createShaderModule(resolve(description.getVertexShader(), description.getVertexVariant()), stack);
+                fragmentModule = createShaderModule(resolve(description.getFragmentShader(), description.getFragmentVariant()), stack);
+
+                ByteBuffer entryPoint = stack.UTF8("main");
+
+                VkPipelineShaderStageCreateInfo.Buffer shaderStages = VkPipelineShaderStageCreateInfo.calloc(2, stack);
+                shaderStages.get(0)
+                        .sType(VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO)
+                        .stage(VK_SHADER_STAGE_VERTEX_BIT)
+                        .module(vertexModule)
+                        .pName(entryPoint);
+                shaderStages.get(1)
+                        .sType(VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO)
+                        .stage(VK_SHADER_STAGE_FRAGMENT_BIT)
+                        .module(fragmentModule)
+                        .pName(entryPoint);
+
+                VkPipelineInputAssemblyStateCreateInfo inputAssembly = VkPipelineInputAssemblyStateCreateInfo.calloc(stack);
+                inputAssembly.sType(VK_STRUCTURE_TYPE_PIPELINE_INPUT_ASSEMBLY_STATE_CREATE_INFO);
+                inputAssembly.topology(description.getTopology());
+                inputAssembly.primitiveRestartEnable(false);
+
+                // Viewport and scissor are dynamic so a window resize never invalidates a pipeline.
+                VkPipelineViewportStateCreateInfo viewportState = VkPipelineViewportStateCreateInfo.calloc(stack);
+                viewportState.sType(VK_STRUCTURE_TYPE_PIPELINE_VIEWPORT_STATE_CREATE_INFO);
+                viewportState.viewportCount(1);
+                viewportState.scissorCount(1);
+
+                VkPipelineDynamicStateCreateInfo dynamicState = VkPipelineDynamicStateCreateInfo.calloc(stack);
+                dynamicState.sType(VK_STRUCTURE_TYPE_PIPELINE_DYNAMIC_STATE_CREATE_INFO);
+                dynamicState.pDynamicStates(stack.ints(VK_DYNAMIC_STATE_VIEWPORT, VK_DYNAMIC_STATE_SCISSOR));
+
+                VkPipelineRasterizationStateCreateInfo rasterizer = VkPipelineRasterizationStateCreateInfo.calloc(stack);
+                rasterizer.sType(VK_STRUCTURE_TYPE_PIPELINE_RASTERIZATION_STATE_CREATE_INFO);
+                rasterizer.polygonMode(VK_POLYGON_MODE_FILL);
+                rasterizer.lineWidth(1.0f);
+                rasterizer.cullMode(description.getCullMode());
+                rasterizer.frontFace(VK_FRONT_FACE_COUNTER_CLOCKWISE);
+
+                VkPipelineMultisampleStateCreateInfo multisampling = VkPipelineMultisampleStateCreateInfo.calloc(stack);
+                multisampling.sType(VK_STRUCTURE_TYPE_PIPELINE_MULTISAMPLE_STATE_CREATE_INFO);
+                multisampling.rasterizationSamples(VK_SAMPLE_COUNT_1_BIT);
+
+                VkPipelineDepthStencilStateCreateInfo depthStencil = VkPipelineDepthStencilStateCreateInfo.calloc(stack);
+                depthStencil.sType(VK_STRUCTURE_TYPE_PIPELINE_DEPTH_STENCIL_STATE_CREATE_INFO);
+                depthStencil.depthTestEnable(description.isDepthTest());
+                depthStencil.depthWriteEnable(description.isDepthTest() && !description.isBlend());
+                depthStencil.depthCompareOp(VK_COMPARE_OP_LESS_OR_EQUAL);
+
+                VkPipelineColorBlendAttachmentState.Buffer colorBlendAttachment = VkPipelineColorBlendAttachmentState.calloc(1, stack);
+                colorBlendAttachment.colorWriteMask(VK_COLOR_COMPONENT_R_BIT | VK_COLOR_COMPONENT_G_BIT |
+                        VK_COLOR_COMPONENT_B_BIT | VK_COLOR_COMPONENT_A_BIT);
+                colorBlendAttachment.blendEnable(description.isBlend());
+                colorBlendAttachment.srcColorBlendFactor(VK_BLEND_FACTOR_SRC_ALPHA);
+                colorBlendAttachment.dstColorBlendFactor(VK_BLEND_FACTOR_ONE_MINUS_SRC_ALPHA);
+                colorBlendAttachment.colorBlendOp(VK_BLEND_OP_ADD);
+                colorBlendAttachment.srcAlphaBlendFactor(VK_BLEND_FACTOR_ONE);
+                colorBlendAttachment.dstAlphaBlendFactor(VK_BLEND_FACTOR_ZERO);
+                colorBlendAttachment.alphaBlendOp(VK_BLEND_OP_ADD);
+
+                VkPipelineColorBlendStateCreateInfo colorBlending = VkPipelineColorBlendStateCreateInfo.calloc(stack);
+                colorBlending.sType(VK_STRUCTURE_TYPE_PIPELINE_COLOR_BLEND_STATE_CREATE_INFO);
+                colorBlending.pAttachments(colorBlendAttachment);
+
+                long pipelineLayout = createPipelineLayout(description, stack);
+
+                VkGraphicsPipelineCreateInfo.Buffer pipelineInfo = VkGraphicsPipelineCreateInfo.calloc(1, stack);
+                pipelineInfo.sType(VK_STRUCTURE_TYPE_GRAPHICS_PIPELINE_CREATE_INFO);
+                pipelineInfo.pStages(shaderStages);
+                pipelineInfo.pVertexInputState(description.getVertexLayout().toCreateInfo(stack));
+                pipelineInfo.pInputAssemblyState(inputAssembly);
+                pipelineInfo.pViewportState(viewportState);
+                pipelineInfo.pRasterizationState(rasterizer);
+                pipelineInfo.pMultisampleState(multisampling);
+                pipelineInfo.pDepthStencilState(depthStencil);
+                pipelineInfo.pColorBlendState(colorBlending);
+                pipelineInfo.pDynamicState(dynamicState);
+                pipelineInfo.layout(pipelineLayout);
+                pipelineInfo.renderPass(renderPass);
+                pipelineInfo.subpass(0);
+
+                VkPipelineCreationFeedback feedback = null;
+                if (creationFeedback) {
+                    feedback = VkPipelineCreationFeedback.calloc(stack);
+
+                    VkPipelineCreationFeedbackCreateInfo feedbackInfo = VkPipelineCreationFeedbackCreateInfo.calloc(stack);
+                    feedbackInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_CREATION_FEEDBACK_CREATE_INFO_EXT);
+                    feedbackInfo.pPipelineCreationFeedback(feedback);
+                    feedbackInfo.pPipelineStageCreationFeedbacks(VkPipelineCreationFeedback.calloc(2, stack));
+                    pipelineInfo.pNext(feedbackInfo.address());
+                }
+
+                LongBuffer pPipeline = stack.mallocLong(1);
+                if (vkCreateGraphicsPipelines(device, pipelineCache.getHandle(), pipelineInfo, null, pPipeline) != VK_SUCCESS) {
+                    ResourceRegistry.untrack(ResourceType.PIPELINE_LAYOUT, pipelineLayout);
+                    vkDestroyPipelineLayout(device, pipelineLayout, null);
+                    throw new RuntimeException("Failed to create pipeline " + description.getName());
+                }
+
+                long creationNanos = System.nanoTime() - start;
+                Pipeline.CacheResult cacheResult = cacheResult(feedback);
+                System.out.printf("Pipeline %s created in %.2f ms (cache %s)%n", description.getName(),
+                        creationNanos / 1e6, cacheResult);
+
+                long handle = ResourceRegistry.track(ResourceType.PIPELINE, pPipeline.get(0));
+                return new Pipeline(description.getName(), handle, pipelineLayout, renderPass, creationNanos, cacheResult);
+            } finally {
+                // Either may be missing if creating the other failed, e.g. a bad variant during hot reload.
+                destroyShaderModule(vertexModule);
+                destroyShaderModule(fragmentModule);
+            }
+        }
+    }
+
+    private Pipeline.CacheResult cacheResult(VkPipelineCreationFeedback feedback) {
+        if (feedback == null || (feedback.flags() & VK_PIPELINE_CREATION_FEEDBACK_VALID_BIT_EXT) == 0)
+            return Pipeline.CacheResult.UNKNOWN;
+
+        return (feedback.flags() & VK_PIPELINE_CREATION_FEEDBACK_APPLICATION_PIPELINE_CACHE_HIT_BIT_EXT) != 0
+                ? Pipeline.CacheResult.HIT : Pipeline.CacheResult.MISS;
+    }
+
+    private long createPipelineLayout(PipelineDescription description, MemoryStack stack) {
+        VkPipelineLayoutCreateInfo layoutInfo = VkPipelineLayoutCreateInfo.calloc(stack);
+        layoutInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_LAYOUT_CREATE_INFO);
+        layoutInfo.pSetLayouts(stack.longs(description.getDescriptorSetLayouts()));
+
+        if (description.getPushConstantSize() > 0) {
+            VkPushConstantRange.Buffer pushConstantRange = VkPushConstantRange.calloc(1, stack);
+            pushConstantRange.stageFlags(VK_SHADER_STAGE_VERTEX_BIT | VK_SHADER_STAGE_FRAGMENT_BIT);
+            pushConstantRange.offset(0);
+            pushConstantRange.size(description.getPushConstantSize());
+            layoutInfo.pPushConstantRanges(pushConstantRange);
+        }
+
+        LongBuffer pPipelineLayout = stack.mallocLong(1);
+        if (vkCreatePipelineLayout(device, layoutInfo, null, pPipelineLayout) != VK_SUCCESS)
+            throw new RuntimeException("Failed to create pipeline layout for " + description.getName());
+
+        return ResourceRegistry.track(ResourceType.PIPELINE_LAYOUT, pPipelineLayout.get(0));
+    }
+
+    private ByteBuffer resolve(ByteBuffer spirv, ShaderVariant variant) {
+        return variant != null ? shaderLibrary.get(variant) : spirv;
+    }
+
+    private long createShaderModule(ByteBuffer spirv, MemoryStack stack) {
+        VkShaderModuleCreateInfo createInfo = VkShaderModuleCreateInfo.calloc(stack);
+        createInfo.sType(VK_STRUCTURE_TYPE_SHADER_MODULE_CREATE_INFO);
+        createInfo.pCode(spirv);
+
+        LongBuffer pShaderModule = stack.mallocLong(1);
+        if (vkCreateShaderModule(device, createInfo, null, pShaderModule) != VK_SUCCESS)
+            throw new RuntimeException("Failed to create shader module");
+
+        return ResourceRegistry.track(ResourceType.SHADER_MODULE, pShaderModule.get(0));
+    }
+
+    private void destroyShaderModule(long shaderModule) {
+        if (shaderModule == VK_NULL_HANDLE)
+            return;
+
+        ResourceRegistry.untrack(ResourceType.SHADER_MODULE, shaderModule);
+        vkDestroyShaderModule(device, shaderModule, null);
+    }
+}
@@ -0,0 +1,55 @@
+package za.madtek.arcaderacer.vulkan;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.vulkan.KHRSurface.*;
+
+public enum PresentPolicy {
+    // Classic double buffered vsync: lowest latency a vsynced mode can give, but a missed vblank halves the rate.
+    VSYNC(2, VK_PRESENT_MODE_FIFO_KHR),
+    // Triple buffered mailbox: never tears, and the newest finished frame replaces any still queued.
+    LOW_LATENCY(3, VK_PRESENT_MODE_MAILBOX_KHR, VK_PRESENT_MODE_FIFO_KHR),
+    // No sync at all, tears but presents the instant rendering finishes. Used for benchmarking.
+    UNCAPPED(2, VK_PRESENT_MODE_IMMEDIATE_KHR, VK_PRESENT_MODE_MAILBOX_KHR, VK_PRESENT_MODE_FIFO_KHR),
+    // Vsync while we keep up, tears instead of stalling a whole refresh when a frame is late.
+    ADAPTIVE(2, VK_PRESENT_MODE_FIFO_RELAXED_KHR, VK_PRESENT_MODE_FIFO_KHR);
+
+    private final int preferredImageCount;
+    private final int[] presentModes;
+
+    PresentPolicy(int preferredImageCount, int... presentModes) {
+        this.preferredImageCount = preferredImageCount;
+        this.presentModes = presentModes;
+    }
+
+    public int getPreferredImageCount() {
+        return preferredImageCount;
+    }
+
+    // FIFO is the only mode every implementation has to support, so it's the last resort for all policies.
+    public int choosePresentMode(IntBuffer availablePresentModes) {
+        for (int presentMode : presentModes) {
+            for (int i = 0; i < availablePresentModes.capacity(); i++) {
+                if (availablePresentModes.get(i) == presentMode)
+                    return presentMode;
+            }
+        }
+
+        return VK_PRESENT_MODE_FIFO_KHR;
+    }
+
+    public static String presentModeName(int presentMode) {
+        switch (presentMode) {
+            case VK_PRESENT_MODE_IMMEDIATE_KHR:
+                return "IMMEDIATE";
+            case VK_PRESENT_MODE_MAILBOX_KHR:
+                return "MAILBOX";
+            case VK_PRESENT_MODE_FIFO_KHR:
+                return "FIFO";
+            case VK_PRESENT_MODE_FIFO_RELAXED_KHR:
+                return "FIFO_RELAXED";
+            default:
+                return "UNKNOWN(" + presentMode + ")";
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package za.madtek.arcaderacer.vulkan;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public class PresentStats {
+
+    private final Map<Integer, ModeStats> modes = new TreeMap<>();
+    private ModeStats current;
+    private long lastPresent;
+    private long inputSampleTime;
+
+    public void markInputSampled(long time) {
+        inputSampleTime = time;
+    }
+
+    protected void onPresentModeChanged(int presentMode) {
+        current = modes.computeIfAbsent(presentMode, ModeStats::new);
+        // The first interval after a swap chain change says nothing about the new mode.
+        lastPresent = 0;
+    }
+
+    protected void recordPresent(long time) {
+        if (current == null)
+            return;
+
+        if (lastPresent != 0)
+            current.addInterval(time - lastPresent);
+        if (inputSampleTime != 0)
+            current.addLatency(time - inputSampleTime);
+
+        lastPresent = time;
+    }
+
+    public ModeStats getCurrent() {
+        return current;
+    }
+
+    public Iterable<ModeStats> getModes() {
+        return modes.values();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        modes.values().forEach(mode -> builder.append(mode).append(System.lineSeparator()));
+        return builder.toString();
+    }
+
+    public static class ModeStats {
+        private final int presentMode;
+
+        private long presents;
+        private double intervalMean;
+        private double intervalM2;
+        private long minInterval = Long.MAX_VALUE;
+        private long maxInterval;
+        private long latencySamples;
+        private double latencyMean;
+
+        private ModeStats(int presentMode) {
+            this.presentMode = presentMode;
+        }
+
+        // Welford's running mean/variance, so there's nothing to grow over a long session.
+        private void addInterval(long interval) {
+            presents++;
+            double delta = interval - intervalMean;
+            intervalMean += delta / presents;
+            intervalM2 += delta * (interval - intervalMean);
+            minInterval = Math.min(minInterval, interval);
+            maxInterval = Math.max(maxInterval, interval);
+        }
+
+        private void addLatency(long latency) {
+            latencySamples++;
+            latencyMean += (latency - latencyMean) / latencySamples;
+        }
+
+        public int getPresentMode() {
+            return presentMode;
+        }
+
+        public long getPresents() {
+            return presents;
+        }
+
+        public double getMeanIntervalMillis() {
+            return intervalMean / 1e6;
+        }
+
+        public double getIntervalStdDevMillis() {
+            return presents > 1 ? Math.sqrt(intervalM2 / (presents - 1)) / 1e6 : 0.0;
+        }
+
+        public double getMinIntervalMillis() {
+            return presents > 0 ? minInterval / 1e6 : 0.0;
+        }
+
+        public double getMaxIntervalMillis() {
+            return maxInterval / 1e6;
+        }
+
+        public double getMeanInputToPresentMillis() {
+            return latencyMean / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d presents, interval %.3f ms (sd %.3f, min %.3f, max %.3f), input to present %.3f ms",
+                    PresentPolicy.presentModeName(presentMode), presents, getMeanIntervalMillis(), getIntervalStdDevMillis(),
+                    getMinIntervalMillis(), getMaxIntervalMillis(), getMeanInputToPresentMillis());
+        }
+    }
+}
@@ -14,13 +14,14 @@ import static org.lwjgl.vulkan.VK10.VK_TRUE;
 public class QueueFamilyIndices {
     private Integer graphicsFamily;
     private Integer presentFamily;
+    private Integer transferFamily;
 
     public boolean isComplete() {
         return graphicsFamily != null && presentFamily != null;
     }
 
     public int[] unique() {
-        return IntStream.of(graphicsFamily, presentFamily).distinct().toArray();
+        return IntStream.of(graphicsFamily, presentFamily, transferFamily).distinct().toArray();
     }
 
     public Integer getGraphicsFamily() {
@@ -31,9 +32,16 @@ public class QueueFamilyIndices {
         return presentFamily;
     }
 
-    public static QueueFamilyIndices findQueueFamilies(VkPhysicalDevice device, long surface) {
-        QueueFamilyIndices indices = new QueueFamilyIndices();
+    // Falls back to the graphics family on devices without a separate transfer-capable family.
+    public Integer getTransferFamily() {
+        return transferFamily;
+    }
+
+    public boolean hasDedicatedTransfer() {
+        return !transferFamily.equals(graphicsFamily);
+    }
 
+    public static QueueFamilyIndices findQueueFamilies(VkPhysicalDevice device, long surface) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             IntBuffer queueFamilyCount = stack.ints(0);
             vkGetPhysicalDeviceQueueFamilyProperties(device, queueFamilyCount, null);
@@ -41,17 +49,55 @@ public class QueueFamilyIndices {
             VkQueueFamilyProperties.Buffer queueFamilies = VkQueueFamilyProperties.malloc(queueFamilyCount.get(0), stack);
             vkGetPhysicalDeviceQueueFamilyProperties(device, queueFamilyCount, queueFamilies);
 
-            IntBuffer presentSupport = stack.ints(VK_FALSE);
-            for (int i = 0; i < queueFamilies.capacity() || !indices.isComplete(); i++) {
-                if ((queueFamilies.get(i).queueFlags() & VK_QUEUE_GRAPHICS_BIT) != 0)
-                    indices.graphicsFamily = i;
+            int[] queueFlags = new int[queueFamilies.capacity()];
+            boolean[] presentSupport = new boolean[queueFamilies.capacity()];
+            IntBuffer pPresentSupport = stack.ints(VK_FALSE);
+            for (int i = 0; i < queueFamilies.capacity(); i++) {
+                queueFlags[i] = queueFamilies.get(i).queueFlags();
+                if (surface == VK_NULL_HANDLE) {
+                    // Headless: nothing is presented, so let the graphics family stand in and the queues line up.
+                    presentSupport[i] = (queueFlags[i] & VK_QUEUE_GRAPHICS_BIT) != 0;
+                } else {
+                    vkGetPhysicalDeviceSurfaceSupportKHR(device, i, surface, pPresentSupport);
+                    presentSupport[i] = pPresentSupport.get(0) == VK_TRUE;
+                }
+            }
+
+            return select(queueFlags, presentSupport);
+        }
+    }
+
+    // The choice itself, from each family's queue flags and whether it can present, apart from the queries.
+    protected static QueueFamilyIndices select(int[] queueFlags, boolean[] presentSupport) {
+        QueueFamilyIndices indices = new QueueFamilyIndices();
+
+        int transferScore = 0;
+        for (int i = 0; i < queueFlags.length; i++) {
+            if ((queueFlags[i] & VK_QUEUE_GRAPHICS_BIT) != 0)
+                indices.graphicsFamily = i;
+
+            if (presentSupport[i])
+                indices.presentFamily = i;
 
-                vkGetPhysicalDeviceSurfaceSupportKHR(device, i, surface, presentSupport);
-                if (presentSupport.get(0) == VK_TRUE)
-                    indices.presentFamily = i;
+            int score = transferScore(queueFlags[i]);
+            if (score > transferScore) {
+                indices.transferFamily = i;
+                transferScore = score;
             }
         }
 
+        if (indices.transferFamily == null)
+            indices.transferFamily = indices.graphicsFamily;
+
         return indices;
     }
+
+    // A transfer-only family is usually backed by a DMA engine that runs alongside graphics. Async compute is the
+    // next best thing. Graphics is left as the fallback.
+    private static int transferScore(int queueFlags) {
+        if ((queueFlags & VK_QUEUE_TRANSFER_BIT) == 0 || (queueFlags & VK_QUEUE_GRAPHICS_BIT) != 0)
+            return 0;
+
+        return (queueFlags & VK_QUEUE_COMPUTE_BIT) == 0 ? 2 : 1;
+    }
 }
@@ -0,0 +1,11 @@
+package za.madtek.arcaderacer.vulkan;
+
+import java.nio.ByteBuffer;
+
+// Receives a rendered frame read back from an offscreen target.
+public interface ReadbackHandler {
+
+    // Render thread, once the frame has finished on the GPU. pixels is width * height tightly packed RGBA8 rows,
+    // top row first, in sRGB; it's only valid for the duration of the call.
+    void onReadback(long frame, int width, int height, ByteBuffer pixels);
+}
@@ -4,9 +4,21 @@ import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 import za.madtek.arcaderacer.Globals;
+import za.madtek.arcaderacer.asset.MeshLibrary;
+import za.madtek.arcaderacer.asset.MeshPool;
+import za.madtek.arcaderacer.asset.TextureLibrary;
+import za.madtek.arcaderacer.math.MathUtil;
+import za.madtek.arcaderacer.profile.Profiler;
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
+import za.madtek.arcaderacer.vulkan.shader.ShaderLibrary;
+import za.madtek.arcaderacer.vulkan.shader.Shaders;
 
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -14,31 +26,86 @@ import static org.lwjgl.glfw.GLFWVulkan.glfwCreateWindowSurface;
 import static org.lwjgl.glfw.GLFWVulkan.glfwGetRequiredInstanceExtensions;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.vulkan.EXTDebugUtils.VK_EXT_DEBUG_UTILS_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTPipelineCreationFeedback.VK_EXT_PIPELINE_CREATION_FEEDBACK_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRSurface.*;
-import static org.lwjgl.vulkan.KHRSwapchain.VK_KHR_SWAPCHAIN_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRSwapchain.*;
 import static org.lwjgl.vulkan.VK10.*;
 
 public class RenderSystem {
 
     private static final Set<String> DEVICE_EXTENSIONS = Set.of(VK_KHR_SWAPCHAIN_EXTENSION_NAME);
+    private static final Set<String> HEADLESS_DEVICE_EXTENSIONS = Set.of();
+    private static final Set<String> OPTIONAL_DEVICE_EXTENSIONS = Set.of(VK_EXT_PIPELINE_CREATION_FEEDBACK_EXTENSION_NAME);
+
+    // DrawData in common.glsl.
+    public static final int MESH_PUSH_CONSTANT_SIZE = 128;
 
     private ValidationLayers validationLayers;
 
     private VkInstance instance;
     private VkDevice device;
     private VkPhysicalDevice physicalDevice;
+    private String deviceName;
 
     private long surface;
     private VkQueue graphicsQueue;
     private VkQueue presentQueue;
+    private VkQueue transferQueue;
     private long commandPool;
+    // Exactly one of these exists, depending on Globals.HEADLESS; target is whichever it is.
     private SwapChain swapChain;
+    private OffscreenTarget offscreenTarget;
+    private RenderTarget target;
+    private MemoryAllocator memoryAllocator;
+    private UploadService uploadService;
+    private PipelineCache pipelineCache;
+    private PipelineLibrary pipelineLibrary;
+    private ShaderLibrary shaderLibrary;
+    private long instanceSetLayout;
+    private long textureSetLayout;
+    private MeshPool meshPool;
+    private MeshLibrary meshLibrary;
+    private TextureLibrary textureLibrary;
+    private CommandRecorder commandRecorder;
+    private GpuProfiler gpuProfiler;
+    private DeletionQueue deletionQueue;
+    private final List<DrawTask> drawTasks = new ArrayList<>();
+    private final Set<String> enabledExtensions = new HashSet<>();
+    private boolean multiDrawIndirect;
+    private boolean drawIndirectFirstInstance;
+
+    private Frame[] frames;
+    private long[] imagesInFlight;
+    private int currentFrame;
+    private long frameCount;
+    private long completedFrames;
+
+    private boolean swapChainDirty;
+    private final PresentStats presentStats = new PresentStats();
 
     public RenderSystem() {
         if (Globals.ENABLE_VALIDATION_LAYERS)
             validationLayers = new ValidationLayers();
 
-        swapChain = new SwapChain();
+        if (Globals.HEADLESS)
+            offscreenTarget = new OffscreenTarget();
+        else
+            swapChain = new SwapChain();
+        memoryAllocator = new MemoryAllocator();
+        uploadService = new UploadService();
+        pipelineCache = new PipelineCache();
+        pipelineLibrary = new PipelineLibrary();
+        shaderLibrary = new ShaderLibrary();
+        meshPool = new MeshPool(Globals.MESH_POOL_VERTICES, Globals.MESH_POOL_INDICES);
+        meshLibrary = new MeshLibrary();
+        textureLibrary = new TextureLibrary();
+        commandRecorder = new CommandRecorder();
+        gpuProfiler = new GpuProfiler();
+
+        frames = new Frame[Globals.MAX_FRAMES_IN_FLIGHT];
+        for (int i = 0; i < frames.length; i++)
+            frames[i] = new Frame();
+        deletionQueue = new DeletionQueue(this, frames.length);
     }
 
     public void init() {
@@ -47,22 +114,58 @@ public class RenderSystem {
         if (Globals.ENABLE_VALIDATION_LAYERS)
             validationLayers.setupDebugMessenger(instance);
 
-        createSurface();
+        // Headless, there's no window to present to: no surface, and frames go to offscreen images instead.
+        if (!Globals.HEADLESS)
+            createSurface();
         pickPhysicalDevice();
         createLogicalDevice();
         createCommandPool();
-        createSwapChainObjects();
+        createUploadService();
+        if (Globals.HEADLESS)
+            createOffscreenObjects();
+        else
+            createSwapChainObjects();
+        createPipelineObjects();
+        createFrames();
     }
 
     public void free() {
         if (device != null) {
-            swapChain.free(device);
-
+            vkDeviceWaitIdle(device);
+            deletionQueue.flush();
+
+            for (Frame frame : frames)
+                frame.free(device, commandPool);
+            commandRecorder.free();
+            gpuProfiler.free();
+
+            pipelineLibrary.free();
+            ResourceRegistry.untrack(ResourceType.DESCRIPTOR_SET_LAYOUT, instanceSetLayout);
+            vkDestroyDescriptorSetLayout(device, instanceSetLayout, null);
+            ResourceRegistry.untrack(ResourceType.DESCRIPTOR_SET_LAYOUT, textureSetLayout);
+            vkDestroyDescriptorSetLayout(device, textureSetLayout, null);
+            shaderLibrary.free();
+            pipelineCache.save(device);
+            pipelineCache.free(device);
+
+            if (swapChain != null)
+                swapChain.free(device, memoryAllocator);
+            if (offscreenTarget != null)
+                offscreenTarget.free();
+            meshLibrary.free();
+            meshPool.free();
+            textureLibrary.free();
+            uploadService.free();
+            memoryAllocator.free();
+
+            ResourceRegistry.untrack(ResourceType.COMMAND_POOL, commandPool);
             vkDestroyCommandPool(device, commandPool, null);
+            ResourceRegistry.reportLeaks();
             vkDestroyDevice(device, null);
         }
 
-        vkDestroySurfaceKHR(instance, surface, null);
+        if (surface != VK_NULL_HANDLE)
+            vkDestroySurfaceKHR(instance, surface, null);
 
         if (Globals.ENABLE_VALIDATION_LAYERS)
             validationLayers.free(instance);
@@ -71,6 +174,31 @@ public class RenderSystem {
             vkDestroyInstance(instance, null);
     }
 
+    // For shutdown of systems that own GPU resources, before free(). Delivers any readbacks still in flight.
+    public void waitIdle() {
+        if (device == null)
+            return;
+
+        vkDeviceWaitIdle(device);
+        deletionQueue.flush();
+        if (offscreenTarget != null) {
+            for (int i = 0; i < frames.length; i++)
+                offscreenTarget.collect((currentFrame + i) % frames.length);
+        }
+    }
+
+    public boolean isHeadless() {
+        return offscreenTarget != null;
+    }
+
+    // Headless only: the next frame drawn is copied back and handed to handler once it has finished on the GPU.
+    public void requestReadback(ReadbackHandler handler) {
+        if (offscreenTarget == null)
+            throw new IllegalStateException("Frames can only be read back in headless mode");
+
+        offscreenTarget.requestReadback(handler);
+    }
+
     public VkDevice getDevice() {
         return device;
     }
@@ -79,10 +207,267 @@ public class RenderSystem {
         return physicalDevice;
     }
 
+    public String getDeviceName() {
+        return deviceName;
+    }
+
     public long getSurface() {
         return surface;
     }
 
+    public MemoryAllocator getMemoryAllocator() {
+        return memoryAllocator;
+    }
+
+    public UploadService getUploadService() {
+        return uploadService;
+    }
+
+    public MeshPool getMeshPool() {
+        return meshPool;
+    }
+
+    public MeshLibrary getMeshLibrary() {
+        return meshLibrary;
+    }
+
+    // Render thread. For anything that may still be in use by frames in flight.
+    public DeletionQueue getDeletionQueue() {
+        return deletionQueue;
+    }
+
+    // Number of frames submitted so far; anything recorded now belongs to frame getFrameCount().
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    // Every frame numbered below this has finished on the GPU: something last recorded into frame N can be freed
+    // once N < getCompletedFrames().
+    public long getCompletedFrames() {
+        return completedFrames;
+    }
+
+    // Render thread. Tasks draw in the order they were added.
+    public void addDrawTask(DrawTask task) {
+        drawTasks.add(task);
+    }
+
+    public void removeDrawTask(DrawTask task) {
+        drawTasks.remove(task);
+    }
+
+    public CommandRecorder getCommandRecorder() {
+        return commandRecorder;
+    }
+
+    public TextureLibrary getTextureLibrary() {
+        return textureLibrary;
+    }
+
+    public ShaderLibrary getShaderLibrary() {
+        return shaderLibrary;
+    }
+
+    // Set 0 of the instanced mesh pipelines: the per-instance DrawData storage buffer.
+    public long getInstanceSetLayout() {
+        return instanceSetLayout;
+    }
+
+    // The base texture of the textured mesh pipelines: set 0, or set 1 after the instances.
+    public long getTextureSetLayout() {
+        return textureSetLayout;
+    }
+
+    public PipelineLibrary getPipelineLibrary() {
+        return pipelineLibrary;
+    }
+
+    public boolean isExtensionEnabled(String extension) {
+        return enabledExtensions.contains(extension);
+    }
+
+    // Without it, vkCmdDrawIndexedIndirect has to be issued once per command.
+    public boolean isMultiDrawIndirectEnabled() {
+        return multiDrawIndirect;
+    }
+
+    // Indirect commands can only address per-instance data through firstInstance when this is enabled.
+    public boolean isDrawIndirectFirstInstanceEnabled() {
+        return drawIndirectFirstInstance;
+    }
+
+    public void onResize() {
+        swapChainDirty = true;
+    }
+
+    public void setPresentPolicy(PresentPolicy presentPolicy) {
+        if (Globals.PRESENT_POLICY == presentPolicy)
+            return;
+
+        Globals.PRESENT_POLICY = presentPolicy;
+        swapChainDirty = true;
+    }
+
+    public GpuProfiler getGpuProfiler() {
+        return gpuProfiler;
+    }
+
+    public PresentStats getPresentStats() {
+        return presentStats;
+    }
+
+    public void drawFrame() {
+        if (offscreenTarget != null) {
+            drawOffscreenFrame();
+            return;
+        }
+
+        if (swapChainDirty && !recreateSwapChain())
+            return;
+
+        Frame frame = frames[currentFrame];
+
+        try (MemoryStack stack = stackPush()) {
+            // Only blocks if the GPU is still working on the frame that used this slot MAX_FRAMES_IN_FLIGHT frames ago.
+            LongBuffer pFence = stack.longs(frame.getInFlightFence());
+            Profiler.begin("wait for frame slot");
+            vkWaitForFences(device, pFence, true, MathUtil.UINT64_MAX);
+            Profiler.end();
+            beginFrame();
+
+            IntBuffer pImageIndex = stack.mallocInt(1);
+            Profiler.begin("acquire image");
+            int result = vkAcquireNextImageKHR(device, swapChain.getHandle(), MathUtil.UINT64_MAX,
+                    frame.getImageAvailableSemaphore(), VK_NULL_HANDLE, pImageIndex);
+            Profiler.end();
+            if (result == VK_ERROR_OUT_OF_DATE_KHR) {
+                // Nothing was signalled or submitted, so the frame slot is still free to reuse next time.
+                swapChainDirty = true;
+                return;
+            } else if (result == VK_SUBOPTIMAL_KHR) {
+                swapChainDirty = true;
+            } else if (result != VK_SUCCESS) {
+                throw new RuntimeException("Failed to acquire swap chain image");
+            }
+
+            int imageIndex = pImageIndex.get(0);
+
+            // The swap chain can hand back images out of order, so another frame slot may still be rendering to it.
+            if (imagesInFlight[imageIndex] != VK_NULL_HANDLE && imagesInFlight[imageIndex] != frame.getInFlightFence())
+                vkWaitForFences(device, stack.longs(imagesInFlight[imageIndex]), true, MathUtil.UINT64_MAX);
+            imagesInFlight[imageIndex] = frame.getInFlightFence();
+
+            vkResetFences(device, pFence);
+
+            Profiler.begin("record commands");
+            vkResetCommandBuffer(frame.getCommandBuffer(), 0);
+            recordCommandBuffer(frame.getCommandBuffer(), imageIndex);
+            Profiler.end();
+
+            LongBuffer pSignalSemaphores = stack.longs(swapChain.getRenderFinishedSemaphore(imageIndex));
+
+            VkSubmitInfo submitInfo = VkSubmitInfo.calloc(stack);
+            submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
+            int waitCount = 1 + uploadService.getWaitSemaphoreCount();
+            LongBuffer pWaitSemaphores = stack.mallocLong(waitCount);
+            IntBuffer pWaitStages = stack.mallocInt(waitCount);
+            pWaitSemaphores.put(frame.getImageAvailableSemaphore());
+            pWaitStages.put(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
+            uploadService.putWaitSemaphores(pWaitSemaphores, pWaitStages);
+
+            submitInfo.waitSemaphoreCount(waitCount);
+            submitInfo.pWaitSemaphores(pWaitSemaphores.flip());
+            submitInfo.pWaitDstStageMask(pWaitStages.flip());
+            submitInfo.pCommandBuffers(stack.pointers(frame.getCommandBuffer()));
+            submitInfo.pSignalSemaphores(pSignalSemaphores);
+
+            Profiler.begin("submit");
+            gpuProfiler.markSubmitted(currentFrame, System.nanoTime());
+            if (vkQueueSubmit(graphicsQueue, submitInfo, frame.getInFlightFence()) != VK_SUCCESS)
+                throw new RuntimeException("Failed to submit draw command buffer");
+            Profiler.end();
+
+            VkPresentInfoKHR presentInfo = VkPresentInfoKHR.calloc(stack);
+            presentInfo.sType(VK_STRUCTURE_TYPE_PRESENT_INFO_KHR);
+            presentInfo.pWaitSemaphores(pSignalSemaphores);
+            presentInfo.swapchainCount(1);
+            presentInfo.pSwapchains(stack.longs(swapChain.getHandle()));
+            presentInfo.pImageIndices(pImageIndex);
+
+            Profiler.begin("present");
+            result = vkQueuePresentKHR(presentQueue, presentInfo);
+            Profiler.end();
+            presentStats.recordPresent(System.nanoTime());
+            if (result == VK_ERROR_OUT_OF_DATE_KHR || result == VK_SUBOPTIMAL_KHR)
+                swapChainDirty = true;
+            else if (result != VK_SUCCESS)
+                throw new RuntimeException("Failed to present swap chain image");
+        }
+
+        currentFrame = (currentFrame + 1) % frames.length;
+        frameCount++;
+    }
+
+    // Frame housekeeping once the slot's fence has signalled: release what the GPU has finished with and start
+    // this frame's uploads.
+    private void beginFrame() {
+        gpuProfiler.collect(currentFrame);
+
+        // Submissions complete in order, so once this slot's fence has signalled every frame before
+        // completedFrames is done on the GPU.
+        completedFrames = frameCount - frames.length + 1;
+        ResourceRegistry.setFrame(frameCount);
+        deletionQueue.release(currentFrame, completedFrames);
+        uploadService.retire(completedFrames);
+        textureLibrary.update();
+        uploadService.flush();
+        pipelineLibrary.applyPendingSwaps();
+    }
+
+    // The same frame as drawFrame() without acquire or present: each frame slot renders into its own offscreen
+    // image, so the slot's fence is all there is to wait for.
+    private void drawOffscreenFrame() {
+        Frame frame = frames[currentFrame];
+
+        try (MemoryStack stack = stackPush()) {
+            LongBuffer pFence = stack.longs(frame.getInFlightFence());
+            Profiler.begin("wait for frame slot");
+            vkWaitForFences(device, pFence, true, MathUtil.UINT64_MAX);
+            Profiler.end();
+            offscreenTarget.collect(currentFrame);
+            beginFrame();
+
+            vkResetFences(device, pFence);
+
+            Profiler.begin("record commands");
+            vkResetCommandBuffer(frame.getCommandBuffer(), 0);
+            recordCommandBuffer(frame.getCommandBuffer(), currentFrame);
+            Profiler.end();
+
+            VkSubmitInfo submitInfo = VkSubmitInfo.calloc(stack);
+            submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
+            int waitCount = uploadService.getWaitSemaphoreCount();
+            if (waitCount > 0) {
+                LongBuffer pWaitSemaphores = stack.mallocLong(waitCount);
+                IntBuffer pWaitStages = stack.mallocInt(waitCount);
+                uploadService.putWaitSemaphores(pWaitSemaphores, pWaitStages);
+                submitInfo.waitSemaphoreCount(waitCount);
+                submitInfo.pWaitSemaphores(pWaitSemaphores.flip());
+                submitInfo.pWaitDstStageMask(pWaitStages.flip());
+            }
+            submitInfo.pCommandBuffers(stack.pointers(frame.getCommandBuffer()));
+
+            Profiler.begin("submit");
+            gpuProfiler.markSubmitted(currentFrame, System.nanoTime());
+            if (vkQueueSubmit(graphicsQueue, submitInfo, frame.getInFlightFence()) != VK_SUCCESS)
+                throw new RuntimeException("Failed to submit draw command buffer");
+            Profiler.end();
+        }
+
+        currentFrame = (currentFrame + 1) % frames.length;
+        frameCount++;
+    }
+
     private void createInstance() {
         if (Globals.ENABLE_VALIDATION_LAYERS && !validationLayers.checkValidationLayerSupport())
             throw new RuntimeException("Validation layers requested, but not available.");
@@ -119,6 +504,11 @@ public class RenderSystem {
     }
 
     private PointerBuffer getRequiredExtensions() {
+        if (Globals.HEADLESS) {
+            MemoryStack stack = MemoryStack.stackGet();
+            return Globals.ENABLE_VALIDATION_LAYERS ? stack.pointers(stack.UTF8(VK_EXT_DEBUG_UTILS_EXTENSION_NAME)) : null;
+        }
+
         PointerBuffer glfwExtensions = glfwGetRequiredInstanceExtensions();
 
         if (Globals.ENABLE_VALIDATION_LAYERS) {
@@ -163,6 +553,10 @@ public class RenderSystem {
 
             if (physicalDevice == null)
                 throw new RuntimeException("Failed to find suitable GPU");
+
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(physicalDevice, properties);
+            deviceName = properties.deviceNameString();
         }
     }
 
@@ -175,9 +569,13 @@ public class RenderSystem {
 
         if (extensionsSupported) {
             try (MemoryStack stack = MemoryStack.stackPush()) {
-                SwapChainSupportDetails swapChainSupportDetails = new SwapChainSupportDetails();
-                swapChainSupportDetails.querySupport(device, surface, stack);
-                swapChainAdequate = swapChainSupportDetails.isAdequate();
+                if (surface == VK_NULL_HANDLE) {
+                    swapChainAdequate = true;
+                } else {
+                    SwapChainSupportDetails swapChainSupportDetails = new SwapChainSupportDetails();
+                    swapChainSupportDetails.querySupport(device, surface, stack);
+                    swapChainAdequate = swapChainSupportDetails.isAdequate();
+                }
 
                 VkPhysicalDeviceFeatures supportedFeatures = VkPhysicalDeviceFeatures.malloc(stack);
                 vkGetPhysicalDeviceFeatures(device, supportedFeatures);
@@ -189,6 +587,14 @@ public class RenderSystem {
     }
 
     private boolean checkDeviceExtensionSupport(VkPhysicalDevice device) {
+        return getSupportedExtensions(device, getRequiredDeviceExtensions()).containsAll(getRequiredDeviceExtensions());
+    }
+
+    private Set<String> getRequiredDeviceExtensions() {
+        return Globals.HEADLESS ? HEADLESS_DEVICE_EXTENSIONS : DEVICE_EXTENSIONS;
+    }
+
+    private Set<String> getSupportedExtensions(VkPhysicalDevice device, Set<String> extensions) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             IntBuffer extensionCount = stack.ints(0);
             vkEnumerateDeviceExtensionProperties(device, (String) null, extensionCount, null);
@@ -198,8 +604,8 @@ public class RenderSystem {
 
             return extensionProperties.stream()
                     .map(VkExtensionProperties::extensionNameString)
-                    .collect(Collectors.toSet())
-                    .containsAll(DEVICE_EXTENSIONS);
+                    .filter(extensions::contains)
+                    .collect(Collectors.toSet());
         }
     }
 
@@ -218,17 +624,27 @@ public class RenderSystem {
                 queueCreateInfo.pQueuePriorities(stack.floats(1.0f));
             }
 
+            VkPhysicalDeviceFeatures supportedFeatures = VkPhysicalDeviceFeatures.malloc(stack);
+            vkGetPhysicalDeviceFeatures(physicalDevice, supportedFeatures);
+            multiDrawIndirect = supportedFeatures.multiDrawIndirect();
+            drawIndirectFirstInstance = supportedFeatures.drawIndirectFirstInstance();
+
             VkPhysicalDeviceFeatures deviceFeatures = VkPhysicalDeviceFeatures.calloc(stack);
             deviceFeatures.samplerAnisotropy(true);
+            deviceFeatures.multiDrawIndirect(multiDrawIndirect);
+            deviceFeatures.drawIndirectFirstInstance(drawIndirectFirstInstance);
 
             VkDeviceCreateInfo createInfo = VkDeviceCreateInfo.calloc(stack);
             createInfo.sType(VK_STRUCTURE_TYPE_DEVICE_CREATE_INFO);
             createInfo.pQueueCreateInfos(queueCreateInfos);
             createInfo.pEnabledFeatures(deviceFeatures);
 
-            PointerBuffer extensionsBuffer = stack.mallocPointer(DEVICE_EXTENSIONS.size());
+            enabledExtensions.addAll(getRequiredDeviceExtensions());
+            enabledExtensions.addAll(getSupportedExtensions(physicalDevice, OPTIONAL_DEVICE_EXTENSIONS));
 
-            DEVICE_EXTENSIONS.stream()
+            PointerBuffer extensionsBuffer = stack.mallocPointer(enabledExtensions.size());
+
+            enabledExtensions.stream()
                     .map(stack::UTF8)
                     .forEach(extensionsBuffer::put);
 
@@ -243,14 +659,20 @@ public class RenderSystem {
                 throw new RuntimeException("Failed to create logical device");
 
             device = new VkDevice(pDevice.get(0), physicalDevice, createInfo);
+            memoryAllocator.init(instance, physicalDevice, device);
 
             PointerBuffer pGraphicsQueue = stack.pointers(VK_NULL_HANDLE);
             vkGetDeviceQueue(device, indices.getGraphicsFamily(), 0, pGraphicsQueue);
             graphicsQueue = new VkQueue(pGraphicsQueue.get(0), device);
 
-            PointerBuffer pPResentQueue = stack.pointers(VK_NULL_HANDLE);
-            vkGetDeviceQueue(device, indices.getPresentFamily(), 0, pPResentQueue);
-            presentQueue = new VkQueue(pGraphicsQueue.get(0), device);
+            PointerBuffer pPresentQueue = stack.pointers(VK_NULL_HANDLE);
+            vkGetDeviceQueue(device, indices.getPresentFamily(), 0, pPresentQueue);
+            presentQueue = new VkQueue(pPresentQueue.get(0), device);
+
+            // Without a separate family this is simply the graphics queue again, and uploads share it.
+            PointerBuffer pTransferQueue = stack.pointers(VK_NULL_HANDLE);
+            vkGetDeviceQueue(device, indices.getTransferFamily(), 0, pTransferQueue);
+            transferQueue = new VkQueue(pTransferQueue.get(0), device);
         }
     }
 
@@ -266,11 +688,180 @@ public class RenderSystem {
             LongBuffer pCommandPool = stack.longs(VK_NULL_HANDLE);
             if (vkCreateCommandPool(device, poolInfo, null, pCommandPool) != VK_SUCCESS)
                 throw new RuntimeException("Failed to create command pool");
-            commandPool = pCommandPool.get(0);
+            commandPool = ResourceRegistry.track(ResourceType.COMMAND_POOL, pCommandPool.get(0));
+
+            commandRecorder.init(device, indices.getGraphicsFamily(), frames.length);
+            gpuProfiler.init(physicalDevice, device, indices.getGraphicsFamily(), frames.length);
         }
     }
 
+    private void createUploadService() {
+        uploadService.init(device, memoryAllocator, transferQueue, QueueFamilyIndices.findQueueFamilies(physicalDevice, surface));
+        meshPool.init(memoryAllocator);
+        meshLibrary.init(meshPool, uploadService);
+        textureLibrary.init(device, physicalDevice, memoryAllocator, uploadService);
+    }
+
     private void createSwapChainObjects() {
-        swapChain.init(physicalDevice, device, surface);
+        swapChain.init(physicalDevice, device, surface, memoryAllocator);
+        presentStats.onPresentModeChanged(swapChain.getPresentMode());
+
+        imagesInFlight = new long[swapChain.getImageCount()];
+        Arrays.fill(imagesInFlight, VK_NULL_HANDLE);
+        target = swapChain;
+    }
+
+    // Sized from Globals.WIDTH and HEIGHT, fixed for the run.
+    private void createOffscreenObjects() {
+        offscreenTarget.init(physicalDevice, device, memoryAllocator, Globals.WIDTH, Globals.HEIGHT, frames.length);
+        target = offscreenTarget;
+    }
+
+    private boolean recreateSwapChain() {
+        if (!SwapChain.canCreate(physicalDevice, surface))
+            return false;
+
+        swapChain.recreate(physicalDevice, device, surface, memoryAllocator, deletionQueue);
+        presentStats.onPresentModeChanged(swapChain.getPresentMode());
+
+        if (swapChain.getRenderPass() != pipelineLibrary.getRenderPass())
+            pipelineLibrary.rebuild(swapChain.getRenderPass());
+
+        imagesInFlight = new long[swapChain.getImageCount()];
+        Arrays.fill(imagesInFlight, VK_NULL_HANDLE);
+
+        swapChainDirty = false;
+        return true;
+    }
+
+    private void createPipelineObjects() {
+        pipelineCache.init(physicalDevice, device);
+        shaderLibrary.init();
+        pipelineLibrary.init(device, pipelineCache, shaderLibrary, deletionQueue, target.getRenderPass(),
+                isExtensionEnabled(VK_EXT_PIPELINE_CREATION_FEEDBACK_EXTENSION_NAME));
+
+        // 16 byte vertex: position quantized to the mesh bounds, packed normal and texture coordinates.
+        VertexLayout meshLayout = new VertexLayout()
+                .binding(0, 16, VK_VERTEX_INPUT_RATE_VERTEX)
+                .attribute(0, 0, VK_FORMAT_R16G16B16A16_SNORM, 0)
+                .attribute(0, 1, VK_FORMAT_R8G8B8A8_SNORM, 8)
+                .attribute(0, 2, VK_FORMAT_R16G16_UNORM, 12);
+
+        pipelineLibrary.register(new PipelineDescription("mesh")
+                .vertexShader(Shaders.MESH_VERT)
+                .fragmentShader(Shaders.MESH_FRAG)
+                .vertexLayout(meshLayout)
+                .pushConstantSize(MESH_PUSH_CONSTANT_SIZE));
+        pipelineLibrary.register(new PipelineDescription("mesh_alpha_test")
+                .vertexShader(Shaders.MESH_VERT)
+                .fragmentShader(Shaders.MESH_FRAG_ALPHA_TEST)
+                .vertexLayout(meshLayout)
+                .cullMode(VK_CULL_MODE_NONE)
+                .pushConstantSize(MESH_PUSH_CONSTANT_SIZE));
+
+        // Instanced variants for indirect batches. The fragment shader still declares the push constant block, so
+        // the range stays in the layout even though nothing is pushed.
+        instanceSetLayout = createInstanceSetLayout();
+        pipelineLibrary.register(new PipelineDescription("mesh_instanced")
+                .vertexShader(Shaders.MESH_VERT_INSTANCED)
+                .fragmentShader(Shaders.MESH_FRAG)
+                .vertexLayout(meshLayout)
+                .descriptorSetLayouts(instanceSetLayout)
+                .pushConstantSize(MESH_PUSH_CONSTANT_SIZE));
+        pipelineLibrary.register(new PipelineDescription("mesh_alpha_test_instanced")
+                .vertexShader(Shaders.MESH_VERT_INSTANCED)
+                .fragmentShader(Shaders.MESH_FRAG_ALPHA_TEST)
+                .vertexLayout(meshLayout)
+                .cullMode(VK_CULL_MODE_NONE)
+                .descriptorSetLayouts(instanceSetLayout)
+                .pushConstantSize(MESH_PUSH_CONSTANT_SIZE));
+
+        textureSetLayout = createTextureSetLayout();
+        pipelineLibrary.register(new PipelineDescription("road")
+                .vertexShader(Shaders.MESH_VERT)
+                .fragmentShader(Shaders.MESH_FRAG_TEXTURED)
+                .vertexLayout(meshLayout)
+                .descriptorSetLayouts(textureSetLayout)
+                .pushConstantSize(MESH_PUSH_CONSTANT_SIZE));
+        pipelineLibrary.register(new PipelineDescription("road_instanced")
+                .vertexShader(Shaders.MESH_VERT_INSTANCED)
+                .fragmentShader(Shaders.MESH_FRAG_TEXTURED_INSTANCED)
+                .vertexLayout(meshLayout)
+                .descriptorSetLayouts(instanceSetLayout, textureSetLayout)
+                .pushConstantSize(MESH_PUSH_CONSTANT_SIZE));
+    }
+
+    private long createInstanceSetLayout() {
+        return createSetLayout(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, VK_SHADER_STAGE_VERTEX_BIT, "instance");
+    }
+
+    private long createTextureSetLayout() {
+        return createSetLayout(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, VK_SHADER_STAGE_FRAGMENT_BIT, "texture");
+    }
+
+    // A single descriptor at binding 0.
+    private long createSetLayout(int descriptorType, int stageFlags, String name) {
+        try (MemoryStack stack = stackPush()) {
+            VkDescriptorSetLayoutBinding.Buffer bindings = VkDescriptorSetLayoutBinding.calloc(1, stack);
+            bindings.binding(0);
+            bindings.descriptorType(descriptorType);
+            bindings.descriptorCount(1);
+            bindings.stageFlags(stageFlags);
+
+            VkDescriptorSetLayoutCreateInfo layoutInfo = VkDescriptorSetLayoutCreateInfo.calloc(stack);
+            layoutInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_CREATE_INFO);
+            layoutInfo.pBindings(bindings);
+
+            LongBuffer pSetLayout = stack.mallocLong(1);
+            if (vkCreateDescriptorSetLayout(device, layoutInfo, null, pSetLayout) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create " + name + " descriptor set layout");
+
+            return ResourceRegistry.track(ResourceType.DESCRIPTOR_SET_LAYOUT, pSetLayout.get(0));
+        }
+    }
+
+    private void createFrames() {
+        for (Frame frame : frames)
+            frame.init(device, commandPool);
+    }
+
+    private void recordCommandBuffer(VkCommandBuffer commandBuffer, int imageIndex) {
+        try (MemoryStack stack = stackPush()) {
+            VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc(stack);
+            beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+            beginInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+
+            if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS)
+                throw new RuntimeException("Failed to begin recording command buffer");
+
+            gpuProfiler.beginFrame(commandBuffer, currentFrame);
+            gpuProfiler.begin(commandBuffer, "upload acquire");
+            uploadService.recordAcquire(commandBuffer, frameCount);
+            gpuProfiler.end(commandBuffer);
+
+            VkClearValue.Buffer clearValues = VkClearValue.calloc(2, stack);
+            clearValues.get(0).color().float32(stack.floats(0.08f, 0.04f, 0.16f, 1.0f));
+            clearValues.get(1).depthStencil().set(1.0f, 0);
+
+            VkRenderPassBeginInfo renderPassInfo = VkRenderPassBeginInfo.calloc(stack);
+            renderPassInfo.sType(VK_STRUCTURE_TYPE_RENDER_PASS_BEGIN_INFO);
+            renderPassInfo.renderPass(target.getRenderPass());
+            renderPassInfo.framebuffer(target.getFramebuffer(imageIndex));
+            renderPassInfo.renderArea().offset().set(0, 0);
+            renderPassInfo.renderArea().extent(target.getExtent());
+            renderPassInfo.pClearValues(clearValues);
+
+            for (DrawTask task : drawTasks)
+                task.prepare(currentFrame);
+            gpuProfiler.begin(commandBuffer, "main pass");
+            commandRecorder.recordPass(commandBuffer, currentFrame, renderPassInfo, drawTasks);
+            gpuProfiler.end(commandBuffer);
+            if (offscreenTarget != null)
+                offscreenTarget.recordReadback(commandBuffer, imageIndex, frameCount);
+            gpuProfiler.endFrame(commandBuffer);
+
+            if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS)
+                throw new RuntimeException("Failed to record command buffer");
+        }
     }
 }
@@ -0,0 +1,16 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.vulkan.VkExtent2D;
+
+// What the main render pass draws into: the swap chain's images when there's a window, or offscreen images
+// in headless mode. Pipelines are built against getRenderPass(), which both kinds create the same way.
+public interface RenderTarget {
+
+    long getRenderPass();
+
+    long getFramebuffer(int imageIndex);
+
+    VkExtent2D getExtent();
+
+    int getImageFormat();
+}
@@ -0,0 +1,139 @@
+package za.madtek.arcaderacer.vulkan;
+
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every live Vulkan object the game created: its type, the bytes of memory behind it, the code that created it
+// and the frame it was created in. Static like the Profiler, since objects are created all over the renderer and
+// on worker threads. Creation is rare enough that finding the creator by walking the stack costs nothing that
+// matters. Whatever is still registered when the device is about to be destroyed has leaked.
+public class ResourceRegistry {
+
+    private static final int LEAKS_LISTED = 32;
+    private static final StackWalker stackWalker = StackWalker.getInstance();
+    // Frames skipped when looking for the creator: these only pass handles through for someone else.
+    private static final Set<String> passThrough = Set.of(ResourceRegistry.class.getName(),
+            MemoryAllocator.class.getName());
+
+    private static final Map<ResourceType, Map<Long, Resource>> resources = new EnumMap<>(ResourceType.class);
+    private static volatile long frame;
+
+    static {
+        for (ResourceType type : ResourceType.values())
+            resources.put(type, new ConcurrentHashMap<>());
+    }
+
+    private ResourceRegistry() {
+    }
+
+    // Any thread. Returns the handle, so creation and registration can be one expression.
+    public static long track(ResourceType type, long handle) {
+        return track(type, handle, 0);
+    }
+
+    public static long track(ResourceType type, long handle, long size) {
+        Resource resource = new Resource(type, handle, size, findCreator(), frame);
+        Resource previous = resources.get(type).put(handle, resource);
+        if (previous != null)
+            System.err.println("Failed to track " + resource + ": handle already registered to " + previous);
+        return handle;
+    }
+
+    // Any thread, just before the object is destroyed.
+    public static void untrack(ResourceType type, long handle) {
+        if (resources.get(type).remove(handle) == null)
+            System.err.printf("Failed to untrack %s 0x%x: not registered, destroyed twice?%n", type, handle);
+    }
+
+    // Render thread, as each frame begins.
+    protected static void setFrame(long frame) {
+        ResourceRegistry.frame = frame;
+    }
+
+    public static int getLiveCount() {
+        return resources.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public static int getLiveCount(ResourceType type) {
+        return resources.get(type).size();
+    }
+
+    public static long getLiveBytes() {
+        return resources.values().stream()
+                .flatMap(live -> live.values().stream())
+                .mapToLong(resource -> resource.size)
+                .sum();
+    }
+
+    // At shutdown, once everything should have been destroyed. False if anything was left behind.
+    protected static boolean reportLeaks() {
+        List<Resource> leaked = new ArrayList<>();
+        resources.values().forEach(live -> leaked.addAll(live.values()));
+        if (leaked.isEmpty()) {
+            System.out.println("Vulkan resources: none leaked");
+            return true;
+        }
+
+        leaked.sort(Comparator.comparingLong((Resource resource) -> resource.frame)
+                .thenComparing(resource -> resource.type));
+        System.err.println("Vulkan resources: " + leaked.size() + " leaked, " + getLiveBytes() / 1024 + " KB");
+        leaked.stream().limit(LEAKS_LISTED).forEach(resource -> System.err.println("  " + resource));
+        if (leaked.size() > LEAKS_LISTED)
+            System.err.println("  ... and " + (leaked.size() - LEAKS_LISTED) + " more");
+        return false;
+    }
+
+    private static String findCreator() {
+        return stackWalker.walk(frames -> frames
+                .filter(frame -> !passThrough.contains(frame.getClassName()))
+                .findFirst()
+                .map(frame -> {
+                    String className = frame.getClassName();
+                    return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName() + ":"
+                            + frame.getLineNumber();
+                })
+                .orElse("unknown"));
+    }
+
+    public static String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Vulkan resources: %d live, %.1f MB", getLiveCount(), getLiveBytes() / (1024.0 * 1024.0)));
+        String separator = ": ";
+        for (Map.Entry<ResourceType, Map<Long, Resource>> entry : resources.entrySet()) {
+            int count = entry.getValue().size();
+            if (count == 0)
+                continue;
+            summary.append(separator).append(count).append(' ').append(entry.getKey());
+            separator = ", ";
+        }
+        return summary.toString();
+    }
+
+    private static class Resource {
+        private final ResourceType type;
+        private final long handle;
+        private final long size;
+        private final String creator;
+        private final long frame;
+
+        private Resource(ResourceType type, long handle, long size, String creator, long frame) {
+            this.type = type;
+            this.handle = handle;
+            this.size = size;
+            this.creator = creator;
+            this.frame = frame;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s 0x%x, %d bytes, created by %s in frame %d", type, handle, size, creator, frame);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package za.madtek.arcaderacer.vulkan;
+
+// The kinds of Vulkan object ResourceRegistry keeps track of. Objects that die with their parent (swap chain
+// images, command buffers, descriptor sets) aren't tracked separately.
+public enum ResourceType {
+    BUFFER,
+    IMAGE,
+    IMAGE_VIEW,
+    SAMPLER,
+    SWAP_CHAIN,
+    RENDER_PASS,
+    FRAMEBUFFER,
+    SHADER_MODULE,
+    PIPELINE,
+    PIPELINE_LAYOUT,
+    PIPELINE_CACHE,
+    DESCRIPTOR_SET_LAYOUT,
+    DESCRIPTOR_POOL,
+    COMMAND_POOL,
+    QUERY_POOL,
+    SEMAPHORE,
+    FENCE
+}
@@ -4,6 +4,8 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 import za.madtek.arcaderacer.Globals;
 import za.madtek.arcaderacer.math.MathUtil;
+import za.madtek.arcaderacer.vulkan.memory.AllocatedImage;
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
 
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
@@ -15,24 +17,74 @@ import static org.lwjgl.vulkan.KHRSwapchain.*;
 import static org.lwjgl.vulkan.KHRSwapchain.vkGetSwapchainImagesKHR;
 import static org.lwjgl.vulkan.VK10.*;
 
-public class SwapChain {
+public class SwapChain implements RenderTarget {
+
+    // In order of preference; at least one of the last two is guaranteed to be usable as a depth attachment.
+    private static final int[] DEPTH_FORMATS = {VK_FORMAT_D32_SFLOAT, VK_FORMAT_X8_D24_UNORM_PACK32, VK_FORMAT_D24_UNORM_S8_UINT};
 
     private long swapChain;
     private List<Long> images;
+    private List<Long> imageViews;
+    private List<Long> framebuffers;
+    private List<Long> renderFinishedSemaphores;
+    private AllocatedImage depthImage;
+    private long depthImageView;
+    private long renderPass;
     private int imageFormat;
+    private int depthFormat;
+    private int presentMode;
     private VkExtent2D extent;
 
-    protected void init(VkPhysicalDevice physicalDevice, VkDevice device, long surface) {
+    protected void init(VkPhysicalDevice physicalDevice, VkDevice device, long surface, MemoryAllocator memoryAllocator) {
+        depthFormat = findDepthFormat(physicalDevice);
+        create(physicalDevice, device, surface, VK_NULL_HANDLE);
+
+        createImageViews(device);
+        createDepthImage(device, memoryAllocator);
+        createRenderPass(device);
+        createFramebuffers(device);
+        createSyncObjects(device);
+    }
+
+    // Builds the new swap chain from the current one. Everything the old one owned goes on the deletion queue, to
+    // be destroyed once the frames that may still reference it have retired, so nothing has to wait idle.
+    protected void recreate(VkPhysicalDevice physicalDevice, VkDevice device, long surface,
+                            MemoryAllocator memoryAllocator, DeletionQueue deletionQueue) {
+        deletionQueue.defer(release(device, memoryAllocator));
+        int previousFormat = imageFormat;
+
+        create(physicalDevice, device, surface, swapChain);
+
+        createImageViews(device);
+        createDepthImage(device, memoryAllocator);
+        if (imageFormat != previousFormat) {
+            long oldRenderPass = renderPass;
+            deletionQueue.defer(() -> destroyRenderPass(device, oldRenderPass));
+            createRenderPass(device);
+        }
+        createFramebuffers(device);
+        createSyncObjects(device);
+    }
+
+    protected static boolean canCreate(VkPhysicalDevice physicalDevice, long surface) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkSurfaceCapabilitiesKHR capabilities = VkSurfaceCapabilitiesKHR.malloc(stack);
+            vkGetPhysicalDeviceSurfaceCapabilitiesKHR(physicalDevice, surface, capabilities);
+
+            // A minimized window reports a zero extent, which is not a valid swap chain size.
+            return capabilities.currentExtent().width() != 0 && capabilities.currentExtent().height() != 0;
+        }
+    }
+
+    private void create(VkPhysicalDevice physicalDevice, VkDevice device, long surface, long oldSwapChain) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             SwapChainSupportDetails supportDetails = new SwapChainSupportDetails();
             supportDetails.querySupport(physicalDevice, surface, stack);
             VkSurfaceFormatKHR surfaceFormat = chooseSwapSurfaceFormat(supportDetails.getFormats());
-            int presentMode = chooseSwapPresentMode(supportDetails.getPresentModes());
-            VkExtent2D pExtent = chooseSwapExtent(supportDetails.getCapabilities());
-
-            int imageCount = supportDetails.getCapabilities().minImageCount() + 1;
-            if (supportDetails.getCapabilities().maxImageCount() > 0 && imageCount > supportDetails.getCapabilities().maxImageCount())
-                imageCount = supportDetails.getCapabilities().maxImageCount();
+            PresentPolicy presentPolicy = Globals.PRESENT_POLICY;
+            int presentMode = chooseSwapPresentMode(supportDetails.getPresentModes(), presentPolicy);
+            VkExtent2D pExtent = chooseSwapExtent(supportDetails.getCapabilities(), stack);
+            int imageCount = chooseImageCount(supportDetails.getCapabilities(), presentPolicy);
 
             VkSwapchainCreateInfoKHR createInfo = VkSwapchainCreateInfoKHR.calloc(stack);
             createInfo.sType(VK_STRUCTURE_TYPE_SWAPCHAIN_CREATE_INFO_KHR);
@@ -56,13 +108,13 @@ public class SwapChain {
             createInfo.compositeAlpha(VK_COMPOSITE_ALPHA_OPAQUE_BIT_KHR);
             createInfo.presentMode(presentMode);
             createInfo.clipped(true);
-            createInfo.oldSwapchain(VK_NULL_HANDLE);
+            createInfo.oldSwapchain(oldSwapChain);
 
             LongBuffer pSwapChain = stack.longs(VK_NULL_HANDLE);
             if (vkCreateSwapchainKHR(device, createInfo, null, pSwapChain) != VK_SUCCESS)
                 throw new RuntimeException("Failed to create swap chain");
 
-            swapChain = pSwapChain.get(0);
+            swapChain = ResourceRegistry.track(ResourceType.SWAP_CHAIN, pSwapChain.get(0));
 
             IntBuffer swapChainImageCount = stack.ints(0);
             vkGetSwapchainImagesKHR(device, swapChain, swapChainImageCount, null);
@@ -76,39 +128,310 @@ public class SwapChain {
             }
 
             imageFormat = surfaceFormat.format();
+            this.presentMode = presentMode;
             extent = VkExtent2D.create().set(pExtent);
         }
     }
 
-    protected void free(VkDevice device) {
-        vkDestroySwapchainKHR(device, swapChain, null);
+    protected void free(VkDevice device, MemoryAllocator memoryAllocator) {
+        release(device, memoryAllocator).run();
+        destroyRenderPass(device, renderPass);
+    }
+
+    // Destroys everything but the render pass, which can outlive a recreate. Captures the current handles, so the
+    // result can be run after they have been replaced.
+    private Runnable release(VkDevice device, MemoryAllocator memoryAllocator) {
+        long swapChain = this.swapChain;
+        List<Long> imageViews = this.imageViews;
+        List<Long> framebuffers = this.framebuffers;
+        List<Long> renderFinishedSemaphores = this.renderFinishedSemaphores;
+        AllocatedImage depthImage = this.depthImage;
+        long depthImageView = this.depthImageView;
+
+        return () -> {
+            renderFinishedSemaphores.forEach(semaphore -> {
+                ResourceRegistry.untrack(ResourceType.SEMAPHORE, semaphore);
+                vkDestroySemaphore(device, semaphore, null);
+            });
+            framebuffers.forEach(framebuffer -> {
+                ResourceRegistry.untrack(ResourceType.FRAMEBUFFER, framebuffer);
+                vkDestroyFramebuffer(device, framebuffer, null);
+            });
+            ResourceRegistry.untrack(ResourceType.IMAGE_VIEW, depthImageView);
+            vkDestroyImageView(device, depthImageView, null);
+            memoryAllocator.destroyImage(depthImage);
+            imageViews.forEach(imageView -> {
+                ResourceRegistry.untrack(ResourceType.IMAGE_VIEW, imageView);
+                vkDestroyImageView(device, imageView, null);
+            });
+            ResourceRegistry.untrack(ResourceType.SWAP_CHAIN, swapChain);
+            vkDestroySwapchainKHR(device, swapChain, null);
+        };
+    }
+
+    private static void destroyRenderPass(VkDevice device, long renderPass) {
+        ResourceRegistry.untrack(ResourceType.RENDER_PASS, renderPass);
+        vkDestroyRenderPass(device, renderPass, null);
+    }
+
+    public long getHandle() {
+        return swapChain;
+    }
+
+    public int getImageCount() {
+        return images.size();
+    }
+
+    @Override
+    public int getImageFormat() {
+        return imageFormat;
+    }
+
+    public int getDepthFormat() {
+        return depthFormat;
+    }
+
+    public int getPresentMode() {
+        return presentMode;
+    }
+
+    @Override
+    public VkExtent2D getExtent() {
+        return extent;
+    }
+
+    @Override
+    public long getRenderPass() {
+        return renderPass;
+    }
+
+    @Override
+    public long getFramebuffer(int imageIndex) {
+        return framebuffers.get(imageIndex);
+    }
+
+    public long getRenderFinishedSemaphore(int imageIndex) {
+        return renderFinishedSemaphores.get(imageIndex);
+    }
+
+    private void createImageViews(VkDevice device) {
+        imageViews = new ArrayList<>(images.size());
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer pImageView = stack.mallocLong(1);
+
+            for (long image : images) {
+                VkImageViewCreateInfo createInfo = VkImageViewCreateInfo.calloc(stack);
+                createInfo.sType(VK_STRUCTURE_TYPE_IMAGE_VIEW_CREATE_INFO);
+                createInfo.image(image);
+                createInfo.viewType(VK_IMAGE_VIEW_TYPE_2D);
+                createInfo.format(imageFormat);
+                createInfo.components().r(VK_COMPONENT_SWIZZLE_IDENTITY);
+                createInfo.components().g(VK_COMPONENT_SWIZZLE_IDENTITY);
+                createInfo.components().b(VK_COMPONENT_SWIZZLE_IDENTITY);
+                createInfo.components().a(VK_COMPONENT_SWIZZLE_IDENTITY);
+                createInfo.subresourceRange().aspectMask(VK_IMAGE_ASPECT_COLOR_BIT);
+                createInfo.subresourceRange().baseMipLevel(0);
+                createInfo.subresourceRange().levelCount(1);
+                createInfo.subresourceRange().baseArrayLayer(0);
+                createInfo.subresourceRange().layerCount(1);
+
+                if (vkCreateImageView(device, createInfo, null, pImageView) != VK_SUCCESS)
+                    throw new RuntimeException("Failed to create image views");
+
+                imageViews.add(ResourceRegistry.track(ResourceType.IMAGE_VIEW, pImageView.get(0)));
+            }
+        }
+    }
+
+    // One depth buffer is shared by every frame in flight; the render pass dependency orders their depth writes.
+    private void createDepthImage(VkDevice device, MemoryAllocator memoryAllocator) {
+        depthImage = memoryAllocator.createImage(extent.width(), extent.height(), 1, depthFormat,
+                VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageViewCreateInfo createInfo = VkImageViewCreateInfo.calloc(stack);
+            createInfo.sType(VK_STRUCTURE_TYPE_IMAGE_VIEW_CREATE_INFO);
+            createInfo.image(depthImage.getImage());
+            createInfo.viewType(VK_IMAGE_VIEW_TYPE_2D);
+            createInfo.format(depthFormat);
+            createInfo.subresourceRange().aspectMask(VK_IMAGE_ASPECT_DEPTH_BIT);
+            createInfo.subresourceRange().baseMipLevel(0);
+            createInfo.subresourceRange().levelCount(1);
+            createInfo.subresourceRange().baseArrayLayer(0);
+            createInfo.subresourceRange().layerCount(1);
+
+            LongBuffer pImageView = stack.mallocLong(1);
+            if (vkCreateImageView(device, createInfo, null, pImageView) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create depth image view");
+
+            depthImageView = ResourceRegistry.track(ResourceType.IMAGE_VIEW, pImageView.get(0));
+        }
+    }
+
+    private void createRenderPass(VkDevice device) {
+        renderPass = createRenderPass(device, imageFormat, depthFormat, false);
+    }
+
+    // Offscreen targets end in TRANSFER_SRC_OPTIMAL, with a dependency that makes the colour writes visible to a
+    // copy recorded straight after the pass; swap chain images end ready to present. The two are compatible, so
+    // pipelines built for one work with the other.
+    protected static long createRenderPass(VkDevice device, int imageFormat, int depthFormat, boolean offscreen) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkAttachmentDescription.Buffer attachments = VkAttachmentDescription.calloc(2, stack);
+            VkAttachmentDescription colorAttachment = attachments.get(0);
+            colorAttachment.format(imageFormat);
+            colorAttachment.samples(VK_SAMPLE_COUNT_1_BIT);
+            colorAttachment.loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR);
+            colorAttachment.storeOp(VK_ATTACHMENT_STORE_OP_STORE);
+            colorAttachment.stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+            colorAttachment.stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
+            colorAttachment.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+            colorAttachment.finalLayout(offscreen ? VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL : VK_IMAGE_LAYOUT_PRESENT_SRC_KHR);
+
+            // Cleared every frame and never read afterwards, so there's nothing to load or store.
+            VkAttachmentDescription depthAttachment = attachments.get(1);
+            depthAttachment.format(depthFormat);
+            depthAttachment.samples(VK_SAMPLE_COUNT_1_BIT);
+            depthAttachment.loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR);
+            depthAttachment.storeOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
+            depthAttachment.stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+            depthAttachment.stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
+            depthAttachment.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+            depthAttachment.finalLayout(VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+
+            VkAttachmentReference.Buffer colorAttachmentRef = VkAttachmentReference.calloc(1, stack);
+            colorAttachmentRef.attachment(0);
+            colorAttachmentRef.layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+
+            VkAttachmentReference depthAttachmentRef = VkAttachmentReference.calloc(stack);
+            depthAttachmentRef.attachment(1);
+            depthAttachmentRef.layout(VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+
+            VkSubpassDescription.Buffer subpass = VkSubpassDescription.calloc(1, stack);
+            subpass.pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS);
+            subpass.colorAttachmentCount(1);
+            subpass.pColorAttachments(colorAttachmentRef);
+            subpass.pDepthStencilAttachment(depthAttachmentRef);
+
+            VkSubpassDependency.Buffer dependencies = VkSubpassDependency.calloc(offscreen ? 2 : 1, stack);
+            VkSubpassDependency dependency = dependencies.get(0);
+            dependency.srcSubpass(VK_SUBPASS_EXTERNAL);
+            dependency.dstSubpass(0);
+            // The depth stages make the previous frame's depth writes finish before this frame clears it.
+            dependency.srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT);
+            dependency.srcAccessMask(VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT);
+            dependency.dstStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT);
+            dependency.dstAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT | VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT);
+
+            if (offscreen) {
+                VkSubpassDependency readback = dependencies.get(1);
+                readback.srcSubpass(0);
+                readback.dstSubpass(VK_SUBPASS_EXTERNAL);
+                readback.srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
+                readback.srcAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+                readback.dstStageMask(VK_PIPELINE_STAGE_TRANSFER_BIT);
+                readback.dstAccessMask(VK_ACCESS_TRANSFER_READ_BIT);
+            }
+
+            VkRenderPassCreateInfo renderPassInfo = VkRenderPassCreateInfo.calloc(stack);
+            renderPassInfo.sType(VK_STRUCTURE_TYPE_RENDER_PASS_CREATE_INFO);
+            renderPassInfo.pAttachments(attachments);
+            renderPassInfo.pSubpasses(subpass);
+            renderPassInfo.pDependencies(dependencies);
+
+            LongBuffer pRenderPass = stack.longs(VK_NULL_HANDLE);
+            if (vkCreateRenderPass(device, renderPassInfo, null, pRenderPass) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create render pass");
+
+            return ResourceRegistry.track(ResourceType.RENDER_PASS, pRenderPass.get(0));
+        }
+    }
+
+    private void createFramebuffers(VkDevice device) {
+        framebuffers = new ArrayList<>(imageViews.size());
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer attachments = stack.mallocLong(2);
+            LongBuffer pFramebuffer = stack.mallocLong(1);
+
+            VkFramebufferCreateInfo framebufferInfo = VkFramebufferCreateInfo.calloc(stack);
+            framebufferInfo.sType(VK_STRUCTURE_TYPE_FRAMEBUFFER_CREATE_INFO);
+            framebufferInfo.renderPass(renderPass);
+            framebufferInfo.width(extent.width());
+            framebufferInfo.height(extent.height());
+            framebufferInfo.layers(1);
+
+            for (long imageView : imageViews) {
+                attachments.put(0, imageView);
+                attachments.put(1, depthImageView);
+                framebufferInfo.pAttachments(attachments);
+
+                if (vkCreateFramebuffer(device, framebufferInfo, null, pFramebuffer) != VK_SUCCESS)
+                    throw new RuntimeException("Failed to create framebuffer");
+
+                framebuffers.add(ResourceRegistry.track(ResourceType.FRAMEBUFFER, pFramebuffer.get(0)));
+            }
+        }
+    }
+
+    // One per image rather than per frame in flight: presentation holds on to the semaphore until the
+    // image is re-acquired, which is not tied to our frame fences.
+    private void createSyncObjects(VkDevice device) {
+        renderFinishedSemaphores = new ArrayList<>(images.size());
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkSemaphoreCreateInfo semaphoreInfo = VkSemaphoreCreateInfo.calloc(stack);
+            semaphoreInfo.sType(VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+
+            LongBuffer pSemaphore = stack.mallocLong(1);
+            for (int i = 0; i < images.size(); i++) {
+                if (vkCreateSemaphore(device, semaphoreInfo, null, pSemaphore) != VK_SUCCESS)
+                    throw new RuntimeException("Failed to create render finished semaphore");
+
+                renderFinishedSemaphores.add(ResourceRegistry.track(ResourceType.SEMAPHORE, pSemaphore.get(0)));
+            }
+        }
+    }
+
+    protected static int findDepthFormat(VkPhysicalDevice physicalDevice) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkFormatProperties properties = VkFormatProperties.malloc(stack);
+            for (int format : DEPTH_FORMATS) {
+                vkGetPhysicalDeviceFormatProperties(physicalDevice, format, properties);
+                if ((properties.optimalTilingFeatures() & VK_FORMAT_FEATURE_DEPTH_STENCIL_ATTACHMENT_BIT) != 0)
+                    return format;
+            }
+        }
+
+        throw new RuntimeException("Failed to find a supported depth format");
     }
 
-    private VkSurfaceFormatKHR chooseSwapSurfaceFormat(VkSurfaceFormatKHR.Buffer availableFormats) {
+    protected static VkSurfaceFormatKHR chooseSwapSurfaceFormat(VkSurfaceFormatKHR.Buffer availableFormats) {
         return availableFormats.stream()
                 .filter(availableFormat -> availableFormat.format() == VK_FORMAT_B8G8R8A8_SRGB)
                 .filter(availableFormat -> availableFormat.colorSpace() == VK_COLOR_SPACE_SRGB_NONLINEAR_KHR)
                 .findAny().orElse(availableFormats.get(0));
     }
 
-    private int chooseSwapPresentMode(IntBuffer availablePresentModes) {
-        // TODO: Vsync stuffs...
+    protected static int chooseSwapPresentMode(IntBuffer availablePresentModes, PresentPolicy presentPolicy) {
+        return presentPolicy.choosePresentMode(availablePresentModes);
+    }
 
-        for (int i = 0; i < availablePresentModes.capacity(); i++) {
-            if (availablePresentModes.get(i) == VK_PRESENT_MODE_MAILBOX_KHR)
-                return availablePresentModes.get(i);
-        }
+    protected static int chooseImageCount(VkSurfaceCapabilitiesKHR capabilities, PresentPolicy presentPolicy) {
+        int imageCount = Math.max(capabilities.minImageCount(), presentPolicy.getPreferredImageCount());
+        if (capabilities.maxImageCount() > 0 && imageCount > capabilities.maxImageCount())
+            imageCount = capabilities.maxImageCount();
 
-        return VK_PRESENT_MODE_FIFO_KHR;
-        //return VK_PRESENT_MODE_IMMEDIATE_KHR;
+        return imageCount;
     }
 
-    private VkExtent2D chooseSwapExtent(VkSurfaceCapabilitiesKHR capabilities) {
+    protected static VkExtent2D chooseSwapExtent(VkSurfaceCapabilitiesKHR capabilities, MemoryStack stack) {
         if (capabilities.currentExtent().width() != MathUtil.UINT32_MAX) {
             return capabilities.currentExtent();
         }
 
-        VkExtent2D actualExtent = VkExtent2D.malloc().set(Globals.WIDTH, Globals.HEIGHT);
+        VkExtent2D actualExtent = VkExtent2D.malloc(stack).set(Globals.WIDTH, Globals.HEIGHT);
         VkExtent2D minExtent = capabilities.minImageExtent();
         VkExtent2D maxExtent = capabilities.maxImageExtent();
         actualExtent.width(MathUtil.clamp(minExtent.width(), maxExtent.width(), actualExtent.width()));
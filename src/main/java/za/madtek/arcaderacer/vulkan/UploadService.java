@@ -0,0 +1,516 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.vulkan.memory.AllocatedBuffer;
+import za.madtek.arcaderacer.vulkan.memory.AllocatedImage;
+import za.madtek.arcaderacer.vulkan.memory.MemoryAllocator;
+import za.madtek.arcaderacer.vulkan.memory.StagingRing;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Uploads can be requested from any thread: the data is written straight into a staging ring and the copy is
+// queued. The render thread batches everything queued into one submission per frame on the transfer queue, and
+// the next frame's command buffer takes ownership of the results before anything draws with them.
+public class UploadService {
+
+    protected static final int ACQUIRE_STAGES = VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT | VK_PIPELINE_STAGE_VERTEX_INPUT_BIT |
+            VK_PIPELINE_STAGE_VERTEX_SHADER_BIT | VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT | VK_PIPELINE_STAGE_TRANSFER_BIT;
+    protected static final int ACQUIRE_ACCESS = VK_ACCESS_INDIRECT_COMMAND_READ_BIT | VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT |
+            VK_ACCESS_INDEX_READ_BIT | VK_ACCESS_UNIFORM_READ_BIT | VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_TRANSFER_READ_BIT;
+
+    private VkDevice device;
+    private VkQueue transferQueue;
+    private int transferFamily;
+    private int graphicsFamily;
+    private boolean dedicated;
+    private long commandPool;
+    private StagingRing stagingRing;
+    private Thread renderThread;
+
+    private final Deque<PendingCopy> pending = new ArrayDeque<>();
+    private final Deque<UploadBatch> inFlight = new ArrayDeque<>();
+    private final Deque<UploadBatch> freeBatches = new ArrayDeque<>();
+    private final List<UploadBatch> awaitingAcquire = new ArrayList<>();
+    private final List<UploadBatch> acquiredThisFrame = new ArrayList<>();
+
+    private long bytesUploaded;
+    private long batchesSubmitted;
+
+    protected void init(VkDevice device, MemoryAllocator memoryAllocator, VkQueue transferQueue, QueueFamilyIndices indices) {
+        this.device = device;
+        this.transferQueue = transferQueue;
+        this.transferFamily = indices.getTransferFamily();
+        this.graphicsFamily = indices.getGraphicsFamily();
+        this.dedicated = indices.hasDedicatedTransfer();
+        this.renderThread = Thread.currentThread();
+
+        try (MemoryStack stack = stackPush()) {
+            VkCommandPoolCreateInfo poolInfo = VkCommandPoolCreateInfo.calloc(stack);
+            poolInfo.sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
+            poolInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT | VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT);
+            poolInfo.queueFamilyIndex(transferFamily);
+
+            LongBuffer pCommandPool = stack.longs(VK_NULL_HANDLE);
+            if (vkCreateCommandPool(device, poolInfo, null, pCommandPool) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create transfer command pool");
+            commandPool = ResourceRegistry.track(ResourceType.COMMAND_POOL, pCommandPool.get(0));
+        }
+
+        stagingRing = memoryAllocator.getStagingRing();
+    }
+
+    protected void free() {
+        synchronized (this) {
+            pending.forEach(copy -> copy.future.cancel(false));
+            pending.clear();
+        }
+
+        inFlight.forEach(batch -> batch.copies.forEach(copy -> copy.future.cancel(false)));
+        inFlight.forEach(this::freeBatch);
+        freeBatches.forEach(this::freeBatch);
+        inFlight.clear();
+        freeBatches.clear();
+
+        ResourceRegistry.untrack(ResourceType.COMMAND_POOL, commandPool);
+        vkDestroyCommandPool(device, commandPool, null);
+    }
+
+    public CompletableFuture<Void> uploadBuffer(AllocatedBuffer dst, long dstOffset, ByteBuffer data) {
+        int size = data.remaining();
+        return uploadBuffer(dst, dstOffset, size, staging -> memCopy(data, staging));
+    }
+
+    // The writer fills the staging memory directly, so callers that already have the data off-heap (mapped files,
+    // decoders) never need an intermediate copy.
+    public CompletableFuture<Void> uploadBuffer(AllocatedBuffer dst, long dstOffset, long size, Consumer<ByteBuffer> writer) {
+        if (dstOffset + size > dst.getSize())
+            throw new IllegalArgumentException("Upload of " + size + " bytes at " + dstOffset + " overflows buffer of " + dst.getSize());
+
+        PendingCopy copy = reserve(size);
+        copy.dstBuffer = dst.getBuffer();
+        copy.dstOffset = dstOffset;
+
+        return write(copy, writer);
+    }
+
+    // Uploads one whole mip level. The level ends up in SHADER_READ_ONLY_OPTIMAL; levels that haven't been uploaded
+    // yet are left undefined, so whoever samples the image has to stay within the levels that have arrived.
+    public CompletableFuture<Void> uploadImage(AllocatedImage dst, int mipLevel, long size, Consumer<ByteBuffer> writer) {
+        if (mipLevel >= dst.getMipLevels())
+            throw new IllegalArgumentException("Mip level " + mipLevel + " out of range for image with " + dst.getMipLevels() + " levels");
+
+        PendingCopy copy = reserve(size);
+        copy.dstImage = dst.getImage();
+        copy.mipLevel = mipLevel;
+        copy.width = Math.max(1, dst.getWidth() >> mipLevel);
+        copy.height = Math.max(1, dst.getHeight() >> mipLevel);
+
+        return write(copy, writer);
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public long getBatchesSubmitted() {
+        return batchesSubmitted;
+    }
+
+    public boolean isDedicated() {
+        return dedicated;
+    }
+
+    // Render thread, once per frame before recording. Records and submits everything that is ready.
+    protected void flush() {
+        List<PendingCopy> copies = new ArrayList<>();
+
+        // Only the ready prefix: the ring is released in allocation order, so a batch must never skip past an
+        // allocation whose writer hasn't finished yet.
+        synchronized (this) {
+            while (!pending.isEmpty() && pending.peek().ready)
+                copies.add(pending.poll());
+        }
+
+        if (copies.isEmpty())
+            return;
+
+        UploadBatch batch = obtainBatch();
+        batch.copies.addAll(copies);
+        batch.stagingMark = copies.get(copies.size() - 1).stagingEnd;
+
+        try (MemoryStack stack = stackPush()) {
+            VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc(stack);
+            beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+            beginInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+
+            vkResetCommandBuffer(batch.commandBuffer, 0);
+            if (vkBeginCommandBuffer(batch.commandBuffer, beginInfo) != VK_SUCCESS)
+                throw new RuntimeException("Failed to begin recording upload command buffer");
+
+            VkImageMemoryBarrier.Buffer toTransfer = imageBarriers(copies, VK_IMAGE_LAYOUT_UNDEFINED,
+                    VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, false, stack);
+            if (toTransfer.remaining() > 0) {
+                toTransfer.forEach(barrier -> barrier.srcAccessMask(0).dstAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT));
+                vkCmdPipelineBarrier(batch.commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT,
+                        0, null, null, toTransfer);
+            }
+
+            VkBufferCopy.Buffer region = VkBufferCopy.calloc(1, stack);
+            VkBufferImageCopy.Buffer imageRegion = VkBufferImageCopy.calloc(1, stack);
+            for (PendingCopy copy : copies) {
+                if (copy.failed)
+                    continue;
+
+                if (copy.dstImage != VK_NULL_HANDLE) {
+                    imageRegion.bufferOffset(copy.srcOffset);
+                    imageRegion.imageSubresource()
+                            .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                            .mipLevel(copy.mipLevel)
+                            .baseArrayLayer(0)
+                            .layerCount(1);
+                    imageRegion.imageExtent().set(copy.width, copy.height, 1);
+                    vkCmdCopyBufferToImage(batch.commandBuffer, stagingRing.getBuffer(), copy.dstImage,
+                            VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, imageRegion);
+                } else {
+                    region.srcOffset(copy.srcOffset);
+                    region.dstOffset(copy.dstOffset);
+                    region.size(copy.size);
+                    vkCmdCopyBuffer(batch.commandBuffer, stagingRing.getBuffer(), copy.dstBuffer, region);
+                }
+                bytesUploaded += copy.size;
+            }
+
+            VkImageMemoryBarrier.Buffer toShaderRead = imageBarriers(copies, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                    VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, dedicated, stack);
+            if (dedicated) {
+                VkBufferMemoryBarrier.Buffer barriers = ownershipBarriers(copies, stack);
+                barriers.forEach(barrier -> barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT).dstAccessMask(0));
+                toShaderRead.forEach(barrier -> barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT).dstAccessMask(0));
+                vkCmdPipelineBarrier(batch.commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT,
+                        0, null, barriers, toShaderRead);
+            } else if (toShaderRead.remaining() > 0) {
+                // Same queue as the graphics work, so this barrier already orders against every later frame.
+                toShaderRead.forEach(barrier -> barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT).dstAccessMask(ACQUIRE_ACCESS));
+                vkCmdPipelineBarrier(batch.commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, ACQUIRE_STAGES,
+                        0, null, null, toShaderRead);
+            }
+
+            if (vkEndCommandBuffer(batch.commandBuffer) != VK_SUCCESS)
+                throw new RuntimeException("Failed to record upload command buffer");
+
+            VkSubmitInfo submitInfo = VkSubmitInfo.calloc(stack);
+            submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
+            submitInfo.pCommandBuffers(stack.pointers(batch.commandBuffer));
+            if (dedicated)
+                submitInfo.pSignalSemaphores(stack.longs(batch.semaphore));
+
+            vkResetFences(device, stack.longs(batch.fence));
+            if (vkQueueSubmit(transferQueue, submitInfo, batch.fence) != VK_SUCCESS)
+                throw new RuntimeException("Failed to submit upload batch");
+        }
+
+        batchesSubmitted++;
+        inFlight.add(batch);
+        awaitingAcquire.add(batch);
+    }
+
+    // Render thread, at the start of the frame's command buffer. With a dedicated transfer family this is the
+    // acquire half of the ownership transfer; on a shared queue it's just the barrier against the copies.
+    protected void recordAcquire(VkCommandBuffer commandBuffer, long frame) {
+        acquiredThisFrame.clear();
+        if (awaitingAcquire.isEmpty())
+            return;
+
+        try (MemoryStack stack = stackPush()) {
+            if (dedicated) {
+                List<PendingCopy> copies = new ArrayList<>();
+                awaitingAcquire.forEach(batch -> copies.addAll(batch.copies));
+
+                VkBufferMemoryBarrier.Buffer barriers = ownershipBarriers(copies, stack);
+                barriers.forEach(barrier -> barrier.srcAccessMask(0).dstAccessMask(ACQUIRE_ACCESS));
+                VkImageMemoryBarrier.Buffer imageBarriers = imageBarriers(copies, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                        VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, true, stack);
+                imageBarriers.forEach(barrier -> barrier.srcAccessMask(0).dstAccessMask(ACQUIRE_ACCESS));
+                vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, ACQUIRE_STAGES, 0, null, barriers, imageBarriers);
+            } else {
+                VkMemoryBarrier.Buffer barrier = VkMemoryBarrier.calloc(1, stack);
+                barrier.sType(VK_STRUCTURE_TYPE_MEMORY_BARRIER);
+                barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT);
+                barrier.dstAccessMask(ACQUIRE_ACCESS);
+                vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, ACQUIRE_STAGES, 0, barrier, null, null);
+            }
+        }
+
+        for (UploadBatch batch : awaitingAcquire) {
+            batch.acquireFrame = frame;
+            acquiredThisFrame.add(batch);
+        }
+        awaitingAcquire.clear();
+    }
+
+    protected int getWaitSemaphoreCount() {
+        return dedicated ? acquiredThisFrame.size() : 0;
+    }
+
+    // The graphics submission has to wait for the transfer queue before the acquire barriers can execute.
+    protected void putWaitSemaphores(LongBuffer semaphores, IntBuffer stages) {
+        if (!dedicated)
+            return;
+
+        for (UploadBatch batch : acquiredThisFrame) {
+            semaphores.put(batch.semaphore);
+            stages.put(VK_PIPELINE_STAGE_TRANSFER_BIT);
+        }
+    }
+
+    // Render thread, after the frame fence wait. completedFrames is the number of frames known to be finished.
+    protected void retire(long completedFrames) {
+        while (!inFlight.isEmpty()) {
+            UploadBatch batch = inFlight.peek();
+            if (!batch.stagingReleased) {
+                if (vkGetFenceStatus(device, batch.fence) != VK_SUCCESS)
+                    break;
+
+                synchronized (this) {
+                    stagingRing.release(batch.stagingMark);
+                    notifyAll();
+                }
+                batch.stagingReleased = true;
+            }
+
+            // Acquired: anything recorded from here on sees the data, so the work is done as far as callers care.
+            if (batch.acquireFrame < 0)
+                break;
+            if (!batch.completed) {
+                batch.copies.forEach(copy -> copy.future.complete(null));
+                batch.completed = true;
+            }
+
+            // The semaphore and command buffer are only free once the frame that waited on them has finished.
+            if (batch.acquireFrame >= completedFrames)
+                break;
+
+            inFlight.poll();
+            batch.reset();
+            freeBatches.add(batch);
+        }
+    }
+
+    private PendingCopy reserve(long size) {
+        synchronized (this) {
+            long offset;
+            // Only a request larger than the whole ring fails; allocate() throws for those.
+            while ((offset = stagingRing.allocate(size, 16)) < 0) {
+                if (Thread.currentThread() == renderThread) {
+                    // Nobody else will retire batches for us, so push out what's queued and wait on the GPU.
+                    waitForStagingSpace();
+                } else {
+                    waitForNotify();
+                }
+            }
+
+            PendingCopy copy = new PendingCopy(offset, size, stagingRing.getHead());
+            pending.add(copy);
+            return copy;
+        }
+    }
+
+    // Render thread, holding the lock.
+    private void waitForStagingSpace() {
+        flush();
+
+        boolean released = false;
+        for (UploadBatch batch : inFlight) {
+            if (batch.stagingReleased)
+                continue;
+
+            try (MemoryStack stack = stackPush()) {
+                vkWaitForFences(device, stack.longs(batch.fence), true, -1L);
+            }
+            stagingRing.release(batch.stagingMark);
+            batch.stagingReleased = true;
+            released = true;
+        }
+
+        // The rest of the ring is reserved by worker threads still writing, and flush() can't submit past them.
+        if (!released && !pending.isEmpty())
+            waitForNotify();
+    }
+
+    private void waitForNotify() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for staging memory", e);
+        }
+    }
+
+    private VkBufferMemoryBarrier.Buffer ownershipBarriers(List<PendingCopy> copies, MemoryStack stack) {
+        int count = (int) copies.stream().filter(copy -> !copy.failed && copy.dstImage == VK_NULL_HANDLE).count();
+        VkBufferMemoryBarrier.Buffer barriers = VkBufferMemoryBarrier.calloc(count, stack);
+
+        for (PendingCopy copy : copies) {
+            if (copy.failed || copy.dstImage != VK_NULL_HANDLE)
+                continue;
+
+            barriers.get()
+                    .sType(VK_STRUCTURE_TYPE_BUFFER_MEMORY_BARRIER)
+                    .srcQueueFamilyIndex(transferFamily)
+                    .dstQueueFamilyIndex(graphicsFamily)
+                    .buffer(copy.dstBuffer)
+                    .offset(copy.dstOffset)
+                    .size(copy.size);
+        }
+
+        return barriers.flip();
+    }
+
+    // Layout transitions for the image copies; with transferOwnership they double as the release/acquire pair.
+    private VkImageMemoryBarrier.Buffer imageBarriers(List<PendingCopy> copies, int oldLayout, int newLayout,
+                                                      boolean transferOwnership, MemoryStack stack) {
+        int count = (int) copies.stream().filter(copy -> !copy.failed && copy.dstImage != VK_NULL_HANDLE).count();
+        VkImageMemoryBarrier.Buffer barriers = VkImageMemoryBarrier.calloc(count, stack);
+
+        for (PendingCopy copy : copies) {
+            if (copy.failed || copy.dstImage == VK_NULL_HANDLE)
+                continue;
+
+            VkImageMemoryBarrier barrier = barriers.get()
+                    .sType(VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER)
+                    .oldLayout(oldLayout)
+                    .newLayout(newLayout)
+                    .srcQueueFamilyIndex(transferOwnership ? transferFamily : VK_QUEUE_FAMILY_IGNORED)
+                    .dstQueueFamilyIndex(transferOwnership ? graphicsFamily : VK_QUEUE_FAMILY_IGNORED)
+                    .image(copy.dstImage);
+            barrier.subresourceRange()
+                    .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                    .baseMipLevel(copy.mipLevel)
+                    .levelCount(1)
+                    .baseArrayLayer(0)
+                    .layerCount(1);
+        }
+
+        return barriers.flip();
+    }
+
+    private CompletableFuture<Void> write(PendingCopy copy, Consumer<ByteBuffer> writer) {
+        try {
+            writer.accept(memByteBuffer(stagingRing.getMappedAddress() + copy.srcOffset, (int) copy.size));
+            stagingRing.flush(copy.srcOffset, copy.size);
+        } catch (RuntimeException e) {
+            copy.failed = true;
+            copy.future.completeExceptionally(e);
+        }
+
+        copy.ready = true;
+        // The render thread may be waiting for this write before it can submit and free up the ring.
+        synchronized (this) {
+            notifyAll();
+        }
+        return copy.future;
+    }
+
+    private UploadBatch obtainBatch() {
+        if (!freeBatches.isEmpty())
+            return freeBatches.poll();
+
+        UploadBatch batch = new UploadBatch();
+
+        try (MemoryStack stack = stackPush()) {
+            VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.calloc(stack);
+            allocInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+            allocInfo.commandPool(commandPool);
+            allocInfo.level(VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+            allocInfo.commandBufferCount(1);
+
+            PointerBuffer pCommandBuffer = stack.mallocPointer(1);
+            if (vkAllocateCommandBuffers(device, allocInfo, pCommandBuffer) != VK_SUCCESS)
+                throw new RuntimeException("Failed to allocate upload command buffer");
+            batch.commandBuffer = new VkCommandBuffer(pCommandBuffer.get(0), device);
+
+            VkFenceCreateInfo fenceInfo = VkFenceCreateInfo.calloc(stack);
+            fenceInfo.sType(VK_STRUCTURE_TYPE_FENCE_CREATE_INFO);
+
+            LongBuffer pHandle = stack.longs(VK_NULL_HANDLE);
+            if (vkCreateFence(device, fenceInfo, null, pHandle) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create upload fence");
+            batch.fence = ResourceRegistry.track(ResourceType.FENCE, pHandle.get(0));
+
+            if (dedicated) {
+                VkSemaphoreCreateInfo semaphoreInfo = VkSemaphoreCreateInfo.calloc(stack);
+                semaphoreInfo.sType(VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+
+                if (vkCreateSemaphore(device, semaphoreInfo, null, pHandle) != VK_SUCCESS)
+                    throw new RuntimeException("Failed to create upload semaphore");
+                batch.semaphore = ResourceRegistry.track(ResourceType.SEMAPHORE, pHandle.get(0));
+            }
+        }
+
+        return batch;
+    }
+
+    private void freeBatch(UploadBatch batch) {
+        ResourceRegistry.untrack(ResourceType.FENCE, batch.fence);
+        vkDestroyFence(device, batch.fence, null);
+        if (batch.semaphore != VK_NULL_HANDLE) {
+            ResourceRegistry.untrack(ResourceType.SEMAPHORE, batch.semaphore);
+            vkDestroySemaphore(device, batch.semaphore, null);
+        }
+        vkFreeCommandBuffers(device, commandPool, batch.commandBuffer);
+    }
+
+    private static class PendingCopy {
+        private final long srcOffset;
+        private final long size;
+        private final long stagingEnd;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private long dstBuffer = VK_NULL_HANDLE;
+        private long dstOffset;
+        private long dstImage = VK_NULL_HANDLE;
+        private int mipLevel;
+        private int width;
+        private int height;
+        private boolean failed;
+        private volatile boolean ready;
+
+        private PendingCopy(long srcOffset, long size, long stagingEnd) {
+            this.srcOffset = srcOffset;
+            this.size = size;
+            this.stagingEnd = stagingEnd;
+        }
+    }
+
+    private static class UploadBatch {
+        private VkCommandBuffer commandBuffer;
+        private long fence;
+        private long semaphore = VK_NULL_HANDLE;
+        private final List<PendingCopy> copies = new ArrayList<>();
+        private long stagingMark;
+        private boolean stagingReleased;
+        private boolean completed;
+        private long acquireFrame = -1;
+
+        private void reset() {
+            copies.clear();
+            stagingReleased = false;
+            completed = false;
+            acquireFrame = -1;
+        }
+    }
+}
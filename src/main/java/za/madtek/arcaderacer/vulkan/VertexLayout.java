@@ -0,0 +1,48 @@
+package za.madtek.arcaderacer.vulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkPipelineVertexInputStateCreateInfo;
+import org.lwjgl.vulkan.VkVertexInputAttributeDescription;
+import org.lwjgl.vulkan.VkVertexInputBindingDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+public class VertexLayout {
+
+    private final List<int[]> bindings = new ArrayList<>();
+    private final List<int[]> attributes = new ArrayList<>();
+
+    public VertexLayout binding(int binding, int stride, int inputRate) {
+        bindings.add(new int[] { binding, stride, inputRate });
+        return this;
+    }
+
+    public VertexLayout attribute(int binding, int location, int format, int offset) {
+        attributes.add(new int[] { binding, location, format, offset });
+        return this;
+    }
+
+    protected VkPipelineVertexInputStateCreateInfo toCreateInfo(MemoryStack stack) {
+        VkVertexInputBindingDescription.Buffer bindingDescriptions = VkVertexInputBindingDescription.calloc(bindings.size(), stack);
+        for (int i = 0; i < bindings.size(); i++) {
+            int[] binding = bindings.get(i);
+            bindingDescriptions.get(i).binding(binding[0]).stride(binding[1]).inputRate(binding[2]);
+        }
+
+        VkVertexInputAttributeDescription.Buffer attributeDescriptions = VkVertexInputAttributeDescription.calloc(attributes.size(), stack);
+        for (int i = 0; i < attributes.size(); i++) {
+            int[] attribute = attributes.get(i);
+            attributeDescriptions.get(i).binding(attribute[0]).location(attribute[1]).format(attribute[2]).offset(attribute[3]);
+        }
+
+        VkPipelineVertexInputStateCreateInfo vertexInputInfo = VkPipelineVertexInputStateCreateInfo.calloc(stack);
+        vertexInputInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_VERTEX_INPUT_STATE_CREATE_INFO);
+        vertexInputInfo.pVertexBindingDescriptions(bindingDescriptions);
+        vertexInputInfo.pVertexAttributeDescriptions(attributeDescriptions);
+
+        return vertexInputInfo;
+    }
+}
@@ -0,0 +1,44 @@
+package za.madtek.arcaderacer.vulkan.memory;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+public class AllocatedBuffer {
+
+    private final long buffer;
+    private final long allocation;
+    private final long size;
+    private final long mappedAddress;
+    private final BufferType type;
+
+    protected AllocatedBuffer(long buffer, long allocation, long size, long mappedAddress, BufferType type) {
+        this.buffer = buffer;
+        this.allocation = allocation;
+        this.size = size;
+        this.mappedAddress = mappedAddress;
+        this.type = type;
+    }
+
+    public long getBuffer() {
+        return buffer;
+    }
+
+    public long getAllocation() {
+        return allocation;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isMapped() {
+        return mappedAddress != NULL;
+    }
+
+    public long getMappedAddress() {
+        return mappedAddress;
+    }
+
+    public BufferType getType() {
+        return type;
+    }
+}
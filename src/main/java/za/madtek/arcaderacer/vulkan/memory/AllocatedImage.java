@@ -0,0 +1,44 @@
+package za.madtek.arcaderacer.vulkan.memory;
+
+public class AllocatedImage {
+
+    private final long image;
+    private final long allocation;
+    private final int format;
+    private final int width;
+    private final int height;
+    private final int mipLevels;
+
+    protected AllocatedImage(long image, long allocation, int format, int width, int height, int mipLevels) {
+        this.image = image;
+        this.allocation = allocation;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.mipLevels = mipLevels;
+    }
+
+    public long getImage() {
+        return image;
+    }
+
+    public long getAllocation() {
+        return allocation;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMipLevels() {
+        return mipLevels;
+    }
+}
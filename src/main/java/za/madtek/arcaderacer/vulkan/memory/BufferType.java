@@ -0,0 +1,34 @@
+package za.madtek.arcaderacer.vulkan.memory;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+public enum BufferType {
+    VERTEX(VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT, false, 64L << 20),
+    INDEX(VK_BUFFER_USAGE_INDEX_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT, false, 32L << 20),
+    // Rewritten by the CPU every frame, so these live in host visible memory and stay mapped.
+    UNIFORM(VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT, true, 8L << 20),
+    STORAGE(VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, true, 16L << 20),
+    INDIRECT(VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT, true, 4L << 20);
+
+    private final int usage;
+    private final boolean hostVisible;
+    private final long blockSize;
+
+    BufferType(int usage, boolean hostVisible, long blockSize) {
+        this.usage = usage;
+        this.hostVisible = hostVisible;
+        this.blockSize = blockSize;
+    }
+
+    public int getUsage() {
+        return usage;
+    }
+
+    public boolean isHostVisible() {
+        return hostVisible;
+    }
+
+    public long getBlockSize() {
+        return blockSize;
+    }
+}
@@ -0,0 +1,245 @@
+package za.madtek.arcaderacer.vulkan.memory;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.vma.*;
+import org.lwjgl.vulkan.*;
+import za.madtek.arcaderacer.vulkan.ResourceRegistry;
+import za.madtek.arcaderacer.vulkan.ResourceType;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.util.vma.Vma.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class MemoryAllocator {
+
+    private static final long STAGING_RING_SIZE = 128L << 20;
+
+    private long allocator;
+    private final Map<BufferType, Long> pools = new EnumMap<>(BufferType.class);
+    private StagingRing stagingRing;
+    private int heapCount;
+
+    public void init(VkInstance instance, VkPhysicalDevice physicalDevice, VkDevice device) {
+        try (MemoryStack stack = stackPush()) {
+            VmaVulkanFunctions vulkanFunctions = VmaVulkanFunctions.calloc(stack);
+            vulkanFunctions.set(instance, device);
+
+            VmaAllocatorCreateInfo createInfo = VmaAllocatorCreateInfo.calloc(stack);
+            createInfo.physicalDevice(physicalDevice);
+            createInfo.device(device);
+            createInfo.instance(instance);
+            createInfo.pVulkanFunctions(vulkanFunctions);
+            createInfo.vulkanApiVersion(VK_API_VERSION_1_0);
+
+            PointerBuffer pAllocator = stack.mallocPointer(1);
+            if (vmaCreateAllocator(createInfo, pAllocator) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create memory allocator");
+            allocator = pAllocator.get(0);
+
+            VkPhysicalDeviceMemoryProperties memoryProperties = VkPhysicalDeviceMemoryProperties.malloc(stack);
+            vkGetPhysicalDeviceMemoryProperties(physicalDevice, memoryProperties);
+            heapCount = memoryProperties.memoryHeapCount();
+        }
+
+        for (BufferType type : BufferType.values())
+            pools.put(type, createPool(type));
+
+        stagingRing = new StagingRing(this, STAGING_RING_SIZE);
+    }
+
+    public void free() {
+        if (stagingRing != null)
+            stagingRing.free();
+
+        pools.values().forEach(pool -> vmaDestroyPool(allocator, pool));
+        pools.clear();
+
+        if (allocator != VK_NULL_HANDLE)
+            vmaDestroyAllocator(allocator);
+    }
+
+    public long getAllocator() {
+        return allocator;
+    }
+
+    // The one staging ring, owned by the UploadService: it's released strictly in order, against the upload fences.
+    public StagingRing getStagingRing() {
+        return stagingRing;
+    }
+
+    // Sub-allocated out of the type's pool, so thousands of meshes still only cost a handful of vkAllocateMemory calls.
+    public AllocatedBuffer createBuffer(BufferType type, long size) {
+        try (MemoryStack stack = stackPush()) {
+            VkBufferCreateInfo bufferInfo = bufferCreateInfo(type.getUsage(), size, stack);
+
+            VmaAllocationCreateInfo allocInfo = VmaAllocationCreateInfo.calloc(stack);
+            allocInfo.pool(pools.get(type));
+            if (type.isHostVisible())
+                allocInfo.flags(VMA_ALLOCATION_CREATE_MAPPED_BIT);
+
+            return createBuffer(bufferInfo, allocInfo, type, stack);
+        }
+    }
+
+    // Dedicated, persistently mapped upload memory. Used for the staging ring; not pooled.
+    public AllocatedBuffer createStagingBuffer(long size) {
+        try (MemoryStack stack = stackPush()) {
+            VkBufferCreateInfo bufferInfo = bufferCreateInfo(VK_BUFFER_USAGE_TRANSFER_SRC_BIT, size, stack);
+
+            VmaAllocationCreateInfo allocInfo = VmaAllocationCreateInfo.calloc(stack);
+            allocInfo.usage(VMA_MEMORY_USAGE_AUTO);
+            allocInfo.flags(VMA_ALLOCATION_CREATE_MAPPED_BIT | VMA_ALLOCATION_CREATE_HOST_ACCESS_SEQUENTIAL_WRITE_BIT);
+
+            return createBuffer(bufferInfo, allocInfo, null, stack);
+        }
+    }
+
+    // Dedicated, persistently mapped memory the GPU copies into for the CPU to read, e.g. frame captures.
+    public AllocatedBuffer createReadbackBuffer(long size) {
+        try (MemoryStack stack = stackPush()) {
+            VkBufferCreateInfo bufferInfo = bufferCreateInfo(VK_BUFFER_USAGE_TRANSFER_DST_BIT, size, stack);
+
+            VmaAllocationCreateInfo allocInfo = VmaAllocationCreateInfo.calloc(stack);
+            allocInfo.usage(VMA_MEMORY_USAGE_AUTO);
+            allocInfo.flags(VMA_ALLOCATION_CREATE_MAPPED_BIT | VMA_ALLOCATION_CREATE_HOST_ACCESS_RANDOM_BIT);
+
+            return createBuffer(bufferInfo, allocInfo, null, stack);
+        }
+    }
+
+    public void destroyBuffer(AllocatedBuffer buffer) {
+        ResourceRegistry.untrack(ResourceType.BUFFER, buffer.getBuffer());
+        vmaDestroyBuffer(allocator, buffer.getBuffer(), buffer.getAllocation());
+    }
+
+    // Images aren't pooled: they're large, few, and VMA gives the big ones dedicated allocations anyway.
+    public AllocatedImage createImage(int width, int height, int mipLevels, int format, int usage) {
+        try (MemoryStack stack = stackPush()) {
+            VkImageCreateInfo imageInfo = VkImageCreateInfo.calloc(stack);
+            imageInfo.sType(VK_STRUCTURE_TYPE_IMAGE_CREATE_INFO);
+            imageInfo.imageType(VK_IMAGE_TYPE_2D);
+            imageInfo.format(format);
+            imageInfo.extent().set(width, height, 1);
+            imageInfo.mipLevels(mipLevels);
+            imageInfo.arrayLayers(1);
+            imageInfo.samples(VK_SAMPLE_COUNT_1_BIT);
+            imageInfo.tiling(VK_IMAGE_TILING_OPTIMAL);
+            imageInfo.usage(usage);
+            imageInfo.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
+            imageInfo.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+
+            VmaAllocationCreateInfo allocInfo = VmaAllocationCreateInfo.calloc(stack);
+            allocInfo.usage(VMA_MEMORY_USAGE_AUTO_PREFER_DEVICE);
+
+            LongBuffer pImage = stack.mallocLong(1);
+            PointerBuffer pAllocation = stack.mallocPointer(1);
+            VmaAllocationInfo allocationInfo = VmaAllocationInfo.malloc(stack);
+            if (vmaCreateImage(allocator, imageInfo, allocInfo, pImage, pAllocation, allocationInfo) != VK_SUCCESS)
+                throw new RuntimeException("Failed to allocate " + width + "x" + height + " image");
+
+            ResourceRegistry.track(ResourceType.IMAGE, pImage.get(0), allocationInfo.size());
+            return new AllocatedImage(pImage.get(0), pAllocation.get(0), format, width, height, mipLevels);
+        }
+    }
+
+    public void destroyImage(AllocatedImage image) {
+        ResourceRegistry.untrack(ResourceType.IMAGE, image.getImage());
+        vmaDestroyImage(allocator, image.getImage(), image.getAllocation());
+    }
+
+    // No-op on coherent memory; required before the GPU reads what the CPU wrote on everything else.
+    public void flush(AllocatedBuffer buffer, long offset, long size) {
+        vmaFlushAllocation(allocator, buffer.getAllocation(), offset, size);
+    }
+
+    // The reverse of flush(): required before the CPU reads what the GPU wrote on non-coherent memory.
+    public void invalidate(AllocatedBuffer buffer, long offset, long size) {
+        vmaInvalidateAllocation(allocator, buffer.getAllocation(), offset, size);
+    }
+
+    public MemoryStatistics getStatistics() {
+        MemoryStatistics statistics = new MemoryStatistics(heapCount);
+
+        try (MemoryStack stack = stackPush()) {
+            VmaBudget.Buffer budgets = VmaBudget.calloc(VK_MAX_MEMORY_HEAPS, stack);
+            vmaGetHeapBudgets(allocator, budgets);
+
+            for (int i = 0; i < heapCount; i++) {
+                VmaBudget budget = budgets.get(i);
+                statistics.setHeap(i, budget.statistics().blockBytes(), budget.statistics().allocationBytes(),
+                        budget.usage(), budget.budget());
+            }
+
+            VmaStatistics poolStatistics = VmaStatistics.calloc(stack);
+            for (Map.Entry<BufferType, Long> pool : pools.entrySet()) {
+                vmaGetPoolStatistics(allocator, pool.getValue(), poolStatistics);
+                statistics.setPool(pool.getKey(), poolStatistics.blockCount(), poolStatistics.allocationCount(),
+                        poolStatistics.blockBytes(), poolStatistics.allocationBytes());
+            }
+        }
+
+        if (stagingRing != null)
+            statistics.setStaging(stagingRing.getCapacity(), stagingRing.getUsed());
+
+        return statistics;
+    }
+
+    private long createPool(BufferType type) {
+        try (MemoryStack stack = stackPush()) {
+            // The size only matters for picking a compatible memory type; blocks are sized by the pool.
+            VkBufferCreateInfo bufferInfo = bufferCreateInfo(type.getUsage(), 0x10000, stack);
+
+            VmaAllocationCreateInfo allocInfo = VmaAllocationCreateInfo.calloc(stack);
+            if (type.isHostVisible()) {
+                allocInfo.usage(VMA_MEMORY_USAGE_AUTO);
+                allocInfo.flags(VMA_ALLOCATION_CREATE_HOST_ACCESS_SEQUENTIAL_WRITE_BIT);
+            } else {
+                allocInfo.usage(VMA_MEMORY_USAGE_AUTO_PREFER_DEVICE);
+            }
+
+            IntBuffer pMemoryTypeIndex = stack.mallocInt(1);
+            if (vmaFindMemoryTypeIndexForBufferInfo(allocator, bufferInfo, allocInfo, pMemoryTypeIndex) != VK_SUCCESS)
+                throw new RuntimeException("Failed to find memory type for " + type + " buffers");
+
+            VmaPoolCreateInfo poolInfo = VmaPoolCreateInfo.calloc(stack);
+            poolInfo.memoryTypeIndex(pMemoryTypeIndex.get(0));
+            poolInfo.blockSize(type.getBlockSize());
+
+            PointerBuffer pPool = stack.mallocPointer(1);
+            if (vmaCreatePool(allocator, poolInfo, pPool) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create " + type + " memory pool");
+
+            return pPool.get(0);
+        }
+    }
+
+    private AllocatedBuffer createBuffer(VkBufferCreateInfo bufferInfo, VmaAllocationCreateInfo allocInfo,
+                                         BufferType type, MemoryStack stack) {
+        LongBuffer pBuffer = stack.mallocLong(1);
+        PointerBuffer pAllocation = stack.mallocPointer(1);
+        VmaAllocationInfo allocationInfo = VmaAllocationInfo.malloc(stack);
+
+        if (vmaCreateBuffer(allocator, bufferInfo, allocInfo, pBuffer, pAllocation, allocationInfo) != VK_SUCCESS)
+            throw new RuntimeException("Failed to allocate buffer of " + bufferInfo.size() + " bytes");
+
+        ResourceRegistry.track(ResourceType.BUFFER, pBuffer.get(0), bufferInfo.size());
+        return new AllocatedBuffer(pBuffer.get(0), pAllocation.get(0), bufferInfo.size(),
+                allocationInfo.pMappedData(), type);
+    }
+
+    private static VkBufferCreateInfo bufferCreateInfo(int usage, long size, MemoryStack stack) {
+        VkBufferCreateInfo bufferInfo = VkBufferCreateInfo.calloc(stack);
+        bufferInfo.sType(VK_STRUCTURE_TYPE_BUFFER_CREATE_INFO);
+        bufferInfo.size(size);
+        bufferInfo.usage(usage);
+        bufferInfo.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
+
+        return bufferInfo;
+    }
+}
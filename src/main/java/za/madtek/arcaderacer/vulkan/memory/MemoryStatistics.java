@@ -0,0 +1,95 @@
+package za.madtek.arcaderacer.vulkan.memory;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+public class MemoryStatistics {
+
+    private final long[] heapBlockBytes;
+    private final long[] heapAllocationBytes;
+    private final long[] heapUsage;
+    private final long[] heapBudget;
+    private final Map<BufferType, long[]> pools = new EnumMap<>(BufferType.class);
+    private long stagingCapacity;
+    private long stagingUsed;
+
+    protected MemoryStatistics(int heapCount) {
+        heapBlockBytes = new long[heapCount];
+        heapAllocationBytes = new long[heapCount];
+        heapUsage = new long[heapCount];
+        heapBudget = new long[heapCount];
+    }
+
+    protected void setHeap(int heap, long blockBytes, long allocationBytes, long usage, long budget) {
+        heapBlockBytes[heap] = blockBytes;
+        heapAllocationBytes[heap] = allocationBytes;
+        heapUsage[heap] = usage;
+        heapBudget[heap] = budget;
+    }
+
+    protected void setPool(BufferType type, long blockCount, long allocationCount, long blockBytes, long allocationBytes) {
+        pools.put(type, new long[] { blockCount, allocationCount, blockBytes, allocationBytes });
+    }
+
+    protected void setStaging(long capacity, long used) {
+        stagingCapacity = capacity;
+        stagingUsed = used;
+    }
+
+    public int getHeapCount() {
+        return heapUsage.length;
+    }
+
+    // Bytes in VkDeviceMemory blocks we own.
+    public long getHeapBlockBytes(int heap) {
+        return heapBlockBytes[heap];
+    }
+
+    // Bytes of those blocks actually handed out to resources.
+    public long getHeapAllocationBytes(int heap) {
+        return heapAllocationBytes[heap];
+    }
+
+    // Process-wide usage and budget, as reported by VK_EXT_memory_budget or estimated by VMA without it.
+    public long getHeapUsage(int heap) {
+        return heapUsage[heap];
+    }
+
+    public long getHeapBudget(int heap) {
+        return heapBudget[heap];
+    }
+
+    public long getPoolAllocationCount(BufferType type) {
+        return pools.containsKey(type) ? pools.get(type)[1] : 0;
+    }
+
+    public long getPoolAllocationBytes(BufferType type) {
+        return pools.containsKey(type) ? pools.get(type)[3] : 0;
+    }
+
+    public long getStagingUsed() {
+        return stagingUsed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < heapUsage.length; i++) {
+            builder.append(String.format("Heap %d: %s used of %s budget, %s allocated in %s of blocks%n", i,
+                    megabytes(heapUsage[i]), megabytes(heapBudget[i]), megabytes(heapAllocationBytes[i]),
+                    megabytes(heapBlockBytes[i])));
+        }
+
+        pools.forEach((type, pool) -> builder.append(String.format("%s pool: %d allocations, %s in %d blocks (%s)%n",
+                type, pool[1], megabytes(pool[3]), pool[0], megabytes(pool[2]))));
+
+        builder.append(String.format("Staging ring: %s of %s in use%n", megabytes(stagingUsed), megabytes(stagingCapacity)));
+
+        return builder.toString();
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+}
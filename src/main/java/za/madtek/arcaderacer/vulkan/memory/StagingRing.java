@@ -0,0 +1,83 @@
+package za.madtek.arcaderacer.vulkan.memory;
+
+public class StagingRing {
+
+    // Keeps every sub-allocation offset valid for copies, texel blocks and uniform/storage binding alignment.
+    private static final long MIN_ALIGNMENT = 256;
+
+    private final MemoryAllocator allocator;
+    private final AllocatedBuffer buffer;
+    private final long capacity;
+
+    // Positions only ever grow; the physical offset is position % capacity.
+    private long head;
+    private long tail;
+
+    protected StagingRing(MemoryAllocator allocator, long capacity) {
+        this.allocator = allocator;
+        this.capacity = align(capacity, MIN_ALIGNMENT);
+        this.buffer = allocator.createStagingBuffer(this.capacity);
+    }
+
+    public void free() {
+        allocator.destroyBuffer(buffer);
+    }
+
+    // Returns the offset into the staging buffer, or -1 if the ring is full until in-flight uploads retire.
+    public synchronized long allocate(long size, long alignment) {
+        if (size > capacity)
+            throw new IllegalArgumentException("Staging allocation of " + size + " bytes exceeds ring size " + capacity);
+
+        long start = align(head, Math.max(alignment, MIN_ALIGNMENT));
+        long offset = start % capacity;
+
+        // Allocations never wrap around the end of the buffer, skip to the start instead.
+        if (offset + size > capacity) {
+            start += capacity - offset;
+            offset = 0;
+        }
+
+        // Nothing outstanding, so the skipped space doesn't count: anything up to the capacity fits in an empty ring.
+        if (head == tail)
+            tail = start;
+
+        if (start + size - tail > capacity)
+            return -1;
+
+        head = start + size;
+        return offset;
+    }
+
+    public synchronized long getHead() {
+        return head;
+    }
+
+    // Everything allocated before the mark has been consumed by the GPU.
+    public synchronized void release(long mark) {
+        tail = Math.max(tail, mark);
+    }
+
+    public void flush(long offset, long size) {
+        allocator.flush(buffer, offset, size);
+    }
+
+    public long getBuffer() {
+        return buffer.getBuffer();
+    }
+
+    public long getMappedAddress() {
+        return buffer.getMappedAddress();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getUsed() {
+        return head - tail;
+    }
+
+    private static long align(long value, long alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+}
@@ -0,0 +1,87 @@
+package za.madtek.arcaderacer.vulkan.shader;
+
+import org.lwjgl.util.shaderc.ShadercIncludeResolve;
+import org.lwjgl.util.shaderc.ShadercIncludeResult;
+import org.lwjgl.util.shaderc.ShadercIncludeResultRelease;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.util.shaderc.Shaderc.*;
+
+public class ShaderCompiler {
+
+    private final ShaderSources sources;
+    private final long compiler;
+    private final ShadercIncludeResolve includeResolve;
+    private final ShadercIncludeResultRelease includeRelease;
+
+    public ShaderCompiler(ShaderSources sources) {
+        this.sources = sources;
+
+        compiler = shaderc_compiler_initialize();
+        if (compiler == NULL)
+            throw new RuntimeException("Failed to initialize shader compiler");
+
+        includeResolve = ShadercIncludeResolve.create((userData, requestedSource, type, requestingSource, includeDepth) -> {
+            ShadercIncludeResult result = ShadercIncludeResult.calloc();
+            String name = memUTF8(requestedSource);
+
+            try {
+                result.content(memUTF8(sources.read(name), false));
+                result.source_name(memUTF8(name, false));
+            } catch (RuntimeException e) {
+                // shaderc's convention for a failed include: empty name, error message as the content.
+                result.content(memUTF8(e.getMessage(), false));
+                result.source_name(memUTF8("", false));
+            }
+
+            return result.address();
+        });
+
+        includeRelease = ShadercIncludeResultRelease.create((userData, includeResult) -> {
+            ShadercIncludeResult result = ShadercIncludeResult.create(includeResult);
+            memFree(result.content());
+            memFree(result.source_name());
+            result.free();
+        });
+    }
+
+    public void free() {
+        shaderc_compiler_release(compiler);
+        includeResolve.free();
+        includeRelease.free();
+    }
+
+    // A shaderc compiler instance is safe to use from several threads at once, options are per call.
+    public ByteBuffer compile(ShaderVariant variant) {
+        long options = shaderc_compile_options_initialize();
+        long result = NULL;
+
+        try {
+            shaderc_compile_options_set_target_env(options, shaderc_target_env_vulkan, shaderc_env_version_vulkan_1_0);
+            shaderc_compile_options_set_target_spirv(options, shaderc_spirv_version_1_0);
+            shaderc_compile_options_set_optimization_level(options, shaderc_optimization_level_performance);
+            shaderc_compile_options_set_include_callbacks(options, includeResolve, includeRelease, NULL);
+
+            for (Map.Entry<String, String> define : variant.getDefines().entrySet())
+                shaderc_compile_options_add_macro_definition(options, define.getKey(), define.getValue());
+
+            result = shaderc_compile_into_spv(compiler, sources.read(variant.getSource()),
+                    variant.getStage().getShadercKind(), variant.getSource(), "main", options);
+
+            if (shaderc_result_get_compilation_status(result) != shaderc_compilation_status_success)
+                throw new RuntimeException("Failed to compile shader " + variant + ": " + shaderc_result_get_error_message(result));
+
+            ByteBuffer bytes = shaderc_result_get_bytes(result);
+            ByteBuffer spirv = ByteBuffer.allocateDirect(bytes.remaining());
+            spirv.put(bytes).flip();
+            return spirv;
+        } finally {
+            if (result != NULL)
+                shaderc_result_release(result);
+            shaderc_compile_options_release(options);
+        }
+    }
+}
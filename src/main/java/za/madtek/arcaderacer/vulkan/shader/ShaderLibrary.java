@@ -0,0 +1,168 @@
+package za.madtek.arcaderacer.vulkan.shader;
+
+import za.madtek.arcaderacer.Globals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Resolves shader variants to SPIR-V, in order: already loaded, precompiled into the jar, on-disk cache, and only
+// then an actual shaderc compile. All lookups are keyed by the content hash of source, includes and defines.
+public class ShaderLibrary {
+
+    protected static final String PRECOMPILED_PATH = "/shaders/spirv/";
+
+    private final ShaderSources sources;
+    private final Path cacheDirectory;
+    private final Map<ShaderVariant, ByteBuffer> loaded = new ConcurrentHashMap<>();
+    private final List<Consumer<Set<ShaderVariant>>> reloadListeners = new CopyOnWriteArrayList<>();
+
+    private ShaderCompiler compiler;
+    private ExecutorService executor;
+    private ShaderWatcher watcher;
+
+    public ShaderLibrary() {
+        sources = new ShaderSources(Globals.SHADER_SOURCE_DIR);
+        cacheDirectory = Globals.CACHE_DIR.resolve("shaders");
+    }
+
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+            Thread thread = new Thread(runnable, "shader-compiler-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (Globals.SHADER_HOT_RELOAD && sources.getDirectory() != null) {
+            watcher = new ShaderWatcher(sources.getDirectory(), this::onSourceChanged);
+            watcher.start();
+        }
+    }
+
+    public void free() {
+        if (watcher != null)
+            watcher.close();
+        if (executor != null)
+            executor.shutdownNow();
+
+        synchronized (this) {
+            if (compiler != null)
+                compiler.free();
+            compiler = null;
+        }
+    }
+
+    public ByteBuffer get(ShaderVariant variant) {
+        return loaded.computeIfAbsent(variant, this::load);
+    }
+
+    // Permutations are independent, so a cold start compiles them all side by side.
+    public CompletableFuture<Void> compileAll(Collection<ShaderVariant> variants) {
+        return CompletableFuture.allOf(variants.stream()
+                .map(variant -> CompletableFuture.runAsync(() -> get(variant), executor))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    public void addReloadListener(Consumer<Set<ShaderVariant>> listener) {
+        reloadListeners.add(listener);
+    }
+
+    private ByteBuffer load(ShaderVariant variant) {
+        String hash = sources.hash(variant);
+
+        ByteBuffer spirv = loadPrecompiled(hash);
+        if (spirv != null)
+            return spirv;
+
+        Path cached = cacheDirectory.resolve(hash + ".spv");
+        if (Files.isRegularFile(cached)) {
+            try {
+                return toDirect(Files.readAllBytes(cached));
+            } catch (IOException e) {
+                System.err.println("Failed to read cached shader " + cached + ": " + e.getMessage());
+            }
+        }
+
+        long start = System.nanoTime();
+        spirv = getCompiler().compile(variant);
+        System.out.printf("Compiled shader %s in %.2f ms%n", variant, (System.nanoTime() - start) / 1e6);
+
+        store(cached, spirv);
+        return spirv;
+    }
+
+    private ByteBuffer loadPrecompiled(String hash) {
+        try (InputStream in = ShaderLibrary.class.getResourceAsStream(PRECOMPILED_PATH + hash + ".spv")) {
+            return in != null ? toDirect(in.readAllBytes()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void store(Path file, ByteBuffer spirv) {
+        Path temp = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+
+        try {
+            Files.createDirectories(file.getParent());
+            try (SeekableByteChannel channel = Files.newByteChannel(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(spirv.duplicate());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to cache shader " + file + ": " + e.getMessage());
+        }
+    }
+
+    // The compiler is only brought up if something actually misses both caches, which a release build never does.
+    private synchronized ShaderCompiler getCompiler() {
+        if (compiler == null)
+            compiler = new ShaderCompiler(sources);
+        return compiler;
+    }
+
+    private void onSourceChanged(String fileName) {
+        Set<ShaderVariant> reloaded = new HashSet<>();
+        for (ShaderVariant variant : loaded.keySet()) {
+            try {
+                // Scanning the includes reads them too, so a half-saved file or a bad #include fails here.
+                if (!variant.getSource().equals(fileName)
+                        && !sources.collectIncludes(variant.getSource()).contains(fileName))
+                    continue;
+
+                loaded.put(variant, load(variant));
+                reloaded.add(variant);
+            } catch (RuntimeException e) {
+                // Keep running on the last good SPIR-V; a typo shouldn't take the game down.
+                System.err.println(e.getMessage());
+            }
+        }
+
+        if (!reloaded.isEmpty())
+            reloadListeners.forEach(listener -> listener.accept(reloaded));
+    }
+
+    private static ByteBuffer toDirect(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,55 @@
+package za.madtek.arcaderacer.vulkan.shader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Run by the compileShaders Gradle task: builds every variant in Shaders.all() into <output>/<hash>.spv, which
+// ends up on the classpath under shaders/spirv so release builds never start the compiler.
+public class ShaderPrecompiler {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ShaderPrecompiler <shader source dir> <output dir>");
+            System.exit(1);
+        }
+
+        ShaderSources sources = new ShaderSources(Path.of(args[0]));
+        if (sources.getDirectory() == null)
+            throw new IOException("Shader source directory not found: " + args[0]);
+
+        Path output = Path.of(args[1]);
+        Files.createDirectories(output);
+
+        ShaderCompiler compiler = new ShaderCompiler(sources);
+        AtomicInteger compiled = new AtomicInteger();
+        long start = System.nanoTime();
+
+        try {
+            Shaders.all().parallelStream().forEach(variant -> {
+                Path file = output.resolve(sources.hash(variant) + ".spv");
+                if (Files.isRegularFile(file))
+                    return;
+
+                ByteBuffer spirv = compiler.compile(variant);
+                byte[] bytes = new byte[spirv.remaining()];
+                spirv.get(bytes);
+
+                try {
+                    Files.write(file, bytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                compiled.incrementAndGet();
+            });
+        } finally {
+            compiler.free();
+        }
+
+        System.out.printf("Precompiled %d of %d shader variants in %.2f ms%n", compiled.get(), Shaders.all().size(),
+                (System.nanoTime() - start) / 1e6);
+    }
+}
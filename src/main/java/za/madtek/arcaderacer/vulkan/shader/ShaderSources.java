@@ -0,0 +1,105 @@
+package za.madtek.arcaderacer.vulkan.shader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ShaderSources {
+
+    private static final String CLASSPATH_ROOT = "/shaders/";
+    private static final Pattern INCLUDE = Pattern.compile("^\\s*#\\s*include\\s+[\"<]([^\">]+)[\">]", Pattern.MULTILINE);
+
+    // Anything that changes the generated SPIR-V without touching the sources has to bump this.
+    private static final String COMPILER_SETTINGS = "vulkan1.0;spirv1.0;performance;v1";
+
+    private final Path directory;
+
+    // With a directory, sources are read from disk (and can be watched); without one, from the classpath.
+    public ShaderSources(Path directory) {
+        this.directory = directory != null && Files.isDirectory(directory) ? directory : null;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String read(String name) {
+        try {
+            if (directory != null)
+                return Files.readString(directory.resolve(name));
+
+            try (InputStream in = ShaderSources.class.getResourceAsStream(CLASSPATH_ROOT + name)) {
+                if (in == null)
+                    throw new IOException("Shader source not found: " + name);
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Every file the source pulls in, directly or indirectly, in first-seen order.
+    public Set<String> collectIncludes(String name) {
+        Set<String> includes = new LinkedHashSet<>();
+        collectIncludes(name, includes);
+        return includes;
+    }
+
+    // The cache key: stage, defines, compiler settings and the full text of the source and all its includes.
+    public String hash(ShaderVariant variant) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, COMPILER_SETTINGS);
+        update(digest, variant.getStage().name());
+        for (Map.Entry<String, String> define : variant.getDefines().entrySet()) {
+            update(digest, define.getKey());
+            update(digest, define.getValue());
+        }
+
+        update(digest, variant.getSource());
+        update(digest, read(variant.getSource()));
+        for (String include : collectIncludes(variant.getSource())) {
+            update(digest, include);
+            update(digest, read(include));
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private void collectIncludes(String name, Set<String> includes) {
+        Matcher matcher = INCLUDE.matcher(read(name));
+        while (matcher.find()) {
+            String include = matcher.group(1);
+            if (includes.add(include))
+                collectIncludes(include, includes);
+        }
+    }
+
+    // Length-prefixed so "ab"+"c" and "a"+"bc" can't collide.
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+}
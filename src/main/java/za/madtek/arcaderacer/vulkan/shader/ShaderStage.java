@@ -0,0 +1,37 @@
+package za.madtek.arcaderacer.vulkan.shader;
+
+import static org.lwjgl.util.shaderc.Shaderc.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public enum ShaderStage {
+    VERTEX(shaderc_glsl_vertex_shader, VK_SHADER_STAGE_VERTEX_BIT),
+    FRAGMENT(shaderc_glsl_fragment_shader, VK_SHADER_STAGE_FRAGMENT_BIT),
+    COMPUTE(shaderc_glsl_compute_shader, VK_SHADER_STAGE_COMPUTE_BIT);
+
+    private final int shadercKind;
+    private final int vulkanStage;
+
+    ShaderStage(int shadercKind, int vulkanStage) {
+        this.shadercKind = shadercKind;
+        this.vulkanStage = vulkanStage;
+    }
+
+    public int getShadercKind() {
+        return shadercKind;
+    }
+
+    public int getVulkanStage() {
+        return vulkanStage;
+    }
+
+    public static ShaderStage fromFileName(String name) {
+        if (name.endsWith(".vert"))
+            return VERTEX;
+        if (name.endsWith(".frag"))
+            return FRAGMENT;
+        if (name.endsWith(".comp"))
+            return COMPUTE;
+
+        throw new IllegalArgumentException("Unknown shader stage for " + name);
+    }
+}
@@ -0,0 +1,60 @@
+package za.madtek.arcaderacer.vulkan.shader;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+public class ShaderVariant {
+
+    private final String source;
+    private final ShaderStage stage;
+    // Sorted, so the same set of defines always hashes and compares the same way.
+    private final Map<String, String> defines;
+
+    public ShaderVariant(String source) {
+        this(source, Map.of());
+    }
+
+    public ShaderVariant(String source, Map<String, String> defines) {
+        this.source = source;
+        this.stage = ShaderStage.fromFileName(source);
+        this.defines = Collections.unmodifiableMap(new TreeMap<>(defines));
+    }
+
+    public ShaderVariant withDefine(String name, String value) {
+        Map<String, String> combined = new TreeMap<>(defines);
+        combined.put(name, value);
+        return new ShaderVariant(source, combined);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public ShaderStage getStage() {
+        return stage;
+    }
+
+    public Map<String, String> getDefines() {
+        return defines;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ShaderVariant)) return false;
+        ShaderVariant that = (ShaderVariant) o;
+        return source.equals(that.source) && defines.equals(that.defines);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, defines);
+    }
+
+    @Override
+    public String toString() {
+        return defines.isEmpty() ? source : source + defines;
+    }
+}
@@ -0,0 +1,79 @@
+package za.madtek.arcaderacer.vulkan.shader;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+public class ShaderWatcher {
+
+    // Editors tend to write a file in several steps, so wait for things to settle before recompiling.
+    private static final long SETTLE_MILLIS = 150;
+
+    private final Path directory;
+    private final Consumer<String> onChanged;
+    private WatchService watchService;
+    private Thread thread;
+
+    protected ShaderWatcher(Path directory, Consumer<String> onChanged) {
+        this.directory = directory;
+        this.onChanged = onChanged;
+    }
+
+    protected void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("Shader hot reload disabled: " + e.getMessage());
+            return;
+        }
+
+        thread = new Thread(this::run, "shader-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Watching " + directory.toAbsolutePath() + " for shader changes");
+    }
+
+    protected void close() {
+        if (thread != null)
+            thread.interrupt();
+
+        try {
+            if (watchService != null)
+                watchService.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Set<String> changed = new HashSet<>();
+
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() != OVERFLOW)
+                            changed.add(event.context().toString());
+                    }
+                    key.reset();
+                } while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                // One bad event mustn't end hot reload for the rest of the session.
+                for (String fileName : changed) {
+                    try {
+                        onChanged.accept(fileName);
+                    } catch (RuntimeException e) {
+                        System.err.println("Failed to reload shaders for " + fileName + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+}
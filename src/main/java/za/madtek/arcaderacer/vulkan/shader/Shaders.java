@@ -0,0 +1,19 @@
+package za.madtek.arcaderacer.vulkan.shader;
+
+import java.util.List;
+
+// Every shader permutation the game can ask for. The precompiler builds exactly this list for release.
+public class Shaders {
+
+    public static final ShaderVariant MESH_VERT = new ShaderVariant("mesh.vert");
+    public static final ShaderVariant MESH_VERT_INSTANCED = MESH_VERT.withDefine("INSTANCED", "1");
+    public static final ShaderVariant MESH_FRAG = new ShaderVariant("mesh.frag");
+    public static final ShaderVariant MESH_FRAG_ALPHA_TEST = MESH_FRAG.withDefine("ALPHA_TEST", "1");
+    public static final ShaderVariant MESH_FRAG_TEXTURED = MESH_FRAG.withDefine("TEXTURED", "1");
+    public static final ShaderVariant MESH_FRAG_TEXTURED_INSTANCED = MESH_FRAG_TEXTURED.withDefine("INSTANCED", "1");
+
+    public static List<ShaderVariant> all() {
+        return List.of(MESH_VERT, MESH_VERT_INSTANCED, MESH_FRAG, MESH_FRAG_ALPHA_TEST, MESH_FRAG_TEXTURED,
+                MESH_FRAG_TEXTURED_INSTANCED);
+    }
+}
@@ -0,0 +1,22 @@
+// Shared between every mesh shader. Per-draw data, 128 bytes, the most push constants are guaranteed to hold.
+// Keep in sync with MeshDrawTask and IndirectDrawTask, which write it.
+struct DrawData {
+    mat4 modelViewProjection;
+    vec4 positionScale;
+    vec4 positionOffset;
+    vec4 baseColor;
+    vec4 rotation; // model rotation quaternion, for normals
+};
+
+#ifdef INSTANCED
+// Batched draws: one entry per instance, found through firstInstance of the indirect command.
+layout(std430, set = 0, binding = 0) readonly buffer Instances {
+    DrawData instances[];
+};
+#else
+layout(push_constant) uniform PushConstants {
+    DrawData draw;
+} pc;
+#endif
+
+const vec3 SUN_DIRECTION = normalize(vec3(0.4, 0.8, 0.3));
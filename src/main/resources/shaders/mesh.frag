@@ -0,0 +1,35 @@
+#version 450
+
+#include "common.glsl"
+
+layout(location = 0) in vec3 fragNormal;
+layout(location = 1) in vec2 fragTexCoord;
+layout(location = 2) flat in vec4 fragColor;
+
+layout(location = 0) out vec4 outColor;
+
+#ifdef TEXTURED
+// The instanced pipelines have their instances in set 0, so the texture follows them.
+#ifdef INSTANCED
+layout(set = 1, binding = 0) uniform sampler2D baseTexture;
+#else
+layout(set = 0, binding = 0) uniform sampler2D baseTexture;
+#endif
+#endif
+
+void main() {
+    vec4 color = fragColor;
+
+#ifdef TEXTURED
+    // Stands in for the flat color, which is only drawn until the texture arrives.
+    color.rgb = texture(baseTexture, fragTexCoord).rgb;
+#endif
+
+#ifdef ALPHA_TEST
+    if (color.a < 0.5)
+        discard;
+#endif
+
+    float diffuse = max(dot(normalize(fragNormal), SUN_DIRECTION), 0.0);
+    outColor = vec4(color.rgb * (0.35 + 0.65 * diffuse), color.a);
+}
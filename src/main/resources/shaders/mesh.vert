@@ -0,0 +1,31 @@
+#version 450
+
+#include "common.glsl"
+
+layout(location = 0) in vec3 inPosition;
+layout(location = 1) in vec3 inNormal;
+layout(location = 2) in vec2 inTexCoord;
+
+layout(location = 0) out vec3 fragNormal;
+layout(location = 1) out vec2 fragTexCoord;
+layout(location = 2) flat out vec4 fragColor;
+
+vec3 rotate(vec4 q, vec3 v) {
+    return v + 2.0 * cross(q.xyz, cross(q.xyz, v) + q.w * v);
+}
+
+void main() {
+#ifdef INSTANCED
+    DrawData draw = instances[gl_InstanceIndex];
+#else
+    DrawData draw = pc.draw;
+#endif
+
+    // Positions arrive quantized to the mesh bounds, scale them back out.
+    vec3 position = inPosition * draw.positionScale.xyz + draw.positionOffset.xyz;
+
+    gl_Position = draw.modelViewProjection * vec4(position, 1.0);
+    fragNormal = rotate(draw.rotation, inNormal);
+    fragTexCoord = inTexCoord;
+    fragColor = draw.baseColor;
+}